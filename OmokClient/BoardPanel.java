@@ -1,14 +1,20 @@
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
+import java.awt.image.BufferedImage;
 
 
 /**
  * BoardPanel
  * - GUI에서 오목판을 그리며 사용자의 마우스 입력을 받아 서버로 이동을 전송한다.
- * - 내부적으로 15x15 정수 배열(board)을 유지하여 돌(흑=1, 백=2)을 그린다.
+ * - 내부적으로 서버와 같은 BitBoard(board)를 유지하여 돌(흑=1, 백=2)을 그린다.
  * - 서버로부터 도착한 이동 정보를 받아 보드를 갱신(updateBoard)하고 승리/무승부를 알린다.
  * - 마우스 호버 시 반투명한 돌로 위치를 미리 표시한다.
+ * - 흑의 금수 자리는 ForbiddenMap에 미리 계산해 두고 호버에서는 찾기만 한다.
+ *   클릭할 때는 그 한 칸만 전체 규칙(GameRule.isForbidden)으로 다시 판정한다.
+ * - 배경·격자·이름은 background 이미지에, 돌은 stones 이미지에 그려 두고 매번 복사만 한다.
+ *   background는 크기나 이름이 바뀔 때, stones는 updateBoard/resetBoard/loadSnapshot에서만 다시 그린다.
+ *   호버가 움직이면 이전 칸과 새 칸의 사각형만 다시 그린다.
  *
  * 주요 책임:
  * - 보드 렌더링(paintComponent)
@@ -17,7 +23,15 @@ import java.awt.event.*;
  * - 마우스 이동 감지 및 호버 위치 미리보기(mouseMotionListener)
  */
 public class BoardPanel extends JPanel implements MouseListener, MouseMotionListener {
-    private int[][] board = new int[15][15];
+    private static final Color BOARD_COLOR = new Color(240, 200, 120);
+    private static final Color HOVER_BLACK = new Color(0, 0, 0, 128);
+    private static final Color HOVER_WHITE = new Color(255, 255, 255, 128);
+    private static final Color HOVER_FORBIDDEN = new Color(255, 0, 0, 128);
+    private static final Font INFO_FONT = new Font("맑은 고딕", Font.BOLD, 16);
+    private static final Font FORBIDDEN_FONT = new Font("", Font.BOLD, 12);
+
+    private final BitBoard board = new BitBoard();
+    private final ForbiddenMap forbidden = new ForbiddenMap();
     private NetworkHandler network;
     private int playerId;
     private int hoverX = -1;
@@ -29,6 +43,12 @@ public class BoardPanel extends JPanel implements MouseListener, MouseMotionList
     private String whiteInfo = "백";
     // ---------------------------------------------
 
+    // 캐시 레이어: 그리기 스레드(EDT)에서만 만들고, 다른 스레드는 dirty 표시만 한다.
+    private BufferedImage background;
+    private BufferedImage stones;
+    private volatile boolean backgroundDirty = true;
+    private volatile boolean stonesDirty = true;
+
     public BoardPanel(NetworkHandler network) {
         this.network = network;
         this.playerId = network.getPlayerId();
@@ -44,6 +64,7 @@ public class BoardPanel extends JPanel implements MouseListener, MouseMotionList
 
         this.blackInfo = blackName + " " + blackWin + "승 " + blackLose + "패 (" + String.format("%.0f%%", blackRate) + ")";
         this.whiteInfo = whiteName + " " + whiteWin + "승 " + whiteLose + "패 (" + String.format("%.0f%%", whiteRate) + ")";
+        backgroundDirty = true;
         repaint();
     }
     // ---------------------------------------------
@@ -51,75 +72,146 @@ public class BoardPanel extends JPanel implements MouseListener, MouseMotionList
     @Override
     public void paintComponent(Graphics g) {
         super.paintComponent(g);
-        // 배경색
-        g.setColor(new Color(240, 200, 120));
-        g.fillRect(0, 0, getWidth(), getHeight());
-
-        // ---------------------------------------------
-        // ⭐ 추가된 UI 요소: 닉네임 + 승률 표시
-        // ---------------------------------------------
-        g.setColor(Color.BLACK);
-        g.setFont(new Font("맑은 고딕", Font.BOLD, 16));
-        g.drawString("흑: " + blackInfo, 30, 20);
-        g.drawString("백: " + whiteInfo, 250, 20);
-        // ---------------------------------------------
-
-
-        // 격자
-        g.setColor(Color.BLACK);
-        for (int i = 0; i < 15; i++) {
-            g.drawLine(30, 30 + i * 30, 450, 30 + i * 30);
-            g.drawLine(30 + i * 30, 30, 30 + i * 30, 450);
+        int w = getWidth();
+        int h = getHeight();
+        if (w <= 0 || h <= 0) return;
+
+        if (background == null || background.getWidth() != w || background.getHeight() != h) {
+            background = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+            stones = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+            backgroundDirty = true;
+            stonesDirty = true;
+        }
+        // dirty를 먼저 내려야 그리는 도중 들어온 수가 다음 repaint에서 빠지지 않는다.
+        if (backgroundDirty) {
+            backgroundDirty = false;
+            drawBackground(background);
+        }
+        if (stonesDirty) {
+            stonesDirty = false;
+            drawStones(stones);
         }
 
-        //천원(중점)
-        g.fillOval(235,235,10,10);
-
-        // 돌
-        for (int i = 0; i < 15; i++)
-            for (int j = 0; j < 15; j++) {
-                if (board[i][j] == 1) {
-                    g.setColor(Color.BLACK);
-                    g.fillOval(i * 30 + 20, j * 30 + 20, 20, 20);
-                } else if (board[i][j] == 2) {
-                    g.setColor(Color.WHITE);
-                    g.fillOval(i * 30 + 20, j * 30 + 20, 20, 20);
-                }
-            }
-        
+        // 클립 영역(호버 칸 등)만 복사된다.
+        g.drawImage(background, 0, 0, null);
+        g.drawImage(stones, 0, 0, null);
+
         // 마우스 호버 위치에 반투명한 미리보기 돌 표시
-        if (hoverX >= 0 && hoverY >= 0 && hoverX < 15 && hoverY < 15 && board[hoverX][hoverY] == 0) {
+        int hx = hoverX;
+        int hy = hoverY;
+        if (hx >= 0 && hy >= 0 && hx < 15 && hy < 15 && board.isEmpty(hx, hy)) {
             Graphics2D g2d = (Graphics2D) g;
             g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-            
-            // 금수 여부 확인
-            boolean isForbidden = GameRule.isForbidden(board, hoverX, hoverY, playerId);
-            
+
+            // 금수 여부 확인 (미리 계산한 금수 자리에서 찾기만 한다)
+            boolean isForbidden = playerId == 1 && forbidden.isForbidden(hx, hy);
+
             // 플레이어의 색상으로 반투명 돌 그리기 (투명도 약 50%)
             if (playerId == 1) {
-                if (isForbidden) {
-                    g2d.setColor(new Color(255, 0, 0, 128)); // 금수면 빨간색
-                } else {
-                    g2d.setColor(new Color(0, 0, 0, 128)); // 검은색, 반투명
-                }
+                g2d.setColor(isForbidden ? HOVER_FORBIDDEN : HOVER_BLACK); // 금수면 빨간색
             } else {
-                g2d.setColor(new Color(255, 255, 255, 128)); // 흰색, 반투명
+                g2d.setColor(HOVER_WHITE);
             }
-            g2d.fillOval(hoverX * 30 + 20, hoverY * 30 + 20, 20, 20);
-            
+            g2d.fillOval(hx * 30 + 20, hy * 30 + 20, 20, 20);
+
             // 금수일 경우 텍스트 표시
             if (isForbidden) {
                 g2d.setColor(Color.RED);
-                g2d.setFont(new Font("", Font.BOLD, 12));
-                g2d.drawString("금수", hoverX * 30 + 15, hoverY * 30 + 35);
+                g2d.setFont(FORBIDDEN_FONT);
+                g2d.drawString("금수", hx * 30 + 15, hy * 30 + 35);
             }
         }
     }
 
-    public void updateBoard(int x, int y, int player) {
-        board[x][y] = player;
+    /**
+     * 배경색, 이름·승률, 격자, 천원을 그린다. 크기나 이름이 바뀔 때만 호출된다.
+     */
+    private void drawBackground(BufferedImage image) {
+        Graphics2D g = image.createGraphics();
+        try {
+            // 배경색
+            g.setColor(BOARD_COLOR);
+            g.fillRect(0, 0, image.getWidth(), image.getHeight());
+
+            // ---------------------------------------------
+            // ⭐ 추가된 UI 요소: 닉네임 + 승률 표시
+            // ---------------------------------------------
+            g.setColor(Color.BLACK);
+            g.setFont(INFO_FONT);
+            g.drawString("흑: " + blackInfo, 30, 20);
+            g.drawString("백: " + whiteInfo, 250, 20);
+            // ---------------------------------------------
+
+            // 격자
+            for (int i = 0; i < 15; i++) {
+                g.drawLine(30, 30 + i * 30, 450, 30 + i * 30);
+                g.drawLine(30 + i * 30, 30, 30 + i * 30, 450);
+            }
+
+            //천원(중점)
+            g.fillOval(235, 235, 10, 10);
+        } finally {
+            g.dispose();
+        }
+    }
+
+    /**
+     * 투명한 레이어를 지우고 보드의 돌을 모두 그린다. 보드가 바뀐 뒤 처음 그릴 때만 호출된다.
+     */
+    private void drawStones(BufferedImage image) {
+        Graphics2D g = image.createGraphics();
+        try {
+            g.setComposite(AlphaComposite.Clear);
+            g.fillRect(0, 0, image.getWidth(), image.getHeight());
+            g.setComposite(AlphaComposite.SrcOver);
+            for (int i = 0; i < 15; i++)
+                for (int j = 0; j < 15; j++) {
+                    int stone = board.get(i, j);
+                    if (stone == 1) {
+                        g.setColor(Color.BLACK);
+                        g.fillOval(i * 30 + 20, j * 30 + 20, 20, 20);
+                    } else if (stone == 2) {
+                        g.setColor(Color.WHITE);
+                        g.fillOval(i * 30 + 20, j * 30 + 20, 20, 20);
+                    }
+                }
+        } finally {
+            g.dispose();
+        }
+    }
+
+    /**
+     * (x, y) 칸의 돌과 "금수" 글자를 모두 덮는 사각형을 다시 그리도록 요청한다.
+     */
+    private void repaintCell(int x, int y) {
+        if (x < 0 || y < 0) return;
+        repaint(new Rectangle(x * 30 + 15, y * 30 + 15, 30, 30));
+    }
+
+    /**
+     * 관전 시작 시 서버가 보낸 보드 전체 상태로 바꾼다.
+     *
+     * @param cells x*15+y 순서의 225자 문자열 (0=빈칸, 1=흑, 2=백)
+     */
+    public void loadSnapshot(String cells) {
+        board.clear();
+        for (int i = 0; i < 15 * 15 && i < cells.length(); i++) {
+            int stone = cells.charAt(i) - '0';
+            if (stone == 1 || stone == 2) board.set(i / 15, i % 15, stone);
+        }
+        forbidden.rebuild(board);
+        stonesDirty = true;
         repaint();
-        if (GameRule.isDraw(board)) {
+    }
+
+    public void updateBoard(int x, int y, int player) {
+        board.set(x, y, player);
+        forbidden.update(board, x, y);
+        stonesDirty = true;
+        // 새 돌이 놓인 칸과, 금수 표시가 바뀌었을 수 있는 호버 칸만 다시 그린다.
+        repaintCell(x, y);
+        repaintCell(hoverX, hoverY);
+        if (GameRule.isDraw(board) && !network.isSpectator()) {
             showGameEndDialog("무승부입니다!");
         }
     }
@@ -152,9 +244,11 @@ public class BoardPanel extends JPanel implements MouseListener, MouseMotionList
      * 보드를 초기 상태로 리셋합니다.
      */
     private void resetBoard() {
-        board = new int[15][15];
+        board.clear();
+        forbidden.clear();
         hoverX = -1;
         hoverY = -1;
+        stonesDirty = true;
         repaint();
     }
 
@@ -165,6 +259,11 @@ public class BoardPanel extends JPanel implements MouseListener, MouseMotionList
      * 서버로부터 받은 승리 신호를 처리합니다 (승리/무승부 dialog 표시).
      */
     public void handleWin(int winner) {
+        if (network.isSpectator()) {
+            // 관전자는 다시하기/나가기를 고를 필요가 없으므로 결과만 알린다.
+            SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(this, (winner == 1 ? "흑" : "백") + " 승리!"));
+            return;
+        }
         showGameEndDialog("🎉" + winner + " 승리!");
     }
 
@@ -177,11 +276,13 @@ public class BoardPanel extends JPanel implements MouseListener, MouseMotionList
 
     @Override
     public void mouseClicked(MouseEvent e) {
+        if (network.isSpectator()) return;
         int x = (e.getX() - 30) / 30;
         int y = (e.getY() - 30) / 30;
         // 유효 좌표인지, 비어있는 칸인지, 금수가 아닌지 확인한 뒤 서버로 전송
-        if (x >= 0 && y >= 0 && x < 15 && y < 15 && board[x][y] == 0) {
-            if (GameRule.isForbidden(board, x, y, playerId)) {
+        if (x >= 0 && y >= 0 && x < 15 && y < 15 && board.isEmpty(x, y)) {
+            // 호버용 지도는 근사값이라 클릭은 전체 규칙으로 판정한다.
+            if (playerId == 1 && GameRule.isForbidden(board, x, y, playerId)) {
                 JOptionPane.showMessageDialog(this, "금수입니다! 다른 위치에 두세요.");
             } else {
                 network.sendMove(x, y);
@@ -191,17 +292,21 @@ public class BoardPanel extends JPanel implements MouseListener, MouseMotionList
 
     @Override
     public void mouseMoved(MouseEvent e) {
+        if (network.isSpectator()) return;
         int x = (e.getX() - 30) / 30;
         int y = (e.getY() - 30) / 30;
         // 유효한 범위 내에 있으면 호버 위치 업데이트
-        if (x >= 0 && y >= 0 && x < 15 && y < 15) {
+        if (x < 0 || y < 0 || x >= 15 || y >= 15) {
+            x = -1;
+            y = -1;
+        }
+        // 호버 칸이 바뀔 때만 다시 그린다.
+        if (x != hoverX || y != hoverY) {
+            repaintCell(hoverX, hoverY);
             hoverX = x;
             hoverY = y;
-        } else {
-            hoverX = -1;
-            hoverY = -1;
+            repaintCell(x, y);
         }
-        repaint();
     }
 
     @Override
@@ -217,8 +322,8 @@ public class BoardPanel extends JPanel implements MouseListener, MouseMotionList
     @Override
     public void mouseExited(MouseEvent e) {
         // 마우스가 패널을 떠나면 호버 위치 초기화
+        repaintCell(hoverX, hoverY);
         hoverX = -1;
         hoverY = -1;
-        repaint();
     }
 }
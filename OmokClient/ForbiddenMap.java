@@ -0,0 +1,69 @@
+/**
+ * ForbiddenMap
+ * - 클라이언트에서 흑의 금수 자리를 미리 계산해 두는 225칸 비트 집합
+ * - 수가 들어오면(BoardPanel.updateBoard) 그 돌을 지나는 네 줄의 빈칸만 다시 판정한다.
+ *   3-3을 재귀로 확인할 때는 줄 밖의 칸에 기대기도 하므로, 줄 밖의 칸도 드물게 결과가 바뀔 수 있다.
+ *   그래서 이 지도는 호버 미리보기에만 쓰고, 클릭은 BoardPanel이 그 칸을 전체 규칙으로 다시 판정한다.
+ * - 갱신할 때마다 새 배열을 만들어 통째로 바꾸므로, 그리는 스레드는 잠금 없이 isForbidden()으로 찾기만 한다.
+ */
+public class ForbiddenMap {
+    private static final int SIZE = BitBoard.SIZE;
+    private static final int[] DX = {1, 0, 1, 1};
+    private static final int[] DY = {0, 1, 1, -1};
+
+    // (x * 15 + y)번째 비트가 켜져 있으면 흑의 금수 자리
+    private volatile long[] bits = new long[4];
+
+    /**
+     * (x, y)가 흑의 금수 자리인지 찾는다.
+     */
+    public boolean isForbidden(int x, int y) {
+        int i = x * SIZE + y;
+        return (bits[i >>> 6] & (1L << i)) != 0;
+    }
+
+    /**
+     * 보드 전체를 다시 판정한다. 관전 스냅샷처럼 보드가 한꺼번에 바뀔 때 쓴다.
+     */
+    public void rebuild(BitBoard board) {
+        long[] next = new long[4];
+        for (int x = 0; x < SIZE; x++) {
+            for (int y = 0; y < SIZE; y++) {
+                mark(next, board, x, y);
+            }
+        }
+        bits = next;
+    }
+
+    /**
+     * (x, y)에 돌이 놓인 뒤, 그 돌을 지나는 가로·세로·대각선 네 줄만 다시 판정한다.
+     */
+    public void update(BitBoard board, int x, int y) {
+        long[] next = bits.clone();
+        for (int dir = 0; dir < 4; dir++) {
+            // 줄의 한쪽 끝으로 간 다음 반대쪽 끝까지 따라간다.
+            int cx = x, cy = y;
+            while (BitBoard.inBounds(cx - DX[dir], cy - DY[dir])) {
+                cx -= DX[dir];
+                cy -= DY[dir];
+            }
+            for (; BitBoard.inBounds(cx, cy); cx += DX[dir], cy += DY[dir]) {
+                mark(next, board, cx, cy);
+            }
+        }
+        bits = next;
+    }
+
+    public void clear() {
+        bits = new long[4];
+    }
+
+    private static void mark(long[] target, BitBoard board, int x, int y) {
+        int i = x * SIZE + y;
+        if (board.isEmpty(x, y) && board.isForbidden(x, y, BitBoard.BLACK)) {
+            target[i >>> 6] |= 1L << i;
+        } else {
+            target[i >>> 6] &= ~(1L << i);
+        }
+    }
+}
@@ -1,4 +1,5 @@
 
+import java.io.BufferedInputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
@@ -20,25 +21,37 @@ import javax.swing.*;
  * - 클라이언트 측 네트워크 통신을 담당한다.
  * - 서버에 소켓으로 접속하여 플레이어 ID를 수신하고, 서버로부터의 메시지를 수신하여
  *   BoardPanel에 반영한다.
+ * - 인증 전에 "HELLO BIN1 DEADLINE THREAT TOKEN"으로 바이너리 프로토콜과 마감 시각 방식 턴 시계, 위협 알림,
+ *   세션 토큰을 요청한다.
+ *   서버가 바이너리를 받아들이면 이후 BinaryProtocol 프레임을 쓴다.
  *
  * 주요 책임:
  * - 서버 접속 및 입출력 스트림 관리
  * - 별도 스레드에서 listen()을 실행하여 서버 메시지(MOVE, WIN 등)를 처리
  * - 사용자의 이동을 서버에 전송(sendMove)
- * - 시간 정보 수신 및 표시 (TIME, TURN 메시지)
+ * - 시간 정보 수신 및 표시 (DEADLINE, TIME, TURN 메시지)
  */
 public class NetworkHandler {
-    public enum AuthMode { LOGIN, REGISTER }
+    public enum AuthMode { LOGIN, REGISTER, TOKEN }
 
-    private Socket socket;
-    private DataInputStream in;
-    private DataOutputStream out;
+    // 연결이 끊긴 뒤 다시 접속하기 전에 기다리는 시간. 합이 서버가 자리를 잡아 두는 시간(60초)쯤 된다.
+    private static final long[] RECONNECT_DELAYS_MILLIS = {500, 1000, 2000, 4000, 8000, 15000, 15000, 15000};
+
+    private final String host;
+    private final int spectateRoom;
+    // 수신 스레드가 다시 접속하면 바꾸므로, 보내는 쪽(EDT)이 새 스트림을 보도록 volatile로 둔다.
+    private volatile Socket socket;
+    private volatile DataInputStream in;
+    private volatile DataOutputStream out;
     private int playerId;
     private String username;
     private BoardPanel board;
     private TimerPanel timerPanel;
     private ChatWindow chatWindow;
     private JDialog currentDialog;
+    private volatile boolean binaryProtocol = false;
+    // 서버가 발급한 세션 토큰. 다시 접속할 때 비밀번호 대신 쓴다.
+    private volatile String sessionToken;
 
 
     /**
@@ -46,14 +59,29 @@ public class NetworkHandler {
      * 내부적으로 수신 루프를 새 스레드에서 실행한다.
      *
      * @param host 서버 호스트명 또는 IP
+     * @param spectateRoom 관전할 방 번호, 직접 두려면 -1
+     */
+    public NetworkHandler(String host, String username, String password, AuthMode mode, int spectateRoom) throws IOException {
+        this.host = host;
+        this.spectateRoom = spectateRoom;
+        connect(username, password, mode);
+        new Thread(this::listen).start();
+    }
+
+    /**
+     * 서버에 접속해 프로토콜을 협상하고 인증한다. 실패하면 연결을 닫고 예외를 던진다.
      */
-    public NetworkHandler(String host, String username, String password, AuthMode mode) throws IOException {
+    private void connect(String username, String secret, AuthMode mode) throws IOException {
         try {
             socket = new Socket(host, 5000);
-            in = new DataInputStream(socket.getInputStream());
+            in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
             out = new DataOutputStream(socket.getOutputStream());
-            authenticate(username, password, mode);
-            new Thread(this::listen).start();
+            binaryProtocol = false;
+            negotiateProtocol();
+            if (spectateRoom != -1) {
+                send("SPECTATE " + spectateRoom);
+            }
+            authenticate(username, secret, mode);
         } catch (IOException e) {
             close();
             throw e;
@@ -79,107 +107,277 @@ public class NetworkHandler {
     }
 
     /**
-     * 서버로부터 들어오는 UTF 메시지를 읽어 처리한다.
+     * 수신 루프: 협상된 프로토콜에 맞춰 서버 메시지를 읽고 처리한다.
+     * 연결이 끊기면 세션 토큰으로 다시 접속하고, 성공하면 새 연결에서 계속 읽는다.
+     */
+    private void listen() {
+        do {
+            try {
+                while (true) {
+                    if (binaryProtocol) {
+                        handleFrame(BinaryProtocol.readFrame(in));
+                    } else {
+                        handleMessage(in.readUTF());
+                    }
+                }
+            } catch (IOException ignored) {}
+            finally {
+                close();
+            }
+        } while (reconnect());
+    }
+
+    /**
+     * 세션 토큰으로 다시 접속한다. 실패하면 RECONNECT_DELAYS_MILLIS만큼 점점 길게 기다리며 다시 시도한다.
+     * 서버는 대국 중이던 자리를 잠시 잡아 두었다가, 다시 접속하면 보드·시계·놓친 채팅을 보내 준다.
+     *
+     * @return 다시 접속했으면 true, 토큰이 없거나 서버가 거절했거나 시도가 모두 실패했으면 false
+     */
+    private boolean reconnect() {
+        String token = sessionToken;
+        if (token == null) return false;
+        appendChat("서버와 연결이 끊겼습니다. 다시 연결하는 중...");
+        for (long delay : RECONNECT_DELAYS_MILLIS) {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                return false;
+            }
+            try {
+                connect(username, token, AuthMode.TOKEN);
+                appendChat("다시 연결되었습니다.");
+                return true;
+            } catch (AuthException e) {
+                break; // 토큰이 만료됐거나 거절됨: 다시 시도해도 소용없다.
+            } catch (IOException ignored) {}
+        }
+        showInfoMessage("서버에 다시 연결하지 못했습니다.");
+        return false;
+    }
+
+    private void appendChat(String line) {
+        if (chatWindow != null) {
+            chatWindow.appendMessage(line);
+        }
+    }
+
+    /**
+     * 서버가 AUTH_FAIL로 인증을 거절했을 때 던진다.
+     */
+    private static class AuthException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        AuthException(String reason) {
+            super(reason);
+        }
+    }
+
+    /**
+     * 바이너리 프레임 하나를 처리한다. 자주 오는 메시지(MOVE, TURN, TIME, DEADLINE, PLAYER_INFO)는 문자열을 거치지 않고
+     * 필드를 바로 읽고, 나머지는 텍스트 메시지로 되돌려 handleMessage로 처리한다.
+     */
+    private void handleFrame(byte[] payload) throws IOException {
+        BinaryProtocol.Reader r = new BinaryProtocol.Reader(payload);
+        switch (r.opcode()) {
+            case BinaryProtocol.OP_MOVE: {
+                int move = r.move();
+                if (board != null) {
+                    board.updateBoard(BinaryProtocol.moveX(move), BinaryProtocol.moveY(move), BinaryProtocol.movePlayer(move));
+                }
+                break;
+            }
+            case BinaryProtocol.OP_TIME: {
+                int remainingTime = r.varint();
+                if (timerPanel != null) {
+                    timerPanel.updateTime(remainingTime);
+                }
+                break;
+            }
+            case BinaryProtocol.OP_DEADLINE: {
+                int currentPlayer = r.varint();
+                int remainingMillis = r.varint();
+                if (timerPanel != null) {
+                    timerPanel.setCurrentPlayer(currentPlayer);
+                    timerPanel.startCountdown(remainingMillis);
+                }
+                break;
+            }
+            case BinaryProtocol.OP_TURN: {
+                int currentPlayer = r.varint();
+                if (timerPanel != null) {
+                    timerPanel.setCurrentPlayer(currentPlayer);
+                }
+                break;
+            }
+            case BinaryProtocol.OP_PLAYER_INFO: {
+                String blackName = r.string();
+                int blackWin = r.varint();
+                int blackLose = r.varint();
+                double blackRate = r.varint() / 100.0;
+                String whiteName = r.string();
+                int whiteWin = r.varint();
+                int whiteLose = r.varint();
+                double whiteRate = r.varint() / 100.0;
+                if (board != null) {
+                    board.updatePlayerInfo(blackName, blackWin, blackLose, blackRate, whiteName, whiteWin, whiteLose, whiteRate);
+                }
+                break;
+            }
+            default:
+                handleMessage(BinaryProtocol.decode(payload));
+        }
+    }
+
+    /**
+     * 서버로부터 받은 텍스트 메시지 하나를 처리한다.
      * - MOVE x y pid : 보드 갱신
      * - WIN pid : 승리 알림
      * - RESET : 게임 보드 초기화
-     * - TIME seconds : 남은 시간 업데이트
+     * - TIME seconds : 남은 시간 업데이트 (예전 서버 또는 DEADLINE을 요청하지 않은 경우)
+     * - DEADLINE pid millis : 새 턴의 마감까지 남은 밀리초, 이후 TimerPanel이 직접 카운트다운
      * - TURN pid : 턴 변경 알림
      * - START : 게임 시작
+     * - ROOM n : 배정된 방 번호
+     * - SNAPSHOT turn time active cells : 관전 시작/재동기화 시 보드 전체 상태
+     * - THREAT OPEN_FOUR pid : 방금 둔 수로 pid에게 열린 4가 생김 (채팅 창에 경고)
+     * - TOKEN token : 다시 접속할 때 비밀번호 대신 쓸 세션 토큰
+     * - AWAY pid seconds : pid의 연결이 끊김, seconds초 동안 자리를 잡아 둠
+     * - BACK pid : pid가 다시 접속함
      */
-    private void listen() {
-        try {
-            while (true) {
-                String msg = in.readUTF();
-                if (msg.startsWith("MOVE")) {
-                    String[] p = msg.split(" ");
-                    int x = Integer.parseInt(p[1]);
-                    int y = Integer.parseInt(p[2]);
-                    int pid = Integer.parseInt(p[3]);
-                    if (board != null) {
-                        board.updateBoard(x, y, pid);
-                    }
-                } else if (msg.startsWith("WIN")) {
-                    int winner = Integer.parseInt(msg.split(" ")[1]);
-                    if (board != null) {
-                        board.handleWin(winner);
-                    }
-                } else if (msg.equals("RESET")) {
-                    // 서버로부터 게임 초기화 신호 수신
-                    if (board != null) {
-                        board.handleReset();
-                    }
-                } else if (msg.startsWith("TIME")) {
-                    int remainingTime = Integer.parseInt(msg.split(" ")[1]);
-                    if (timerPanel != null) {
-                        timerPanel.updateTime(remainingTime);
-                    }
-                } else if (msg.startsWith("TURN")) {
-                    int currentPlayer = Integer.parseInt(msg.split(" ")[1]);
-                    if (timerPanel != null) {
-                        timerPanel.setCurrentPlayer(currentPlayer);
-                    }
-                } else if (msg.startsWith("START")) {
-                    int startPlayer = Integer.parseInt(msg.split(" ")[1]);
-                    if (timerPanel != null) {
-                        timerPanel.setCurrentPlayer(startPlayer);
-                        timerPanel.updateTime(35);
-                        closeInfoMessage();
-                    }
-                } else if (msg.startsWith("CHAT")) {
-                    if (chatWindow == null) continue;
-                    String[] parts = msg.split(" ", 3);
-                    if (parts.length < 3) continue;
-                    int sender = Integer.parseInt(parts[1]);
-                    String text = parts[2];
-                    chatWindow.appendMessage((sender == 1 ? "(흑)" : "(백)") + text);
-                } else if (msg.startsWith("REMATCH_PROMPT")) {
-                    String requester = msg.length() > 15 ? msg.substring(15).trim() : "상대";
-                    showInfoMessage(requester + "님이 다시하기를 신청했습니다.\n다시하기 버튼을 눌러 수락하세요.");
-                } else if (msg.startsWith("REMATCH_WAIT")) {
-                    String opponent = msg.length() > 13 ? msg.substring(13).trim() : "상대";
-                    showInfoMessage(opponent + "님의 응답을 기다리는 중입니다.");
-                    //다이얼로그 띄워도 어짜피 상대를 기다리는 다이얼로그에 씹혀서 채팅으로 알리는 게 좋을 것 같았습니다.
-                } else if (msg.startsWith("REMATCH_ACCEPT")) {
-                    String accepter = msg.length() > 15 ? msg.substring(15).trim() : "상대";
-                    chatWindow.appendMessage(accepter + "님이 다시하기 요청을 수락했습니다. 새 게임을 시작합니다.");
-                } else if (msg.startsWith("REMATCH_CANCEL")) {
-                    chatWindow.appendMessage(msg.length() > 15 ? "상대가 게임을 떠났습니다." : "다시하기 요청이 취소되었습니다.");
-                    //다이얼로그 띄워도 어짜피 상대를 기다리는 다이얼로그에 씹혀서 채팅으로 알리는 게 좋을 것 같았습니다.
-                } else if (msg.startsWith("REMATCH_FAIL")) {
-                    String reason = msg.length() > 13 ? msg.substring(13).trim() : "상대를 기다리는 중입니다.";
-                    showInfoMessage(reason);
-                } else if (msg.startsWith("REMATCH_ALREADY")) {
-                    String detail = msg.length() > 17 ? msg.substring(17).trim() : "상대 응답을 기다리는 중입니다.";
-                    showInfoMessage(detail);
-                } else if (msg.equals("WAITING")) {
-                    showInfoMessage("상대를 기다리는 중입니다.");
-                } else if (msg.startsWith("PLAYER_INFO")) {
-                    String[] p = msg.split(" ");
-                    String blackName = p[1];
-                    int blackWin = Integer.parseInt(p[2]);
-                    int blackLose = Integer.parseInt(p[3]);
-                    double blackRate = Double.parseDouble(p[4]);
-                    String whiteName = p[5];
-                    int whiteWin = Integer.parseInt(p[6]);
-                    int whiteLose = Integer.parseInt(p[7]);
-                    double whiteRate = Double.parseDouble(p[8]);
-
-                    if (board != null) {
-                        board.updatePlayerInfo(blackName, blackWin, blackLose, blackRate, whiteName, whiteWin, whiteLose, whiteRate);
-                    }
-                }
+    private void handleMessage(String msg) {
+        if (msg.startsWith("MOVE")) {
+            String[] p = msg.split(" ");
+            int x = Integer.parseInt(p[1]);
+            int y = Integer.parseInt(p[2]);
+            int pid = Integer.parseInt(p[3]);
+            if (board != null) {
+                board.updateBoard(x, y, pid);
+            }
+        } else if (msg.startsWith("WIN")) {
+            int winner = Integer.parseInt(msg.split(" ")[1]);
+            if (timerPanel != null) {
+                timerPanel.stopCountdown();
+            }
+            if (board != null) {
+                board.handleWin(winner);
+            }
+        } else if (msg.equals("RESET")) {
+            // 서버로부터 게임 초기화 신호 수신
+            if (timerPanel != null) {
+                timerPanel.stopCountdown();
+            }
+            if (board != null) {
+                board.handleReset();
+            }
+        } else if (msg.startsWith("TIME")) {
+            int remainingTime = Integer.parseInt(msg.split(" ")[1]);
+            if (timerPanel != null) {
+                timerPanel.updateTime(remainingTime);
+            }
+        } else if (msg.startsWith("DEADLINE")) {
+            String[] p = msg.split(" ");
+            int currentPlayer = Integer.parseInt(p[1]);
+            long remainingMillis = Long.parseLong(p[2]);
+            if (timerPanel != null) {
+                timerPanel.setCurrentPlayer(currentPlayer);
+                timerPanel.startCountdown(remainingMillis);
+            }
+        } else if (msg.startsWith("TURN")) {
+            int currentPlayer = Integer.parseInt(msg.split(" ")[1]);
+            if (timerPanel != null) {
+                timerPanel.setCurrentPlayer(currentPlayer);
+            }
+        } else if (msg.startsWith("START")) {
+            int startPlayer = Integer.parseInt(msg.split(" ")[1]);
+            if (timerPanel != null) {
+                timerPanel.setCurrentPlayer(startPlayer);
+                timerPanel.updateTime(35);
+                closeInfoMessage();
+            }
+        } else if (msg.startsWith("ROOM")) {
+            if (chatWindow != null) {
+                chatWindow.appendMessage("방 번호: " + msg.substring(5).trim());
+            }
+        } else if (msg.startsWith("SNAPSHOT")) {
+            String[] p = msg.split(" ");
+            int turn = Integer.parseInt(p[1]);
+            int remainingTime = Integer.parseInt(p[2]);
+            if (board != null) {
+                board.loadSnapshot(p[4]);
+            }
+            if (timerPanel != null) {
+                timerPanel.setCurrentPlayer(turn);
+                timerPanel.updateTime(remainingTime);
+            }
+        } else if (msg.startsWith("THREAT")) {
+            String[] p = msg.split(" ");
+            if (chatWindow == null || p.length < 3 || !p[1].equals("OPEN_FOUR")) return;
+            int pid = Integer.parseInt(p[2]);
+            String who = isSpectator() ? "" : pid == playerId ? " 내" : " 상대";
+            chatWindow.appendMessage("[경고] " + (pid == 1 ? "(흑)" : "(백)") + who + " 열린 4가 생겼습니다.");
+        } else if (msg.startsWith("CHAT")) {
+            if (chatWindow == null) return;
+            String[] parts = msg.split(" ", 3);
+            if (parts.length < 3) return;
+            int sender = Integer.parseInt(parts[1]);
+            String text = parts[2];
+            chatWindow.appendMessage((sender == 1 ? "(흑)" : "(백)") + text);
+        } else if (msg.startsWith("REMATCH_PROMPT")) {
+            String requester = msg.length() > 15 ? msg.substring(15).trim() : "상대";
+            showInfoMessage(requester + "님이 다시하기를 신청했습니다.\n다시하기 버튼을 눌러 수락하세요.");
+        } else if (msg.startsWith("REMATCH_WAIT")) {
+            String opponent = msg.length() > 13 ? msg.substring(13).trim() : "상대";
+            showInfoMessage(opponent + "님의 응답을 기다리는 중입니다.");
+            //다이얼로그 띄워도 어짜피 상대를 기다리는 다이얼로그에 씹혀서 채팅으로 알리는 게 좋을 것 같았습니다.
+        } else if (msg.startsWith("REMATCH_ACCEPT")) {
+            String accepter = msg.length() > 15 ? msg.substring(15).trim() : "상대";
+            chatWindow.appendMessage(accepter + "님이 다시하기 요청을 수락했습니다. 새 게임을 시작합니다.");
+        } else if (msg.startsWith("REMATCH_CANCEL")) {
+            chatWindow.appendMessage(msg.length() > 15 ? "상대가 게임을 떠났습니다." : "다시하기 요청이 취소되었습니다.");
+            //다이얼로그 띄워도 어짜피 상대를 기다리는 다이얼로그에 씹혀서 채팅으로 알리는 게 좋을 것 같았습니다.
+        } else if (msg.startsWith("REMATCH_FAIL")) {
+            String reason = msg.length() > 13 ? msg.substring(13).trim() : "상대를 기다리는 중입니다.";
+            showInfoMessage(reason);
+        } else if (msg.startsWith("BOT_FAIL")) {
+            String reason = msg.length() > 9 ? msg.substring(9).trim() : "AI를 부를 수 없습니다.";
+            showInfoMessage(reason);
+        } else if (msg.startsWith("REMATCH_ALREADY")) {
+            String detail = msg.length() > 17 ? msg.substring(17).trim() : "상대 응답을 기다리는 중입니다.";
+            showInfoMessage(detail);
+        } else if (msg.startsWith("TOKEN")) {
+            sessionToken = msg.substring(6).trim();
+        } else if (msg.startsWith("AWAY")) {
+            String[] p = msg.split(" ");
+            int pid = Integer.parseInt(p[1]);
+            appendChat((pid == 1 ? "(흑)" : "(백)") + " 연결이 끊겼습니다. " + p[2] + "초 안에 돌아오지 않으면 대국이 끝납니다.");
+        } else if (msg.startsWith("BACK")) {
+            int pid = Integer.parseInt(msg.split(" ")[1]);
+            appendChat((pid == 1 ? "(흑)" : "(백)") + " 다시 연결되었습니다.");
+        } else if (msg.equals("WAITING")) {
+            if (timerPanel != null) {
+                timerPanel.stopCountdown();
+            }
+            showInfoMessage("상대를 기다리는 중입니다.");
+        } else if (msg.startsWith("PLAYER_INFO")) {
+            String[] p = msg.split(" ");
+            String blackName = p[1];
+            int blackWin = Integer.parseInt(p[2]);
+            int blackLose = Integer.parseInt(p[3]);
+            double blackRate = Double.parseDouble(p[4]);
+            String whiteName = p[5];
+            int whiteWin = Integer.parseInt(p[6]);
+            int whiteLose = Integer.parseInt(p[7]);
+            double whiteRate = Double.parseDouble(p[8]);
+
+            if (board != null) {
+                board.updatePlayerInfo(blackName, blackWin, blackLose, blackRate, whiteName, whiteWin, whiteLose, whiteRate);
             }
-        } catch (IOException ignored) {}
-        finally {
-            close();
         }
     }
 
-
     public void sendMove(int x, int y) {
         try {
-            out.writeUTF("MOVE " + x + " " + y);
+            send("MOVE " + x + " " + y);
         } catch (IOException ignored) {}
     }
 
@@ -188,7 +386,16 @@ public class NetworkHandler {
      */
     public void sendReset() {
         try {
-            out.writeUTF("RESET");
+            send("RESET");
+        } catch (IOException ignored) {}
+    }
+
+    /**
+     * 상대를 기다리는 중에 서버 AI와 대국하겠다고 요청한다.
+     */
+    public void sendBotRequest() {
+        try {
+            send("BOT");
         } catch (IOException ignored) {}
     }
 
@@ -197,14 +404,24 @@ public class NetworkHandler {
      */
     public void sendChat(String message) {
         try {
-            out.writeUTF("CHAT " + message);
+            send("CHAT " + message);
         } catch (IOException ignored) {}
     }
 
     public int getPlayerId() { return playerId; }
 
+    /**
+     * 관전자로 접속했는지 여부 (관전자의 플레이어 ID는 0)
+     */
+    public boolean isSpectator() { return playerId == 0; }
+
     public String getUsername() { return username; }
 
+    /**
+     * 서버가 발급한 세션 토큰. 아직 받지 못했으면 null.
+     */
+    public String getSessionToken() { return sessionToken; }
+
     private void showInfoMessage(String message) {
         SwingUtilities.invokeLater(() -> {
             if (currentDialog != null && currentDialog.isShowing()) {
@@ -226,16 +443,34 @@ public class NetworkHandler {
         });
     }
 
+    /**
+     * 바이너리 프로토콜과 DEADLINE 턴 시계, THREAT 위협 알림, TOKEN 세션 토큰을 요청한다. 서버가 "HELLO BIN1"로 답하면 이후 프레임을 바이너리로 주고받고,
+     * "HELLO TEXT"나 다른 응답(HELLO를 모르는 예전 서버의 AUTH_FAIL)이면 텍스트 프로토콜을 유지한다.
+     * DEADLINE을 모르는 서버는 지금처럼 매초 TIME을 보내므로 따로 확인하지 않는다.
+     */
+    private void negotiateProtocol() throws IOException {
+        out.writeUTF("HELLO " + BinaryProtocol.VERSION + " DEADLINE THREAT TOKEN");
+        binaryProtocol = in.readUTF().equals("HELLO " + BinaryProtocol.VERSION);
+    }
+
+    private void send(String msg) throws IOException {
+        if (binaryProtocol) {
+            BinaryProtocol.writeFrame(out, BinaryProtocol.encode(msg));
+        } else {
+            out.writeUTF(msg);
+        }
+    }
+
     private void authenticate(String username, String password, AuthMode mode) throws IOException {
-        out.writeUTF("AUTH " + mode.name() + " " + username + " " + password);
-        String response = in.readUTF();
+        send("AUTH " + mode.name() + " " + username + " " + password);
+        String response = binaryProtocol ? BinaryProtocol.decode(BinaryProtocol.readFrame(in)) : in.readUTF();
         if (response.startsWith("AUTH_OK")) {
             String[] parts = response.split(" ", 3);
             this.playerId = Integer.parseInt(parts[1]);
             this.username = parts.length >= 3 ? parts[2] : username;
         } else if (response.startsWith("AUTH_FAIL")) {
             String reason = response.length() > 9 ? response.substring(9).trim() : "인증 실패";
-            throw new IOException(reason);
+            throw new AuthException(reason);
         } else {
             throw new IOException("알 수 없는 응답: " + response);
         }
@@ -19,18 +19,19 @@ class LoginFrame extends JFrame {
     private final JTextField hostField = new JTextField("localhost", 15);
     private final JTextField usernameField = new JTextField(15);
     private final JPasswordField passwordField = new JPasswordField(15);
+    private final JTextField spectateField = new JTextField(15);
     private final JLabel statusLabel = new JLabel(" ");
     private final JButton loginButton = new JButton("로그인");
     private final JButton registerButton = new JButton("회원가입");
 
     public LoginFrame() {
         setTitle("오목 로그인");
-        setSize(360, 220);
+        setSize(360, 250);
         setResizable(false);
         setDefaultCloseOperation(EXIT_ON_CLOSE);
         setLocationRelativeTo(null);
 
-        JPanel form = new JPanel(new GridLayout(3, 2, 8, 8));
+        JPanel form = new JPanel(new GridLayout(4, 2, 8, 8));
         form.setBorder(BorderFactory.createEmptyBorder(15, 15, 0, 15));
         form.add(new JLabel("서버 주소"));
         form.add(hostField);
@@ -38,6 +39,8 @@ class LoginFrame extends JFrame {
         form.add(usernameField);
         form.add(new JLabel("비밀번호"));
         form.add(passwordField);
+        form.add(new JLabel("관전할 방 번호(선택)"));
+        form.add(spectateField);
 
         JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT, 10, 10));
         buttonPanel.add(registerButton);
@@ -68,6 +71,16 @@ class LoginFrame extends JFrame {
             statusLabel.setText("공백 없는 아이디/비밀번호를 사용하세요.");
             return;
         }
+        int spectateRoom = -1;
+        String roomText = spectateField.getText().trim();
+        if (!roomText.isEmpty()) {
+            try {
+                spectateRoom = Integer.parseInt(roomText);
+            } catch (NumberFormatException ex) {
+                statusLabel.setText("방 번호는 숫자로 입력하세요.");
+                return;
+            }
+        }
 
         toggleButtons(false);
         statusLabel.setText("서버에 연결 중...");
@@ -75,9 +88,10 @@ class LoginFrame extends JFrame {
         final String targetHost = host;
         final String targetUsername = username;
         final String targetPassword = password;
+        final int targetRoom = spectateRoom;
         new Thread(() -> {
             try {
-                NetworkHandler network = new NetworkHandler(targetHost, targetUsername, targetPassword, mode);
+                NetworkHandler network = new NetworkHandler(targetHost, targetUsername, targetPassword, mode, targetRoom);
                 SwingUtilities.invokeLater(() -> {
                     OmokFrame frame = new OmokFrame(network);
                     frame.setVisible(true);
@@ -105,7 +119,7 @@ class LoginFrame extends JFrame {
  */
 class OmokFrame extends JFrame {
     public OmokFrame(NetworkHandler network) {
-        setTitle("네트워크 오목 - " + network.getUsername());
+        setTitle("네트워크 오목 - " + network.getUsername() + (network.isSpectator() ? " (관전)" : ""));
         setSize(600, 750);
         setDefaultCloseOperation(EXIT_ON_CLOSE);
         setResizable(false);
@@ -129,9 +143,18 @@ class OmokFrame extends JFrame {
             }
         });
 
+        // 상대가 없을 때 서버 AI를 상대로 부른다. 관전자에게는 보이지 않는다.
+        JButton botButton = new JButton("AI 대전");
+        botButton.addActionListener(e -> network.sendBotRequest());
+        botButton.setVisible(!network.isSpectator());
+
+        JPanel buttonPanel = new JPanel(new GridLayout(1, 2));
+        buttonPanel.add(botButton);
+        buttonPanel.add(chatToggleButton);
+
         JPanel topPanel = new JPanel(new BorderLayout());
         topPanel.add(timerPanel, BorderLayout.CENTER);
-        topPanel.add(chatToggleButton, BorderLayout.EAST);
+        topPanel.add(buttonPanel, BorderLayout.EAST);
         
         add(topPanel, BorderLayout.NORTH);
         add(board, BorderLayout.CENTER);
@@ -5,10 +5,15 @@ import java.awt.*;
  * TimerPanel
  * - 게임의 현재 턴과 남은 시간을 표시하는 패널
  * - 각 플레이어의 턴마다 35초 카운트다운을 표시한다.
+ * - 서버가 턴마다 마감 시각(DEADLINE)을 보내면 Swing Timer로 직접 카운트다운하고,
+ *   예전 서버처럼 매초 TIME을 보내면 받은 값을 그대로 표시한다.
  */
 public class TimerPanel extends JPanel {
     private int currentPlayer = 1;
     private int remainingTime = 35;
+    // 카운트다운 중인 턴의 마감 시각 (System.nanoTime() 기준)
+    private volatile long deadlineNanos;
+    private final Timer countdown = new Timer(100, e -> tick());
 
     public TimerPanel() {
         setPreferredSize(new Dimension(500, 60));
@@ -35,13 +40,41 @@ public class TimerPanel extends JPanel {
     }
 
     /**
-     * 남은 시간을 업데이트하고 화면을 다시 그린다.
+     * 남은 시간을 업데이트하고 화면을 다시 그린다. 진행 중인 카운트다운은 멈춘다.
      */
     public void updateTime(int seconds) {
+        countdown.stop();
         this.remainingTime = seconds;
         repaint();
     }
 
+    /**
+     * 지금부터 remainingMillis 뒤를 마감 시각으로 잡고 카운트다운을 시작한다.
+     * 서버와 벽시계가 달라도 되도록 받은 순간의 단조 시계(System.nanoTime())를 기준으로 한다.
+     */
+    public void startCountdown(long remainingMillis) {
+        deadlineNanos = System.nanoTime() + remainingMillis * 1_000_000L;
+        countdown.restart();
+        tick();
+    }
+
+    /**
+     * 카운트다운을 멈춘다. 화면의 남은 시간은 그대로 둔다. (승패 결정, 상대 퇴장 등)
+     */
+    public void stopCountdown() {
+        countdown.stop();
+    }
+
+    private void tick() {
+        long left = deadlineNanos - System.nanoTime();
+        int seconds = left <= 0 ? 0 : (int) ((left + 999_999_999L) / 1_000_000_000L);
+        if (seconds == 0) countdown.stop();
+        if (seconds != remainingTime) {
+            remainingTime = seconds;
+            repaint();
+        }
+    }
+
     /**
      * 현재 플레이어를 설정한다.
      */
@@ -0,0 +1,404 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * BinaryProtocol
+ * - 서버와 클라이언트가 함께 쓰는 바이너리 프레임 형식 (버전 BIN1)
+ * - 기존 텍스트 프로토콜(writeUTF 문자열)과 나란히 쓰인다. 클라이언트가 AUTH 직전에 "HELLO BIN1"을 보내고
+ *   서버가 "HELLO BIN1"로 답하면, 그 답장 프레임 다음부터 양쪽 모두 바이너리 프레임을 쓴다.
+ *   서버가 "HELLO TEXT"로 답하거나 HELLO를 모르는 예전 서버이면 텍스트 프로토콜을 그대로 쓴다.
+ *
+ * 프레임 형식:
+ * - 프레임: 길이(varint, 페이로드 바이트 수) + 페이로드
+ * - 페이로드: 명령 코드(1바이트) + 필드
+ * - 정수 필드는 varint(7비트씩, 하위 바이트 먼저), 문자열은 길이(varint) + UTF-8 바이트
+ * - 수 하나는 2바이트: 상위 바이트 = 플레이어 ID, 하위 바이트 = x * 15 + y (MatchArchive와 같은 배치)
+ * - 전용 코드가 없는 메시지는 OP_TEXT + 텍스트 메시지 UTF-8 바이트(프레임 끝까지)로 보낸다.
+ */
+public final class BinaryProtocol {
+    public static final String VERSION = "BIN1";
+
+    public static final int OP_TEXT = 0;
+    public static final int OP_MOVE = 1;
+    public static final int OP_TURN = 2;
+    public static final int OP_TIME = 3;
+    public static final int OP_START = 4;
+    public static final int OP_WIN = 5;
+    public static final int OP_PLAYER_INFO = 6;
+    public static final int OP_RESET = 7;
+    public static final int OP_WAITING = 8;
+    public static final int OP_DEADLINE = 9;
+
+    /** 페이로드 최대 크기: writeUTF 문자열 최대 길이(65535) + 명령 코드 */
+    public static final int MAX_PAYLOAD = 65536;
+
+    private static final int BOARD_SIZE = 15;
+
+    private BinaryProtocol() {}
+
+    /**
+     * 텍스트 메시지를 바이너리 페이로드로 바꾼다. 알려진 메시지는 전용 코드로,
+     * 나머지(또는 형식이 맞지 않는 메시지)는 OP_TEXT로 감싼다.
+     */
+    public static byte[] encode(String msg) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(16);
+        try {
+            String[] p = msg.split(" ");
+            switch (p[0]) {
+                case "MOVE":
+                    // 클라이언트가 보내는 "MOVE x y"는 플레이어 ID 자리를 0으로 둔다.
+                    out.write(OP_MOVE);
+                    writeMove(out, Integer.parseInt(p[1]), Integer.parseInt(p[2]),
+                            p.length > 3 ? Integer.parseInt(p[3]) : 0);
+                    return out.toByteArray();
+                case "TURN":
+                    return encodeInt(out, OP_TURN, Integer.parseInt(p[1]));
+                case "TIME":
+                    return encodeInt(out, OP_TIME, Integer.parseInt(p[1]));
+                case "START":
+                    return encodeInt(out, OP_START, Integer.parseInt(p[1]));
+                case "WIN": {
+                    String[] w = msg.split(" ", 3);
+                    out.write(OP_WIN);
+                    writeVarint(out, Integer.parseInt(w[1]));
+                    writeString(out, w.length > 2 ? w[2] : "");
+                    return out.toByteArray();
+                }
+                case "PLAYER_INFO":
+                    if (p.length != 9) break;
+                    out.write(OP_PLAYER_INFO);
+                    for (int i = 1; i <= 5; i += 4) {
+                        writeString(out, p[i]);
+                        writeVarint(out, Integer.parseInt(p[i + 1]));
+                        writeVarint(out, Integer.parseInt(p[i + 2]));
+                        // 승률은 소수 둘째 자리까지이므로 100을 곱한 정수로 보낸다.
+                        writeVarint(out, (int) Math.round(Double.parseDouble(p[i + 3]) * 100));
+                    }
+                    return out.toByteArray();
+                case "DEADLINE":
+                    out.write(OP_DEADLINE);
+                    writeVarint(out, Integer.parseInt(p[1]));
+                    writeVarint(out, Integer.parseInt(p[2]));
+                    return out.toByteArray();
+                case "RESET":
+                    if (p.length == 1) return new byte[]{OP_RESET};
+                    break;
+                case "WAITING":
+                    if (p.length == 1) return new byte[]{OP_WAITING};
+                    break;
+                default:
+                    break;
+            }
+        } catch (RuntimeException e) {
+            // 형식이 예상과 다르면 아래에서 텍스트로 보낸다.
+        }
+        byte[] text = msg.getBytes(StandardCharsets.UTF_8);
+        byte[] payload = new byte[1 + text.length];
+        payload[0] = OP_TEXT;
+        System.arraycopy(text, 0, payload, 1, text.length);
+        return payload;
+    }
+
+    private static byte[] encodeInt(ByteArrayOutputStream out, int opcode, int value) {
+        out.write(opcode);
+        writeVarint(out, value);
+        return out.toByteArray();
+    }
+
+    /**
+     * 바이너리 페이로드를 같은 뜻의 텍스트 메시지로 되돌린다.
+     * 전용 코드를 따로 처리하지 않는 수신 측(인증, 채팅 등)과 벤치마크에서 쓴다.
+     */
+    public static String decode(byte[] payload) throws IOException {
+        Reader r = new Reader(payload);
+        switch (r.opcode()) {
+            case OP_TEXT:
+                return r.remainingText();
+            case OP_MOVE: {
+                int move = r.move();
+                int player = movePlayer(move);
+                String xy = "MOVE " + moveX(move) + " " + moveY(move);
+                return player == 0 ? xy : xy + " " + player;
+            }
+            case OP_TURN:
+                return "TURN " + r.varint();
+            case OP_TIME:
+                return "TIME " + r.varint();
+            case OP_START:
+                return "START " + r.varint();
+            case OP_WIN:
+                return "WIN " + r.varint() + " " + r.string();
+            case OP_PLAYER_INFO: {
+                StringBuilder sb = new StringBuilder("PLAYER_INFO");
+                for (int i = 0; i < 2; i++) {
+                    sb.append(' ').append(r.string())
+                      .append(' ').append(r.varint())
+                      .append(' ').append(r.varint())
+                      .append(' ').append(String.format("%.2f", r.varint() / 100.0));
+                }
+                return sb.toString();
+            }
+            case OP_DEADLINE:
+                return "DEADLINE " + r.varint() + " " + r.varint();
+            case OP_RESET:
+                return "RESET";
+            case OP_WAITING:
+                return "WAITING";
+            default:
+                throw new IOException("알 수 없는 명령 코드: " + payload[0]);
+        }
+    }
+
+    /**
+     * 페이로드 하나를 프레임(길이 + 페이로드)으로 만들어 한 번에 쓴다.
+     */
+    public static void writeFrame(OutputStream out, byte[] payload) throws IOException {
+        ByteArrayOutputStream frame = new ByteArrayOutputStream(payload.length + 3);
+        writeVarint(frame, payload.length);
+        frame.write(payload, 0, payload.length);
+        frame.writeTo(out);
+    }
+
+    /**
+     * 스트림에서 프레임 하나를 읽어 페이로드를 반환한다. 블로킹 수신(ClientHandler, NetworkHandler)용.
+     */
+    public static byte[] readFrame(DataInputStream in) throws IOException {
+        int length = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.read();
+            if (b == -1) throw new EOFException();
+            if (shift > 28) throw new IOException("프레임 길이가 올바르지 않습니다.");
+            length |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) break;
+        }
+        checkLength(length);
+        byte[] payload = new byte[length];
+        in.readFully(payload);
+        return payload;
+    }
+
+    /**
+     * 버퍼의 현재 위치에 완성된 프레임이 있으면 길이 필드를 포함한 전체 크기를, 아직 덜 왔으면 -1을 반환한다.
+     * 버퍼의 위치는 바꾸지 않는다. 셀렉터 기반 수신(NioSession)용.
+     */
+    public static int frameSize(ByteBuffer buf) throws IOException {
+        int pos = buf.position();
+        int length = 0;
+        for (int i = 0; ; i++) {
+            if (pos + i >= buf.limit()) return -1;
+            if (i > 4) throw new IOException("프레임 길이가 올바르지 않습니다.");
+            int b = buf.get(pos + i) & 0xFF;
+            length |= (b & 0x7F) << (7 * i);
+            if ((b & 0x80) == 0) {
+                checkLength(length);
+                int size = i + 1 + length;
+                return buf.remaining() >= size ? size : -1;
+            }
+        }
+    }
+
+    /**
+     * 페이로드는 적어도 명령 코드 1바이트가 있어야 한다. 다섯째 바이트의 상위 비트 때문에 음수가 된 길이도 여기서 걸러,
+     * 잘못된 프레임은 모두 IOException으로 연결을 닫게 한다.
+     */
+    private static void checkLength(int length) throws IOException {
+        if (length <= 0) throw new IOException("프레임 길이가 올바르지 않습니다: " + length);
+        if (length > MAX_PAYLOAD) throw new IOException("프레임이 너무 큽니다: " + length);
+    }
+
+    /**
+     * frameSize()로 확인한 프레임 하나를 버퍼에서 꺼내 페이로드를 반환한다.
+     */
+    public static byte[] takeFrame(ByteBuffer buf, int frameSize) {
+        int header = 0;
+        while ((buf.get(buf.position() + header) & 0x80) != 0) header++;
+        buf.position(buf.position() + header + 1);
+        byte[] payload = new byte[frameSize - header - 1];
+        buf.get(payload);
+        return payload;
+    }
+
+    public static int opcode(byte[] payload) {
+        return payload[0] & 0xFF;
+    }
+
+    public static int moveX(int move) {
+        return (move & 0xFF) / BOARD_SIZE;
+    }
+
+    public static int moveY(int move) {
+        return (move & 0xFF) % BOARD_SIZE;
+    }
+
+    public static int movePlayer(int move) {
+        return (move >> 8) & 0xFF;
+    }
+
+    private static void writeMove(ByteArrayOutputStream out, int x, int y, int player) {
+        if (x < 0 || x >= BOARD_SIZE || y < 0 || y >= BOARD_SIZE) {
+            throw new IllegalArgumentException("보드 밖의 좌표: " + x + ", " + y);
+        }
+        out.write(player);
+        out.write(x * BOARD_SIZE + y);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    /**
+     * 페이로드 하나의 필드를 앞에서부터 차례로 읽는다.
+     */
+    public static final class Reader {
+        private final byte[] buf;
+        private int pos = 0;
+
+        public Reader(byte[] payload) {
+            this.buf = payload;
+        }
+
+        public int opcode() throws IOException {
+            return u8();
+        }
+
+        public int move() throws IOException {
+            return (u8() << 8) | u8();
+        }
+
+        public int varint() throws IOException {
+            int value = 0;
+            for (int shift = 0; shift <= 28; shift += 7) {
+                int b = u8();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return value;
+            }
+            throw new IOException("varint가 너무 깁니다.");
+        }
+
+        public String string() throws IOException {
+            int length = varint();
+            if (pos + length > buf.length) throw new EOFException();
+            String s = new String(buf, pos, length, StandardCharsets.UTF_8);
+            pos += length;
+            return s;
+        }
+
+        public String remainingText() {
+            String s = new String(buf, pos, buf.length - pos, StandardCharsets.UTF_8);
+            pos = buf.length;
+            return s;
+        }
+
+        private int u8() throws IOException {
+            if (pos >= buf.length) throw new EOFException();
+            return buf[pos++] & 0xFF;
+        }
+    }
+
+    /**
+     * 벤치마크 도구: java -cp out BinaryProtocol [반복 횟수]
+     * 대국 중 흔한 메시지들을 텍스트(writeUTF)와 바이너리로 보냈을 때의 전송 바이트 수와
+     * 수신 측 해석 비용(메시지당 ns)을 비교해 출력한다.
+     */
+    public static void main(String[] args) throws IOException {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        String[] samples = {
+                "MOVE 7 7 1", "TURN 2", "TIME 34", "TIME 9", "DEADLINE 2 34980", "START 1",
+                "WIN 1 player1", "PLAYER_INFO alice 12 8 60.00 bob 3 5 37.50",
+                "CHAT 1 alice : 안녕하세요", "RESET", "WAITING"
+        };
+
+        System.out.printf("%-46s %6s %6s%n", "메시지", "텍스트", "바이너리");
+        byte[][] payloads = new byte[samples.length][];
+        long textBytes = 0, binaryBytes = 0;
+        for (int i = 0; i < samples.length; i++) {
+            payloads[i] = encode(samples[i]);
+            if (!decode(payloads[i]).equals(samples[i])) {
+                throw new IllegalStateException("되돌린 메시지가 다릅니다: " + samples[i]);
+            }
+            ByteArrayOutputStream frame = new ByteArrayOutputStream();
+            writeFrame(frame, payloads[i]);
+            int text = 2 + samples[i].getBytes(StandardCharsets.UTF_8).length;
+            textBytes += text;
+            binaryBytes += frame.size();
+            System.out.printf("%-46s %6d %6d%n", samples[i], text, frame.size());
+        }
+        System.out.printf("합계 %d 바이트 -> %d 바이트 (%.0f%%)%n",
+                textBytes, binaryBytes, binaryBytes * 100.0 / textBytes);
+
+        // 해석 비용: NetworkHandler와 같은 split + parseInt/parseDouble 대 Reader로 필드 읽기
+        long sink = 0;
+        for (int warmup = 0; warmup < 2; warmup++) {
+            long start = System.nanoTime();
+            for (int n = 0; n < rounds; n++) {
+                sink += parseText(samples[n % samples.length]);
+            }
+            double textNs = (System.nanoTime() - start) / (double) rounds;
+
+            start = System.nanoTime();
+            for (int n = 0; n < rounds; n++) {
+                sink += parseBinary(payloads[n % payloads.length]);
+            }
+            double binaryNs = (System.nanoTime() - start) / (double) rounds;
+            if (warmup == 1) {
+                System.out.printf("해석 비용: 텍스트 %.1f ns/메시지, 바이너리 %.1f ns/메시지%n", textNs, binaryNs);
+            }
+        }
+        if (sink == 42) System.out.println();
+    }
+
+    private static long parseText(String msg) {
+        String[] p = msg.split(" ");
+        switch (p[0]) {
+            case "MOVE":
+                return Integer.parseInt(p[1]) + Integer.parseInt(p[2]) + Integer.parseInt(p[3]);
+            case "TURN":
+            case "TIME":
+            case "START":
+            case "WIN":
+                return Integer.parseInt(p[1]);
+            case "DEADLINE":
+                return Integer.parseInt(p[1]) + Integer.parseInt(p[2]);
+            case "PLAYER_INFO":
+                return p[1].length() + Integer.parseInt(p[2]) + Integer.parseInt(p[3]) + (long) Double.parseDouble(p[4])
+                        + p[5].length() + Integer.parseInt(p[6]) + Integer.parseInt(p[7]) + (long) Double.parseDouble(p[8]);
+            default:
+                return p.length;
+        }
+    }
+
+    private static long parseBinary(byte[] payload) throws IOException {
+        Reader r = new Reader(payload);
+        switch (r.opcode()) {
+            case OP_MOVE:
+                return r.move();
+            case OP_TURN:
+            case OP_TIME:
+            case OP_START:
+            case OP_WIN:
+                return r.varint();
+            case OP_DEADLINE:
+                return r.varint() + r.varint();
+            case OP_PLAYER_INFO:
+                return r.string().length() + r.varint() + r.varint() + r.varint()
+                        + r.string().length() + r.varint() + r.varint() + r.varint();
+            default:
+                return payload.length;
+        }
+    }
+}
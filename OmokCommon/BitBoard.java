@@ -0,0 +1,238 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * BitBoard
+ * - 서버(GameBoard)와 클라이언트(BoardPanel, GameRule)가 함께 쓰는 15x15 오목판
+ * - 색마다 네 방향의 줄을 int 하나(15비트)씩으로 묶어 저장한다. 돌 하나를 놓으면 네 줄의 비트를 켠다.
+ *   승리 판정이나 연속 돌 세기는 줄 마스크 하나를 시프트/AND 해서 구하므로 칸을 하나씩 따라가지 않는다.
+ *
+ * 줄 배치 (좌표는 기존 int[x][y]와 같다):
+ * - DIR_X  (1, 0) : y마다 한 줄, 비트 위치 = x
+ * - DIR_Y  (0, 1) : x마다 한 줄, 비트 위치 = y
+ * - DIR_XY (1, 1) : x - y + 14마다 한 줄, 비트 위치 = x
+ * - DIR_ANTI (1, -1) : x + y마다 한 줄, 비트 위치 = x
+ */
+public final class BitBoard {
+    public static final int SIZE = 15;
+    public static final int EMPTY = 0;
+    public static final int BLACK = 1;
+    public static final int WHITE = 2;
+
+    public static final int DIR_X = 0;
+    public static final int DIR_Y = 1;
+    public static final int DIR_XY = 2;
+    public static final int DIR_ANTI = 3;
+
+    /** 방향마다 줄 수 (대각선 기준 29줄, 가로·세로는 앞의 15줄만 쓴다) */
+    public static final int LINES = 2 * SIZE - 1;
+    /** 방향별, 줄별로 보드 안에 있는 칸의 비트 마스크 */
+    private static final int[][] VALID = new int[4][LINES];
+
+    static {
+        for (int x = 0; x < SIZE; x++) {
+            for (int y = 0; y < SIZE; y++) {
+                for (int dir = 0; dir < 4; dir++) {
+                    VALID[dir][lineIndex(dir, x, y)] |= 1 << bitIndex(dir, x, y);
+                }
+            }
+        }
+    }
+
+    // lines[색 - 1][방향][줄]
+    private final int[][][] lines = new int[2][4][LINES];
+    private int stoneCount = 0;
+
+    public BitBoard() {}
+
+    /**
+     * 다른 보드의 내용을 그대로 복사한 새 보드를 만든다.
+     */
+    public BitBoard copy() {
+        BitBoard copy = new BitBoard();
+        for (int c = 0; c < 2; c++) {
+            for (int dir = 0; dir < 4; dir++) {
+                System.arraycopy(lines[c][dir], 0, copy.lines[c][dir], 0, LINES);
+            }
+        }
+        copy.stoneCount = stoneCount;
+        return copy;
+    }
+
+    static int lineIndex(int dir, int x, int y) {
+        switch (dir) {
+            case DIR_X: return y;
+            case DIR_Y: return x;
+            case DIR_XY: return x - y + SIZE - 1;
+            default: return x + y;
+        }
+    }
+
+    static int bitIndex(int dir, int x, int y) {
+        return dir == DIR_Y ? y : x;
+    }
+
+    public static boolean inBounds(int x, int y) {
+        return x >= 0 && y >= 0 && x < SIZE && y < SIZE;
+    }
+
+    /**
+     * (x, y)의 돌을 반환한다. (0=빈칸, 1=흑, 2=백)
+     */
+    public int get(int x, int y) {
+        int bit = 1 << x;
+        if ((lines[0][DIR_X][y] & bit) != 0) return BLACK;
+        if ((lines[1][DIR_X][y] & bit) != 0) return WHITE;
+        return EMPTY;
+    }
+
+    public boolean isEmpty(int x, int y) {
+        return ((lines[0][DIR_X][y] | lines[1][DIR_X][y]) & (1 << x)) == 0;
+    }
+
+    /**
+     * (x, y)에 player의 돌을 놓는다. 이미 돌이 있으면 바꾼다.
+     */
+    public void set(int x, int y, int player) {
+        if (!isEmpty(x, y)) remove(x, y);
+        if (player == EMPTY) return;
+        int[][] own = lines[player - 1];
+        for (int dir = 0; dir < 4; dir++) {
+            own[dir][lineIndex(dir, x, y)] |= 1 << bitIndex(dir, x, y);
+        }
+        stoneCount++;
+    }
+
+    /**
+     * (x, y)의 돌을 치운다.
+     */
+    public void remove(int x, int y) {
+        int player = get(x, y);
+        if (player == EMPTY) return;
+        int[][] own = lines[player - 1];
+        for (int dir = 0; dir < 4; dir++) {
+            own[dir][lineIndex(dir, x, y)] &= ~(1 << bitIndex(dir, x, y));
+        }
+        stoneCount--;
+    }
+
+    public void clear() {
+        for (int c = 0; c < 2; c++) {
+            for (int dir = 0; dir < 4; dir++) {
+                Arrays.fill(lines[c][dir], 0);
+            }
+        }
+        stoneCount = 0;
+    }
+
+    public int getStoneCount() {
+        return stoneCount;
+    }
+
+    public boolean isFull() {
+        return stoneCount == SIZE * SIZE;
+    }
+
+    /**
+     * (x, y)를 지나는 dir 방향 줄에서 player 돌의 비트 마스크를 반환한다. 비트 위치는 bitIndex(dir, x, y)이다.
+     */
+    public int lineMask(int player, int dir, int x, int y) {
+        return lines[player - 1][dir][lineIndex(dir, x, y)];
+    }
+
+    /**
+     * dir 방향 line번째 줄의 player 돌 비트 마스크를 반환한다. 줄 전체를 훑는 평가 함수용이다.
+     */
+    public int lineBits(int player, int dir, int line) {
+        return lines[player - 1][dir][line];
+    }
+
+    /**
+     * dir 방향 line번째 줄에서 보드 안에 있는 칸의 비트 마스크. 줄이 없으면 0이다.
+     */
+    public static int validBits(int dir, int line) {
+        return VALID[dir][line];
+    }
+
+    /**
+     * (x, y)를 지나는 dir 방향 줄에서 돌이 없는 보드 안 칸의 비트 마스크를 반환한다.
+     */
+    public int emptyMask(int dir, int x, int y) {
+        int line = lineIndex(dir, x, y);
+        return VALID[dir][line] & ~(lines[0][dir][line] | lines[1][dir][line]);
+    }
+
+    /**
+     * (x, y)에 player의 돌이 있다고 보고, dir 방향으로 (x, y)를 포함해 이어진 돌의 수를 센다.
+     * (x, y)가 실제로 비어 있어도 보드를 바꾸지 않고 셀 수 있다.
+     */
+    public int runLength(int player, int dir, int x, int y) {
+        int pos = bitIndex(dir, x, y);
+        int mask = lineMask(player, dir, x, y) | (1 << pos);
+        return runUp(mask, pos) + runDown(mask, pos) - 1;
+    }
+
+    /** pos부터 위쪽 비트로 이어진 1의 개수 (pos 포함) */
+    private static int runUp(int mask, int pos) {
+        return Integer.numberOfTrailingZeros(~(mask >>> pos));
+    }
+
+    /** pos부터 아래쪽 비트로 이어진 1의 개수 (pos 포함) */
+    private static int runDown(int mask, int pos) {
+        return Integer.numberOfLeadingZeros(~(mask << (31 - pos)));
+    }
+
+    /**
+     * (x, y)에 놓인(또는 놓을) player의 돌로 이기는지 판정한다.
+     * 흑은 정확히 5개일 때만 이기고(장목은 금수), 백은 5개 이상이면 이긴다.
+     */
+    public boolean checkWin(int x, int y, int player) {
+        for (int dir = 0; dir < 4; dir++) {
+            int run = runLength(player, dir, x, y);
+            if (run == 5 || (run > 5 && player == WHITE)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * (x, y)에 두면 렌주 금수(3-3, 4-4, 장목)인지 확인한다. 보드는 바꾸지 않는다.
+     * - 흑만 금수가 있고 판정은 RenjuRule이 맡는다.
+     */
+    public boolean isForbidden(int x, int y, int player) {
+        return player == BLACK && RenjuRule.isForbidden(this, x, y);
+    }
+
+    /**
+     * 검증 속도 측정 도구: java -cp out BitBoard [수 개수]
+     * 무작위로 진행한 대국에서 빈칸마다 금수 검사와 승리 판정을 하고 초당 검증한 수를 출력한다.
+     */
+    public static void main(String[] args) {
+        long target = args.length > 0 ? Long.parseLong(args[0]) : 20_000_000L;
+        Random random = new Random(1);
+        BitBoard board = new BitBoard();
+        long validated = 0;
+        long sink = 0;
+        long start = System.nanoTime();
+        while (validated < target) {
+            board.clear();
+            int player = BLACK;
+            for (int ply = 0; ply < 120; ply++) {
+                int x = random.nextInt(SIZE);
+                int y = random.nextInt(SIZE);
+                if (!board.isEmpty(x, y)) continue;
+                for (int i = 0; i < SIZE * SIZE; i++) {
+                    int cx = i / SIZE, cy = i % SIZE;
+                    if (!board.isEmpty(cx, cy)) continue;
+                    if (board.isForbidden(cx, cy, player)) sink++;
+                    if (board.checkWin(cx, cy, player)) sink++;
+                    validated++;
+                }
+                board.set(x, y, player);
+                player = player == BLACK ? WHITE : BLACK;
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("수 %d개 검증, %.3f초 (%.0f 수/초), 금수·승리 %d건%n",
+                validated, seconds, validated / seconds, sink);
+    }
+}
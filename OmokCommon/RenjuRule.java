@@ -0,0 +1,205 @@
+/**
+ * RenjuRule
+ * - 흑의 렌주 금수(3-3, 4-4, 장목)를 미리 계산한 줄 패턴 표로 판정하는 클래스
+ * - 둘 자리를 가운데에 두고 한 방향으로 좌우 5칸씩, 모두 11칸의 창을 본다.
+ *   칸마다 막힘(상대 돌 또는 보드 밖)/흑/빈칸 셋 중 하나이므로 창은 3^11가지이고,
+ *   창마다 5목·장목·4의 수·열린 3을 만드는 빈칸을 미리 계산해 PATTERN에 넣어 둔다.
+ * - 판정할 때는 네 방향의 창 번호를 BitBoard 줄 마스크로 구해 표를 네 번 찾는다.
+ *   3-3 후보가 두 방향 이상 나올 때만 보드 사본에 돌을 놓고, 열린 4를 만드는 자리가
+ *   다시 금수인지 재귀로 확인한다.
+ *
+ * 규칙:
+ * - 정확히 5목이 되면 다른 금수와 겹쳐도 둘 수 있다.
+ * - 장목(6개 이상): 금수
+ * - 4-4: 한 수로 4가 둘 이상 생기면 금수 (한 줄 안의 4-4 포함)
+ * - 3-3: 한 수로 열린 3(다음 한 수로 열린 4가 되고, 그 한 수가 금수가 아닌 3)이 둘 이상 생기면 금수
+ * - 백은 금수가 없고 5개 이상이면 이긴다.
+ */
+public final class RenjuRule {
+    /** 둘 자리 좌우로 보는 칸 수 */
+    private static final int REACH = 5;
+    private static final int WINDOW = 2 * REACH + 1;
+    private static final int WINDOW_MASK = (1 << WINDOW) - 1;
+
+    private static final int BLOCKED = 0;
+    private static final int STONE = 1;
+    private static final int EMPTY = 2;
+
+    // PATTERN 값의 비트 배치
+    private static final int FIVE = 1;
+    private static final int OVERLINE = 1 << 1;
+    private static final int FOUR_SHIFT = 2;          // 2비트: 4의 수(0~2)
+    private static final int THREE_SHIFT = 4;         // 11비트: 두면 열린 4가 되는 빈칸(창 위치)
+
+    /** 재귀로 3-3을 확인하는 최대 깊이. 넘으면 열린 3으로 본다. */
+    private static final int MAX_DEPTH = 6;
+
+    private static final int[] DX = {1, 0, 1, 1};
+    private static final int[] DY = {0, 1, 1, -1};
+
+    /** 11비트 마스크를 3진수 자릿값의 합으로 바꾸는 표 */
+    private static final int[] TERNARY = new int[1 << WINDOW];
+    /** 창 번호 → 판정 결과 */
+    private static final char[] PATTERN;
+
+    static {
+        int size = 1;
+        for (int i = 0; i < WINDOW; i++) size *= 3;
+        for (int bits = 1; bits < TERNARY.length; bits++) {
+            int low = Integer.numberOfTrailingZeros(bits);
+            int value = 1;
+            for (int i = 0; i < low; i++) value *= 3;
+            TERNARY[bits] = TERNARY[bits & (bits - 1)] + value;
+        }
+        PATTERN = new char[size];
+        int[] cells = new int[WINDOW];
+        for (int index = 0; index < size; index++) {
+            int rest = index;
+            for (int i = 0; i < WINDOW; i++) {
+                cells[i] = rest % 3;
+                rest /= 3;
+            }
+            if (cells[REACH] == STONE) PATTERN[index] = (char) classify(cells);
+        }
+    }
+
+    private RenjuRule() {}
+
+    /**
+     * 흑이 (x, y)에 두면 금수인지 판정한다. (x, y)는 빈칸이어야 하며 보드는 바꾸지 않는다.
+     */
+    public static boolean isForbidden(BitBoard board, int x, int y) {
+        return isForbidden(board, x, y, 0);
+    }
+
+    private static boolean isForbidden(BitBoard board, int x, int y, int depth) {
+        if (!mayBeForbidden(board, x, y)) return false;
+        int[] info = new int[4];
+        boolean overline = false;
+        int fours = 0;
+        int threeDirs = 0;
+        for (int dir = 0; dir < 4; dir++) {
+            info[dir] = PATTERN[windowIndex(board, dir, x, y)];
+            if ((info[dir] & FIVE) != 0) return false;
+            if ((info[dir] & OVERLINE) != 0) overline = true;
+            int four = (info[dir] >>> FOUR_SHIFT) & 3;
+            fours += four;
+            if (four == 0 && (info[dir] >>> THREE_SHIFT) != 0) threeDirs++;
+        }
+        if (overline || fours >= 2) return true;
+        if (threeDirs < 2) return false;
+        if (depth >= MAX_DEPTH) return true;
+
+        // 3-3 후보: 열린 4를 만드는 자리 중 하나라도 금수가 아니어야 진짜 열린 3이다.
+        BitBoard next = board.copy();
+        next.set(x, y, BitBoard.BLACK);
+        int threes = 0;
+        for (int dir = 0; dir < 4; dir++) {
+            if (((info[dir] >>> FOUR_SHIFT) & 3) != 0) continue;
+            int spots = info[dir] >>> THREE_SHIFT;
+            while (spots != 0) {
+                int offset = Integer.numberOfTrailingZeros(spots) - REACH;
+                spots &= spots - 1;
+                if (!isForbidden(next, x + DX[dir] * offset, y + DY[dir] * offset, depth + 1)) {
+                    threes++;
+                    break;
+                }
+            }
+            if (threes >= 2) return true;
+        }
+        return false;
+    }
+
+    /**
+     * 표를 찾기 전에 주변 흑 돌 수만으로 금수가 될 수 없는 자리를 걸러낸다.
+     * 금수가 되려면 한 방향에 흑이 4개 이상(장목, 한 줄 4-4) 있거나,
+     * 흑이 2개 이상인 방향이 둘 이상(3-3, 4-4) 있어야 한다.
+     */
+    private static boolean mayBeForbidden(BitBoard board, int x, int y) {
+        int crowded = 0;
+        for (int dir = 0; dir < 4; dir++) {
+            int shift = BitBoard.bitIndex(dir, x, y) - REACH;
+            int count = Integer.bitCount(slice(board.lineMask(BitBoard.BLACK, dir, x, y), shift));
+            if (count >= 4) return true;
+            if (count >= 2 && ++crowded >= 2) return true;
+        }
+        return false;
+    }
+
+    /**
+     * (x, y)를 가운데로 한 dir 방향 11칸 창의 번호를 구한다. 가운데 칸은 흑이 놓인 것으로 본다.
+     */
+    private static int windowIndex(BitBoard board, int dir, int x, int y) {
+        int shift = BitBoard.bitIndex(dir, x, y) - REACH;
+        int stones = slice(board.lineMask(BitBoard.BLACK, dir, x, y), shift) | (1 << REACH);
+        int empty = slice(board.emptyMask(dir, x, y), shift) & ~(1 << REACH);
+        return TERNARY[stones] + 2 * TERNARY[empty];
+    }
+
+    private static int slice(int mask, int shift) {
+        return (shift >= 0 ? mask >>> shift : mask << -shift) & WINDOW_MASK;
+    }
+
+    /**
+     * 가운데에 흑을 놓은 창 하나를 분류한다. 표를 만들 때만 쓴다.
+     */
+    private static int classify(int[] cells) {
+        int run = runAt(cells, REACH);
+        if (run == 5) return FIVE;
+        if (run > 5) return OVERLINE;
+
+        // 4: 빈칸 하나를 더 두면 가운데를 지나는 정확한 5목이 되는 자리
+        int fiveSpots = 0;
+        for (int e = 0; e < WINDOW; e++) {
+            if (cells[e] != EMPTY) continue;
+            cells[e] = STONE;
+            if (runAt(cells, REACH) == 5) fiveSpots |= 1 << e;
+            cells[e] = EMPTY;
+        }
+        int fours = Integer.bitCount(fiveSpots);
+        if (fours == 2 && isStraightFour(fiveSpots)) fours = 1;
+        if (fours > 0) return Math.min(fours, 2) << FOUR_SHIFT;
+
+        // 3: 빈칸 하나를 더 두면 가운데를 지나는 열린 4(_XXXX_)가 되는 자리
+        int threeSpots = 0;
+        for (int e = 0; e < WINDOW; e++) {
+            if (cells[e] != EMPTY) continue;
+            cells[e] = STONE;
+            if (makesStraightFour(cells)) threeSpots |= 1 << e;
+            cells[e] = EMPTY;
+        }
+        return threeSpots << THREE_SHIFT;
+    }
+
+    /** 5목 자리 둘이 4개 연속 돌의 양 끝이면 하나의 열린 4다. */
+    private static boolean isStraightFour(int fiveSpots) {
+        int low = Integer.numberOfTrailingZeros(fiveSpots);
+        return (fiveSpots >>> low) == 0b100001;
+    }
+
+    /** 가운데를 지나는 연속 4개가 있고, 양 끝 빈칸 어느 쪽에 두어도 정확히 5목이 되는지 */
+    private static boolean makesStraightFour(int[] cells) {
+        int left = REACH;
+        while (left > 0 && cells[left - 1] == STONE) left--;
+        int right = REACH;
+        while (right < WINDOW - 1 && cells[right + 1] == STONE) right++;
+        if (right - left + 1 != 4 || left == 0 || right == WINDOW - 1) return false;
+        return completesFive(cells, left - 1) && completesFive(cells, right + 1);
+    }
+
+    private static boolean completesFive(int[] cells, int e) {
+        if (cells[e] != EMPTY) return false;
+        cells[e] = STONE;
+        boolean five = runAt(cells, e) == 5;
+        cells[e] = EMPTY;
+        return five;
+    }
+
+    /** 창 안에서 i를 지나는 연속 흑 돌 수 */
+    private static int runAt(int[] cells, int i) {
+        int run = 1;
+        for (int j = i - 1; j >= 0 && cells[j] == STONE; j--) run++;
+        for (int j = i + 1; j < WINDOW && cells[j] == STONE; j++) run++;
+        return run;
+    }
+}
@@ -0,0 +1,301 @@
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * AuthService
+ * - 로그인/가입의 비밀번호 해시(PBKDF2) 계산을 정해진 수의 인증 스레드에서 처리한다.
+ *   세션 스레드나 NIO 이벤트 루프는 요청을 넣기만 하고, 결과는 인증 스레드가 콜백으로 돌려준다.
+ * - 대기열 크기가 정해져 있어, 한꺼번에 몰린 로그인이 넘치면 기다리게 하지 않고 바로 거절한다.
+ * - IP마다 분당 시도 수, 사용자마다 분당 실패 수를 제한한다.
+ * - 인증에 성공하면 세션 토큰을 발급한다. "AUTH TOKEN 이름 토큰"으로 다시 접속하면 해시를 계산하지 않고 바로 통과한다.
+ *   토큰은 SHA-256 해시로만 들고 있고 상태 로그(StateJournal)에도 해시를 남기므로, 서버가 다시 떠도 재접속에 쓸 수 있다.
+ * - 클러스터 노드에서는 계정 저장소 없이 게이트웨이 키를 받는다. "AUTH GATEWAY 이름 키"(토큰 재접속이면 GATEWAY_TOKEN)는
+ *   게이트웨이가 이미 인증한 사용자이므로 키만 확인한다. 모든 연결이 게이트웨이 주소에서 오므로 IP 제한도 받지 않는다.
+ */
+public class AuthService {
+    public static final String MODE_TOKEN = "TOKEN";
+    public static final String MODE_GATEWAY = "GATEWAY";
+    public static final String MODE_GATEWAY_TOKEN = "GATEWAY_TOKEN";
+
+    private static final int QUEUE_SIZE = 4096;
+    private static final long WINDOW_MILLIS = 60_000;
+    private static final int MAX_ATTEMPTS_PER_HOST = 60;
+    private static final int MAX_FAILURES_PER_USER = 10;
+    private static final long TOKEN_TTL_MILLIS = 12L * 60 * 60 * 1000;
+    // 제한 기록이 이보다 많아지면 창이 지난 기록을 지운다.
+    private static final int MAX_TRACKED = 100_000;
+
+    private final UserManager userManager;
+    private final ThreadPoolExecutor workers;
+    private final Map<String, long[]> hostAttempts = new ConcurrentHashMap<>();
+    private final Map<String, long[]> userFailures = new ConcurrentHashMap<>();
+    // 토큰 해시(tokenKey) -> 토큰
+    private final Map<String, Token> tokens = new ConcurrentHashMap<>();
+    private final SecureRandom random = new SecureRandom();
+    private volatile StateJournal journal;
+    private volatile byte[] gatewayKey;
+
+    private static class Token {
+        final String username;
+        final long expiresAt;
+
+        Token(String username, long expiresAt) {
+            this.username = username;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    public AuthService(UserManager userManager, int workerCount) {
+        this.userManager = userManager;
+        AtomicInteger counter = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(workerCount, workerCount, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(QUEUE_SIZE), r -> {
+            Thread t = new Thread(r, "auth-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * 인증 스레드 수를 바꾼다. 서버를 시작하기 전에 부른다.
+     */
+    void setWorkers(int count) {
+        int n = Math.max(1, count);
+        if (n > workers.getMaximumPoolSize()) {
+            workers.setMaximumPoolSize(n);
+            workers.setCorePoolSize(n);
+        } else {
+            workers.setCorePoolSize(n);
+            workers.setMaximumPoolSize(n);
+        }
+    }
+
+    /**
+     * 발급하는 토큰을 남길 상태 로그를 정한다. 없으면 토큰은 서버가 다시 뜨면 사라진다.
+     */
+    void setJournal(StateJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * 게이트웨이 키를 정한다. 정하면 GATEWAY 인증과 노드 상태 확인(STATUS)을 받는다.
+     */
+    void setGatewayKey(String key) {
+        this.gatewayKey = key == null ? null : key.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 게이트웨이 키와 같은지 확인한다. 비교 시간이 내용에 따라 달라지지 않는다.
+     */
+    boolean isGatewayKey(String key) {
+        byte[] expected = gatewayKey;
+        return expected != null && MessageDigest.isEqual(expected, key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static boolean isGatewayMode(String mode) {
+        return MODE_GATEWAY.equalsIgnoreCase(mode) || MODE_GATEWAY_TOKEN.equalsIgnoreCase(mode);
+    }
+
+    /**
+     * 인증 요청 하나를 처리한다. TOKEN은 호출한 스레드에서 바로, LOGIN/REGISTER는 인증 스레드에서 처리한다.
+     * done은 정확히 한 번 불리며, 성공이면 null, 실패면 클라이언트에 보낼 사유를 받는다.
+     */
+    public void submit(String mode, String user, String secret, String host, Consumer<String> done) {
+        if (isGatewayMode(mode)) {
+            done.accept(isGatewayKey(secret) ? null : "게이트웨이 키가 올바르지 않습니다.");
+            return;
+        }
+        if (!allow(hostAttempts, host, MAX_ATTEMPTS_PER_HOST, true)) {
+            done.accept("시도가 너무 많습니다. 잠시 후 다시 시도하세요.");
+            return;
+        }
+        if (MODE_TOKEN.equalsIgnoreCase(mode)) {
+            done.accept(checkToken(user, secret) ? null : "세션이 만료되었습니다. 다시 로그인하세요.");
+            return;
+        }
+        boolean register = "REGISTER".equalsIgnoreCase(mode);
+        if (!register && !"LOGIN".equalsIgnoreCase(mode)) {
+            done.accept("지원하지 않는 명령입니다.");
+            return;
+        }
+        if (userManager == null) {
+            done.accept("클러스터 노드입니다. 게이트웨이로 접속하세요.");
+            return;
+        }
+        if (!allow(userFailures, user, MAX_FAILURES_PER_USER, false)) {
+            done.accept("로그인 실패가 너무 많습니다. 잠시 후 다시 시도하세요.");
+            return;
+        }
+        try {
+            workers.execute(() -> {
+                String error;
+                if (register) {
+                    error = userManager.register(user, secret) ? null : "이미 존재하는 아이디입니다.";
+                } else if (userManager.authenticate(user, secret)) {
+                    error = null;
+                } else {
+                    allow(userFailures, user, MAX_FAILURES_PER_USER, true);
+                    error = "아이디 또는 비밀번호가 올바르지 않습니다.";
+                }
+                done.accept(error);
+            });
+        } catch (RejectedExecutionException e) {
+            done.accept("서버가 바쁩니다. 잠시 후 다시 시도하세요.");
+        }
+    }
+
+    /**
+     * 창(WINDOW_MILLIS) 안의 횟수가 limit 미만인지 확인한다. count가 true이면 이번 시도도 센다.
+     */
+    private static boolean allow(Map<String, long[]> counters, String key, int limit, boolean count) {
+        long now = System.currentTimeMillis();
+        if (counters.size() > MAX_TRACKED) {
+            counters.values().removeIf(c -> now - c[0] >= WINDOW_MILLIS);
+        }
+        long[] c = counters.computeIfAbsent(key, k -> new long[]{now, 0});
+        synchronized (c) {
+            if (now - c[0] >= WINDOW_MILLIS) {
+                c[0] = now;
+                c[1] = 0;
+            }
+            if (c[1] >= limit) return false;
+            if (count) c[1]++;
+            return true;
+        }
+    }
+
+    /**
+     * 사용자에게 새 세션 토큰을 발급한다. 토큰은 TOKEN_TTL_MILLIS 동안 쓸 수 있다.
+     */
+    public String issueToken(String username) {
+        byte[] bytes = new byte[18];
+        random.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        long now = System.currentTimeMillis();
+        if (tokens.size() > MAX_TRACKED) {
+            tokens.values().removeIf(t -> t.expiresAt < now);
+        }
+        String key = tokenKey(token);
+        long expiresAt = now + TOKEN_TTL_MILLIS;
+        tokens.put(key, new Token(username, expiresAt));
+        StateJournal journal = this.journal;
+        if (journal != null) journal.logToken(key, username, expiresAt);
+        return token;
+    }
+
+    public boolean checkToken(String username, String token) {
+        String key = tokenKey(token);
+        Token t = tokens.get(key);
+        if (t == null) return false;
+        if (t.expiresAt < System.currentTimeMillis()) {
+            tokens.remove(key);
+            return false;
+        }
+        return t.username.equals(username);
+    }
+
+    /**
+     * 토큰을 찾을 때 쓰는 키(SHA-256, base64). 메모리와 상태 로그에는 토큰 대신 이 값만 둔다.
+     */
+    private static String tokenKey(String token) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 아직 만료되지 않은 토큰을 스냅샷에 넣는다.
+     */
+    void exportTokens(Map<String, StateJournal.TokenState> out) {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, Token> entry : tokens.entrySet()) {
+            Token t = entry.getValue();
+            if (t.expiresAt >= now) {
+                out.put(entry.getKey(), new StateJournal.TokenState(entry.getKey(), t.username, t.expiresAt));
+            }
+        }
+    }
+
+    /**
+     * 상태 로그에서 되살린 토큰을 다시 받는다. 서버가 연결을 받기 전에 부른다.
+     */
+    void restoreTokens(Collection<StateJournal.TokenState> restored) {
+        long now = System.currentTimeMillis();
+        for (StateJournal.TokenState t : restored) {
+            if (t.expiresAt >= now) tokens.put(t.key, new Token(t.username, t.expiresAt));
+        }
+    }
+
+    /**
+     * 인증 부하 측정 도구: java -cp out AuthService [동시 로그인 수=1000] [인증 스레드 수=코어 수]
+     * 임시 계정 저장소에 계정을 만든 뒤 모든 로그인을 한꺼번에 넣고, 응답 시간 분포와 토큰 재접속 시간을 출력한다.
+     */
+    public static void main(String[] args) throws Exception {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        File dir = java.nio.file.Files.createTempDirectory("auth-bench").toFile();
+        UserManager users = new UserManager(new File(dir, "users.journal"), new File(dir, "users.idx"));
+        AuthService auth = new AuthService(users, threads);
+
+        long start = System.nanoTime();
+        CountDownLatch registered = new CountDownLatch(n);
+        for (int i = 0; i < n; i++) {
+            // 같은 호스트에서 보내면 IP 제한에 걸리므로 사용자마다 다른 호스트로 센다.
+            auth.submit("REGISTER", "user" + i, "pass" + i, "host" + i, error -> registered.countDown());
+        }
+        registered.await();
+        System.out.printf("계정 %d개 가입: %dms (인증 스레드 %d개, PBKDF2 %d회)%n",
+                n, (System.nanoTime() - start) / 1_000_000, threads, UserManager.PBKDF2_ITERATIONS);
+        auth.hostAttempts.clear();
+
+        long[] latencies = new long[n];
+        AtomicInteger failures = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(n);
+        start = System.nanoTime();
+        for (int i = 0; i < n; i++) {
+            int id = i;
+            long submitted = System.nanoTime();
+            auth.submit("LOGIN", "user" + i, "pass" + i, "host" + i, error -> {
+                if (error != null) failures.incrementAndGet();
+                latencies[id] = System.nanoTime() - submitted;
+                done.countDown();
+            });
+        }
+        done.await();
+        long total = System.nanoTime() - start;
+        Arrays.sort(latencies);
+        System.out.printf("동시 로그인 %d개: 전체 %dms, 실패 %d, 응답 p50 %dms / p99 %dms / 최대 %dms, 초당 %.0f건%n",
+                n, total / 1_000_000, failures.get(), latencies[n / 2] / 1_000_000,
+                latencies[(int) (n * 0.99)] / 1_000_000, latencies[n - 1] / 1_000_000, n / (total / 1e9));
+
+        String[] issued = new String[n];
+        for (int i = 0; i < n; i++) issued[i] = auth.issueToken("user" + i);
+        auth.hostAttempts.clear();
+        start = System.nanoTime();
+        for (int i = 0; i < n; i++) {
+            auth.submit(MODE_TOKEN, "user" + i, issued[i], "host" + i, error -> {
+                if (error != null) failures.incrementAndGet();
+            });
+        }
+        System.out.printf("토큰 재접속 %d개: %.1fµs/건%n", n, (System.nanoTime() - start) / 1e3 / n);
+        auth.workers.shutdown();
+    }
+}
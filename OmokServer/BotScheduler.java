@@ -0,0 +1,169 @@
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * BotScheduler
+ * - 모든 방의 봇이 낸 수 계산 요청을 한 큐에 모아 정해진 수의 AI 스레드로 돌리는 스케줄러
+ * - 요청은 턴 마감이 이른 것부터 꺼낸다. 봇 하나는 한 번에 요청 하나만 내므로 큐 길이는 앉아 있는 봇 수를 넘지 않는다.
+ * - 시간 조각: 요청마다 탐색 시간과 최대 깊이를 정해 준다. 한가할 때는 설정한 AI 시간(--ai-time) 그대로이고,
+ *   대기와 실행 중인 요청이 AI 스레드보다 많으면 그 비율만큼 시간을 나누고 깊이를 낮추며 병렬 탐색도 끈다.
+ *   어느 경우든 탐색은 턴 마감 PREEMPT_MARGIN_MILLIS 전에 끝나도록 잘린다.
+ * - 선점: 대국이 바뀌어 필요 없어진 요청은 cancel()로 큐에서 건너뛰고, 이미 돌고 있으면 SearchEngine.stop()으로 멈춘다.
+ * - AI 스레드는 코어 수보다 하나 적게(최소 1) 두고 우선순위를 낮춰, 사람 플레이어의 수를 처리하는
+ *   세션/전송 스레드가 봇 탐색에 밀리지 않게 한다.
+ * - 대기 시간, 도달 깊이, 축소/선점 횟수는 ServerMetrics에 남긴다.
+ */
+public class BotScheduler {
+    /** 턴 마감보다 이만큼 먼저 탐색을 끝내 수를 보낼 시간을 남긴다. */
+    static final long PREEMPT_MARGIN_MILLIS = 1000;
+    /** 아무리 바빠도 한 수에 이만큼은 준다. (마감이 더 가까우면 마감이 먼저다) */
+    static final long MIN_SLICE_MILLIS = 50;
+    /** 바쁠 때 낮출 수 있는 최대 깊이의 하한 */
+    static final int MIN_DEPTH = 4;
+
+    /**
+     * 봇이 수를 찾는 작업. 주어진 엔진과 조각(시간, 깊이, 병렬 여부) 안에서 수를 찾아 둔다.
+     * 정석처럼 탐색하지 않았으면 null을 반환한다.
+     */
+    public interface Think {
+        SearchEngine.Result run(SearchEngine engine, long budgetMillis, int maxDepth, boolean parallel);
+    }
+
+    /**
+     * 큐에 들어간 요청 하나. 수 계산 요청(think)과 방 락 밖에서 돌려야 하는 짧은 잡일(chore)이 있다.
+     */
+    public static final class Request implements Comparable<Request> {
+        private final Think think;
+        private final Runnable chore;
+        private final long deadline;   // System.nanoTime() 기준, 이 시각까지는 탐색을 끝낸다.
+        private final long enqueuedAt;
+        private final long sequence;
+        private volatile boolean cancelled;
+        private volatile SearchEngine engine;
+
+        private Request(Think think, Runnable chore, long deadline, long sequence) {
+            this.think = think;
+            this.chore = chore;
+            this.deadline = deadline;
+            this.enqueuedAt = System.nanoTime();
+            this.sequence = sequence;
+        }
+
+        /**
+         * 요청을 거둔다. 아직 큐에 있으면 실행하지 않고, 탐색 중이면 곧 멈춘다.
+         */
+        public void cancel() {
+            cancelled = true;
+            SearchEngine running = engine;
+            if (running != null) running.stop();
+        }
+
+        @Override
+        public int compareTo(Request other) {
+            int c = Long.compare(deadline, other.deadline);
+            return c != 0 ? c : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    private final PriorityBlockingQueue<Request> queue = new PriorityBlockingQueue<>();
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicLong nextSequence = new AtomicLong();
+    private final int workers;
+    private final long budgetMillis;
+
+    /**
+     * @param workers AI 스레드 수
+     * @param budgetMillis 한가할 때 한 수에 쓰는 탐색 시간
+     * @param engines AI 스레드마다 하나씩 쓸 탐색 엔진을 만든다. 스레드가 처음 요청을 받을 때 부른다.
+     */
+    public BotScheduler(int workers, long budgetMillis, Supplier<SearchEngine> engines) {
+        this.workers = Math.max(1, workers);
+        this.budgetMillis = budgetMillis;
+        for (int i = 0; i < this.workers; i++) {
+            Thread t = new Thread(() -> runWorker(engines), "ai-search-" + i);
+            t.setDaemon(true);
+            t.setPriority(Thread.NORM_PRIORITY - 2);
+            t.start();
+        }
+    }
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    /**
+     * 수 계산 요청을 넣는다. turnDeadline(System.nanoTime() 기준)은 이 봇의 턴이 끝나는 시각이다.
+     */
+    public Request submit(long turnDeadline, Think think) {
+        Request request = new Request(think, null,
+                turnDeadline - PREEMPT_MARGIN_MILLIS * 1_000_000L, nextSequence.getAndIncrement());
+        queue.offer(request);
+        return request;
+    }
+
+    /**
+     * 방 락 밖에서 돌려야 하는 짧은 작업(다시하기 수락, 방 나가기 등)을 넣는다. 수 계산 요청보다 먼저 꺼낸다.
+     */
+    public void execute(Runnable chore) {
+        queue.offer(new Request(null, chore, Long.MIN_VALUE, nextSequence.getAndIncrement()));
+    }
+
+    private void runWorker(Supplier<SearchEngine> engines) {
+        SearchEngine engine = null;
+        while (true) {
+            Request request;
+            try {
+                request = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (request.cancelled) continue;
+            if (request.chore != null) {
+                try {
+                    request.chore.run();
+                } catch (RuntimeException e) {
+                    System.out.println("[AI] 작업 실패: " + e);
+                }
+                continue;
+            }
+            if (engine == null) engine = engines.get();
+            running.incrementAndGet();
+            try {
+                think(request, engine);
+            } catch (RuntimeException e) {
+                System.out.println("[AI] 수 계산 실패: " + e);
+            } finally {
+                running.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * 지금 부하로 시간 조각과 깊이를 정해 요청을 실행한다.
+     */
+    private void think(Request request, SearchEngine engine) {
+        long now = System.nanoTime();
+        long waitNanos = now - request.enqueuedAt;
+        // 실행 중인 요청(자기 포함)과 기다리는 요청을 합친 수가 스레드 수의 몇 배인지로 부하를 본다.
+        int load = running.get() + queue.size();
+        long slice = budgetMillis;
+        int maxDepth = SearchEngine.MAX_DEPTH;
+        boolean degraded = load > workers;
+        if (degraded) {
+            int ratio = (load + workers - 1) / workers;
+            slice = Math.max(MIN_SLICE_MILLIS, budgetMillis * workers / load);
+            maxDepth = Math.max(MIN_DEPTH, 12 - 2 * ratio);
+        }
+        long untilDeadline = (request.deadline - now) / 1_000_000L;
+        boolean cut = untilDeadline < slice;
+        slice = Math.max(1, Math.min(slice, untilDeadline));
+
+        request.engine = engine;
+        SearchEngine.Result result = request.cancelled ? null : request.think.run(engine, slice, maxDepth, !degraded);
+        request.engine = null;
+        ServerMetrics.recordBotThink(waitNanos, result == null ? -1 : result.depth, degraded,
+                cut || request.cancelled);
+    }
+}
@@ -0,0 +1,115 @@
+/**
+ * BotSession
+ * - 서버 안에서 도는 AI 플레이어. 네트워크 연결이 없는 ClientSession으로 방의 빈 자리(흑 또는 백)에 앉는다.
+ * - 혼자 상대를 기다리는 플레이어가 "BOT"을 보내면 OmokServer.seatBot()이 만든다.
+ * - 방이 보내는 메시지(START/MOVE/TURN/RESET ...)를 받아 자기 BitBoard를 갱신하고,
+ *   자기 차례가 되면 BotScheduler에 수 계산을 요청하고, 요청이 실행되면 room.handleMove()를 부른다.
+ *   정석 책(OpeningBook)에 있는 국면이면 책의 수를, 아니면 스케줄러가 정해 준 시간과 깊이 안에서 SearchEngine으로 찾은 수를 둔다.
+ * - sendMessage는 방 락을 잡은 스레드에서 불리므로 탐색과 방 호출은 모두 스케줄러의 AI 스레드로 넘긴다.
+ * - 대국이 바뀌면(RESET/WIN/WAITING) 아직 끝나지 않은 요청을 거둔다.
+ * - 상대가 나가면(WAITING) 방을 떠나고, 상대가 다시하기를 신청하면 바로 수락한다.
+ */
+public class BotSession extends ClientSession {
+    public static final String NAME = "AI";
+
+    private final BotScheduler scheduler;
+    private final BitBoard board = new BitBoard();
+    // 대국이 바뀔 때마다 올린다. 탐색이 끝났을 때 값이 바뀌었으면 결과를 버린다.
+    private volatile int generation = 0;
+    private boolean left = false;
+    // 아직 끝나지 않은 수 계산 요청. 방 락을 잡은 스레드에서만 바꾼다.
+    private BotScheduler.Request pending;
+
+    public BotSession(OmokServer server, BotScheduler scheduler) {
+        super(server);
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * 방이 보낸 메시지를 사람 클라이언트처럼 해석한다. 방 락을 잡은 스레드에서 불린다.
+     */
+    @Override
+    public void sendMessage(String msg) {
+        String[] parts = msg.split(" ");
+        switch (parts[0]) {
+            case "START":
+                board.clear();
+                generation++;
+                cancelPending();
+                if (Integer.parseInt(parts[1]) == getPlayerId()) think();
+                break;
+            case "RESET":
+            case "WIN":
+                board.clear();
+                generation++;
+                cancelPending();
+                break;
+            case "MOVE":
+                int player = Integer.parseInt(parts[3]);
+                board.set(Integer.parseInt(parts[1]), Integer.parseInt(parts[2]), player);
+                if (player == getPlayerId()) pending = null; // 내 수가 놓였으니 요청은 할 일을 마쳤다.
+                break;
+            case "TURN":
+                if (Integer.parseInt(parts[1]) == getPlayerId()) think();
+                break;
+            case "REMATCH_PROMPT":
+                scheduler.execute(() -> getRoom().handleReset(getPlayerId()));
+                break;
+            case "WAITING":
+                // 상대가 나갔다. 봇만 남은 방이 되지 않도록 자리를 비운다.
+                generation++;
+                cancelPending();
+                if (!left) {
+                    left = true;
+                    scheduler.execute(this::onDisconnect);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * 지금 보드의 사본으로 수 계산을 요청한다. 턴은 방금 시작했으므로 마감은 지금부터 턴 제한 시간 뒤다.
+     * 요청이 끝났을 때 그사이 대국이 바뀌었으면 두지 않는다.
+     */
+    private void think() {
+        int expected = generation;
+        int me = getPlayerId();
+        BitBoard position = board.copy();
+        GameRoom room = getRoom();
+        long turnDeadline = System.nanoTime() + GameRoom.TIME_LIMIT * 1_000_000_000L;
+        cancelPending();
+        pending = scheduler.submit(turnDeadline, (engine, budgetMillis, maxDepth, parallel) -> {
+            // 정석 책에 있는 국면이면 탐색하지 않고 바로 둔다.
+            SearchEngine.Result result = null;
+            int move = server.getOpeningBook().lookup(position, me);
+            if (move >= 0) {
+                System.out.println("[AI] 방 " + room.getRoomId() + " 플레이어 " + me + ": 정석 ("
+                        + move / BitBoard.SIZE + ", " + move % BitBoard.SIZE + ")");
+            } else {
+                result = engine.search(position, me, budgetMillis, maxDepth, parallel);
+                System.out.println("[AI] 방 " + room.getRoomId() + " 플레이어 " + me + ": " + result);
+                if (result.x < 0) return result;
+                move = result.x * BitBoard.SIZE + result.y;
+            }
+            if (generation == expected) room.handleMove(move / BitBoard.SIZE, move % BitBoard.SIZE, me);
+            return result;
+        });
+    }
+
+    private void cancelPending() {
+        if (pending != null) {
+            pending.cancel();
+            pending = null;
+        }
+    }
+
+    /**
+     * 봇은 매초 TIME이 필요 없다.
+     */
+    @Override
+    public boolean usesDeadlineClock() {
+        return true;
+    }
+}
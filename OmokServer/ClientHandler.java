@@ -1,151 +1,128 @@
 import java.io.*;
 import java.net.*;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * ClientHandler
- * - 서버에서 각 클라이언트 연결을 처리하는 스레드 클래스
- * - 클라이언트로부터 들어오는 메시지를 읽어 서버의 핸들러(server.handleMove 등)를 호출하고,
- *   서버에서의 브로드캐스트 메시지를 클라이언트로 전송할 수 있다.
+ * - 서버에서 각 클라이언트 연결을 전용 스레드(플랫폼 또는 가상 스레드)로 처리하는 세션 클래스
+ * - 수신 스레드는 블로킹 readUTF()로 메시지를 읽어 ClientSession의 공통 처리(인증, room.handleMove 등)에 넘긴다.
+ * - 송신은 연결별 송신 큐(OutboundQueue)를 거친다. sendMessage()는 큐에 넣기만 하고,
+ *   송신 스레드가 쌓인 메시지를 묶어서 writeUTF()로 쓴 뒤 한 번만 flush한다.
+ * - 바이너리 프로토콜이 협상되면 수신은 BinaryProtocol.readFrame(), 송신은 BinaryProtocol.writeFrame()으로 바뀐다.
  */
-public class ClientHandler extends Thread {
+public class ClientHandler extends ClientSession implements Runnable {
+    private static final int WRITE_BATCH = 64;
+
     private Socket socket;
-    private int playerId;
-    private OmokServer server;
     private DataInputStream in;
     private DataOutputStream out;
-    private boolean authenticated = false;
-    private String username = "";
+    private final OutboundQueue outbound = new OutboundQueue();
 
     /**
-     * 새 클라이언트 연결을 초기화하고 플레이어 ID를 클라이언트에 전송한다.
+     * 새 클라이언트 연결을 초기화한다. 방과 플레이어 ID는 인증 후에 배정된다.
      *
      * @param socket 클라이언트 소켓
-     * @param id 서버가 할당한 플레이어 ID
-     * @param server 서버 참조 (이동 처리 등 호출용)
+     * @param server 서버 참조 (방 배정 및 사용자 관리용)
      */
-    public ClientHandler(Socket socket, int id, OmokServer server) {
+    public ClientHandler(Socket socket, OmokServer server) {
+        super(server);
         this.socket = socket;
-        this.playerId = id;
-        this.server = server;
         try {
-            in = new DataInputStream(socket.getInputStream());
-            out = new DataOutputStream(socket.getOutputStream());
+            in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
     /**
-     * 수신 루프: 클라이언트로부터 MOVE 메시지를 읽어 서버의 handleMove 호출.
-     * RESET 메시지를 받으면 게임 초기화.
+     * 이 세션 전용 수신 스레드와 송신 스레드(플랫폼 또는 가상 스레드)를 시작한다.
+     */
+    public void start() {
+        String name = "client-" + socket.getRemoteSocketAddress();
+        server.startSessionThread(this::writeLoop, name + "-writer");
+        server.startSessionThread(this, name);
+    }
+
+    @Override
+    protected int pendingMessages() {
+        return outbound.size();
+    }
+
+    @Override
+    protected String remoteHost() {
+        return socket.getInetAddress().getHostAddress();
+    }
+
+    /**
+     * 수신 루프: 클라이언트로부터 메시지를 읽어 handleMessage(바이너리면 handleFrame)로 넘긴다.
      * 연결 종료 시 루프를 빠져나온다.
      */
     public void run() {
         try {
             while (true) {
-                String msg = in.readUTF();
-                if (!authenticated) {
-                    handleAuth(msg);
-                    continue;
-                }
-                if (msg.startsWith("MOVE")) {
-                    String[] parts = msg.split(" ");
-                    int x = Integer.parseInt(parts[1]);
-                    int y = Integer.parseInt(parts[2]);
-                    server.handleMove(x, y, playerId);
-                } else if (msg.equals("RESET")) {
-                    // 클라이언트의 "다시하기" 요청 처리
-                    server.handleReset(playerId);
-                } else if (msg.startsWith("CHAT")) {
-                    String text = msg.length() > 5 ? msg.substring(5) : "";
-                    server.handleChat(playerId, text);
+                if (isBinaryProtocol()) {
+                    handleFrame(BinaryProtocol.readFrame(in));
+                } else {
+                    handleMessage(in.readUTF());
                 }
             }
         } catch (IOException e) {
-            System.out.println("플레이어 " + playerId + " 연결 종료");
+            System.out.println("플레이어 " + getPlayerId() + " 연결 종료");
         } finally {
             closeResources();
-            server.removeClient(this);
+            onDisconnect();
         }
     }
 
     /**
-     * 이 클라이언트로 UTF 문자열 메시지를 전송한다.
-     *
-     * @param msg 전송할 메시지
+     * 송신 루프: 송신 큐에 쌓인 메시지를 최대 WRITE_BATCH개씩 꺼내 쓰고 묶음마다 한 번 flush한다.
+     * 소켓 쓰기가 실패하면 소켓을 닫아 수신 루프도 끝나게 한다.
+     * "HELLO BIN1" 답장을 쓴 다음부터는 바이너리 프레임으로 쓴다.
      */
-    public void sendMessage(String msg) {
+    private void writeLoop() {
+        List<String> batch = new ArrayList<>(WRITE_BATCH);
+        boolean binary = false;
         try {
-            out.writeUTF(msg);
-        } catch (IOException ignored) {}
-    }
-
-    public int getPlayerId() {
-        return playerId;
-    }
-
-    public String getUsername() {
-        return username;
-    }
-
-    private void handleAuth(String msg) throws IOException {
-        if (!msg.startsWith("AUTH")) {
-            out.writeUTF("AUTH_FAIL 인증이 필요합니다.");
-            return;
-        }
-        String[] parts = msg.split(" ", 4);
-        if (parts.length < 4) {
-            out.writeUTF("AUTH_FAIL 형식이 올바르지 않습니다.");
-            return;
-        }
-        String mode = parts[1];
-        String user = parts[2];
-        String pass = parts[3];
-
-        if (user.trim().isEmpty() || pass.trim().isEmpty()) {
-            out.writeUTF("AUTH_FAIL 아이디/비밀번호를 입력하세요.");
-            return;
-        }
-
-        UserManager userManager = server.getUserManager();
-        boolean proceed = false;
-
-        if ("REGISTER".equalsIgnoreCase(mode)) {
-            if (userManager.register(user, pass)) {
-                proceed = true;
-            } else {
-                out.writeUTF("AUTH_FAIL 이미 존재하는 아이디입니다.");
-                return;
-            }
-        }
-
-        if ("LOGIN".equalsIgnoreCase(mode) || proceed) {
-            if (!userManager.authenticate(user, pass)) {
-                out.writeUTF("AUTH_FAIL 아이디 또는 비밀번호가 올바르지 않습니다.");
-                return;
+            while (outbound.awaitAndDrainTo(batch, WRITE_BATCH) >= 0) {
+                for (String msg : batch) {
+                    if (binary) {
+                        BinaryProtocol.writeFrame(out, BinaryProtocol.encode(msg));
+                    } else {
+                        out.writeUTF(msg);
+                        binary = msg.equals("HELLO " + BinaryProtocol.VERSION);
+                    }
+                }
+                out.flush();
+                ServerMetrics.SENT.add(batch.size());
+                ServerMetrics.FLUSHES.increment();
+                batch.clear();
             }
-        } else {
-            out.writeUTF("AUTH_FAIL 지원하지 않는 명령입니다.");
-            return;
+        } catch (IOException | InterruptedException e) {
+            closeResources();
         }
+    }
 
-        this.username = user;
-        this.authenticated = true;
-        server.registerPlayerName(playerId, username);
-        out.writeUTF("AUTH_OK " + playerId + " " + username);
-        for (String chatLine : server.getChatHistory()) {
-            out.writeUTF(chatLine);
+    /**
+     * 메시지를 송신 큐에 넣는다. 호출한 스레드(보통 방 락을 잡은 스레드)를 막지 않는다.
+     * 큐가 넘치면 느린 클라이언트로 보고 연결을 끊는다. 자리 정리는 수신 스레드가 맡는다.
+     *
+     * @param msg 전송할 메시지
+     */
+    @Override
+    public void sendMessage(String msg) {
+        if (!outbound.offer(msg)) {
+            System.out.println("플레이어 " + getPlayerId() + " 송신 큐 초과, 연결을 끊습니다.");
+            closeResources();
         }
-        server.registerClient(this);
     }
 
+    /**
+     * 송신 큐와 소켓을 닫는다. 스트림을 따로 닫지 않는 것은 close()의 flush가 느린 소켓에서 막힐 수 있기 때문이다.
+     */
     private void closeResources() {
-        try {
-            if (in != null) in.close();
-        } catch (IOException ignored) {}
-        try {
-            if (out != null) out.close();
-        } catch (IOException ignored) {}
+        outbound.close();
         try {
             if (socket != null && !socket.isClosed()) socket.close();
         } catch (IOException ignored) {}
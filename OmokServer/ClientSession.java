@@ -0,0 +1,341 @@
+import java.io.IOException;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * ClientSession
+ * - 전송 방식(스레드 기반 ClientHandler, 셀렉터 기반 NioSession)과 무관한 클라이언트 세션 공통 부분
+ * - 인증 흐름과 메시지 해석을 담당하고, 해석한 메시지를 배정된 방의 핸들러(room.handleMove 등)로 넘긴다.
+ * - 실제 송신과 연결 종료는 하위 클래스가 구현한다.
+ * - 인증 전 "HELLO BIN1 DEADLINE"처럼 기능을 알려 바이너리 프로토콜(BinaryProtocol)과
+ *   마감 시각 방식 턴 시계를 협상할 수 있다. 바이너리가 협상되면 하위 클래스는
+ *   수신을 handleFrame()으로, 송신은 "HELLO BIN1" 답장 다음 메시지부터 바이너리 프레임으로 바꾼다.
+ *   THREAT를 알린 클라이언트는 열린 4가 생긴 수 뒤에 "THREAT OPEN_FOUR 플레이어"를 함께 받는다.
+ * - AUTH는 AuthService에 넘기고 결과는 인증 스레드에서 받는다. 그동안 수신 스레드(이벤트 루프)는 막히지 않는다.
+ *   TOKEN을 알린 클라이언트는 AUTH_OK 뒤에 "TOKEN 토큰"을 받고, 다시 접속할 때 "AUTH TOKEN 이름 토큰"을 쓸 수 있다.
+ * - 클러스터 노드에서는 OmokGateway가 클라이언트 대신 "AUTH GATEWAY 이름 키"로 인증하고 토큰은 게이트웨이가 발급한다.
+ *   게이트웨이는 인증 전 "STATUS 키"로 노드의 방 수를 묻는다.
+ */
+public abstract class ClientSession {
+    protected final OmokServer server;
+    private GameRoom room;
+    private int playerId = -1;
+    // 인증 스레드가 자리를 잡은 뒤 켠다. 수신 스레드는 이 값을 먼저 읽고 room/playerId를 읽는다.
+    private volatile boolean authenticated = false;
+    private volatile boolean authPending = false;
+    private String username = "";
+    private int spectateRoomId = -1;
+    private boolean spectator = false;
+    private boolean binaryProtocol = false;
+    private boolean helloReceived = false;
+    private boolean deadlineClock = false;
+    private boolean threatNotices = false;
+    private boolean sessionTokens = false;
+    // 인증 스레드의 자리 잡기와 연결 종료의 자리 정리가 엇갈리지 않게 한다.
+    private final ReentrantLock seatLock = new ReentrantLock();
+    private boolean disconnected = false;
+    // 같은 사용자의 새 연결이 자리를 넘겨받았다. 이 연결은 더 이상 방에 영향을 주지 않는다.
+    private volatile boolean displaced = false;
+
+    protected ClientSession(OmokServer server) {
+        this.server = server;
+    }
+
+    /**
+     * 이 클라이언트로 메시지 하나를 전송한다.
+     *
+     * @param msg 전송할 메시지
+     */
+    public abstract void sendMessage(String msg);
+
+    /**
+     * 수신한 메시지 하나를 처리한다.
+     * 인증 전에는 HELLO / SPECTATE(선택)와 AUTH만 받고, 인증 후에는 MOVE / RESET / CHAT을 방으로 전달한다.
+     * 인증 후 BOT을 보내면 빈 자리에 AI를 앉힌다.
+     * 관전자는 인증 후 보내는 메시지가 무시된다.
+     */
+    protected void handleMessage(String msg) {
+        if (displaced) return;
+        if (!authenticated) {
+            if (msg.startsWith("HELLO")) {
+                // "HELLO 기능..." : BIN1이 있으면 바이너리로 전환하고, DEADLINE이 있으면 매초 TIME 대신
+                // 턴마다 DEADLINE을 받고, THREAT이 있으면 위협 알림을, TOKEN이 있으면 세션 토큰을 받는다. 협상은 한 번만 한다.
+                if (helloReceived) return;
+                helloReceived = true;
+                for (String feature : msg.split(" ")) {
+                    if (feature.equals(BinaryProtocol.VERSION)) binaryProtocol = true;
+                    else if (feature.equals("DEADLINE")) deadlineClock = true;
+                    else if (feature.equals("THREAT")) threatNotices = true;
+                    else if (feature.equals("TOKEN")) sessionTokens = true;
+                }
+                sendMessage(binaryProtocol ? "HELLO " + BinaryProtocol.VERSION : "HELLO TEXT");
+                return;
+            }
+            if (msg.startsWith("STATUS ")) {
+                // 게이트웨이의 노드 상태 확인: "STATUS 키" -> "STATUS 방수 대기방수 가득참"
+                if (server.getAuthService().isGatewayKey(msg.substring(7))) {
+                    sendMessage("STATUS " + server.status());
+                }
+                return;
+            }
+            if (msg.startsWith("SPECTATE")) {
+                // 인증 전에 "SPECTATE 방번호"를 보내면 자리를 잡지 않고 그 방의 관전자로 들어간다.
+                spectateRoomId = parseSpectate(msg);
+                if (spectateRoomId == -1) sendMessage("AUTH_FAIL " + BAD_SPECTATE);
+                return;
+            }
+            handleAuth(msg);
+            return;
+        }
+        if (spectator) return;
+        if (msg.startsWith("MOVE")) {
+            String[] parts = msg.split(" ");
+            int x = Integer.parseInt(parts[1]);
+            int y = Integer.parseInt(parts[2]);
+            room.handleMove(x, y, playerId);
+        } else if (msg.equals("RESET")) {
+            // 클라이언트의 "다시하기" 요청 처리
+            room.handleReset(playerId);
+        } else if (msg.startsWith("CHAT")) {
+            String text = msg.length() > 5 ? msg.substring(5) : "";
+            room.handleChat(playerId, text);
+        } else if (msg.equals("BOT")) {
+            // 상대를 기다리는 중이면 빈 자리에 서버 AI(BotSession)를 앉힌다.
+            if (!server.seatBot(room)) {
+                sendMessage("BOT_FAIL 이미 상대가 있습니다.");
+            }
+        }
+    }
+
+    static final String BAD_SPECTATE = "관전할 방 번호가 올바르지 않습니다.";
+
+    /**
+     * "SPECTATE 방번호"에서 방 번호를 읽는다. 형식이 틀렸거나 번호가 양수가 아니면 -1.
+     */
+    static int parseSpectate(String msg) {
+        String[] parts = msg.split(" ");
+        if (parts.length != 2 || !parts[0].equals("SPECTATE")) return -1;
+        try {
+            int roomId = Integer.parseInt(parts[1]);
+            return roomId > 0 ? roomId : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * 바이너리 프레임 하나를 처리한다. MOVE는 문자열을 거치지 않고 바로 방으로 넘기고,
+     * 나머지는 텍스트 메시지로 되돌려 handleMessage로 처리한다.
+     */
+    protected void handleFrame(byte[] payload) throws IOException {
+        if (BinaryProtocol.opcode(payload) == BinaryProtocol.OP_MOVE) {
+            if (!authenticated || spectator) return;
+            BinaryProtocol.Reader reader = new BinaryProtocol.Reader(payload);
+            reader.opcode();
+            int move = reader.move();
+            room.handleMove(BinaryProtocol.moveX(move), BinaryProtocol.moveY(move), playerId);
+            return;
+        }
+        handleMessage(BinaryProtocol.decode(payload));
+    }
+
+    /**
+     * HELLO 협상으로 바이너리 프로토콜을 쓰기로 했는지 여부. 수신 쪽 프레임 형식을 고를 때 쓴다.
+     */
+    protected boolean isBinaryProtocol() {
+        return binaryProtocol;
+    }
+
+    /**
+     * HELLO에서 DEADLINE 기능을 알렸는지 여부. 그렇다면 이 클라이언트는 턴 마감 시각을 받아 스스로 카운트다운한다.
+     */
+    public boolean usesDeadlineClock() {
+        return deadlineClock;
+    }
+
+    /**
+     * HELLO에서 THREAT 기능을 알렸는지 여부. 그렇다면 MOVE 뒤에 위협 알림(THREAT)도 받는다.
+     */
+    public boolean wantsThreatNotices() {
+        return threatNotices;
+    }
+
+    /**
+     * 이 연결의 송신 큐에 쌓여 아직 나가지 않은 메시지 수. 송신 큐가 없는 세션은 0이다.
+     * 관전 전달(SpectatorFeed)이 이 연결의 송신 스레드가 따라오기를 기다릴 때 쓴다.
+     */
+    protected int pendingMessages() {
+        return 0;
+    }
+
+    /**
+     * 속도 제한에 쓸 상대 주소. 네트워크 연결이 없는 세션은 빈 문자열이다.
+     */
+    protected String remoteHost() {
+        return "";
+    }
+
+    /**
+     * 연결이 끊겼을 때 방에서 자리를 정리한다. 하위 클래스가 연결 종료 시 한 번 호출한다.
+     * 인증이 아직 끝나지 않았으면 인증 스레드가 자리를 잡지 않도록 표시해 둔다.
+     */
+    protected void onDisconnect() {
+        seatLock.lock();
+        try {
+            disconnected = true;
+        } finally {
+            seatLock.unlock();
+        }
+        if (room == null || displaced) return;
+        if (spectator) {
+            room.removeSpectator(this);
+        } else {
+            server.leaveRoom(room, this);
+        }
+    }
+
+    public int getPlayerId() {
+        return playerId;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    /**
+     * 같은 사용자가 새 연결로 자리를 넘겨받았을 때 방이 부른다. 이후 이 연결의 메시지와 종료는 무시된다.
+     */
+    void displace() {
+        displaced = true;
+    }
+
+    /**
+     * 배정된 방. 아직 배정되지 않았으면 null.
+     */
+    protected GameRoom getRoom() {
+        return room;
+    }
+
+    /**
+     * 서버가 배정한 방과 슬롯(플레이어 ID)을 기록한다.
+     */
+    void assignSeat(GameRoom room, int playerId) {
+        this.room = room;
+        this.playerId = playerId;
+    }
+
+    /**
+     * 연결 없이 자리만 차지하는 세션(서버가 다시 뜬 뒤 주인을 기다리는 자리)의 사용자 이름을 정한다.
+     */
+    void setUsername(String username) {
+        this.username = username;
+    }
+
+    private void handleAuth(String msg) {
+        if (!msg.startsWith("AUTH")) {
+            sendMessage("AUTH_FAIL 인증이 필요합니다.");
+            return;
+        }
+        String[] parts = msg.split(" ", 4);
+        if (parts.length < 4) {
+            sendMessage("AUTH_FAIL 형식이 올바르지 않습니다.");
+            return;
+        }
+        String mode = parts[1];
+        String user = parts[2];
+        String pass = parts[3];
+
+        if (user.trim().isEmpty() || pass.trim().isEmpty()) {
+            sendMessage("AUTH_FAIL 아이디/비밀번호를 입력하세요.");
+            return;
+        }
+
+        if (authPending) {
+            sendMessage("AUTH_FAIL 인증 중입니다.");
+            return;
+        }
+        authPending = true;
+        // 토큰 재접속은 이미 가진 토큰을 계속 쓰므로 새로 발급하지 않는다.
+        boolean resumed = AuthService.MODE_TOKEN.equalsIgnoreCase(mode)
+                || AuthService.MODE_GATEWAY_TOKEN.equalsIgnoreCase(mode);
+        boolean issueToken = !resumed && !AuthService.isGatewayMode(mode);
+        server.getAuthService().submit(mode, user, pass, remoteHost(), error -> {
+            if (error != null) {
+                authPending = false;
+                sendMessage("AUTH_FAIL " + error);
+                return;
+            }
+            completeAuth(user, issueToken);
+        });
+    }
+
+    /**
+     * 인증에 성공한 클라이언트를 방에 배정하거나 관전자로 붙인다. 인증 스레드(TOKEN이면 수신 스레드)에서 불린다.
+     */
+    private void completeAuth(String user, boolean issueToken) {
+        seatLock.lock();
+        try {
+            if (disconnected) return;
+            if (spectateRoomId != -1) {
+                startSpectating(user, issueToken);
+                return;
+            }
+
+            this.username = user;
+            // 같은 사용자의 자리(대국 중에 끊긴 자리, 아직 살아 있는 예전 연결의 자리)가 있으면 그 자리로 돌아가고
+            // greet에서 인증 응답을 보낸다. 예전 연결은 내보내진다. 없으면 새 자리를 받는다.
+            GameRoom seated = server.seatPlayer(this, user, slot -> {
+                this.authenticated = true;
+                sendMessage("AUTH_OK " + slot + " " + user);
+                sendToken(issueToken);
+                sendMessage("ROOM " + getRoom().getRoomId());
+            });
+            if (seated == null) {
+                authPending = false;
+                sendMessage("AUTH_FAIL 서버가 가득 찼습니다.");
+                return;
+            }
+            if (authenticated) return;
+
+            room.registerPlayerName(playerId, username);
+            // AUTH_OK를 받은 클라이언트가 곧바로 보내는 메시지를 수신 스레드가 놓치지 않도록 먼저 켠다.
+            this.authenticated = true;
+            sendMessage("AUTH_OK " + playerId + " " + username);
+            sendToken(issueToken);
+            sendMessage("ROOM " + room.getRoomId());
+            for (String chatLine : room.getChatHistory()) {
+                sendMessage(chatLine);
+            }
+            room.registerClient(this);
+        } finally {
+            seatLock.unlock();
+        }
+    }
+
+    private void sendToken(boolean issueToken) {
+        if (issueToken && sessionTokens) {
+            sendMessage("TOKEN " + server.getAuthService().issueToken(username));
+        }
+    }
+
+    /**
+     * 인증을 마친 관전자를 요청한 방에 붙인다. 관전자의 플레이어 ID는 0이다.
+     */
+    private void startSpectating(String user, boolean issueToken) {
+        GameRoom target = server.findRoom(spectateRoomId);
+        if (target == null) {
+            authPending = false;
+            sendMessage("AUTH_FAIL 방을 찾을 수 없습니다.");
+            return;
+        }
+        this.username = user;
+        this.spectator = true;
+        assignSeat(target, 0);
+        this.authenticated = true;
+        sendMessage("AUTH_OK 0 " + username);
+        sendToken(issueToken);
+        sendMessage("ROOM " + target.getRoomId());
+        if (!target.addSpectator(this)) {
+            sendMessage("WAITING");
+        }
+    }
+}
@@ -4,121 +4,90 @@ import java.time.LocalDateTime;
 /**
  * GameBoard
  * - 서버 측에서 게임 상태(보드, 현재 턴)를 관리하는 클래스
- * - 유효성 검사(금수 포함), 돌 배치, 승리 판정(장목 제외), 결과 저장 기능을 제공한다.
+ * - 유효성 검사(금수 포함), 돌 배치, 승리 판정, 결과 저장 기능을 제공한다.
+ * - 보드 상태와 판정은 클라이언트와 같은 BitBoard를 쓴다.
+ * - 돌을 놓을 때마다 PatternEvaluator로 색별 줄 모양(열린 4 등) 개수를 갱신해 둔다. 방은 이것으로 위협 알림을 보낸다.
  *
  * 규칙:
- * - 정확히 5개 연속: 승리 (6개 이상 장목은 승리 아님)
- * - 3-3 금수: 흑만 적용 (양쪽에서 3이 되는 수 금지)
+ * - 흑: 정확히 5개 연속이면 승리, 3-3·4-4·장목은 금수 (RenjuRule)
+ * - 백: 5개 이상 연속이면 승리, 금수 없음
  */
 public class GameBoard {
-    private int[][] board = new int[15][15];
+    private final BitBoard board = new BitBoard();
+    private final PatternEvaluator patterns = new PatternEvaluator(board);
     private int currentTurn = -1;
     private static final int SIZE = 15;
+    // 이번 판에 둔 수를 순서대로 기록한다. (MatchArchive.MatchRecord.encodeMove 형식)
+    private short[] moves = new short[SIZE * SIZE];
+    private int moveCount = 0;
 
     /**
      * 해당 플레이어가 (x,y)에 돌을 둘 수 있는지 검사한다.
      * - 범위, 빈칸, 현재 턴 확인
-     * - 3-3 금수 검사 (흑만 적용)
+     * - 렌주 금수 검사 (흑만 적용)
      *
      * @return 유효한 이동이면 true
      */
     public boolean isValidMove(int x, int y, int playerId) {
         // 기본 유효성 검사
-        if (!(x >= 0 && y >= 0 && x < 15 && y < 15 && board[x][y] == 0 && playerId == currentTurn))
+        if (!(BitBoard.inBounds(x, y) && board.isEmpty(x, y) && playerId == currentTurn))
             return false;
         
-        // 3-3 금수 검사 (흑만)
-        if (playerId == 1 && isForbidden(board, x, y, playerId)) {
-            return false;
-        }
-        
-        return true;
+        // 렌주 금수 검사 (흑만). 보드를 바꾸지 않고 줄 패턴 표로 판정한다.
+        return !board.isForbidden(x, y, playerId);
     }
 
     /**
-     * 해당 위치(x, y)에 돌을 두는 것이 금수인지 확인한다.
-     * - 3-3 금수: 흑이 양쪽에서 3-3을 만드는 경우만 금지
+     * 보드에 돌을 놓는다. 호출 전 isValidMove로 검사되어야 한다.
      */
-    private boolean isForbidden(int[][] board, int x, int y, int player) {
-        // 흑(player=1)만 3-3 금수 적용
-        if (player != 1) return false;
-        
-        // 임시로 돌을 놓음
-        board[x][y] = player;
-        
-        // 3-3 금지 검사: 정확히 3이 양쪽에서 나오는지 확인
-        int threeCount = 0;
-        
-        int[][] directions = {
-                {1, 0},  // 가로
-                {0, 1},  // 세로
-                {1, 1},  // ↘ 대각선
-                {1, -1}  // ↗ 대각선
-        };
-        
-        for (int[] dir : directions) {
-            int count = 1; // 현재 위치
-            int left = countStones(board, x, y, dir[0], dir[1], player);
-            int right = countStones(board, x, y, -dir[0], -dir[1], player);
-            count += left + right;
-            
-            // 양쪽이 모두 비어있고 (또는 경계), 정확히 3이 되는 경우
-            if (count == 3) {
-                boolean leftOpen = isOpenEnd(board, x, y, -dir[0], -dir[1], player);
-                boolean rightOpen = isOpenEnd(board, x, y, dir[0], dir[1], player);
-                
-                // 양쪽이 모두 열려있으면 3-3 가능성 증가
-                if (leftOpen && rightOpen) {
-                    threeCount++;
-                }
-            }
-        }
-        
-        // 임시 놓은 돌 제거
-        board[x][y] = 0;
-        
-        // 3이 2개 이상이면 3-3 금수
-        return threeCount >= 2;
+    public void placeStone(int x, int y, int playerId) {
+        patterns.place(x, y, playerId);
+        moves[moveCount++] = MatchArchive.MatchRecord.encodeMove(x, y, playerId);
     }
 
     /**
-     * 특정 방향의 끝이 "열려있는지" 확인 (그 다음이 빈 칸 또는 경계)
+     * 이번 판을 둔 수 목록(앞에서 count개)으로 한 번에 채운다. 수마다 줄 모양을 고쳐 세지 않고 끝에 한 번만 센다.
+     * 상태 로그에서 대국을 되살릴 때 쓴다. 승리·금수는 다시 판정하지 않는다.
      */
-    private boolean isOpenEnd(int[][] board, int x, int y, int dx, int dy, int player) {
-        // 현재 방향으로 연속된 돌을 따라가서 끝 다음 칸 확인
-        int nx = x + dx;
-        int ny = y + dy;
-        
-        while (nx >= 0 && ny >= 0 && nx < 15 && ny < 15 && board[nx][ny] == player) {
-            nx += dx;
-            ny += dy;
+    public void loadMoves(short[] moves, int count, int currentTurn) {
+        board.clear();
+        for (int i = 0; i < count; i++) {
+            short m = moves[i];
+            board.set(MatchArchive.MatchRecord.moveX(m), MatchArchive.MatchRecord.moveY(m),
+                    MatchArchive.MatchRecord.movePlayer(m));
         }
-        
-        // 끝 다음 칸이 범위 내이면서 비어있으면 열려있음
-        return nx >= 0 && ny >= 0 && nx < 15 && ny < 15 && board[nx][ny] == 0;
+        patterns.rebuild();
+        System.arraycopy(moves, 0, this.moves, 0, count);
+        moveCount = count;
+        this.currentTurn = currentTurn;
     }
 
     /**
-     * 보드에 돌을 놓는다. 호출 전 isValidMove로 검사되어야 한다.
+     * 이번 판에 둔 수 목록을 둔 순서대로 복사해 반환한다.
      */
-    public void placeStone(int x, int y, int playerId) {
-        board[x][y] = playerId;
+    public short[] getMoves() {
+        return java.util.Arrays.copyOf(moves, moveCount);
     }
 
     /**
-     * 주어진 방향(dx, dy)으로 연속된 같은 색 돌 개수를 센다.
+     * (x, y)에 놓인 돌을 반환한다. (0=빈칸, 1=흑, 2=백)
      */
-    private int countStones(int[][] board, int x, int y, int dx, int dy, int player) {
-        int count = 0;
-        int nx = x + dx;
-        int ny = y + dy;
+    public int getStone(int x, int y) {
+        return board.get(x, y);
+    }
 
-        while (nx >= 0 && ny >= 0 && nx < 15 && ny < 15 && board[nx][ny] == player) {
-            count++;
-            nx += dx;
-            ny += dy;
-        }
-        return count;
+    /**
+     * playerId의 돌로 만들어진 pattern 모양(PatternEvaluator.OPEN_FOUR 등)의 개수를 반환한다.
+     */
+    public int countPattern(int playerId, int pattern) {
+        return patterns.count(playerId, pattern);
+    }
+
+    /**
+     * 보드의 사본을 반환한다. 필승 탐색(ThreatSolver)처럼 보드를 바꿔 가며 읽는 쪽에 넘길 때 쓴다.
+     */
+    public BitBoard copyBoard() {
+        return board.copy();
     }
 
     /**
@@ -140,27 +109,22 @@ public class GameBoard {
     }
 
     /**
-     * 현재 보드에서 (x,y)에 놓인 돌로 인해 정확히 5개 연속(승리)인지 판정한다.
-     * 6개 이상 장목은 승리가 아님.
+     * 현재 보드에서 (x,y)에 놓인 돌로 인해 승리인지 판정한다.
+     * 흑은 정확히 5개 연속, 백은 5개 이상 연속이면 승리.
      *
-     * @return 정확히 5개 연속이면 true
+     * @return 승리이면 true
      */
     public boolean checkWin(int x, int y, int playerId) {
-        int[][] dirs = {{1,0},{0,1},{1,1},{1,-1}};
-        for (int[] d : dirs) {
-            int count = 1;
-            count += countStones(board, x, y, d[0], d[1], playerId);
-            count += countStones(board, x, y, -d[0], -d[1], playerId);
-            if (count == 5) return true;  // 정확히 5개만 승리
-        }
-        return false;
+        return board.checkWin(x, y, playerId);
     }
     /**
      * 게임을 초기화하여 새 게임을 시작할 준비를 한다.
      */
     public void resetGame() {
-        board = new int[15][15];
+        board.clear();
+        patterns.rebuild();
         currentTurn = 1;
+        moveCount = 0;
     }
     
 }
@@ -0,0 +1,805 @@
+import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+
+/**
+ * GameRoom
+ * - 한 판의 오목 대국을 관리하는 방 단위 클래스
+ * - 방마다 독립된 보드, 턴, 타이머, 리매치 상태, 채팅 기록을 가진다.
+ * - 이동/리매치/채팅/브로드캐스트는 모두 이 방에 속한 클라이언트에게만 적용된다.
+ * - 관전자는 플레이어와 따로 SpectatorFeed를 통해 같은 진행 상황을 받는다.
+ * - 턴 시계: 마감 시각 방식을 지원하는 클라이언트(HELLO ... DEADLINE)에는 턴이 바뀔 때 DEADLINE 한 번만 보내고
+ *   클라이언트가 직접 카운트다운한다. 예전 클라이언트에게만 매초 TIME을 보낸다.
+ *   시간 초과 판정(handleTimeOut)은 어느 쪽이든 서버가 한다.
+ * - 위협 알림: 수로 열린 4가 새로 생기면 MOVE 바로 뒤에 "THREAT OPEN_FOUR 플레이어"를 보낸다.
+ *   HELLO에 THREAT을 알린 클라이언트(관전자 포함)만 받는다.
+ * - 재접속: 대국 중에 연결이 끊긴 플레이어의 자리는 RECONNECT_GRACE초 동안 잡아 두고(AWAY), 그동안 시계는 그대로 간다.
+ *   같은 사용자가 다시 인증하면 자리를 돌려주고 보드·차례·남은 시간·놓친 채팅을 다시 보낸다(BACK).
+ *   시간 안에 돌아오지 않으면 예전처럼 자리를 비우고 대기 상태로 돌아간다.
+ * - 상태 로그: 대국이 시작된 뒤의 상태 변화(시작, 수, 시간 초과, 다시하기 신청, 채팅, 끝남)는 바꾸는 자리에서
+ *   방 락을 잡은 채 StateJournal에 남긴다. 서버가 다시 뜨면 restore()로 대국을 되살리고, 사람 자리는 모두
+ *   재접속을 기다리는 자리로 잡아 둔다.
+ */
+public class GameRoom {
+    static final int TIME_LIMIT = 35; // 35초 시간 제한
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    // 수마다 하는 필승(VCF) 확인의 깊이와 노드 한도. 방 락 밖의 보조 스레드에서 하지만 수마다 도므로 몇 ms 안에 끝나게 묶어 둔다.
+    static final int FORCED_WIN_DEPTH = 10;
+    static final long FORCED_WIN_NODES = 3000;
+    // 연결이 끊긴 플레이어의 자리를 잡아 두는 시간(초)
+    static final int RECONNECT_GRACE = 60;
+    // 채팅 한 줄의 최대 글자 수. 넘는 부분은 잘라서 보내고 기록한다.
+    static final int MAX_CHAT_LENGTH = 500;
+
+    private final int roomId;
+    private final OmokServer server;
+    private final List<ClientSession> clients = new ArrayList<>();
+    private final SpectatorFeed spectatorFeed;
+    private final GameBoard gameBoard = new GameBoard();
+    private final List<String> chatHistory = new ArrayList<>();
+    private final Map<Integer, String> playerNames = new HashMap<>();
+    private final Queue<Integer> availableSlots = new ArrayDeque<>();
+    // 연결이 끊겨 재접속을 기다리는 자리 (슬롯 -> 자리)
+    private final Map<Integer, HeldSeat> heldSeats = new HashMap<>();
+    // 지금까지 오간 채팅 수. chatHistory는 앞에서 잘리므로 놓친 채팅 수를 이 값의 차이로 구한다.
+    private long chatCount = 0;
+    // 끝난 대국의 WIN 메시지. 대국이 끝난 뒤 돌아온 플레이어에게 다시 보낸다.
+    private String lastResult;
+    private int rematchRequester = -1;
+    private int remainingTime = TIME_LIMIT;
+    private boolean gameActive = false;
+    private boolean closed = false;
+    private String lastPlayerInfo;
+    // synchronized 대신 ReentrantLock을 쓴다. 락을 기다리는 동안에도
+    // 가상 스레드가 캐리어 스레드에 고정(pinning)되지 않는다.
+    private final ReentrantLock lock = new ReentrantLock();
+    // 턴 시계: 공용 TurnTimer에 예약된 작업과 이번 턴의 마감 시각(System.nanoTime() 기준)
+    private long turnStartedAt;
+    private long turnDeadline;
+    private long clockGeneration = 0;
+    private TurnTimer.Timeout clockTick;
+    // 상태 로그 레코드의 일련번호. 방이 닫혀도 되돌리지 않는다.
+    private long journalSeq = 0;
+    // 상태 로그에 시작을 남긴 대국이 있다(아직 CLOSE를 남기지 않았다).
+    private boolean journaled = false;
+
+    /**
+     * 재접속을 기다리는 자리 하나
+     */
+    private static class HeldSeat {
+        final ClientSession session;
+        final String username;
+        final long chatCount;
+        TurnTimer.Timeout expiry;
+
+        HeldSeat(ClientSession session, String username, long chatCount) {
+            this.session = session;
+            this.username = username;
+            this.chatCount = chatCount;
+        }
+    }
+
+    /**
+     * 서버가 다시 뜬 뒤 주인을 기다리는 사람 자리. 연결이 없으므로 보내는 메시지는 버린다.
+     */
+    private static class RecoveredSeat extends ClientSession {
+        RecoveredSeat(OmokServer server, GameRoom room, int slot, String username) {
+            super(server);
+            assignSeat(room, slot);
+            setUsername(username);
+        }
+
+        @Override
+        public void sendMessage(String msg) {
+        }
+    }
+
+    public GameRoom(int roomId, OmokServer server) {
+        this.roomId = roomId;
+        this.server = server;
+        this.spectatorFeed = new SpectatorFeed(server.getSpectatorExecutor(), server.getTurnTimer());
+        availableSlots.offer(1);
+        availableSlots.offer(2);
+    }
+
+    public int getRoomId() {
+        return roomId;
+    }
+
+    /**
+     * 새 턴의 시계를 시작한다. 마감 시각은 System.nanoTime() 기준 절대 시각으로 잡고,
+     * 서버 공용 TurnTimer에 다음 시계 작업을 예약한다. 매초 TIME을 받아야 하는 예전 클라이언트가 있으면
+     * 1초마다, 없으면 마감 시각에 한 번만 깨어난다.
+     */
+    private void startTurnClock() {
+        stopTurnClock();
+        turnStartedAt = System.nanoTime();
+        turnDeadline = turnStartedAt + TIME_LIMIT * NANOS_PER_SECOND;
+        remainingTime = TIME_LIMIT;
+        scheduleClockTick(clockGeneration, hasTimeTickListeners() ? 1 : TIME_LIMIT);
+    }
+
+    private void stopTurnClock() {
+        clockGeneration++;
+        if (clockTick != null) {
+            clockTick.cancel();
+            clockTick = null;
+        }
+    }
+
+    private void scheduleClockTick(long generation, int elapsedSeconds) {
+        clockTick = server.getTurnTimer().schedule(() -> onClockTick(generation, elapsedSeconds),
+                turnStartedAt + elapsedSeconds * NANOS_PER_SECOND);
+    }
+
+    /**
+     * 턴 시작 후 elapsedSeconds초가 된 시점에 TurnTimer 스레드에서 호출된다.
+     * 남은 시간은 누적 감소가 아니라 마감 시각에서 다시 계산하므로 지연이 쌓이지 않는다.
+     */
+    private void onClockTick(long generation, int elapsedSeconds) {
+        lock.lock();
+        try {
+            if (!gameActive || generation != clockGeneration) return; // 이미 끝났거나 지난 턴의 예약
+
+            long left = turnDeadline - System.nanoTime();
+            remainingTime = left <= 0 ? 0 : (int) ((left + NANOS_PER_SECOND / 2) / NANOS_PER_SECOND);
+            String tick = "TIME " + remainingTime;
+            broadcastEach(c -> c.usesDeadlineClock() ? null : tick);
+
+            if (left <= 0) {
+                handleTimeOut();
+            } else {
+                scheduleClockTick(generation, hasTimeTickListeners()
+                        ? elapsedSeconds + 1 : Math.max(elapsedSeconds + 1, TIME_LIMIT));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 예전 클라이언트 관전자가 턴 도중에 들어왔을 때, 마감 시각에만 잡혀 있던 시계를 다시 1초 간격으로 돌린다.
+     */
+    private void resumeTimeTicks() {
+        if (!gameActive || clockTick == null) return;
+        int elapsedSeconds = (int) ((System.nanoTime() - turnStartedAt) / NANOS_PER_SECOND) + 1;
+        if (elapsedSeconds >= TIME_LIMIT) return;
+        clockTick.cancel();
+        scheduleClockTick(clockGeneration, elapsedSeconds);
+    }
+
+    /**
+     * 매초 TIME을 받아야 하는 예전 클라이언트(플레이어 또는 관전자)가 있는지 확인한다.
+     */
+    private boolean hasTimeTickListeners() {
+        for (ClientSession c : clients) {
+            if (!c.usesDeadlineClock()) return true;
+        }
+        return spectatorFeed.anyMatch(c -> !c.usesDeadlineClock());
+    }
+
+    /**
+     * 이번 턴의 남은 시간(밀리초)을 System.nanoTime() 기준 마감 시각에서 계산한다.
+     */
+    private long remainingMillis() {
+        return Math.max(0, (turnDeadline - System.nanoTime()) / 1_000_000);
+    }
+
+    /**
+     * 턴이 바뀐 직후 시계 정보를 보낸다. 마감 시각 방식 클라이언트에는 "DEADLINE 현재턴 남은밀리초"를,
+     * 예전 클라이언트에는 지금까지처럼 "TIME 남은초"를 보낸다.
+     * 남은 시간은 서버가 보내는 순간부터의 상대값이므로 클라이언트는 받은 순간의 자기 단조 시계에
+     * 더해 마감 시각을 잡으면 되고, 두 컴퓨터의 벽시계 차이는 영향을 주지 않는다.
+     */
+    private void broadcastTurnClock() {
+        String deadline = "DEADLINE " + gameBoard.getCurrentTurn() + " " + remainingMillis();
+        String tick = "TIME " + remainingTime;
+        broadcastEach(c -> c.usesDeadlineClock() ? deadline : tick);
+    }
+
+    /**
+     * 시간 제한이 끝났을 때 처리 (턴을 자동으로 넘김)
+     */
+    private void handleTimeOut() {
+        lock.lock();
+        try {
+            log("플레이어 " + gameBoard.getCurrentTurn() + "의 시간이 종료되었습니다.");
+            gameBoard.switchTurn();
+            server.getStateJournal().logTurn(roomId, ++journalSeq, gameBoard.getCurrentTurn());
+            startTurnClock();
+            broadcast("TURN " + gameBoard.getCurrentTurn());
+            broadcastTurnClock();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 클라이언트로부터 온 이동 요청을 처리한다.
+     */
+    public void handleMove(int x, int y, int playerId) {
+        lock.lock();
+        try {
+            if (!gameBoard.isValidMove(x, y, playerId)) return;
+
+            int openFours = gameBoard.countPattern(playerId, PatternEvaluator.OPEN_FOUR);
+            gameBoard.placeStone(x, y, playerId);
+            boolean win = gameBoard.checkWin(x, y, playerId);
+            server.getStateJournal().logMove(roomId, ++journalSeq, x, y, playerId, win);
+            broadcast("MOVE " + x + " " + y + " " + playerId);
+
+            if (win) {
+                lastResult = "WIN " + playerId + " " + getPlayerName(playerId);
+                broadcast(lastResult);
+                recordWin(playerId);   // ← 여기서 ID 기반 저장 (전적은 기록이 끝난 뒤 보낸다)
+
+                gameActive = false;
+                stopTurnClock();
+            } else {
+                if (gameBoard.countPattern(playerId, PatternEvaluator.OPEN_FOUR) > openFours) {
+                    String threat = "THREAT OPEN_FOUR " + playerId;
+                    broadcastEach(c -> c.wantsThreatNotices() ? threat : null);
+                }
+                gameBoard.switchTurn();
+                startTurnClock();
+                broadcast("TURN " + gameBoard.getCurrentTurn());
+                broadcastTurnClock();
+                checkForcedWin();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 이번 차례인 플레이어에게 4만 이어 두어 이기는 수순(VCF)이 있는지 확인해 로그와 지표에 남긴다.
+     * 방 락을 잡은 상태에서 수마다 불린다. 보드 사본만 떠서 넘기고, 탐색은 서버의 보조 스레드가 락 밖에서 한다.
+     */
+    private void checkForcedWin() {
+        int attacker = gameBoard.getCurrentTurn();
+        server.checkForcedWin(gameBoard.copyBoard(), attacker,
+                result -> log("플레이어 " + attacker + " 필승(VCF): " + result));
+    }
+
+    /**
+     * 승자/패자 이름과 수 목록을 복사해 서버의 경기 기록에 넘긴다. 파일 쓰기는 기록 스레드가 방 락 밖에서 하고,
+     * 끝나면 갱신된 전적(PLAYER_INFO)을 보낸다.
+     */
+    private void recordWin(int winnerId) {
+        server.recordWin(getPlayerName(1), getPlayerName(2), winnerId, gameBoard.getMoves(), () -> {
+            lock.lock();
+            try {
+                sendPlayerInfoToClients();
+            } finally {
+                lock.unlock();
+            }
+        });
+    }
+
+    /**
+     * "다시하기" 요청 처리
+     */
+    public void handleReset(int playerId) {
+        lock.lock();
+        try {
+            if (clients.size() < 2) {
+                sendToPlayer(playerId, "REMATCH_FAIL 상대를 기다리는 중입니다.");
+                return;
+            }
+
+            if (rematchRequester == -1) {
+                rematchRequester = playerId;
+                server.getStateJournal().logRematch(roomId, ++journalSeq, playerId);
+                int opponentId = getOpponentId(playerId);
+                String requesterName = getPlayerName(playerId);
+                String opponentName = opponentId == -1 ? "상대" : getPlayerName(opponentId);
+                sendToPlayer(playerId, "REMATCH_WAIT " + opponentName);
+                if (opponentId != -1) {
+                    sendToPlayer(opponentId, "REMATCH_PROMPT " + requesterName);
+                }
+                log("사용자 [" + requesterName + "] 가 다시하기를 요청했습니다.");
+                return;
+            }
+
+            if (rematchRequester == playerId) {
+                sendToPlayer(playerId, "REMATCH_ALREADY 상대 응답을 기다리는 중입니다.");
+                return;
+            }
+
+            String accepterName = getPlayerName(playerId);
+            broadcast("REMATCH_ACCEPT " + accepterName);
+            startNewMatch();
+            log("사용자 [" + accepterName + "] 가 다시하기 요청을 수락했습니다.");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void handleChat(int playerId, String message) {
+        lock.lock();
+        try {
+            if (message == null) return;
+            String trimmed = message.trim();
+            if (trimmed.isEmpty()) return;
+            if (trimmed.length() > MAX_CHAT_LENGTH) {
+                int end = MAX_CHAT_LENGTH;
+                if (Character.isHighSurrogate(trimmed.charAt(end - 1))) end--;
+                trimmed = trimmed.substring(0, end);
+            }
+
+            String displayName = playerNames.getOrDefault(playerId, "Player" + playerId);
+            String formatted = "CHAT " + playerId + " " + displayName + " : " + trimmed;
+            chatHistory.add(formatted);
+            chatCount++;
+            if (journaled) server.getStateJournal().logChat(roomId, ++journalSeq, formatted);
+            if (chatHistory.size() > StateJournal.CHAT_LIMIT) {
+                chatHistory.remove(0);
+            }
+            broadcast(formatted);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public List<String> getChatHistory() {
+        lock.lock();
+        try {
+            return new ArrayList<>(chatHistory);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void registerPlayerName(int playerId, String username) {
+        lock.lock();
+        try {
+            playerNames.put(playerId, username);
+            log("사용자 [" + username + "] 가 슬롯 " + playerId + "로 로그인했습니다.");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public String getPlayerName(int playerId) {
+        lock.lock();
+        try {
+            return playerNames.getOrDefault(playerId, "Player" + playerId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 빈 슬롯을 하나 할당한다. 방이 가득 찼거나 이미 닫힌 방이면 -1을 반환한다.
+     */
+    public int acquireSlot() {
+        lock.lock();
+        try {
+            if (closed) return -1;
+            Integer slot = availableSlots.poll();
+            return slot == null ? -1 : slot;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void releaseSlot(int slot) {
+        if (!availableSlots.contains(slot)) {
+            availableSlots.offer(slot);
+        }
+    }
+
+    public boolean hasVacancy() {
+        lock.lock();
+        try {
+            return !closed && !availableSlots.isEmpty();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 대국 중에 연결이 끊긴 플레이어의 자리를 RECONNECT_GRACE초 동안 잡아 둔다. 시계는 멈추지 않는다.
+     * 시간이 지나면 OmokServer.expireSeat()가 자리를 비운다.
+     *
+     * @return 자리를 잡아 뒀으면 true, 대국 중이 아니어서 바로 비워야 하면 false
+     */
+    public boolean holdSeat(ClientSession handler) {
+        lock.lock();
+        try {
+            if (!gameActive || handler.getUsername().isEmpty() || !clients.remove(handler)) return false;
+            int slot = handler.getPlayerId();
+            HeldSeat seat = reserveSeat(handler);
+            broadcast("AWAY " + slot + " " + RECONNECT_GRACE);
+            log("사용자 [" + seat.username + "] 연결 끊김, " + RECONNECT_GRACE + "초 동안 슬롯 " + slot + "을 잡아 둡니다.");
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * handler의 자리를 RECONNECT_GRACE초 동안 잡아 두고, 시간이 지나면 OmokServer.expireSeat()를 부르게 예약한다.
+     */
+    private HeldSeat reserveSeat(ClientSession handler) {
+        HeldSeat seat = new HeldSeat(handler, handler.getUsername(), chatCount);
+        seat.expiry = server.getTurnTimer().schedule(() -> server.expireSeat(this, handler),
+                System.nanoTime() + RECONNECT_GRACE * NANOS_PER_SECOND);
+        heldSeats.put(handler.getPlayerId(), seat);
+        return seat;
+    }
+
+    /**
+     * 잡아 둔 자리를 거둔다. 그사이 플레이어가 돌아왔으면 false.
+     */
+    public boolean releaseHeldSeat(ClientSession handler) {
+        lock.lock();
+        try {
+            HeldSeat seat = heldSeats.get(handler.getPlayerId());
+            if (seat == null || seat.session != handler) return false;
+            heldSeats.remove(handler.getPlayerId());
+            log("사용자 [" + seat.username + "] 가 " + RECONNECT_GRACE + "초 안에 돌아오지 않았습니다.");
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * username의 자리로 session을 다시 앉힌다. 잡아 둔 자리가 있으면 그 자리를, 없으면 같은 사용자의
+     * 예전 연결(서버가 아직 끊김을 알아채지 못했거나, 다른 곳에서 다시 로그인한 연결)의 자리를 넘겨받는다.
+     * 자리를 찾으면 greet(슬롯)으로 인증 응답을 보내게 한 뒤, 보드·시계·전적·결과와 놓친 채팅을 보낸다.
+     *
+     * @return 돌려줄 자리가 없으면 false
+     */
+    public boolean resumeSeat(ClientSession session, String username, IntConsumer greet) {
+        lock.lock();
+        try {
+            int slot = -1;
+            long seenChats = chatCount;
+            for (Map.Entry<Integer, HeldSeat> entry : heldSeats.entrySet()) {
+                if (entry.getValue().username.equals(username)) {
+                    slot = entry.getKey();
+                    seenChats = entry.getValue().chatCount;
+                    entry.getValue().expiry.cancel();
+                    heldSeats.remove(slot);
+                    break;
+                }
+            }
+            if (slot == -1) {
+                for (ClientSession c : clients) {
+                    if (c != session && username.equals(c.getUsername())) {
+                        // 예전 연결이 무엇을 받았는지 알 수 없으므로 채팅은 다시 보내지 않는다.
+                        slot = c.getPlayerId();
+                        clients.remove(c);
+                        c.displace();
+                        break;
+                    }
+                }
+            }
+            if (slot == -1) return false;
+
+            session.assignSeat(this, slot);
+            greet.accept(slot);
+            clients.add(session);
+            for (String msg : snapshot()) {
+                session.sendMessage(msg);
+            }
+            if (!gameActive && lastResult != null) {
+                session.sendMessage(lastResult);
+            }
+            int missed = (int) Math.min(chatCount - seenChats, chatHistory.size());
+            for (String line : chatHistory.subList(chatHistory.size() - missed, chatHistory.size())) {
+                session.sendMessage(line);
+            }
+            if (!gameActive && clients.size() < 2) {
+                session.sendMessage("WAITING");
+            }
+            if (!session.usesDeadlineClock()) resumeTimeTicks();
+            String back = "BACK " + slot;
+            broadcastEach(c -> c == session ? null : back);
+            log("사용자 [" + username + "] 가 슬롯 " + slot + "로 돌아왔습니다. (놓친 채팅 " + missed + "개)");
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 접속이 끊긴 클라이언트를 방에서 제거한다.
+     *
+     * @return 방이 완전히 비어 닫혔으면 true
+     */
+    public boolean removeClient(ClientSession handler) {
+        lock.lock();
+        try {
+            clients.remove(handler);
+            String name = playerNames.remove(handler.getPlayerId());
+            String display = name != null ? name : "Player" + handler.getPlayerId();
+            log("사용자 [" + display + "] 연결 종료 (슬롯 " + handler.getPlayerId() + ")");
+            releaseSlot(handler.getPlayerId());
+
+            if (rematchRequester != -1) {
+                int notifyTarget = rematchRequester == handler.getPlayerId()
+                        ? getOpponentId(handler.getPlayerId())
+                        : rematchRequester;
+                if (notifyTarget != -1 && notifyTarget != handler.getPlayerId()) {
+                    sendToPlayer(notifyTarget, "REMATCH_CANCEL 상대가 게임을 떠났습니다.");
+
+                }
+                rematchRequester = -1;
+            }
+
+            if (clients.size() < 2) {
+                stopTurnClock();
+                gameActive = false;
+                gameBoard.resetGame();
+                remainingTime = TIME_LIMIT;
+                lastResult = null;
+                if (journaled) {
+                    server.getStateJournal().logClose(roomId, ++journalSeq);
+                    journaled = false;
+                }
+                broadcast("WAITING");
+                log("접속자가 2명 미만으로 떨어져 게임을 대기 상태로 초기화했습니다.");
+            }
+
+            if (clients.isEmpty() && availableSlots.size() == 2) {
+                closed = true;
+            }
+            return closed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void registerClient(ClientSession handler) {
+        lock.lock();
+        try {
+            if (!clients.contains(handler)) {
+                clients.add(handler);
+                lastPlayerInfo = null; // 새로 들어온 클라이언트는 아직 전적 정보를 받지 못했다.
+                if (clients.size() == 2) {
+                    startNewMatch();
+                } else {
+                    broadcast("WAITING");
+                    log("한 명이 접속했습니다. 상대를 기다리는 중입니다.");
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void startNewMatch() {
+        lock.lock();
+        try {
+            if (clients.size() < 2) return;
+            stopTurnClock();
+            gameActive = false;
+            rematchRequester = -1;
+            gameBoard.resetGame();
+            lastResult = null;
+            gameActive = true;
+
+            int startPlayer = gameBoard.getCurrentTurn();
+            server.getStateJournal().logStart(roomId, ++journalSeq, getPlayerName(1), getPlayerName(2), botMask());
+            journaled = true;
+
+            broadcast("RESET");
+            broadcast("START " + startPlayer);
+            sendPlayerInfoToClients();
+            startTurnClock();
+            broadcastTurnClock();
+            log("두 명이 모두 연결되었습니다. 게임 시작!");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 봇이 앉은 슬롯을 비트(1 << 슬롯)로 모은다.
+     */
+    private int botMask() {
+        int mask = 0;
+        for (ClientSession c : clients) {
+            if (c instanceof BotSession) mask |= 1 << c.getPlayerId();
+        }
+        return mask;
+    }
+
+    /**
+     * 스냅샷에 넣을 대국 상태를 만든다. 되살릴 대국이 없으면(시작 전이거나 끝나서 CLOSE를 남겼으면) null.
+     */
+    public StateJournal.RoomState captureState() {
+        lock.lock();
+        try {
+            if (!journaled) return null;
+            StateJournal.RoomState state = new StateJournal.RoomState(roomId);
+            state.seq = journalSeq;
+            state.names[1] = getPlayerName(1);
+            state.names[2] = getPlayerName(2);
+            state.botMask = botMask();
+            short[] moves = gameBoard.getMoves();
+            System.arraycopy(moves, 0, state.moves, 0, moves.length);
+            state.moveCount = moves.length;
+            state.currentTurn = gameBoard.getCurrentTurn();
+            state.active = gameActive;
+            state.rematchRequester = rematchRequester;
+            if (lastResult != null && moves.length > 0) {
+                state.winner = MatchArchive.MatchRecord.movePlayer(moves[moves.length - 1]);
+            }
+            state.chat.addAll(chatHistory);
+            state.chatCount = chatCount;
+            return state;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 상태 로그에서 되살린 대국으로 새 방을 채운다. 서버가 연결을 받기 전에 한 번 불린다.
+     * 사람 자리는 모두 RECONNECT_GRACE초 동안 주인을 기다리는 자리로 잡아 두고, 봇 자리에는 새 봇을 앉혀
+     * 지금까지의 수를 알려 준다. 시계는 지금부터 새 턴으로 잰다. 서버가 멈춰 있던 시간은 누구의 시간에서도 빼지 않는다.
+     */
+    public void restore(StateJournal.RoomState state) {
+        lock.lock();
+        try {
+            availableSlots.clear();
+            gameBoard.loadMoves(state.moves, state.moveCount, state.currentTurn);
+            gameActive = state.active;
+            rematchRequester = state.rematchRequester;
+            chatHistory.addAll(state.chat);
+            chatCount = state.chatCount;
+            journalSeq = state.seq;
+            journaled = true;
+
+            List<BotSession> bots = new ArrayList<>();
+            for (int slot = 1; slot <= 2; slot++) {
+                playerNames.put(slot, state.names[slot]);
+                if (state.isBot(slot)) {
+                    BotSession bot = server.newBot();
+                    bot.assignSeat(this, slot);
+                    clients.add(bot);
+                    bots.add(bot);
+                } else {
+                    reserveSeat(new RecoveredSeat(server, this, slot, state.names[slot]));
+                }
+            }
+            if (state.winner != 0) {
+                lastResult = "WIN " + state.winner + " " + getPlayerName(state.winner);
+            }
+            if (gameActive) startTurnClock();
+            sendPlayerInfoToClients(); // 돌아오는 플레이어가 스냅샷과 함께 받을 전적을 만들어 둔다.
+            for (BotSession bot : bots) {
+                bot.sendMessage("RESET");
+                for (int i = 0; i < state.moveCount; i++) {
+                    short m = state.moves[i];
+                    bot.sendMessage("MOVE " + MatchArchive.MatchRecord.moveX(m) + " " + MatchArchive.MatchRecord.moveY(m)
+                            + " " + MatchArchive.MatchRecord.movePlayer(m));
+                }
+                if (gameActive) bot.sendMessage("TURN " + gameBoard.getCurrentTurn());
+            }
+            log("재시작 전 대국을 되살렸습니다. (" + state.names[1] + " vs " + state.names[2] + ", " + state.moveCount
+                    + "수, " + (gameActive ? "플레이어 " + gameBoard.getCurrentTurn() + " 차례" : "끝난 대국") + ")");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 두 플레이어의 이름과 전적을 PLAYER_INFO로 보낸다.
+     * 대국 시작 시와 결과가 기록된 뒤에만 호출되며, 내용이 지난번과 같으면 보내지 않는다.
+     */
+    private void sendPlayerInfoToClients() {
+        String blackName = getPlayerName(1); // playerId 1 = 흑
+        String whiteName = getPlayerName(2); // playerId 2 = 백
+
+        int wins1 = server.getWins(blackName), losses1 = server.getLosses(blackName);
+        int wins2 = server.getWins(whiteName), losses2 = server.getLosses(whiteName);
+
+        double rate1 = wins1 + losses1 > 0 ? (wins1 * 100.0 / (wins1 + losses1)) : 0;
+        double rate2 = wins2 + losses2 > 0 ? (wins2 * 100.0 / (wins2 + losses2)) : 0;
+
+        String msg = String.format("PLAYER_INFO %s %d %d %.2f %s %d %d %.2f", blackName, wins1, losses1, rate1, whiteName, wins2, losses2, rate2);
+        if (msg.equals(lastPlayerInfo)) return;
+        lastPlayerInfo = msg;
+        broadcast(msg);
+    }
+
+    private void sendToPlayer(int playerId, String msg) {
+        for (ClientSession c : clients) {
+            if (c.getPlayerId() == playerId) {
+                c.sendMessage(msg);
+                break;
+            }
+        }
+    }
+
+    private int getOpponentId(int playerId) {
+        for (ClientSession c : clients) {
+            if (c.getPlayerId() != playerId) {
+                return c.getPlayerId();
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 이 방에 연결된 모든 클라이언트에 메시지를 전송하고, 관전자 큐에도 변화분으로 넣는다.
+     * sendMessage는 연결별 송신 큐(OutboundQueue)에 넣기만 하므로 느린 소켓이 있어도 방 락을 오래 잡지 않는다.
+     */
+    public void broadcast(String msg) {
+        lock.lock();
+        try {
+            for (ClientSession c : clients) c.sendMessage(msg);
+            spectatorFeed.publish(msg, this::snapshot);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 세션마다 다른 메시지를 보낸다. messageFor가 null을 반환한 세션에는 보내지 않는다.
+     */
+    private void broadcastEach(Function<ClientSession, String> messageFor) {
+        for (ClientSession c : clients) {
+            String msg = messageFor.apply(c);
+            if (msg != null) c.sendMessage(msg);
+        }
+        spectatorFeed.publish(messageFor, this::snapshot);
+    }
+
+    /**
+     * 관전자를 추가한다. 관전자는 현재 상태 스냅샷을 먼저 받고, 이후 변화분을 이어서 받는다.
+     *
+     * @return 방이 이미 닫혔으면 false
+     */
+    public boolean addSpectator(ClientSession session) {
+        lock.lock();
+        try {
+            if (closed) return false;
+            spectatorFeed.add(session, snapshot());
+            if (!session.usesDeadlineClock()) resumeTimeTicks();
+            log("관전자 [" + session.getUsername() + "] 입장 (관전자 " + spectatorFeed.size() + "명)");
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void removeSpectator(ClientSession session) {
+        spectatorFeed.remove(session);
+    }
+
+    /**
+     * 현재 방 상태를 관전자용 메시지로 만든다. 방 락을 잡은 상태에서 호출된다.
+     * SNAPSHOT 현재턴 남은시간 진행중(1/0) 보드(225자, x*15+y 순서, 0=빈칸 1=흑 2=백)
+     * 대국 중이면 마감 시각 방식 클라이언트를 위한 DEADLINE이 뒤따른다(예전 클라이언트는 무시한다).
+     */
+    private List<String> snapshot() {
+        StringBuilder cells = new StringBuilder(225);
+        for (int x = 0; x < 15; x++) {
+            for (int y = 0; y < 15; y++) {
+                cells.append(gameBoard.getStone(x, y));
+            }
+        }
+        List<String> messages = new ArrayList<>(2);
+        // remainingTime은 매초 갱신되지 않을 수 있으므로 마감 시각에서 다시 계산한다.
+        int seconds = gameActive ? (int) ((remainingMillis() + 500) / 1000) : remainingTime;
+        messages.add("SNAPSHOT " + gameBoard.getCurrentTurn() + " " + seconds + " "
+                + (gameActive ? 1 : 0) + " " + cells);
+        if (gameActive) {
+            messages.add("DEADLINE " + gameBoard.getCurrentTurn() + " " + remainingMillis());
+        }
+        if (lastPlayerInfo != null) {
+            messages.add(lastPlayerInfo);
+        }
+        return messages;
+    }
+
+    private void log(String msg) {
+        System.out.println("[방 " + roomId + "] " + msg);
+    }
+}
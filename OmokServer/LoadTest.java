@@ -0,0 +1,623 @@
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LoadTest
+ * - 서버 부하 측정 도구
+ *   soak [클라이언트 수] [대국당 수] [생각 시간 ms]
+ *     세션 스레드 방식(플랫폼 스레드, --threads=virtual)마다 서버를 자식 JVM으로 따로 띄우고, 클라이언트 N개를 붙여
+ *     둘씩 짝지은 뒤 모든 방에서 같은 수의 수를 두게 한다. 짝이 다 지어진 뒤의 서버 힙·RSS·스레드 수와
+ *     수를 보내고 자기 MOVE가 돌아오기까지의 왕복 시간(p50/p99/최대)을 출력한다.
+ *   matches [대국 수 목록] [생각 시간 ms] [서버 옵션...]
+ *     대국 수(예: 500,1000,2000)마다 서버를 새로 띄워 그만큼의 대국을 동시에 두게 하고, 수를 두는 동안 서버가 쓴
+ *     CPU 시간으로 초당 수, 수당 CPU, 코어 하나를 다 썼을 때 감당할 대국 수(코어당 대국)와 왕복 시간을 출력한다.
+ *   idle [연결 수 목록] [서버 옵션...]
+ *     NIO 서버(--nio)에 아무것도 보내지 않는 연결을 단계별로 붙이며 단계마다 서버 힙·RSS·스레드 수·열린 파일 수를 출력한다.
+ * - 서버는 클러스터 노드 모드(--node=0/1)로 띄우고 클라이언트는 "AUTH GATEWAY"로 들어간다.
+ *   비밀번호 해시 비용이 측정에 섞이지 않고, 임시 디렉터리에서 실행하므로 계정·기록 파일을 건드리지 않는다.
+ * - 클라이언트는 이 프로세스의 셀렉터 스레드 하나가 모두 구동한다. 서버와 프로세스가 나뉘어 있으므로
+ *   힙·RSS·스레드 수는 서버 쪽 값만 잰다. 열 수 있는 파일 수(ulimit -n)가 클라이언트 수보다 커야 한다.
+ */
+public class LoadTest {
+    private static final String KEY = "load-test";
+    // 아직 START를 받지 못한 연결 수의 상한. 서버의 accept 대기열(50)이 넘쳐 SYN을 다시 보내느라 늦어지지 않게 한다.
+    private static final int CONNECT_WINDOW = 64;
+    private static final long PHASE_TIMEOUT_NANOS = TimeUnit.MINUTES.toNanos(5);
+    // matches 측정에서 한 판에 두는 수
+    private static final int MATCH_MOVES = 20;
+    // idle 측정에서 로컬 주소 하나로 여는 연결 수. 임시 포트(리눅스 기본 약 2만8천 개)가 모자라지 않게 127.0.0.x를 돌려 쓴다.
+    private static final int CONNECTIONS_PER_ADDRESS = 20000;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("server")) {
+            serve(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("matches")) {
+            String[] steps = (args.length > 1 ? args[1] : "500,1000,2000,4000").split(",");
+            long thinkMillis = args.length > 2 ? Long.parseLong(args[2]) : 2000;
+            String[] serverArgs = args.length > 3 ? Arrays.copyOfRange(args, 3, args.length) : new String[0];
+            System.out.println("코어 " + Runtime.getRuntime().availableProcessors() + "개, 대국당 " + MATCH_MOVES
+                    + "수, 생각 시간 " + thinkMillis + "ms, 서버 옵션 " + Arrays.toString(serverArgs));
+            for (String step : steps) {
+                matches(Integer.parseInt(step.trim()), thinkMillis, serverArgs);
+            }
+            return;
+        }
+        if (args.length > 0 && args[0].equals("idle")) {
+            String[] steps = (args.length > 1 ? args[1] : "10000,20000,30000,40000,50000").split(",");
+            List<String> serverArgs = new ArrayList<>(Arrays.asList("--nio"));
+            if (args.length > 2) serverArgs.addAll(Arrays.asList(args).subList(2, args.length));
+            idle(steps, serverArgs.toArray(new String[0]));
+            return;
+        }
+        if (args.length == 0 || !args[0].equals("soak")) {
+            System.out.println("사용법: java -cp out LoadTest soak [클라이언트 수] [대국당 수] [생각 시간 ms]");
+            System.out.println("        java -cp out LoadTest matches [대국 수 목록] [생각 시간 ms] [서버 옵션...]");
+            System.out.println("        java -cp out LoadTest idle [연결 수 목록] [서버 옵션...]");
+            return;
+        }
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) & ~1 : 10000;
+        int moves = args.length > 2 ? Math.min(Integer.parseInt(args[2]), Driver.MAX_MOVES) : 20;
+        long thinkMillis = args.length > 3 ? Long.parseLong(args[3]) : 5000;
+        System.out.println("코어 " + Runtime.getRuntime().availableProcessors() + "개, 클라이언트 " + clients
+                + "개(대국 " + clients / 2 + "개), 대국당 " + moves + "수, 생각 시간 " + thinkMillis + "ms");
+        if (OmokServer.virtualThreadFactory() == null) {
+            System.out.println("이 JDK는 가상 스레드를 지원하지 않습니다. --threads=virtual도 플랫폼 스레드로 실행됩니다.");
+        }
+        soak("platform", new String[0], clients, moves, thinkMillis);
+        soak("virtual", new String[] {"--threads=virtual"}, clients, moves, thinkMillis);
+    }
+
+    /**
+     * 한 가지 서버 옵션으로 서버를 띄우고 클라이언트를 붙여 대국을 끝까지 둔 뒤 결과 한 줄을 출력한다.
+     */
+    private static void soak(String name, String[] serverArgs, int clients, int moves, long thinkMillis)
+            throws Exception {
+        try (ServerProcess server = ServerProcess.start(serverArgs)) {
+            long[] before = server.memory();
+            Driver driver = new Driver(server.port, moves, thinkMillis);
+            long start = System.nanoTime();
+            int connected = driver.connect(clients);
+            long connectNanos = System.nanoTime() - start;
+            long[] after = server.memory();
+            if (connected < clients) {
+                System.out.println("[" + name + "] 연결 " + connected + "/" + clients + "개에서 멈췄습니다: " + driver.error);
+            }
+            start = System.nanoTime();
+            driver.play();
+            long playNanos = System.nanoTime() - start;
+            long[] rtt = driver.roundTrips();
+            System.out.printf("[%-8s] 연결 %.1fs, 힙 %.1fMB(연결당 %.1fKB), RSS %.1fMB(연결당 %.1fKB), 스레드 %d개%n",
+                    name, connectNanos / 1e9, after[0] / 1e6, (after[0] - before[0]) / 1e3 / Math.max(1, connected),
+                    after[1] / 1e3, (after[1] - before[1]) / Math.max(1.0, connected), after[2]);
+            System.out.printf("[%-8s] 수 %d개 / %.1fs, 왕복 p50 %.2fms, p99 %.2fms, 최대 %.2fms, 끊김 %d개%n",
+                    name, rtt.length, playNanos / 1e9, percentile(rtt, 0.50) / 1e6, percentile(rtt, 0.99) / 1e6,
+                    percentile(rtt, 1.0) / 1e6, driver.disconnects);
+            if (driver.finished < driver.started) {
+                System.out.println("[" + name + "] " + (driver.started - driver.finished) + "개 클라이언트가 제한 시간 안에 대국을 끝내지 못했습니다.");
+            }
+            driver.close();
+        }
+    }
+
+    /**
+     * 대국 count개를 동시에 두게 하고, 수를 두는 동안의 서버 CPU 사용량과 처리량을 한 줄로 출력한다.
+     * 코어당 대국은 "대국 수 / 평균으로 바쁜 코어 수"로, 같은 생각 시간이면 코어 하나가 감당할 대국 수의 추정이다.
+     */
+    private static void matches(int count, long thinkMillis, String[] serverArgs) throws Exception {
+        try (ServerProcess server = ServerProcess.start(serverArgs)) {
+            Driver driver = new Driver(server.port, MATCH_MOVES, thinkMillis);
+            int connected = driver.connect(count * 2);
+            if (connected < count * 2) {
+                System.out.println("[대국 " + count + "개] 연결 " + connected + "/" + count * 2 + "개에서 멈췄습니다: " + driver.error);
+            }
+            long cpuBefore = server.cpuNanos();
+            long start = System.nanoTime();
+            driver.play();
+            long playNanos = System.nanoTime() - start;
+            long cpuNanos = server.cpuNanos() - cpuBefore;
+            long[] rtt = driver.roundTrips();
+            double cores = (double) cpuNanos / playNanos;
+            System.out.printf("[대국 %5d개] 수 %d개 / %.1fs(초당 %.0f), 서버 CPU %.2f코어(수당 %.0fµs), "
+                            + "왕복 p50 %.2fms, p99 %.2fms, 코어당 대국 %.0f개%n",
+                    connected / 2, rtt.length, playNanos / 1e9, rtt.length * 1e9 / playNanos, cores,
+                    cpuNanos / 1e3 / Math.max(1, rtt.length), percentile(rtt, 0.50) / 1e6, percentile(rtt, 0.99) / 1e6,
+                    connected / 2 / Math.max(cores, 1e-3));
+            if (driver.finished < driver.started) {
+                System.out.println("[대국 " + count + "개] " + (driver.started - driver.finished) + "개 클라이언트가 제한 시간 안에 대국을 끝내지 못했습니다.");
+            }
+            driver.close();
+        }
+    }
+
+    /**
+     * 유휴 연결을 단계별 개수까지 늘리며 단계마다 서버 메모리를 한 줄씩 출력한다.
+     * 이 프로세스나 서버의 파일 수 한도, 임시 포트가 먼저 닿으면 그때까지의 값을 출력하고 멈춘다.
+     */
+    private static void idle(String[] steps, String[] serverArgs) throws Exception {
+        List<SocketChannel> channels = new ArrayList<>();
+        try (ServerProcess server = ServerProcess.start(serverArgs)) {
+            long[] base = server.memory();
+            System.out.printf("[연결      0개] 힙 %.1fMB, RSS %.1fMB, 스레드 %d개, 서버 옵션 %s%n",
+                    base[0] / 1e6, base[1] / 1e3, base[2], Arrays.toString(serverArgs));
+            String failure = null;
+            for (String step : steps) {
+                int target = Integer.parseInt(step.trim());
+                while (channels.size() < target && failure == null) {
+                    SocketChannel channel = null;
+                    try {
+                        channel = SocketChannel.open();
+                        channel.bind(new InetSocketAddress("127.0.0." + (1 + channels.size() / CONNECTIONS_PER_ADDRESS), 0));
+                        channel.connect(new InetSocketAddress("127.0.0.1", server.port));
+                        channels.add(channel);
+                    } catch (IOException e) {
+                        failure = e.getMessage();
+                        if (channel != null) channel.close();
+                    }
+                }
+                // 서버가 대기열의 연결을 다 받아 세션을 만들 때까지 기다린다.
+                long[] after = server.memory();
+                for (int i = 0; i < 50 && after[3] < base[3] + channels.size(); i++) {
+                    Thread.sleep(100);
+                    after = server.memory();
+                }
+                int n = channels.size();
+                // 서버도 파일 수 한도에 닿으면 /proc을 열지 못해 RSS와 파일 수가 -1로 온다.
+                String rss = after[1] < 0 ? "알 수 없음" : String.format("%.1fMB(연결당 %.2fKB)",
+                        after[1] / 1e3, (after[1] - base[1]) / Math.max(1.0, n));
+                System.out.printf("[연결 %6d개] 힙 %.1fMB(연결당 %.2fKB), RSS %s, 스레드 %d개, 서버 파일 %s개%n",
+                        n, after[0] / 1e6, (after[0] - base[0]) / 1e3 / Math.max(1, n), rss, after[2],
+                        after[3] < 0 ? "?" : String.valueOf(after[3]));
+                if (failure != null) {
+                    System.out.println("[연결 " + n + "개에서 멈춤] " + failure + " (목표 " + target + "개, ulimit -n을 확인하세요)");
+                    break;
+                }
+            }
+        } finally {
+            for (SocketChannel channel : channels) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {}
+            }
+        }
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        if (sorted.length == 0) return 0;
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(p * sorted.length) - (p > 0 ? 1 : 0))];
+    }
+
+    /**
+     * 자식 JVM 쪽: 서버를 띄우고, 표준 입력으로 "MEM"이 오면 GC 뒤의 힙 사용량(바이트), RSS(KB), 스레드 수,
+     * 열린 파일 수를 "MEM 힙 RSS 스레드 파일" 한 줄로, "CPU"가 오면 프로세스가 지금까지 쓴 CPU 시간(ns)을 "CPU 시간"으로 답한다.
+     * 표준 입력이 닫히면(측정 쪽이 끝나면) 종료한다.
+     */
+    private static void serve(String[] args) throws IOException {
+        Thread main = new Thread(() -> {
+            try {
+                OmokServer.main(args);
+            } catch (IOException e) {
+                System.out.println("[LOAD] 서버 시작 실패: " + e.getMessage());
+            }
+        }, "server-main");
+        main.setDaemon(true);
+        main.start();
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (line.equals("MEM")) {
+                System.gc();
+                Runtime rt = Runtime.getRuntime();
+                System.out.println("MEM " + (rt.totalMemory() - rt.freeMemory()) + " " + residentKb() + " "
+                        + ManagementFactory.getThreadMXBean().getThreadCount() + " " + openFiles());
+            } else if (line.equals("CPU")) {
+                java.lang.management.OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+                System.out.println("CPU " + (os instanceof com.sun.management.OperatingSystemMXBean
+                        ? ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime() : -1));
+            }
+        }
+        System.exit(0);
+    }
+
+    /** /proc/self/fd의 항목 수. 리눅스가 아니면 -1. */
+    private static long openFiles() {
+        String[] fds = new File("/proc/self/fd").list();
+        return fds == null ? -1 : fds.length;
+    }
+
+    /** /proc/self/status의 VmRSS(KB). 리눅스가 아니면 -1. */
+    private static long residentKb() {
+        try (BufferedReader r = new BufferedReader(new FileReader("/proc/self/status"))) {
+            String line;
+            while ((line = r.readLine()) != null) {
+                if (line.startsWith("VmRSS:")) return Long.parseLong(line.replaceAll("[^0-9]", ""));
+            }
+        } catch (IOException | NumberFormatException ignored) {}
+        return -1;
+    }
+
+    /**
+     * 임시 디렉터리에서 자식 JVM으로 띄운 서버. 닫으면 프로세스를 끝내고 디렉터리를 지운다.
+     */
+    private static class ServerProcess implements Closeable {
+        final Process process;
+        final int port;
+        final File dir;
+        final BlockingQueue<String> replies = new LinkedBlockingQueue<>();
+        final Writer control;
+
+        private ServerProcess(Process process, int port, File dir) {
+            this.process = process;
+            this.port = port;
+            this.dir = dir;
+            this.control = new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8);
+            // 서버 로그는 버리고 MEM/CPU 답만 모은다. 읽지 않으면 파이프가 차서 서버가 멈춘다.
+            Thread reader = new Thread(() -> {
+                try (BufferedReader r = new BufferedReader(new InputStreamReader(process.getInputStream(),
+                        StandardCharsets.UTF_8))) {
+                    String line;
+                    while ((line = r.readLine()) != null) {
+                        if (line.startsWith("MEM ") || line.startsWith("CPU ")) replies.add(line);
+                    }
+                } catch (IOException ignored) {}
+            }, "server-output");
+            reader.setDaemon(true);
+            reader.start();
+        }
+
+        static ServerProcess start(String[] serverArgs) throws IOException, InterruptedException {
+            int port;
+            try (ServerSocket probe = new ServerSocket(0)) {
+                port = probe.getLocalPort();
+            }
+            File dir = Files.createTempDirectory("omok-load").toFile();
+            // 자식은 임시 디렉터리에서 돌므로 클래스 경로를 절대 경로로 바꿔 넘긴다.
+            StringJoiner classPath = new StringJoiner(File.pathSeparator);
+            for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+                classPath.add(new File(entry).getAbsolutePath());
+            }
+            List<String> command = new ArrayList<>(Arrays.asList(
+                    new File(System.getProperty("java.home"), "bin/java").getPath(),
+                    "-cp", classPath.toString(),
+                    "LoadTest", "server", "--port=" + port, "--node=0/1", "--gateway-key=" + KEY));
+            command.addAll(Arrays.asList(serverArgs));
+            Process process = new ProcessBuilder(command).directory(dir).redirectErrorStream(true).start();
+            ServerProcess server = new ServerProcess(process, port, dir);
+            // 포트가 열릴 때까지 기다린다.
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+            while (true) {
+                try (Socket s = new Socket()) {
+                    s.connect(new InetSocketAddress("localhost", port), 1000);
+                    return server;
+                } catch (IOException e) {
+                    if (!process.isAlive() || System.nanoTime() > deadline) {
+                        server.close();
+                        throw new IOException("서버가 시작되지 않았습니다.");
+                    }
+                    Thread.sleep(100);
+                }
+            }
+        }
+
+        /** {힙 사용량(바이트), RSS(KB), 스레드 수, 열린 파일 수} */
+        long[] memory() throws IOException, InterruptedException {
+            String[] parts = ask("MEM");
+            return new long[] {Long.parseLong(parts[1]), Long.parseLong(parts[2]), Long.parseLong(parts[3]),
+                    Long.parseLong(parts[4])};
+        }
+
+        /** 서버 프로세스가 지금까지 쓴 CPU 시간(ns) */
+        long cpuNanos() throws IOException, InterruptedException {
+            return Long.parseLong(ask("CPU")[1]);
+        }
+
+        private String[] ask(String command) throws IOException, InterruptedException {
+            control.write(command + "\n");
+            control.flush();
+            String reply = replies.poll(60, TimeUnit.SECONDS);
+            if (reply == null) throw new IOException("서버가 " + command + "에 답하지 않습니다.");
+            return reply.split(" ");
+        }
+
+        @Override
+        public void close() {
+            try {
+                control.close();
+            } catch (IOException ignored) {}
+            process.destroy();
+            try {
+                if (!process.waitFor(10, TimeUnit.SECONDS)) process.destroyForcibly().waitFor();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            File[] files = dir.listFiles();
+            if (files != null) {
+                for (File f : files) f.delete();
+            }
+            dir.delete();
+        }
+    }
+
+    /**
+     * 셀렉터 스레드 하나로 여러 클라이언트를 구동한다. 모든 메서드는 부른 스레드에서 셀렉터를 돌리며 끝날 때까지 기다린다.
+     * 메시지는 텍스트 프로토콜(writeUTF 형식: 2바이트 길이 + 본문)로 주고받는다.
+     */
+    private static class Driver {
+        // 흑과 백이 3칸씩 떨어진 격자에 번갈아 두므로 줄이 생기지 않는다. 금수도 승리도 나오지 않는다.
+        static final int MAX_MOVES = 50;
+
+        final InetSocketAddress address;
+        final int movesPerGame;
+        final long thinkNanos;
+        final Selector selector;
+        final List<Client> clients = new ArrayList<>();
+        final PriorityQueue<Client> due = new PriorityQueue<>(Comparator.comparingLong(c -> c.dueAt));
+        final Random random = new Random(1);
+        long[] rtt = new long[1024];
+        int rttCount;
+        int started;
+        // 연결했지만 아직 START도 받지 못했고 끊기지도 않은 클라이언트 수
+        int connecting;
+        int finished;
+        int disconnects;
+        boolean go;
+        String error;
+
+        Driver(int port, int movesPerGame, long thinkMillis) throws IOException {
+            this.address = new InetSocketAddress("localhost", port);
+            this.movesPerGame = movesPerGame;
+            this.thinkNanos = TimeUnit.MILLISECONDS.toNanos(thinkMillis);
+            this.selector = Selector.open();
+        }
+
+        /**
+         * count개의 클라이언트를 더 연결해 짝이 지어질(START를 받을) 때까지 기다린다. 수는 아직 두지 않는다.
+         *
+         * @return 짝이 지어진 클라이언트 수 (중간에 연결할 수 없으면 count보다 작다)
+         */
+        int connect(int count) throws IOException {
+            int target = started + count;
+            int opened = 0;
+            long deadline = System.nanoTime() + PHASE_TIMEOUT_NANOS;
+            while (started < target && System.nanoTime() < deadline) {
+                while (error == null && opened < count && connecting < CONNECT_WINDOW) {
+                    try {
+                        open();
+                        opened++;
+                    } catch (IOException e) {
+                        error = e.getMessage();
+                    }
+                }
+                if (error != null && connecting == 0) break;
+                poll(100);
+            }
+            if (started < target && error == null) error = "시간 초과";
+            return started - (target - count);
+        }
+
+        /**
+         * 모든 방에서 movesPerGame수를 둘 때까지 수를 둔다.
+         */
+        void play() throws IOException {
+            go = true;
+            for (Client c : clients) c.maybeMove();
+            long deadline = System.nanoTime() + PHASE_TIMEOUT_NANOS;
+            while (finished < started && disconnects == 0 && System.nanoTime() < deadline) {
+                poll(100);
+            }
+        }
+
+        long[] roundTrips() {
+            long[] sorted = Arrays.copyOf(rtt, rttCount);
+            Arrays.sort(sorted);
+            return sorted;
+        }
+
+        void close() throws IOException {
+            for (Client c : clients) c.channel.close();
+            selector.close();
+        }
+
+        private void open() throws IOException {
+            SocketChannel channel = SocketChannel.open();
+            try {
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                Client c = new Client(channel, "load" + clients.size() + "-" + System.nanoTime());
+                channel.register(selector, SelectionKey.OP_CONNECT, c);
+                channel.connect(address);
+                clients.add(c);
+                connecting++;
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        /**
+         * 셀렉터를 한 번 돌리고, 생각 시간이 끝난 클라이언트의 수를 보낸다.
+         */
+        private void poll(long maxWaitMillis) throws IOException {
+            long wait = maxWaitMillis;
+            if (!due.isEmpty()) {
+                wait = Math.max(1, Math.min(wait, (due.peek().dueAt - System.nanoTime()) / 1_000_000));
+            }
+            selector.select(wait);
+            for (Iterator<SelectionKey> it = selector.selectedKeys().iterator(); it.hasNext(); ) {
+                SelectionKey key = it.next();
+                it.remove();
+                Client c = (Client) key.attachment();
+                try {
+                    if (key.isConnectable()) c.connected(key);
+                    if (key.isValid() && key.isReadable()) c.read();
+                    if (key.isValid() && key.isWritable()) c.flush();
+                } catch (IOException e) {
+                    c.fail(e);
+                }
+            }
+            long now = System.nanoTime();
+            while (!due.isEmpty() && due.peek().dueAt <= now) {
+                Client c = due.poll();
+                try {
+                    c.sendMove();
+                } catch (IOException e) {
+                    c.fail(e);
+                }
+            }
+        }
+
+        private void recordRoundTrip(long nanos) {
+            if (rttCount == rtt.length) rtt = Arrays.copyOf(rtt, rtt.length * 2);
+            rtt[rttCount++] = nanos;
+        }
+
+        private class Client {
+            final SocketChannel channel;
+            final String name;
+            ByteBuffer in = ByteBuffer.allocate(512);
+            ByteBuffer out = ByteBuffer.allocate(0);
+            SelectionKey key;
+            int slot = -1;
+            int turn;
+            int moves;
+            // 내가 둔 수. 시간 초과로 차례를 건너뛰면 번갈아 두지 않으므로 전체 수와 따로 센다.
+            int ownMoves;
+            boolean started;
+            boolean closed;
+            long sentAt;
+            long dueAt;
+
+            Client(SocketChannel channel, String name) {
+                this.channel = channel;
+                this.name = name;
+            }
+
+            void connected(SelectionKey key) throws IOException {
+                this.key = key;
+                channel.finishConnect();
+                key.interestOps(SelectionKey.OP_READ);
+                send("HELLO DEADLINE");
+                send("AUTH GATEWAY " + name + " " + KEY);
+            }
+
+            void read() throws IOException {
+                if (channel.read(in) < 0) throw new EOFException("서버가 연결을 닫았습니다.");
+                in.flip();
+                while (in.remaining() >= 2) {
+                    int length = in.getShort(in.position()) & 0xFFFF;
+                    if (in.remaining() < 2 + length) break;
+                    byte[] body = new byte[length];
+                    in.position(in.position() + 2);
+                    in.get(body);
+                    handle(new String(body, StandardCharsets.UTF_8));
+                }
+                in.compact();
+                if (!in.hasRemaining()) {
+                    in.flip();
+                    in = ByteBuffer.allocate(in.capacity() * 2).put(in);
+                }
+            }
+
+            void handle(String msg) throws IOException {
+                String[] parts = msg.split(" ");
+                switch (parts[0]) {
+                    case "AUTH_OK":
+                        slot = Integer.parseInt(parts[1]);
+                        break;
+                    case "AUTH_FAIL":
+                    case "SERVER_FULL":
+                        throw new IOException(msg);
+                    case "START":
+                        if (!started) {
+                            started = true;
+                            Driver.this.started++;
+                            connecting--;
+                        }
+                        turn = Integer.parseInt(parts[1]);
+                        moves = 0;
+                        ownMoves = 0;
+                        maybeMove();
+                        break;
+                    case "TURN":
+                        turn = Integer.parseInt(parts[1]);
+                        // 보낸 수의 MOVE보다 상대 차례가 먼저 왔으면 시간 초과로 수가 받아들여지지 않았다.
+                        if (turn != slot) sentAt = 0;
+                        maybeMove();
+                        break;
+                    case "MOVE":
+                        moves++;
+                        if (Integer.parseInt(parts[3]) == slot) {
+                            ownMoves++;
+                            if (sentAt != 0) recordRoundTrip(System.nanoTime() - sentAt);
+                            sentAt = 0;
+                        }
+                        if (moves == movesPerGame) finished++;
+                        break;
+                    default:
+                        break;
+                }
+            }
+
+            void maybeMove() {
+                if (!go || !started || closed || turn != slot || sentAt != 0 || dueAt != 0
+                        || moves >= movesPerGame || ownMoves >= MAX_MOVES / 2) {
+                    return;
+                }
+                // 생각 시간을 0.5~1.5배로 흩어, 모든 방의 수가 한순간에 몰리지 않게 한다.
+                dueAt = System.nanoTime() + thinkNanos / 2 + (long) (random.nextDouble() * thinkNanos);
+                due.add(this);
+            }
+
+            void sendMove() throws IOException {
+                dueAt = 0;
+                if (closed || turn != slot) return;
+                // 내 k번째 수는 (3a, 3b) 격자(백은 한 칸씩 비껴 난 격자)의 k번째 칸에 둔다.
+                int k = ownMoves;
+                int offset = slot == 1 ? 0 : 1;
+                sentAt = System.nanoTime();
+                send("MOVE " + (3 * (k / 5) + offset) + " " + (3 * (k % 5) + offset));
+            }
+
+            void send(String msg) throws IOException {
+                byte[] body = msg.getBytes(StandardCharsets.UTF_8);
+                ByteBuffer frame = ByteBuffer.allocate(out.remaining() + 2 + body.length);
+                frame.put(out).putShort((short) body.length).put(body).flip();
+                out = frame;
+                flush();
+            }
+
+            void flush() throws IOException {
+                channel.write(out);
+                if (key != null && key.isValid()) {
+                    key.interestOps(out.hasRemaining()
+                            ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+                }
+            }
+
+            void fail(IOException e) {
+                if (closed) return;
+                closed = true;
+                disconnects++;
+                if (!started) connecting--;
+                if (error == null) error = e.getMessage();
+                try {
+                    channel.close();
+                } catch (IOException ignored) {}
+            }
+        }
+    }
+}
@@ -0,0 +1,261 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * MatchArchive
+ * - 경기 전체(두 플레이어, 결과, 시간 제한, 모든 수)를 바이너리로 덧붙여 저장하는 경기 보관소
+ * - 기록은 덧붙이기만 하고 수정하지 않는다. 서버가 기록 도중 죽어 마지막 레코드가 잘려도
+ *   읽을 때 그 레코드만 무시된다.
+ * - 읽기는 파일을 메모리 매핑해서 순차로 훑으므로 수백만 경기도 빠르게 순회할 수 있다.
+ *
+ * 파일 형식 (빅엔디언):
+ * - 헤더: "OMKA"(4바이트) + 버전(int)
+ * - 레코드: 길이(int, 이 필드 제외) + 시각(long, epoch ms) + 흑 이름 + 백 이름
+ *           + 결과(byte) + 플래그(byte) + 시간 제한(short, 초) + 수 개수(short) + 수 목록(short × 개수)
+ * - 이름: 길이(short) + UTF-8 바이트
+ * - 수 하나: 상위 바이트 = 플레이어 ID(1=흑, 2=백), 하위 바이트 = x * 15 + y
+ */
+public class MatchArchive {
+    public static final byte RESULT_UNKNOWN = 0;
+    public static final byte RESULT_BLACK_WIN = 1;
+    public static final byte RESULT_WHITE_WIN = 2;
+
+    /** record.txt에서 옮겨온 기록: 색을 알 수 없어 흑/백 자리에 승자/패자가 들어 있다. */
+    public static final byte FLAG_LEGACY = 1;
+
+    private static final int MAGIC = 0x4F4D4B41; // "OMKA"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final long MAP_WINDOW = 64L * 1024 * 1024;
+
+    private final File file;
+    // 덧붙이기는 서버의 기록 스레드(record-writer)가 하고, 시작할 때의 가져오기(importLegacy)와 겹치지 않게 잠근다.
+    // 같은 파일을 쓰는 다른 노드와는 openForAppend()의 파일 잠금으로 나눈다.
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    public MatchArchive(File file) {
+        this.file = file;
+    }
+
+    public boolean exists() {
+        return file.exists() && file.length() >= HEADER_SIZE;
+    }
+
+    /**
+     * 보관소에 저장된 경기 하나
+     */
+    public static class MatchRecord {
+        public final long timestamp;
+        public final String blackName;
+        public final String whiteName;
+        public final byte result;
+        public final byte flags;
+        public final int timeLimit;
+        public final short[] moves;
+
+        public MatchRecord(long timestamp, String blackName, String whiteName,
+                           byte result, byte flags, int timeLimit, short[] moves) {
+            this.timestamp = timestamp;
+            this.blackName = blackName;
+            this.whiteName = whiteName;
+            this.result = result;
+            this.flags = flags;
+            this.timeLimit = timeLimit;
+            this.moves = moves;
+        }
+
+        public static short encodeMove(int x, int y, int playerId) {
+            return (short) ((playerId << 8) | (x * 15 + y));
+        }
+
+        public static int moveX(short move) {
+            return (move & 0xFF) / 15;
+        }
+
+        public static int moveY(short move) {
+            return (move & 0xFF) % 15;
+        }
+
+        public static int movePlayer(short move) {
+            return (move >> 8) & 0xFF;
+        }
+    }
+
+    /**
+     * 경기 하나를 파일 끝에 덧붙인다. 레코드 하나를 버퍼 하나로 만들어 한 번에 쓴다.
+     */
+    public void append(MatchRecord record) throws IOException {
+        writeLock.lock();
+        try (FileChannel channel = openForAppend()) {
+            write(channel, encode(record));
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private FileChannel openForAppend() throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        // 클러스터의 노드들이 같은 보관소에 덧붙이므로 헤더 확인과 쓰기를 파일 잠금으로 묶는다.
+        // 잠금은 채널을 닫을 때 풀린다.
+        channel.lock();
+        if (channel.size() == 0) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).flip();
+            write(channel, header);
+        }
+        return channel;
+    }
+
+    private static void write(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static ByteBuffer encode(MatchRecord record) {
+        byte[] black = record.blackName.getBytes(StandardCharsets.UTF_8);
+        byte[] white = record.whiteName.getBytes(StandardCharsets.UTF_8);
+        int length = 8 + 2 + black.length + 2 + white.length + 1 + 1 + 2 + 2 + record.moves.length * 2;
+        ByteBuffer buffer = ByteBuffer.allocate(4 + length);
+        buffer.putInt(length);
+        buffer.putLong(record.timestamp);
+        buffer.putShort((short) black.length).put(black);
+        buffer.putShort((short) white.length).put(white);
+        buffer.put(record.result);
+        buffer.put(record.flags);
+        buffer.putShort((short) record.timeLimit);
+        buffer.putShort((short) record.moves.length);
+        for (short move : record.moves) {
+            buffer.putShort(move);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * 보관소의 모든 경기를 파일 순서대로 읽어 consumer에 넘긴다.
+     * 파일을 MAP_WINDOW 크기씩 메모리 매핑하며, 레코드가 창 경계에 걸치면 그 위치부터 다시 매핑한다.
+     *
+     * @return 읽은 경기 수
+     */
+    public long forEach(Consumer<MatchRecord> consumer) throws IOException {
+        if (!exists()) return 0;
+        long count = 0;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            if (header.getInt() != MAGIC) {
+                throw new IOException("경기 보관소 형식이 아닙니다: " + file);
+            }
+
+            long offset = HEADER_SIZE;
+            MappedByteBuffer window = null;
+            long windowStart = 0;
+            while (offset + 4 <= size) {
+                if (window == null || offset + 4 > windowStart + window.limit()) {
+                    windowStart = offset;
+                    window = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(MAP_WINDOW, size - offset));
+                }
+                int length = window.getInt((int) (offset - windowStart));
+                if (length <= 0 || offset + 4 + length > size) break; // 잘린 마지막 레코드
+                if (offset + 4 + length > windowStart + window.limit()) {
+                    windowStart = offset;
+                    window = channel.map(FileChannel.MapMode.READ_ONLY, offset,
+                            Math.min(Math.max(MAP_WINDOW, 4L + length), size - offset));
+                }
+                window.position((int) (offset - windowStart) + 4);
+                consumer.accept(readRecord(window));
+                count++;
+                offset += 4 + length;
+            }
+        }
+        return count;
+    }
+
+    private static MatchRecord readRecord(ByteBuffer buf) {
+        long timestamp = buf.getLong();
+        String black = readName(buf);
+        String white = readName(buf);
+        byte result = buf.get();
+        byte flags = buf.get();
+        int timeLimit = buf.getShort() & 0xFFFF;
+        short[] moves = new short[buf.getShort() & 0xFFFF];
+        for (int i = 0; i < moves.length; i++) {
+            moves[i] = buf.getShort();
+        }
+        return new MatchRecord(timestamp, black, white, result, flags, timeLimit, moves);
+    }
+
+    private static String readName(ByteBuffer buf) {
+        byte[] bytes = new byte[buf.getShort() & 0xFFFF];
+        buf.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 예전 record.txt("시각 - A 승리 / B 패배" 또는 "시각 - A 승리")를 보관소로 옮긴다.
+     * 수 목록과 색은 남아 있지 않으므로 FLAG_LEGACY를 붙이고 승자를 흑 자리에 둔다.
+     *
+     * @return 옮긴 경기 수
+     */
+    public int importLegacy(File recordFile) throws IOException {
+        if (!recordFile.exists()) return 0;
+        int imported = 0;
+        writeLock.lock();
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(
+                new FileInputStream(recordFile), StandardCharsets.UTF_8));
+             FileChannel channel = openForAppend()) {
+            // 함께 뜬 다른 노드가 이미 옮겼다.
+            if (channel.size() > HEADER_SIZE) return 0;
+            String line;
+            while ((line = br.readLine()) != null) {
+                int sep = line.indexOf(" - ");
+                if (sep == -1) continue;
+                String winner = "";
+                String loser = "";
+                for (String part : line.substring(sep + 3).split(" / ")) {
+                    if (part.endsWith(" 승리")) winner = part.substring(0, part.length() - 3).trim();
+                    else if (part.endsWith(" 패배")) loser = part.substring(0, part.length() - 3).trim();
+                }
+                if (winner.isEmpty()) continue;
+                long timestamp;
+                try {
+                    timestamp = LocalDateTime.parse(line.substring(0, sep).trim())
+                            .atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+                } catch (DateTimeParseException e) {
+                    timestamp = 0;
+                }
+                write(channel, encode(new MatchRecord(timestamp, winner, loser, RESULT_BLACK_WIN, FLAG_LEGACY,
+                        GameRoom.TIME_LIMIT, new short[0])));
+                imported++;
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        return imported;
+    }
+
+    /**
+     * 보관소 요약 도구: java -cp out MatchArchive [matches.dat]
+     * 전체 경기 수, 수 개수 합계, 읽기 속도를 출력한다.
+     */
+    public static void main(String[] args) throws IOException {
+        MatchArchive archive = new MatchArchive(new File(args.length > 0 ? args[0] : "matches.dat"));
+        long[] totalMoves = {0};
+        long start = System.nanoTime();
+        long games = archive.forEach(r -> totalMoves[0] += r.moves.length);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("경기 %d개, 수 %d개, %.3f초 (%.0f 경기/초)%n",
+                games, totalMoves[0], seconds, seconds > 0 ? games / seconds : 0.0);
+    }
+}
@@ -0,0 +1,208 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * NioSession
+ * - 셀렉터 기반 전송(NioTransport)에서 클라이언트 연결 하나를 나타내는 세션 클래스
+ * - DataOutputStream.writeUTF와 같은 형식(2바이트 길이 + modified UTF-8)의 프레임을 읽고 쓰므로
+ *   기존 NetworkHandler 클라이언트가 그대로 접속할 수 있다.
+ * - 읽기/쓰기는 이 세션이 등록된 이벤트 루프 스레드에서만 일어나고,
+ *   sendMessage()는 송신 큐(OutboundQueue)에 넣고 이벤트 루프를 깨우기만 하므로 호출한 스레드를 막지 않는다.
+ *   큐가 넘치면 ClientHandler와 같은 정책으로 연결을 끊는다.
+ * - 바이너리 프로토콜이 협상되면 수신·송신 모두 BinaryProtocol 프레임으로 바뀐다.
+ */
+public class NioSession extends ClientSession {
+    private static final int INITIAL_READ_BUFFER = 256;
+    // 바이너리 프레임(길이 varint 최대 3바이트 + 페이로드)이 writeUTF 프레임(2 + 65535)보다 조금 크다.
+    private static final int MAX_FRAME = 3 + BinaryProtocol.MAX_PAYLOAD;
+    private static final int WRITE_BATCH = 64;
+
+    private final SocketChannel channel;
+    private final NioTransport.EventLoop loop;
+    private final OutboundQueue outbound = new OutboundQueue();
+    // 이벤트 루프 스레드만 사용: 송신 큐에서 꺼내 한 버퍼로 묶었지만 아직 다 못 쓴 프레임들
+    private ByteBuffer pendingWrite;
+    // 이벤트 루프 스레드만 사용: "HELLO BIN1" 답장을 쓴 다음부터 바이너리 프레임으로 인코딩한다.
+    private boolean binaryOutbound = false;
+    private final List<String> writeBatch = new ArrayList<>(WRITE_BATCH);
+    private final AtomicBoolean writeRequested = new AtomicBoolean(false);
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+    private SelectionKey key;
+    // 유휴 연결의 메모리를 작게 유지하기 위해 작은 버퍼로 시작하고, 큰 프레임이 올 때만 키운다.
+    private ByteBuffer readBuffer = ByteBuffer.allocate(INITIAL_READ_BUFFER);
+
+    NioSession(SocketChannel channel, NioTransport.EventLoop loop, OmokServer server) {
+        super(server);
+        this.channel = channel;
+        this.loop = loop;
+    }
+
+    void setKey(SelectionKey key) {
+        this.key = key;
+    }
+
+    @Override
+    protected int pendingMessages() {
+        return outbound.size();
+    }
+
+    @Override
+    protected String remoteHost() {
+        java.net.InetAddress address = channel.socket().getInetAddress();
+        return address == null ? "" : address.getHostAddress();
+    }
+
+    /**
+     * 읽을 수 있는 데이터를 모두 읽고, 완성된 프레임마다 handleMessage를 호출한다.
+     * 이벤트 루프 스레드에서만 호출된다.
+     */
+    void onReadable() {
+        try {
+            int n = channel.read(readBuffer);
+            if (n == -1) {
+                close();
+                return;
+            }
+            readBuffer.flip();
+            while (true) {
+                if (isBinaryProtocol()) {
+                    int size = BinaryProtocol.frameSize(readBuffer);
+                    if (size == -1) break;
+                    handleFrame(BinaryProtocol.takeFrame(readBuffer, size));
+                } else {
+                    if (readBuffer.remaining() < 2) break;
+                    int length = readBuffer.getShort(readBuffer.position()) & 0xFFFF;
+                    if (readBuffer.remaining() < 2 + length) break;
+                    byte[] frame = new byte[2 + length];
+                    readBuffer.get(frame);
+                    handleMessage(decode(frame));
+                }
+            }
+            readBuffer.compact();
+            growIfFull();
+        } catch (IOException | RuntimeException e) {
+            // 잘못된 프레임이나 메시지는 ClientHandler와 마찬가지로 연결 종료로 처리한다.
+            close();
+        }
+    }
+
+    /**
+     * 버퍼가 가득 찼는데 프레임이 완성되지 않았으면 프레임 최대 크기까지 버퍼를 키우고,
+     * 비었으면 다시 작은 버퍼로 되돌린다.
+     */
+    private void growIfFull() {
+        if (readBuffer.position() == 0 && readBuffer.capacity() > INITIAL_READ_BUFFER) {
+            readBuffer = ByteBuffer.allocate(INITIAL_READ_BUFFER);
+        } else if (!readBuffer.hasRemaining() && readBuffer.capacity() < MAX_FRAME) {
+            ByteBuffer bigger = ByteBuffer.allocate(Math.min(MAX_FRAME, readBuffer.capacity() * 4));
+            readBuffer.flip();
+            bigger.put(readBuffer);
+            readBuffer = bigger;
+        }
+    }
+
+    /**
+     * 송신 큐에 쌓인 메시지를 WRITE_BATCH개씩 한 버퍼로 묶어 소켓 버퍼가 받아주는 만큼 쓴다.
+     * 모두 썼으면 OP_WRITE 관심을 끈다. 이벤트 루프 스레드에서만 호출된다.
+     */
+    void onWritable() {
+        try {
+            while (true) {
+                if (pendingWrite == null) {
+                    if (outbound.drainTo(writeBatch, WRITE_BATCH) == 0) break;
+                    pendingWrite = encodeBatch(writeBatch);
+                    ServerMetrics.SENT.add(writeBatch.size());
+                    writeBatch.clear();
+                }
+                channel.write(pendingWrite);
+                if (pendingWrite.hasRemaining()) return; // 소켓 버퍼가 가득 참, 다음 OP_WRITE를 기다린다.
+                pendingWrite = null;
+                ServerMetrics.FLUSHES.increment();
+            }
+            key.interestOps(SelectionKey.OP_READ);
+            writeRequested.set(false);
+            // 관심을 끄는 사이에 다른 스레드가 넣은 메시지가 있으면 다시 요청한다.
+            if (!outbound.isEmpty()) requestWrite();
+        } catch (IOException e) {
+            close();
+        }
+    }
+
+    /**
+     * 메시지를 송신 큐에 넣는다. 어느 스레드에서나 호출할 수 있다.
+     * 큐가 넘치면 이벤트 루프에 연결 종료를 요청한다. 호출한 스레드가 방 락을 잡고 있을 수 있으므로
+     * 여기서 바로 close()(자리 정리)를 부르지 않는다.
+     */
+    @Override
+    public void sendMessage(String msg) {
+        if (closed.get()) return;
+        if (!outbound.offer(msg)) {
+            System.out.println("플레이어 " + getPlayerId() + " 송신 큐 초과, 연결을 끊습니다.");
+            loop.requestClose(this);
+            return;
+        }
+        requestWrite();
+    }
+
+    private void requestWrite() {
+        if (writeRequested.compareAndSet(false, true)) {
+            loop.requestWrite(this);
+        }
+    }
+
+    /**
+     * 이벤트 루프가 쓰기 요청을 처리할 때 OP_WRITE 관심을 켠다.
+     */
+    void enableWrite() {
+        if (key != null && key.isValid()) {
+            key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+    }
+
+    /**
+     * 연결을 닫고 방에서 자리를 정리한다. 여러 번 호출해도 한 번만 처리된다.
+     */
+    void close() {
+        if (!closed.compareAndSet(false, true)) return;
+        if (key != null) key.cancel();
+        try {
+            channel.close();
+        } catch (IOException ignored) {}
+        outbound.close();
+        pendingWrite = null;
+        System.out.println("플레이어 " + getPlayerId() + " 연결 종료");
+        onDisconnect();
+    }
+
+    static ByteBuffer encode(String msg) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(msg.length() + 8);
+        new DataOutputStream(bytes).writeUTF(msg);
+        return ByteBuffer.wrap(bytes.toByteArray());
+    }
+
+    /**
+     * 메시지 여러 개를 writeUTF 형식(협상 후에는 바이너리) 프레임으로 이어 붙여 버퍼 하나로 만든다.
+     */
+    private ByteBuffer encodeBatch(List<String> messages) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream data = new DataOutputStream(bytes);
+        for (String msg : messages) {
+            if (binaryOutbound) {
+                BinaryProtocol.writeFrame(data, BinaryProtocol.encode(msg));
+            } else {
+                data.writeUTF(msg);
+                binaryOutbound = msg.equals("HELLO " + BinaryProtocol.VERSION);
+            }
+        }
+        return ByteBuffer.wrap(bytes.toByteArray());
+    }
+
+    static String decode(byte[] frame) throws IOException {
+        return DataInputStream.readUTF(new DataInputStream(new ByteArrayInputStream(frame)));
+    }
+}
@@ -0,0 +1,157 @@
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.nio.channels.*;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * NioTransport
+ * - 셀렉터 기반 비동기 전송 계층. 연결마다 스레드를 만들지 않고, 소수의 이벤트 루프 스레드가
+ *   모든 소켓의 읽기/쓰기를 처리한다.
+ * - 수락 스레드가 연결을 받아 이벤트 루프들에 차례로 나눠주고,
+ *   각 연결은 NioSession으로 감싸져 기존과 같은 방 핸들러(handleMove/handleChat/handleReset)를 호출한다.
+ * - 유휴 연결은 작은 읽기 버퍼와 빈 송신 큐만 가지므로 연결 수가 늘어도 메모리가 크게 늘지 않는다.
+ */
+public class NioTransport {
+    private final OmokServer server;
+    private final int port;
+    private final EventLoop[] loops;
+
+    public NioTransport(OmokServer server, int port, int loopCount) {
+        this.server = server;
+        this.port = port;
+        this.loops = new EventLoop[Math.max(1, loopCount)];
+    }
+
+    /**
+     * 이벤트 루프 스레드들을 띄우고, 현재 스레드에서 연결 수락 루프를 실행한다.
+     */
+    public void start() throws IOException {
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new EventLoop();
+            Thread t = new Thread(loops[i], "nio-loop-" + i);
+            t.start();
+        }
+
+        ServerSocketChannel acceptor = ServerSocketChannel.open();
+        acceptor.bind(new InetSocketAddress(port), 1024);
+        System.out.println("[SERVER] 오목 서버가 시작되었습니다. (port: " + port + ", NIO 이벤트 루프 " + loops.length + "개)");
+
+        int next = 0;
+        while (true) {
+            SocketChannel channel;
+            try {
+                channel = acceptor.accept();
+            } catch (IOException e) {
+                // 파일 디스크립터가 모자라면(EMFILE) 수락이 실패한다. 서버를 끝내지 않고 잠시 뒤 다시 받는다.
+                System.out.println("연결 수락 실패: " + e.getMessage());
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                continue;
+            }
+            if (server.isFull()) {
+                System.out.println("새 연결 거부: 방 부족");
+                try {
+                    channel.write(NioSession.encode("SERVER_FULL"));
+                } catch (IOException ignored) {}
+                channel.close();
+                continue;
+            }
+            loops[next].register(channel);
+            next = (next + 1) % loops.length;
+        }
+    }
+
+    /**
+     * 셀렉터 하나를 돌리는 이벤트 루프. 등록된 세션의 읽기/쓰기를 모두 이 스레드에서 처리한다.
+     * 다른 스레드는 큐에 요청을 넣고 selector.wakeup()으로 알리기만 한다.
+     */
+    class EventLoop implements Runnable {
+        private final Selector selector;
+        private final Queue<SocketChannel> pendingChannels = new ConcurrentLinkedQueue<>();
+        private final Queue<NioSession> pendingWrites = new ConcurrentLinkedQueue<>();
+        private final Queue<NioSession> pendingCloses = new ConcurrentLinkedQueue<>();
+
+        EventLoop() throws IOException {
+            this.selector = Selector.open();
+        }
+
+        void register(SocketChannel channel) {
+            pendingChannels.offer(channel);
+            selector.wakeup();
+        }
+
+        void requestWrite(NioSession session) {
+            pendingWrites.offer(session);
+            selector.wakeup();
+        }
+
+        /**
+         * 송신 큐가 넘친 세션을 이벤트 루프 스레드에서 닫도록 요청한다.
+         */
+        void requestClose(NioSession session) {
+            pendingCloses.offer(session);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                try {
+                    selector.select();
+                    registerPending();
+                    enablePendingWrites();
+                    closePending();
+
+                    Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                    while (it.hasNext()) {
+                        SelectionKey key = it.next();
+                        it.remove();
+                        NioSession session = (NioSession) key.attachment();
+                        if (!key.isValid()) continue;
+                        if (key.isReadable()) session.onReadable();
+                        if (key.isValid() && key.isWritable()) session.onWritable();
+                    }
+                } catch (IOException e) {
+                    System.out.println("이벤트 루프 오류: " + e.getMessage());
+                }
+            }
+        }
+
+        private void registerPending() {
+            SocketChannel channel;
+            while ((channel = pendingChannels.poll()) != null) {
+                try {
+                    channel.configureBlocking(false);
+                    channel.socket().setTcpNoDelay(true);
+                    NioSession session = new NioSession(channel, this, server);
+                    session.setKey(channel.register(selector, SelectionKey.OP_READ, session));
+                    System.out.println("새 클라이언트 연결: " + channel.getRemoteAddress());
+                } catch (IOException e) {
+                    try {
+                        channel.close();
+                    } catch (IOException ignored) {}
+                }
+            }
+        }
+
+        private void closePending() {
+            NioSession session;
+            while ((session = pendingCloses.poll()) != null) {
+                session.close();
+            }
+        }
+
+        private void enablePendingWrites() {
+            NioSession session;
+            while ((session = pendingWrites.poll()) != null) {
+                session.enableWrite();
+            }
+        }
+    }
+}
@@ -0,0 +1,466 @@
+import java.io.*;
+import java.net.*;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * OmokGateway
+ * - 여러 OmokServer 노드(--node=i/N) 앞에 서는 접속 게이트웨이. 클라이언트는 지금처럼 포트 5000으로 접속한다.
+ * - 인증 전 단계(HELLO, SPECTATE, AUTH)만 게이트웨이가 읽는다. 계정 저장소, 인증 스레드, 시도 횟수 제한,
+ *   세션 토큰이 게이트웨이 한 곳에만 있으므로 노드가 몇 개든 계정이 어긋나지 않는다.
+ *   토큰은 게이트웨이의 상태 로그(gateway.snap, gateway-*.wal)에 남아 게이트웨이가 다시 떠도 쓸 수 있다.
+ * - 인증이 끝나면 노드를 골라 연결하고, 클라이언트가 보낸 HELLO를 그대로 보낸 뒤 "AUTH GATEWAY 이름 키"로
+ *   대신 인증한다. 노드의 AUTH_OK(또는 AUTH_FAIL)를 넘겨주고 나면 양방향 바이트를 그대로 옮길 뿐
+ *   프레임을 다시 해석하지 않는다. 연결 하나에 옮기는 스레드가 방향마다 하나씩 있다.
+ * - 노드 고르기
+ *   관전: 방 번호로 그 방을 가진 노드((방 번호 - 1) % 노드 수)
+ *   재접속 대기 시간 안에 어느 노드에 있던 사용자: 같은 노드 (잡아 둔 자리로 돌아가도록)
+ *   나머지: 상대를 기다리는 사람이 있는 노드, 없으면 방이 가장 적은 노드
+ *   노드 상태는 제어 연결로 STATUS_MILLIS마다 묻고("STATUS 키"), 그사이에는 보낸 연결만큼 직접 고쳐 센다.
+ *   답하지 않는 노드에는 새 사용자를 보내지 않는다.
+ * - 경기 기록은 노드들이 같은 작업 디렉터리의 record.txt와 matches.dat에 함께 덧붙이고 읽는다.
+ */
+public class OmokGateway {
+    private static final String USERS_JOURNAL_FILE = "users.journal";
+    private static final String USERS_INDEX_FILE = "users.idx";
+    private static final String LEGACY_USERS_FILE = "users.db";
+    private static final String STATE_PREFIX = "gateway";
+    private static final long STATUS_MILLIS = 500;
+    private static final int CONNECT_TIMEOUT_MILLIS = 2000;
+    // 노드가 자리를 잡아 두는 시간(GameRoom.RECONNECT_GRACE)보다 조금 길게 같은 노드로 보낸다.
+    private static final long AFFINITY_MILLIS = (GameRoom.RECONNECT_GRACE + 10) * 1000L;
+    private static final int MAX_AFFINITY = 100_000;
+    private static final int PIPE_BUFFER = 8192;
+
+    private final Node[] nodes;
+    private final String key;
+    private final UserManager userManager;
+    private final AuthService authService;
+    private final StateJournal stateJournal;
+    // 사용자 이름 -> 마지막으로 보낸 노드. routeLock을 잡고 바꾼다.
+    private final Map<String, Affinity> affinity = new ConcurrentHashMap<>();
+    private final ReentrantLock routeLock = new ReentrantLock();
+    private ThreadFactory pipeThreads = Thread::new;
+
+    private static class Node {
+        final int index;
+        final InetSocketAddress address;
+        // 마지막 STATUS 답과, 그 뒤 게이트웨이가 보낸 연결로 고친 값. routeLock을 잡고 읽고 쓴다.
+        boolean alive = false;
+        int rooms;
+        int waiting;
+        boolean full;
+
+        Node(int index, InetSocketAddress address) {
+            this.index = index;
+            this.address = address;
+        }
+    }
+
+    private static class Affinity {
+        final int node;
+        int connections;
+        long leftAt;
+
+        Affinity(int node) {
+            this.node = node;
+        }
+    }
+
+    OmokGateway(InetSocketAddress[] addresses, String key) {
+        nodes = new Node[addresses.length];
+        for (int i = 0; i < addresses.length; i++) {
+            nodes[i] = new Node(i, addresses[i]);
+        }
+        this.key = key;
+        userManager = new UserManager(new File(USERS_JOURNAL_FILE), new File(USERS_INDEX_FILE));
+        authService = new AuthService(userManager, Runtime.getRuntime().availableProcessors());
+        stateJournal = new StateJournal(new File("."), STATE_PREFIX);
+        authService.setJournal(stateJournal);
+        if (userManager.size() == 0) {
+            try {
+                int imported = userManager.importLegacy(new File(LEGACY_USERS_FILE));
+                if (imported > 0) {
+                    System.out.println("[GATEWAY] users.db의 계정 " + imported + "개를 " + USERS_JOURNAL_FILE + "로 옮겼습니다.");
+                }
+            } catch (IOException e) {
+                System.out.println("[GATEWAY] users.db 가져오기 실패: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 상태 로그에서 세션 토큰을 되살리고 토큰 기록을 시작한다. 연결을 받기 전에 부른다.
+     */
+    void recoverTokens() {
+        try {
+            StateJournal.State state = stateJournal.recover();
+            authService.restoreTokens(state.tokens.values());
+            if (!state.tokens.isEmpty()) {
+                System.out.println("[GATEWAY] 세션 토큰 " + state.tokens.size() + "개를 되살렸습니다.");
+            }
+            stateJournal.start(() -> {
+                StateJournal.State snapshot = new StateJournal.State();
+                authService.exportTokens(snapshot.tokens);
+                return snapshot;
+            });
+        } catch (IOException e) {
+            System.out.println("[GATEWAY] 상태 로그를 쓸 수 없습니다. 재시작하면 토큰이 사라집니다: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 노드 상태 확인을 시작하고 포트에서 클라이언트 연결을 받는다.
+     */
+    void start(int port) throws IOException {
+        Thread poller = new Thread(this::pollStatus, "gateway-status");
+        poller.setDaemon(true);
+        poller.start();
+        try (ServerSocket serverSocket = new ServerSocket(port)) {
+            System.out.println("[GATEWAY] 게이트웨이가 시작되었습니다. (port: " + port + ", 노드 " + nodes.length + "개)");
+            while (true) {
+                Socket client = serverSocket.accept();
+                startThread(() -> serve(client), "gateway-session");
+            }
+        }
+    }
+
+    private Thread startThread(Runnable task, String name) {
+        Thread t = pipeThreads.newThread(task);
+        t.setName(name);
+        t.start();
+        return t;
+    }
+
+    /**
+     * 노드마다 제어 연결을 하나씩 열어 두고 STATUS_MILLIS마다 상태를 묻는다. 실패한 노드는 다음 차례에 다시 연결한다.
+     */
+    private void pollStatus() {
+        Socket[] sockets = new Socket[nodes.length];
+        DataInputStream[] ins = new DataInputStream[nodes.length];
+        DataOutputStream[] outs = new DataOutputStream[nodes.length];
+        while (true) {
+            for (Node node : nodes) {
+                int i = node.index;
+                try {
+                    if (sockets[i] == null) {
+                        sockets[i] = new Socket();
+                        sockets[i].connect(node.address, CONNECT_TIMEOUT_MILLIS);
+                        sockets[i].setSoTimeout(CONNECT_TIMEOUT_MILLIS);
+                        sockets[i].setTcpNoDelay(true);
+                        ins[i] = new DataInputStream(new BufferedInputStream(sockets[i].getInputStream()));
+                        outs[i] = new DataOutputStream(sockets[i].getOutputStream());
+                    }
+                    outs[i].writeUTF("STATUS " + key);
+                    String reply = ins[i].readUTF();
+                    if (!reply.startsWith("STATUS ")) throw new IOException("노드 응답 오류: " + reply);
+                    String[] parts = reply.split(" ");
+                    routeLock.lock();
+                    try {
+                        if (!node.alive) System.out.println("[GATEWAY] 노드 " + i + " 연결됨: " + node.address);
+                        node.alive = true;
+                        node.rooms = Integer.parseInt(parts[1]);
+                        node.waiting = Integer.parseInt(parts[2]);
+                        node.full = parts[3].equals("1");
+                    } finally {
+                        routeLock.unlock();
+                    }
+                } catch (IOException | RuntimeException e) {
+                    if (sockets[i] != null) {
+                        try {
+                            sockets[i].close();
+                        } catch (IOException ignored) {}
+                        sockets[i] = null;
+                    }
+                    routeLock.lock();
+                    try {
+                        if (node.alive) System.out.println("[GATEWAY] 노드 " + i + " 응답 없음: " + node.address);
+                        node.alive = false;
+                    } finally {
+                        routeLock.unlock();
+                    }
+                }
+            }
+            try {
+                Thread.sleep(STATUS_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 클라이언트 연결 하나를 처리한다. 인증까지는 게이트웨이가 메시지를 읽고, 이후에는 노드와 바이트를 그대로 주고받는다.
+     */
+    private void serve(Socket client) {
+        String host = client.getInetAddress().getHostAddress();
+        try {
+            client.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(client.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(client.getOutputStream()));
+            String hello = null;
+            boolean binary = false;
+            boolean sessionTokens = false;
+            int spectateRoomId = -1;
+            while (true) {
+                String msg = binary ? BinaryProtocol.decode(BinaryProtocol.readFrame(in)) : in.readUTF();
+                if (msg.startsWith("HELLO")) {
+                    // 노드와 똑같이 답한다. 노드에는 같은 HELLO를 보내 같은 기능으로 협상한다.
+                    if (hello != null) continue;
+                    hello = msg;
+                    for (String feature : msg.split(" ")) {
+                        if (feature.equals(BinaryProtocol.VERSION)) binary = true;
+                        else if (feature.equals("TOKEN")) sessionTokens = true;
+                    }
+                    out.writeUTF(binary ? "HELLO " + BinaryProtocol.VERSION : "HELLO TEXT");
+                    out.flush();
+                    continue;
+                }
+                if (msg.startsWith("SPECTATE")) {
+                    spectateRoomId = ClientSession.parseSpectate(msg);
+                    if (spectateRoomId == -1) send(out, binary, "AUTH_FAIL " + ClientSession.BAD_SPECTATE);
+                    continue;
+                }
+                String[] parts = msg.split(" ", 4);
+                String error;
+                if (!msg.startsWith("AUTH")) {
+                    error = "인증이 필요합니다.";
+                } else if (parts.length < 4) {
+                    error = "형식이 올바르지 않습니다.";
+                } else if (parts[2].trim().isEmpty() || parts[3].trim().isEmpty()) {
+                    error = "아이디/비밀번호를 입력하세요.";
+                } else if (AuthService.isGatewayMode(parts[1])) {
+                    error = "지원하지 않는 명령입니다.";
+                } else {
+                    error = authenticate(parts[1], parts[2], parts[3], host);
+                }
+                if (error != null) {
+                    send(out, binary, "AUTH_FAIL " + error);
+                    continue;
+                }
+                boolean resumed = AuthService.MODE_TOKEN.equalsIgnoreCase(parts[1]);
+                relay(client, in, out, hello, binary, spectateRoomId, parts[2], resumed, sessionTokens && !resumed);
+                return;
+            }
+        } catch (IOException | RuntimeException e) {
+            // 연결 종료 또는 잘못된 메시지
+        } finally {
+            try {
+                client.close();
+            } catch (IOException ignored) {}
+        }
+    }
+
+    /**
+     * AuthService의 결과를 기다린다. 세션마다 스레드가 있으므로 여기서 막혀도 다른 연결에 영향이 없다.
+     */
+    private String authenticate(String mode, String user, String secret, String host) throws IOException {
+        CompletableFuture<String> result = new CompletableFuture<>();
+        authService.submit(mode, user, secret, host, result::complete);
+        try {
+            return result.get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static void send(DataOutputStream out, boolean binary, String msg) throws IOException {
+        if (binary) {
+            BinaryProtocol.writeFrame(out, BinaryProtocol.encode(msg));
+        } else {
+            out.writeUTF(msg);
+        }
+        out.flush();
+    }
+
+    /**
+     * 인증한 사용자를 노드에 대신 인증시키고, 노드의 인증 응답을 넘긴 뒤 양방향으로 바이트를 옮긴다.
+     * 노드에 연결하지 못하면 AUTH_FAIL 없이 연결을 닫는다. 클라이언트는 끊긴 것으로 보고 다시 접속을 시도한다.
+     */
+    private void relay(Socket client, DataInputStream in, DataOutputStream out, String hello, boolean binary,
+                       int spectateRoomId, String user, boolean resumed, boolean issueToken) throws IOException {
+        Node node = spectateRoomId != -1 ? nodes[Math.floorMod(spectateRoomId - 1, nodes.length)] : route(user, resumed);
+        if (node == null) {
+            send(out, binary, "AUTH_FAIL 서버가 가득 찼습니다.");
+            return;
+        }
+        boolean player = spectateRoomId == -1;
+        try (Socket upstream = new Socket()) {
+            upstream.connect(node.address, CONNECT_TIMEOUT_MILLIS);
+            upstream.setTcpNoDelay(true);
+            DataInputStream nodeIn = new DataInputStream(new BufferedInputStream(upstream.getInputStream()));
+            DataOutputStream nodeOut = new DataOutputStream(new BufferedOutputStream(upstream.getOutputStream()));
+            if (hello != null) {
+                nodeOut.writeUTF(hello);
+                nodeOut.flush();
+                String reply = nodeIn.readUTF();
+                if (!reply.startsWith("HELLO")) {
+                    // 방이 가득 찬 노드는 접속하자마자 SERVER_FULL을 보내고 닫는다.
+                    send(out, binary, "AUTH_FAIL 서버가 가득 찼습니다.");
+                    return;
+                }
+            }
+            if (!player) send(nodeOut, binary, "SPECTATE " + spectateRoomId);
+            send(nodeOut, binary, "AUTH " + (resumed ? AuthService.MODE_GATEWAY_TOKEN : AuthService.MODE_GATEWAY)
+                    + " " + user + " " + key);
+
+            // 노드의 첫 응답은 AUTH_OK 또는 AUTH_FAIL이다. 이 프레임만 읽어서 그대로 다시 쓴다.
+            String response;
+            if (binary) {
+                byte[] payload = BinaryProtocol.readFrame(nodeIn);
+                response = BinaryProtocol.decode(payload);
+                BinaryProtocol.writeFrame(out, payload);
+            } else {
+                response = nodeIn.readUTF();
+                out.writeUTF(response);
+            }
+            if (!response.startsWith("AUTH_OK")) {
+                out.flush();
+                return;
+            }
+            if (issueToken) {
+                send(out, binary, "TOKEN " + authService.issueToken(user));
+            }
+            out.flush();
+
+            if (player) attach(user, node);
+            try {
+                // 버퍼에 이미 읽혀 있는 바이트부터 옮기도록 인증에 쓴 스트림에서 그대로 읽는다.
+                OutputStream toNode = upstream.getOutputStream();
+                OutputStream toClient = client.getOutputStream();
+                startThread(() -> pipe(in, toNode, client, upstream), "gateway-up");
+                pipe(nodeIn, toClient, client, upstream);
+            } finally {
+                if (player) detach(user);
+            }
+        } catch (ConnectException | SocketTimeoutException e) {
+            System.out.println("[GATEWAY] 노드 " + node.index + " 연결 실패: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 한 방향으로 바이트를 옮긴다. 어느 쪽이든 끝나면 양쪽 연결을 모두 닫아 반대 방향도 끝나게 한다.
+     */
+    private static void pipe(InputStream from, OutputStream to, Socket a, Socket b) {
+        byte[] buffer = new byte[PIPE_BUFFER];
+        try {
+            int n;
+            while ((n = from.read(buffer)) > 0) {
+                to.write(buffer, 0, n);
+            }
+        } catch (IOException ignored) {
+        } finally {
+            try {
+                a.close();
+            } catch (IOException ignored) {}
+            try {
+                b.close();
+            } catch (IOException ignored) {}
+        }
+    }
+
+    /**
+     * 대국할 사용자를 보낼 노드를 고른다. 보낼 노드가 없으면 null.
+     */
+    private Node route(String user, boolean resumed) {
+        routeLock.lock();
+        try {
+            Affinity last = affinity.get(user);
+            if (last != null && (last.connections > 0
+                    || System.currentTimeMillis() - last.leftAt < AFFINITY_MILLIS)
+                    && (resumed || nodes[last.node].alive)) {
+                // 토큰 재접속은 예전 노드가 아직 다시 뜨지 않았어도 그리로 보낸다.
+                // 연결에 실패하면 클라이언트가 조금 뒤 다시 시도하고, 노드는 상태 로그로 자리를 되살린다.
+                return nodes[last.node];
+            }
+            Node best = null;
+            for (Node node : nodes) {
+                if (!node.alive) continue;
+                if (node.waiting > 0) {
+                    node.waiting--;
+                    return node;
+                }
+                if (!node.full && (best == null || node.rooms < best.rooms)) best = node;
+            }
+            if (best != null) {
+                best.rooms++;
+                best.waiting++;
+            }
+            return best;
+        } finally {
+            routeLock.unlock();
+        }
+    }
+
+    private void attach(String user, Node node) {
+        routeLock.lock();
+        try {
+            long now = System.currentTimeMillis();
+            if (affinity.size() > MAX_AFFINITY) {
+                affinity.values().removeIf(a -> a.connections == 0 && now - a.leftAt >= AFFINITY_MILLIS);
+            }
+            Affinity a = affinity.get(user);
+            if (a == null || a.node != node.index) {
+                Affinity fresh = new Affinity(node.index);
+                if (a != null) fresh.connections = a.connections;
+                a = fresh;
+                affinity.put(user, a);
+            }
+            a.connections++;
+        } finally {
+            routeLock.unlock();
+        }
+    }
+
+    private void detach(String user) {
+        routeLock.lock();
+        try {
+            Affinity a = affinity.get(user);
+            if (a == null) return;
+            a.connections = Math.max(0, a.connections - 1);
+            a.leftAt = System.currentTimeMillis();
+        } finally {
+            routeLock.unlock();
+        }
+    }
+
+    /**
+     * 게이트웨이 진입점: java -cp out OmokGateway --nodes=호스트:포트,... --gateway-key=키
+     * - --port=N: 클라이언트 연결을 받을 포트 (기본값: 5000)
+     * - --threads=virtual: 연결을 옮기는 스레드를 가상 스레드로 (JDK 21 이상)
+     * - --auth-workers=N: 비밀번호 해시를 계산하는 인증 스레드 수 (기본값: 코어 수)
+     */
+    public static void main(String[] args) throws IOException {
+        String key = OmokServer.getOption(args, "gateway-key", null);
+        String nodeList = OmokServer.getOption(args, "nodes", null);
+        if (key == null || nodeList == null) {
+            System.out.println("사용법: java OmokGateway --nodes=localhost:5001,localhost:5002 --gateway-key=키 [--port=5000]");
+            return;
+        }
+        String[] entries = nodeList.split(",");
+        InetSocketAddress[] addresses = new InetSocketAddress[entries.length];
+        for (int i = 0; i < entries.length; i++) {
+            int colon = entries[i].lastIndexOf(':');
+            addresses[i] = new InetSocketAddress(entries[i].substring(0, colon),
+                    Integer.parseInt(entries[i].substring(colon + 1)));
+        }
+        OmokGateway gateway = new OmokGateway(addresses, key);
+        if ("virtual".equalsIgnoreCase(OmokServer.getOption(args, "threads", "platform"))) {
+            ThreadFactory factory = OmokServer.virtualThreadFactory();
+            if (factory != null) {
+                gateway.pipeThreads = factory;
+                System.out.println("[GATEWAY] 연결을 가상 스레드에서 옮깁니다.");
+            } else {
+                System.out.println("[GATEWAY] 가상 스레드를 지원하지 않는 JDK입니다. 플랫폼 스레드를 사용합니다.");
+            }
+        }
+        gateway.authService.setWorkers(Integer.parseInt(OmokServer.getOption(args, "auth-workers",
+                String.valueOf(Runtime.getRuntime().availableProcessors()))));
+        gateway.recoverTokens();
+        gateway.start(Integer.parseInt(OmokServer.getOption(args, "port", "5000")));
+    }
+}
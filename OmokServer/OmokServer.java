@@ -1,378 +1,646 @@
 import java.io.*;
 import java.net.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 
 /**
  * OmokServer
- * - 오목 게임의 서버 진입점이자 게임 상태를 관리하는 클래스
+ * - 오목 게임의 서버 진입점이자 방(GameRoom) 목록을 관리하는 클래스
  * - 클라이언트 연결을 수락하고 ClientHandler를 생성하여 클라이언트별 스레드를 실행한다.
- * - 클라이언트로부터 온 이동을 검증하고 브로드캐스트하며, 승리 시 결과를 기록한다.
- * - 각 턴마다 35초의 시간 제한을 관리한다.
+ *   (--nio 옵션을 주면 NioTransport의 이벤트 루프가 모든 연결을 처리한다.)
+ * - 인증을 마친 클라이언트를 빈 자리가 있는 방에 배정하고, 없으면 새 방을 만든다.
+ * - 경기 결과 기록(record.txt)과 사용자 정보처럼 방 사이에 공유되는 상태를 가진다.
+ * - 진행 중인 대국과 세션 토큰은 상태 로그(StateJournal: state.snap, state-*.wal)에 남기고,
+ *   시작할 때 recoverState()로 되살린다.
+ * - --node=i/N으로 띄우면 OmokGateway 뒤의 클러스터 노드가 된다. 방 번호 중 (번호 - 1) % N == i인 것만 만들고,
+ *   계정 저장소는 열지 않고 게이트웨이가 인증을 마친 연결("AUTH GATEWAY")만 받는다.
+ *   노드들은 같은 작업 디렉터리에서 경기 기록(record.txt, matches.dat)을 함께 쓰고, 상태 로그는 --state-dir로 나눈다.
  */
 public class OmokServer {
+    private static final int MAX_ROOMS = 10000;
+    private static final String RECORD_FILE = "record.txt";
+    private static final String ARCHIVE_FILE = "matches.dat";
+    private static final String BOOK_FILE = "book.dat";
+    private static final String LEGACY_USERS_FILE = "users.db";
+    private static final String USERS_JOURNAL_FILE = "users.journal";
+    private static final String USERS_INDEX_FILE = "users.idx";
+    private static final String STATE_PREFIX = "state";
+
     private ServerSocket serverSocket;
-    private List<ClientHandler> clients = new ArrayList<>();
-    private GameBoard gameBoard = new GameBoard();
-    private List<String> chatHistory = new ArrayList<>();
-    private Map<Integer, String> playerNames = new HashMap<>();
-    private final UserManager userManager = new UserManager("users.db");
-    private Queue<Integer> availableSlots = new ArrayDeque<>();
-    private int rematchRequester = -1;
-    private static final int TIME_LIMIT = 35; // 35초 시간 제한
-    private int remainingTime = TIME_LIMIT;
-    private boolean gameActive = false;
-    private Object timerLock = new Object();
-    private Thread timerThread;
+    private int port = 5000;
+    // 클러스터 노드이면 null이다. 계정은 게이트웨이만 가진다.
+    private final UserManager userManager;
+    // 비밀번호 해시는 느리므로 세션 스레드나 이벤트 루프가 아닌 인증 스레드에서 계산한다.
+    private final AuthService authService;
+    private final Map<Integer, GameRoom> rooms = new ConcurrentHashMap<>();
+    private final Deque<GameRoom> waitingRooms = new ArrayDeque<>();
+    // 사용자 이름 -> 그 사용자가 앉은(또는 재접속을 기다리는) 방. 다시 접속한 사용자를 같은 자리로 돌려보낼 때 쓴다.
+    private final Map<String, GameRoom> playerRooms = new ConcurrentHashMap<>();
+    private final AtomicInteger nextRoomId = new AtomicInteger(1);
+    // 클러스터 노드이면 노드 수. 방 번호를 이만큼씩 건너뛰며 만든다.
+    private int roomIdStep = 1;
+    // 방 배정/반납을 한 번에 하나씩 처리해 두 사람이 동시에 로그인해도 같은 방에 짝지어지게 한다.
+    private final ReentrantLock matchLock = new ReentrantLock();
+    private ThreadFactory sessionThreads = Thread::new;
+    private final TurnTimer turnTimer = new TurnTimer();
+    private final StatsIndex statsIndex = new StatsIndex();
+    private final MatchArchive matchArchive = new MatchArchive(new File(ARCHIVE_FILE));
+    private final StateJournal stateJournal;
+    // 파일을 메모리 매핑만 하므로 책이 커도 시작이 늦어지지 않는다. 없으면 빈 책이다.
+    private final OpeningBook openingBook = OpeningBook.open(new File(BOOK_FILE));
+    // 경기 기록(matches.dat, record.txt) 쓰기와 전적 색인 갱신을 맡는 스레드.
+    // 방 락을 잡은 채 디스크(클러스터면 다른 노드와 나눠 쓰는 파일 잠금)를 기다리지 않게 한다.
+    private final ScheduledExecutorService recordExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "record-writer");
+        t.setDaemon(true);
+        return t;
+    });
+    // 관전자 전송 전용 스레드 풀. 플레이어에게 보내는 스레드와 분리되어 있다.
+    private final ExecutorService spectatorExecutor = Executors.newFixedThreadPool(2, r -> {
+        Thread t = new Thread(r, "spectator-feed");
+        t.setDaemon(true);
+        return t;
+    });
+    // 병렬 탐색(Lazy SMP)의 보조 스레드 풀. 봇 하나가 여러 코어를 쓸 때와, 수마다 하는 필승 확인(checkForcedWin)이 일을 넘긴다.
+    private final ExecutorService aiHelperExecutor = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), r -> {
+        Thread t = new Thread(r, "ai-helper");
+        t.setDaemon(true);
+        return t;
+    });
+    // AI 한 수의 탐색에 쓰는 스레드 수 (1이면 병렬 탐색을 하지 않는다)
+    private volatile int aiThreads = 1;
+    // 봇 수 계산을 맡는 AI 스레드 수. 코어 하나는 사람 플레이어의 세션/전송 스레드 몫으로 남긴다.
+    private int aiWorkers = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    // 모든 방의 봇이 함께 쓰는 스케줄러. AI 스레드마다 엔진(치환표 포함)을 하나씩 둔다. 첫 봇이 앉을 때 만든다.
+    private BotScheduler botScheduler;
+    // 수마다 필승 여부를 확인하는 탐색기. AI 보조 스레드가 빌려 쓰고 돌려주므로 그 풀 크기만큼만 만들어진다.
+    private final ConcurrentLinkedQueue<ThreatSolver> threatSolvers = new ConcurrentLinkedQueue<>();
+    // AI가 한 수에 쓰는 탐색 시간. 턴 시간 제한 안에서 여유를 두고 끝나야 한다.
+    private long aiBudgetMillis = 2000;
 
     public OmokServer() {
-        availableSlots.offer(1);
-        availableSlots.offer(2);
+        this(new File("."), null);
+    }
+
+    /**
+     * @param stateDir   상태 로그를 둘 디렉터리
+     * @param gatewayKey 클러스터 노드로 띄울 때 게이트웨이와 나눈 키. 주어지면 계정 저장소를 열지 않는다.
+     */
+    OmokServer(File stateDir, String gatewayKey) {
+        userManager = gatewayKey == null
+                ? new UserManager(new File(USERS_JOURNAL_FILE), new File(USERS_INDEX_FILE)) : null;
+        authService = new AuthService(userManager, Runtime.getRuntime().availableProcessors());
+        authService.setGatewayKey(gatewayKey);
+        stateJournal = new StateJournal(stateDir, STATE_PREFIX);
+        statsIndex.load(new File(RECORD_FILE));
+        importLegacyRecords();
+        if (userManager != null) importLegacyUsers();
+        authService.setJournal(stateJournal);
+        // 다른 노드가 record.txt에 덧붙인 결과를 1초마다 색인에 반영한다. 파일 길이가 그대로면 바로 끝난다.
+        recordExecutor.scheduleWithFixedDelay(statsIndex::refresh, 1, 1, TimeUnit.SECONDS);
+        if (openingBook.size() > 0) {
+            System.out.println("[SERVER] 정석 책 " + BOOK_FILE + "을(를) 열었습니다. (정석 " + openingBook.size() + "개)");
+        }
+    }
+
+    /**
+     * 경기 보관소가 아직 없으면 예전 record.txt의 기록을 한 번만 옮겨 온다.
+     */
+    private void importLegacyRecords() {
+        if (matchArchive.exists()) return;
+        try {
+            int imported = matchArchive.importLegacy(new File(RECORD_FILE));
+            if (imported > 0) {
+                System.out.println("[SERVER] record.txt의 경기 " + imported + "개를 " + ARCHIVE_FILE + "로 옮겼습니다.");
+            }
+        } catch (IOException e) {
+            System.out.println("[SERVER] record.txt 가져오기 실패: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 계정 저장소가 비어 있으면 예전 users.db의 계정을 한 번만 옮겨 온다.
+     */
+    private void importLegacyUsers() {
+        if (userManager.size() > 0) return;
+        try {
+            int imported = userManager.importLegacy(new File(LEGACY_USERS_FILE));
+            if (imported > 0) {
+                System.out.println("[SERVER] users.db의 계정 " + imported + "개를 " + USERS_JOURNAL_FILE + "로 옮겼습니다.");
+            }
+        } catch (IOException e) {
+            System.out.println("[SERVER] users.db 가져오기 실패: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 상태 로그에서 재시작 전의 대국과 세션 토큰을 되살리고 상태 로그 기록을 시작한다.
+     * 되살린 방의 사람 자리는 주인이 토큰으로 다시 접속하기를 기다린다(GameRoom.restore()).
+     * 봇 설정을 쓰므로 실행 옵션을 모두 적용한 뒤, 연결을 받기 전에 부른다.
+     */
+    void recoverState() {
+        long start = System.nanoTime();
+        StateJournal.State state;
+        try {
+            state = stateJournal.recover();
+        } catch (IOException e) {
+            System.out.println("[SERVER] 상태 로그 복구 실패: " + e.getMessage());
+            state = new StateJournal.State();
+        }
+        matchLock.lock();
+        try {
+            for (StateJournal.RoomState saved : state.rooms.values()) {
+                GameRoom room = new GameRoom(saved.roomId, this);
+                room.restore(saved);
+                rooms.put(room.getRoomId(), room);
+                for (int slot = 1; slot <= 2; slot++) {
+                    if (!saved.isBot(slot)) playerRooms.put(saved.names[slot], room);
+                }
+                if (saved.roomId >= nextRoomId.get()) nextRoomId.set(saved.roomId + roomIdStep);
+            }
+        } finally {
+            matchLock.unlock();
+        }
+        authService.restoreTokens(state.tokens.values());
+        if (state.records > 0 || !state.rooms.isEmpty()) {
+            System.out.printf("[SERVER] 상태 로그에서 대국 %d개, 세션 토큰 %d개를 되살렸습니다. (로그 레코드 %d개, %dKB, %dms)%n",
+                    state.rooms.size(), state.tokens.size(), state.records, state.bytes / 1024,
+                    (System.nanoTime() - start) / 1_000_000);
+        }
+        try {
+            stateJournal.start(this::captureState);
+        } catch (IOException e) {
+            System.out.println("[SERVER] 상태 로그를 시작하지 못했습니다. 재시작하면 대국이 복구되지 않습니다: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 스냅샷에 쓸 지금 상태를 모은다. 상태 로그 기록 스레드에서 불리며, 방마다 방 락을 잠깐씩 잡는다.
+     */
+    private StateJournal.State captureState() {
+        StateJournal.State state = new StateJournal.State();
+        for (GameRoom room : rooms.values()) {
+            StateJournal.RoomState saved = room.captureState();
+            if (saved != null) state.rooms.put(saved.roomId, saved);
+        }
+        authService.exportTokens(state.tokens);
+        return state;
+    }
+
+    /**
+     * 클러스터 노드 i/count로 정한다. 방 번호를 i + 1부터 count씩 건너뛰며 만들어, 게이트웨이가
+     * 방 번호만 보고 그 방을 가진 노드를 찾을 수 있게 한다. recoverState() 전에 부른다.
+     */
+    void setShard(int index, int count) {
+        nextRoomId.set(index + 1);
+        roomIdStep = count;
+    }
+
+    void setPort(int port) {
+        this.port = port;
     }
 
     /**
-     * 서버를 시작하고 포트 5000에서 클라이언트 연결을 기다린다.
-     * 두 명이 연결되면 게임을 시작(START 메시지 브로드캐스트).
+     * 서버를 시작하고 포트(기본값 5000)에서 클라이언트 연결을 기다린다.
+     * 방 배정은 인증이 끝난 뒤 joinRoom()에서 이루어진다.
      */
     public void startServer() throws IOException {
-        serverSocket = new ServerSocket(5000);
-        System.out.println("[SERVER] 오목 서버가 시작되었습니다. (port: 5000)");
+        serverSocket = new ServerSocket(port);
+        System.out.println("[SERVER] 오목 서버가 시작되었습니다. (port: " + port + ")");
 
         while (true) {
             Socket socket = serverSocket.accept();
-            int slot = acquireSlot();
-            if (slot == -1) {
-                System.out.println("새 연결 거부: 슬롯 부족");
+            if (isFull()) {
+                System.out.println("새 연결 거부: 방 부족");
                 try (DataOutputStream tempOut = new DataOutputStream(socket.getOutputStream())) {
                     tempOut.writeUTF("SERVER_FULL");
                 } catch (IOException ignored) {}
                 socket.close();
                 continue;
             }
-            ClientHandler client = new ClientHandler(socket, slot, this);
+            ClientHandler client = new ClientHandler(socket, this);
             client.start();
-            System.out.println("새 클라이언트 연결 (슬롯 " + slot + ")");
+            System.out.println("새 클라이언트 연결: " + socket.getRemoteSocketAddress());
         }
     }
 
     /**
-     * 각 턴마다 시간 제한을 관리하는 타이머를 시작한다.
+     * 상대를 기다리는 방이 있으면 그 방에, 없으면 새 방에 클라이언트 자리를 잡는다.
+     * 할당된 슬롯 번호는 handler.getPlayerId()로 확인할 수 있도록 handler에 기록된다.
+     *
+     * @return 배정된 방, 방을 더 만들 수 없으면 null
      */
-    private void startTimer() {
-        stopTimerThread();
-        timerThread = new Thread(() -> {
-            while (gameActive) {
-                try {
-                    Thread.sleep(1000);
-                    sendPlayerInfoToClients();
-                    //플레이어 정보를 계속 갱신합니다. 가끔 한 쪽에서 플레이어 정보를 못 읽고 누락시키는 버그가 있는데
-                    //정확한 원인을 모르겠어서 누락시켜도 초마다 계속 갱신시키도록 만들어봤습니다...
-                    synchronized (timerLock) {
-                        if (gameActive && remainingTime > 0) {
-                            remainingTime--;
-                            broadcast("TIME " + remainingTime);
-
-                            if (remainingTime == 0) {
-                                handleTimeOut();
-                            }
-                        }
-                    }
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    break;
+    public GameRoom joinRoom(ClientSession handler) {
+        matchLock.lock();
+        try {
+            while (true) {
+                GameRoom room = waitingRooms.poll();
+                if (room == null) {
+                    if (rooms.size() >= MAX_ROOMS) return null;
+                    room = new GameRoom(nextRoomId.getAndAdd(roomIdStep), this);
+                    rooms.put(room.getRoomId(), room);
+                }
+                int slot = room.acquireSlot();
+                if (slot == -1) continue; // 이미 가득 찼거나 닫힌 방
+                handler.assignSeat(room, slot);
+                playerRooms.put(handler.getUsername(), room);
+                if (room.hasVacancy()) {
+                    waitingRooms.offerFirst(room);
                 }
+                return room;
             }
-        });
-        timerThread.start();
+        } finally {
+            matchLock.unlock();
+        }
     }
 
-    private void stopTimerThread() {
-        if (timerThread != null) {
-            timerThread.interrupt();
-            timerThread = null;
+    /**
+     * 클라이언트가 방을 떠났을 때 호출된다. 대국 중이면 재접속을 기다리며 자리를 잡아 두고,
+     * 아니면 자리를 비운다. 빈 방은 제거하고, 자리가 난 방은 대기열에 넣는다.
+     */
+    public void leaveRoom(GameRoom room, ClientSession handler) {
+        matchLock.lock();
+        try {
+            if (room.holdSeat(handler)) return;
+            releaseSeat(room, handler);
+        } finally {
+            matchLock.unlock();
         }
     }
 
     /**
-     * 시간 제한이 끝났을 때 처리 (턴을 자동으로 넘김)
+     * 잡아 둔 자리의 재접속 대기 시간이 끝났을 때 TurnTimer 스레드에서 호출된다. 그사이 돌아왔으면 아무것도 하지 않는다.
      */
-    private synchronized void handleTimeOut() {
-        System.out.println("플레이어 " + gameBoard.getCurrentTurn() + "의 시간이 종료되었습니다.");
-        gameBoard.switchTurn();
-        remainingTime = TIME_LIMIT;
-        broadcast("TURN " + gameBoard.getCurrentTurn());
-        broadcast("TIME " + remainingTime);
+    void expireSeat(GameRoom room, ClientSession handler) {
+        matchLock.lock();
+        try {
+            if (room.releaseHeldSeat(handler)) {
+                releaseSeat(room, handler);
+            }
+        } finally {
+            matchLock.unlock();
+        }
+    }
+
+    private void releaseSeat(GameRoom room, ClientSession handler) {
+        playerRooms.remove(handler.getUsername(), room);
+        boolean closed = room.removeClient(handler);
+        if (closed) {
+            rooms.remove(room.getRoomId());
+            waitingRooms.remove(room);
+        } else if (room.hasVacancy() && !waitingRooms.contains(room)) {
+            waitingRooms.offerFirst(room);
+        }
     }
 
     /**
-     * 클라이언트로부터 온 이동 요청을 처리한다.
+     * 인증을 마친 사용자를 자리에 앉힌다. 같은 사용자의 자리가 이미 있으면(재접속을 기다리는 자리이거나
+     * 아직 살아 있는 예전 연결의 자리) 새 자리를 잡지 않고 그 자리를 넘겨받는다. 자세한 조건은 GameRoom.resumeSeat()를 따른다.
+     * 확인과 배정을 matchLock 하나로 묶으므로 같은 사용자가 한꺼번에 로그인해도 자리는 하나만 생기고,
+     * 자기 자신과 짝지어지지 않는다.
+     *
+     * @param greet 예전 자리를 넘겨받았을 때만 부른다 (인증 응답 보내기)
+     * @return 앉은 방, 방을 더 만들 수 없으면 null
      */
-    public synchronized void handleMove(int x, int y, int playerId) {
-        if (!gameBoard.isValidMove(x, y, playerId)) return;
+    public GameRoom seatPlayer(ClientSession session, String username, IntConsumer greet) {
+        matchLock.lock();
+        try {
+            GameRoom room = playerRooms.get(username);
+            if (room != null && room.resumeSeat(session, username, greet)) return room;
+            return joinRoom(session);
+        } finally {
+            matchLock.unlock();
+        }
+    }
 
-        gameBoard.placeStone(x, y, playerId);
-        broadcast("MOVE " + x + " " + y + " " + playerId);
+    /**
+     * 상대를 기다리는 방의 빈 자리에 AI(BotSession)를 앉힌다. 봇이 방에 들어오면 곧바로 대국이 시작된다.
+     *
+     * @return 빈 자리가 없어 앉히지 못했으면 false
+     */
+    public boolean seatBot(GameRoom room) {
+        matchLock.lock();
+        try {
+            int slot = room.acquireSlot();
+            if (slot == -1) return false;
+            waitingRooms.remove(room);
+            BotSession bot = newBot();
+            bot.assignSeat(room, slot);
+            room.registerPlayerName(slot, BotSession.NAME);
+            room.registerClient(bot);
+            return true;
+        } finally {
+            matchLock.unlock();
+        }
+    }
 
-        if (gameBoard.checkWin(x, y, playerId)) {
-            broadcast("WIN " + playerId + " " + getPlayerName(playerId));
-            recordWin(playerId);   // ← 여기서 ID 기반 저장
+    /**
+     * 아직 자리에 앉지 않은 봇을 만든다. 첫 봇일 때 스케줄러를 만든다. matchLock을 잡은 상태에서 부른다.
+     */
+    BotSession newBot() {
+        if (botScheduler == null) {
+            botScheduler = new BotScheduler(aiWorkers, aiBudgetMillis,
+                    () -> new SearchEngine(aiThreads, aiHelperExecutor));
+        }
+        return new BotSession(this, botScheduler);
+    }
 
-            gameActive = false;
-        } else {
-            gameBoard.switchTurn();
-            remainingTime = TIME_LIMIT;
-            broadcast("TURN " + gameBoard.getCurrentTurn());
-            broadcast("TIME " + remainingTime);
+    /**
+     * 방 번호로 진행 중인 방을 찾는다. 없으면 null.
+     */
+    public GameRoom findRoom(int roomId) {
+        return rooms.get(roomId);
+    }
+
+    boolean isFull() {
+        matchLock.lock();
+        try {
+            return rooms.size() >= MAX_ROOMS && waitingRooms.isEmpty();
+        } finally {
+            matchLock.unlock();
+        }
+    }
+
+    /**
+     * 게이트웨이가 노드를 고를 때 묻는 상태: "방 수 상대를 기다리는 방 수 가득 참(0/1)"
+     */
+    String status() {
+        matchLock.lock();
+        try {
+            return rooms.size() + " " + waitingRooms.size() + " " + (isFull() ? 1 : 0);
+        } finally {
+            matchLock.unlock();
         }
     }
 
     /**
      * 경기 기록 저장
+     * - 기록 스레드에 넘기고 바로 돌아온다. 방 락을 잡은 채 불러도 디스크를 기다리지 않는다.
+     * - record.txt에 한 줄을 덧붙이고, 메모리의 승/패 색인은 그 파일을 이어 읽어 갱신한다.
+     *   다른 노드가 그사이 덧붙인 결과도 함께 들어오고, 자기 결과를 두 번 세지 않는다.
+     * - 수 목록까지 포함한 전체 경기는 matches.dat 보관소에 따로 덧붙인다.
+     *
+     * @param written 기록과 색인 갱신이 끝난 뒤 기록 스레드에서 부를 작업 (갱신된 전적 보내기)
      */
-    public synchronized void recordWin(int winnerId) {
-        int loserId = getOpponentId(winnerId);
+    public void recordWin(String blackName, String whiteName, int winnerId, short[] moves, Runnable written) {
+        recordExecutor.execute(() -> {
+            writeRecord(blackName, whiteName, winnerId, moves);
+            written.run();
+        });
+    }
 
-        String winnerName = playerNames.getOrDefault(winnerId, "Player" + winnerId);
-        String loserName  = playerNames.getOrDefault(loserId, "Player" + loserId);
+    private void writeRecord(String blackName, String whiteName, int winnerId, short[] moves) {
+        String winnerName = winnerId == 1 ? blackName : whiteName;
+        String loserName = winnerId == 1 ? whiteName : blackName;
+        try {
+            matchArchive.append(new MatchArchive.MatchRecord(System.currentTimeMillis(), blackName, whiteName,
+                    winnerId == 1 ? MatchArchive.RESULT_BLACK_WIN : MatchArchive.RESULT_WHITE_WIN,
+                    (byte) 0, GameRoom.TIME_LIMIT, moves));
+        } catch (IOException e) {
+            System.out.println("경기 보관 실패: " + e.getMessage());
+        }
 
-        String line = LocalDateTime.now() + 
+        String line = LocalDateTime.now() +
             " - " + winnerName + " 승리 / " + loserName + " 패배\n";
 
-        try (BufferedWriter bw = new BufferedWriter(new FileWriter("record.txt", true))) {
+        boolean written = false;
+        // 한 줄을 write 한 번으로 덧붙이므로(O_APPEND) 여러 노드가 함께 써도 줄이 섞이지 않는다.
+        try (BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(RECORD_FILE, true), StandardCharsets.UTF_8))) {
             bw.write(line);
-        } catch (IOException ignored) {}
+            written = true;
+        } catch (IOException ignored) {
+        }
+        if (written) {
+            statsIndex.refresh();
+        } else {
+            statsIndex.recordResult(winnerName, loserName);
+        }
 
         System.out.println("기록 저장됨: " + line);
     }
 
     public int getWins(String username) {
-        int wins = 0;
-        try (BufferedReader br = new BufferedReader(new FileReader("record.txt"))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-            if (line.contains(username + " 승리")) wins++;
-            }
-        } catch (IOException ignored) {}
-        return wins;
+        return statsIndex.getWins(username);
     }
 
     public int getLosses(String username) {
-        int losses = 0;
-        try (BufferedReader br = new BufferedReader(new FileReader("record.txt"))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                if (line.contains(username + " 패배")) losses++;
-            }
-        } catch (IOException ignored) {}
-        return losses;
+        return statsIndex.getLosses(username);
     }
 
     /**
-     * "다시하기" 요청 처리
+     * 세션 스레드를 만들어 시작한다. 실행 옵션에 따라 플랫폼 스레드 또는 가상 스레드가 쓰인다.
      */
-    public synchronized void handleReset(int playerId) {
-        if (clients.size() < 2) {
-            sendToPlayer(playerId, "REMATCH_FAIL 상대를 기다리는 중입니다.");
-            return;
-        }
-
-        if (rematchRequester == -1) {
-            rematchRequester = playerId;
-            int opponentId = getOpponentId(playerId);
-            String requesterName = getPlayerName(playerId);
-            String opponentName = opponentId == -1 ? "상대" : getPlayerName(opponentId);
-            sendToPlayer(playerId, "REMATCH_WAIT " + opponentName);
-            if (opponentId != -1) {
-                sendToPlayer(opponentId, "REMATCH_PROMPT " + requesterName);
-            }
-            System.out.println("사용자 [" + requesterName + "] 가 다시하기를 요청했습니다.");
-            return;
-        }
-
-        if (rematchRequester == playerId) {
-            sendToPlayer(playerId, "REMATCH_ALREADY 상대 응답을 기다리는 중입니다.");
-            return;
-        }
-
-        String accepterName = getPlayerName(playerId);
-        broadcast("REMATCH_ACCEPT " + accepterName);
-        startNewMatch();
-        System.out.println("사용자 [" + accepterName + "] 가 다시하기 요청을 수락했습니다.");
+    Thread startSessionThread(Runnable task, String name) {
+        Thread t = sessionThreads.newThread(task);
+        t.setName(name);
+        t.start();
+        return t;
     }
 
-    public synchronized void handleChat(int playerId, String message) {
-        if (message == null) return;
-        String trimmed = message.trim();
-        if (trimmed.isEmpty()) return;
+    /**
+     * 세션을 가상 스레드에서 실행하도록 설정한다. 가상 스레드를 지원하지 않는 JDK(21 미만)이면
+     * 플랫폼 스레드를 그대로 쓰고 false를 반환한다.
+     */
+    boolean useVirtualThreads() {
+        ThreadFactory factory = virtualThreadFactory();
+        if (factory == null) return false;
+        sessionThreads = factory;
+        return true;
+    }
 
-        String displayName = playerNames.getOrDefault(playerId, "Player" + playerId);
-        String formatted = "CHAT " + playerId + " " + displayName + " : " + trimmed;
-        chatHistory.add(formatted);
-        if (chatHistory.size() > 100) {
-            chatHistory.remove(0);
+    /**
+     * 가상 스레드를 만드는 ThreadFactory. 지원하지 않는 JDK(21 미만)이면 null.
+     */
+    static ThreadFactory virtualThreadFactory() {
+        try {
+            // JDK 8 이상에서도 컴파일되도록 Thread.ofVirtual().factory()를 리플렉션으로 호출한다.
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            return null;
         }
-        broadcast(formatted);
     }
 
-    public synchronized List<String> getChatHistory() {
-        return new ArrayList<>(chatHistory);
+    public OpeningBook getOpeningBook() {
+        return openingBook;
     }
 
-    public UserManager getUserManager() {
-        return userManager;
+    /**
+     * 수마다 하는 필승(VCF) 확인을 AI 보조 스레드 풀에 넘기고 바로 돌아온다.
+     * 방 락을 잡은 세션 스레드나 NIO 이벤트 루프가 탐색 시간만큼 멈추지 않게 한다.
+     *
+     * @param position 방 락 안에서 떠 둔 보드 사본
+     * @param attacker 둘 차례인 플레이어
+     * @param found    필승을 찾으면 보조 스레드에서 부를 작업 (방 로그 남기기)
+     */
+    void checkForcedWin(BitBoard position, int attacker, Consumer<ThreatSolver.Result> found) {
+        aiHelperExecutor.execute(() -> {
+            ThreatSolver solver = threatSolvers.poll();
+            if (solver == null) {
+                solver = new ThreatSolver();
+                solver.setNodeLimit(GameRoom.FORCED_WIN_NODES);
+            }
+            try {
+                ThreatSolver.Result result = solver.solve(position, attacker, ThreatSolver.VCF, GameRoom.FORCED_WIN_DEPTH);
+                ServerMetrics.recordForcedWinCheck(result.nanos, result.isWin());
+                if (result.isWin()) found.accept(result);
+            } finally {
+                threatSolvers.offer(solver);
+            }
+        });
     }
 
-    public synchronized void registerPlayerName(int playerId, String username) {
-        playerNames.put(playerId, username);
-        System.out.println("사용자 [" + username + "] 가 슬롯 " + playerId + "로 로그인했습니다.");
+    /**
+     * AI 한 수의 탐색에 쓸 스레드 수를 정한다. 보조 스레드 풀 크기(코어 수) + 1을 넘지 않게 자른다.
+     * 이미 만들어진 엔진에는 적용되지 않으므로 서버를 시작하기 전에 부른다.
+     */
+    void setAiThreads(int threads) {
+        aiThreads = Math.max(1, Math.min(threads, Runtime.getRuntime().availableProcessors() + 1));
     }
 
-    public synchronized String getPlayerName(int playerId) {
-        return playerNames.getOrDefault(playerId, "Player" + playerId);
+    /**
+     * 봇 수 계산에 쓸 AI 스레드 수를 정한다. 첫 봇이 앉기 전(서버를 시작하기 전)에 부른다.
+     */
+    void setAiWorkers(int workers) {
+        aiWorkers = Math.max(1, workers);
     }
 
-    public synchronized void removeClient(ClientHandler handler) {
-        clients.remove(handler);
-        String name = playerNames.remove(handler.getPlayerId());
-        String display = name != null ? name : "Player" + handler.getPlayerId();
-        System.out.println("사용자 [" + display + "] 연결 종료 (슬롯 " + handler.getPlayerId() + ")");
-        releaseSlot(handler.getPlayerId());
-
-        if (rematchRequester != -1) {
-            int notifyTarget = rematchRequester == handler.getPlayerId()
-                    ? getOpponentId(handler.getPlayerId())
-                    : rematchRequester;
-            if (notifyTarget != -1 && notifyTarget != handler.getPlayerId()) {
-                sendToPlayer(notifyTarget, "REMATCH_CANCEL 상대가 게임을 떠났습니다.");
-
-            }
-            rematchRequester = -1;
-        }
+    /**
+     * AI 탐색 시간을 정한다. 턴 시간 제한에서 1초를 뺀 값을 넘지 않게 자른다.
+     */
+    void setAiBudgetMillis(long millis) {
+        aiBudgetMillis = Math.max(1, Math.min(millis, GameRoom.TIME_LIMIT * 1000L - 1000));
+    }
 
-        if (clients.size() < 2) {
-            stopTimerThread();
-            gameActive = false;
-            gameBoard.resetGame();
-            remainingTime = TIME_LIMIT;
-            broadcast("WAITING");
-            System.out.println("접속자가 2명 미만으로 떨어져 게임을 대기 상태로 초기화했습니다.");
-        }
+    public ExecutorService getSpectatorExecutor() {
+        return spectatorExecutor;
     }
 
-    public synchronized void registerClient(ClientHandler handler) {
-        if (!clients.contains(handler)) {
-            clients.add(handler);
-            if (clients.size() == 2) {
-                startNewMatch();
-            } else {
-                broadcast("WAITING");
-                System.out.println("한 명이 접속했습니다. 상대를 기다리는 중입니다.");
-            }
-        }
+    /**
+     * 모든 방이 공유하는 턴 시계 타이머를 반환한다.
+     */
+    public TurnTimer getTurnTimer() {
+        return turnTimer;
     }
 
-    private synchronized void startNewMatch() {
-        if (clients.size() < 2) return;
-        stopTimerThread();
-        gameActive = false;
-        rematchRequester = -1;
-        gameBoard.resetGame();
-        remainingTime = TIME_LIMIT;
-        gameActive = true;
-
-        int startPlayer = gameBoard.getCurrentTurn();
-//        if (startPlayer == -1) {
-//            startPlayer = 1;
-//            gameBoard.setCurrentTurn(startPlayer);
-//        }
-
-        broadcast("RESET");
-        broadcast("START " + startPlayer);
-        startTimer();
-        System.out.println("두 명이 모두 연결되었습니다. 게임 시작!");
-    }
-
-//    public synchronized void sendPlayerInfoToClients() {
-//        if (clients.size() < 2) return;
-//
-//        int p1 = clients.get(0).getPlayerId();
-//        int p2 = clients.get(1).getPlayerId();
-//
-//        String name1 = getPlayerName(p1);
-//        String name2 = getPlayerName(p2);
-//
-//        int wins1 = getWins(name1);
-//        int losses1 = getLosses(name1);
-//        int wins2 = getWins(name2);
-//        int losses2 = getLosses(name2);
-//
-//        double rate1 = wins1 + losses1 > 0 ? (wins1 * 100.0 / (wins1 + losses1)) : 0;
-//        double rate2 = wins2 + losses2 > 0 ? (wins2 * 100.0 / (wins2 + losses2)) : 0;
-//
-//        String msg = String.format(
-//            "PLAYER_INFO %s %.2f %s %.2f",
-//            name1, rate1,
-//            name2, rate2
-//        );
-//
-//        broadcast(msg);
-//    } 기존의 방식은 clients에서 플레이어 아이디를 뽑아오는 방식이라 꼬이기 쉬움
-
-    private void sendPlayerInfoToClients() {
-        String blackName = getPlayerName(1); // playerId 1 = 흑
-        String whiteName = getPlayerName(2); // playerId 2 = 백
-
-        int wins1 = getWins(blackName), losses1 = getLosses(blackName);
-        int wins2 = getWins(whiteName), losses2 = getLosses(whiteName);
-
-        double rate1 = wins1 + losses1 > 0 ? (wins1 * 100.0 / (wins1 + losses1)) : 0;
-        double rate2 = wins2 + losses2 > 0 ? (wins2 * 100.0 / (wins2 + losses2)) : 0;
-
-        String msg = String.format("PLAYER_INFO %s %d %d %.2f %s %d %d %.2f", blackName, wins1, losses1, rate1, whiteName, wins2, losses2, rate2);
-        broadcast(msg);
-    }
-
-
-    private void sendToPlayer(int playerId, String msg) {
-        for (ClientHandler c : clients) {
-            if (c.getPlayerId() == playerId) {
-                c.sendMessage(msg);
-                break;
-            }
-        }
+    /**
+     * 계정 저장소. 클러스터 노드이면 null이다.
+     */
+    public UserManager getUserManager() {
+        return userManager;
     }
 
-    private int getOpponentId(int playerId) {
-        for (ClientHandler c : clients) {
-            if (c.getPlayerId() != playerId) {
-                return c.getPlayerId();
-            }
-        }
-        return -1;
+    public AuthService getAuthService() {
+        return authService;
     }
 
-    private synchronized int acquireSlot() {
-        Integer slot = availableSlots.poll();
-        return slot == null ? -1 : slot;
+    public StateJournal getStateJournal() {
+        return stateJournal;
     }
 
-    private synchronized void releaseSlot(int slot) {
-        if (!availableSlots.contains(slot)) {
-            availableSlots.offer(slot);
-        }
+    /**
+     * 송신 큐 지표(ServerMetrics)를 주기적으로 출력한다. 공유 턴 타이머에 다음 출력을 다시 예약하는 방식이다.
+     */
+    void startMetricsReport(long periodSeconds) {
+        long periodNanos = periodSeconds * 1_000_000_000L;
+        Runnable[] report = new Runnable[1];
+        report[0] = () -> {
+            System.out.println(ServerMetrics.report());
+            turnTimer.schedule(report[0], System.nanoTime() + periodNanos);
+        };
+        turnTimer.schedule(report[0], System.nanoTime() + periodNanos);
     }
 
     /**
-     * 연결된 모든 클라이언트에 메시지를 전송한다.
+     * "--이름=값" 형식의 실행 옵션을 찾아 반환한다. 없으면 기본값을 반환한다.
      */
-    public synchronized void broadcast(String msg) {
-        for (ClientHandler c : clients) c.sendMessage(msg);
+    static String getOption(String[] args, String name, String defaultValue) {
+        for (String arg : args) {
+            if (arg.equals("--" + name)) return "true";
+            if (arg.startsWith("--" + name + "=")) return arg.substring(name.length() + 3);
+        }
+        return defaultValue;
     }
 
     /**
      * 서버 진입점
+     * - 옵션 없음: 연결마다 스레드 하나 (ClientHandler)
+     * - --threads=virtual: 연결마다 가상 스레드 하나 (JDK 21 이상, 미지원이면 플랫폼 스레드)
+     * - --nio [--loops=N]: 셀렉터 기반 이벤트 루프 N개 (기본값: 코어 수)
+     * - --metrics=초: 송신 큐 지표를 주기적으로 출력
+     * - --ai-time=ms: AI가 한 수에 쓰는 탐색 시간 (기본값: 2000)
+     * - --ai-threads=N: AI 한 수의 탐색에 쓰는 스레드 수 (기본값: 1)
+     * - --ai-workers=N: 모든 봇이 함께 쓰는 AI 스레드 수 (기본값: 코어 수 - 1, 최소 1)
+     * - --auth-workers=N: 비밀번호 해시를 계산하는 인증 스레드 수 (기본값: 코어 수)
+     * - --port=N: 연결을 받을 포트 (기본값: 5000)
+     * - --node=i/N --gateway-key=키: OmokGateway 뒤의 N개 노드 중 i번째(0부터)로 실행
+     * - --state-dir=경로: 상태 로그 디렉터리 (기본값: 현재 디렉터리). 한 디렉터리에서 여러 노드를 띄울 때 나눈다.
      */
     public static void main(String[] args) throws IOException {
-        new OmokServer().startServer();
+        String gatewayKey = getOption(args, "gateway-key", null);
+        String node = getOption(args, "node", null);
+        if ((node == null) != (gatewayKey == null)) {
+            System.out.println("[SERVER] --node와 --gateway-key는 함께 지정해야 합니다.");
+            return;
+        }
+        File stateDir = new File(getOption(args, "state-dir", "."));
+        if (!stateDir.isDirectory() && !stateDir.mkdirs()) {
+            System.out.println("[SERVER] 상태 로그 디렉터리를 만들 수 없습니다: " + stateDir);
+            return;
+        }
+        OmokServer server = new OmokServer(stateDir, gatewayKey);
+        int port = Integer.parseInt(getOption(args, "port", "5000"));
+        server.setPort(port);
+        if (node != null) {
+            String[] shard = node.split("/");
+            int index = Integer.parseInt(shard[0]);
+            int count = Integer.parseInt(shard[1]);
+            if (index < 0 || index >= count) {
+                System.out.println("[SERVER] --node=i/N에서 i는 0 이상 N 미만이어야 합니다.");
+                return;
+            }
+            server.setShard(index, count);
+            System.out.println("[SERVER] 클러스터 노드 " + index + "/" + count + "로 실행합니다.");
+        }
+        if ("virtual".equalsIgnoreCase(getOption(args, "threads", "platform"))) {
+            if (server.useVirtualThreads()) {
+                System.out.println("[SERVER] 세션을 가상 스레드에서 실행합니다.");
+            } else {
+                System.out.println("[SERVER] 가상 스레드를 지원하지 않는 JDK입니다. 플랫폼 스레드를 사용합니다.");
+            }
+        }
+        server.setAiBudgetMillis(Long.parseLong(getOption(args, "ai-time", "2000")));
+        server.setAiThreads(Integer.parseInt(getOption(args, "ai-threads", "1")));
+        server.setAiWorkers(Integer.parseInt(getOption(args, "ai-workers",
+                String.valueOf(Math.max(1, Runtime.getRuntime().availableProcessors() - 1)))));
+        server.authService.setWorkers(Integer.parseInt(getOption(args, "auth-workers",
+                String.valueOf(Runtime.getRuntime().availableProcessors()))));
+        server.recoverState();
+        long metricsPeriod = Long.parseLong(getOption(args, "metrics", "0"));
+        if (metricsPeriod > 0) {
+            server.startMetricsReport(metricsPeriod);
+        }
+        if (Boolean.parseBoolean(getOption(args, "nio", "false"))) {
+            int loops = Integer.parseInt(getOption(args, "loops",
+                    String.valueOf(Runtime.getRuntime().availableProcessors())));
+            new NioTransport(server, port, loops).start();
+        } else {
+            server.startServer();
+        }
     }
 }
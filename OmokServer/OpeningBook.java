@@ -0,0 +1,263 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * OpeningBook
+ * - 초반 국면마다 둘 수를 미리 정해 둔 정석 책. AI는 책에 있는 국면이면 탐색하지 않고 바로 둔다.
+ * - 국면 키는 Zobrist 해시(SearchEngine.ZOBRIST)를 보드의 대칭 8가지(회전 4 x 뒤집기 2)로 돌려 본 값 중 가장 작은 값이다.
+ *   돌려 놓거나 뒤집은 같은 정석은 같은 항목 하나로 찾는다. 수도 그 대칭으로 돌려 저장하고, 찾을 때 거꾸로 돌려 준다.
+ * - 책은 기록된 경기(MatchArchive)로 따로 만든다: java -cp out OpeningBook build matches.dat book.dat
+ * - 파일은 키 순으로 정렬된 고정 크기 항목의 배열이다. 서버는 파일을 메모리 매핑만 하고 읽지 않으므로 책 크기와
+ *   상관없이 바로 뜨고, 찾을 때 이진 탐색으로 필요한 쪽만 읽는다.
+ *
+ * 파일 형식:
+ * - 헤더 16바이트: 매직("OMKB"), 버전, 항목 수(int), 예약(int)
+ * - 항목 16바이트: 키(long) | 수(short, 대칭을 적용한 x * 15 + y) | 둔 경기 수(short) | 그 수로 이긴 경기 수(short) | 예약(short)
+ */
+public class OpeningBook {
+    private static final int MAGIC = 0x4F4D4B42; // "OMKB"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int ENTRY_SIZE = 16;
+    private static final int SIZE = BitBoard.SIZE;
+    private static final int CELLS = SIZE * SIZE;
+
+    /** SYMMETRY[s][칸] = 대칭 s로 옮긴 칸, INVERSE[s][칸] = 되돌린 칸 (칸 = x * 15 + y) */
+    private static final int[][] SYMMETRY = new int[8][CELLS];
+    private static final int[][] INVERSE = new int[8][CELLS];
+
+    static {
+        for (int s = 0; s < 8; s++) {
+            for (int x = 0; x < SIZE; x++) {
+                for (int y = 0; y < SIZE; y++) {
+                    int tx = x, ty = y;
+                    if ((s & 4) != 0) ty = SIZE - 1 - ty; // 뒤집기
+                    for (int r = 0; r < (s & 3); r++) {   // 90도씩 회전
+                        int t = tx;
+                        tx = ty;
+                        ty = SIZE - 1 - t;
+                    }
+                    SYMMETRY[s][x * SIZE + y] = tx * SIZE + ty;
+                    INVERSE[s][tx * SIZE + ty] = x * SIZE + y;
+                }
+            }
+        }
+    }
+
+    private final MappedByteBuffer entries;
+    private final int count;
+
+    private OpeningBook(MappedByteBuffer entries, int count) {
+        this.entries = entries;
+        this.count = count;
+    }
+
+    /**
+     * 책 파일을 메모리 매핑해 연다. 파일이 없거나 형식이 맞지 않으면 빈 책을 반환한다.
+     */
+    public static OpeningBook open(File file) {
+        if (!file.exists() || file.length() < HEADER_SIZE) return new OpeningBook(null, 0);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            int count = map.getInt(8);
+            if (map.getInt(0) != MAGIC || map.getInt(4) != VERSION
+                    || HEADER_SIZE + (long) count * ENTRY_SIZE > channel.size()) {
+                System.out.println("[SERVER] 정석 책 형식이 아닙니다: " + file);
+                return new OpeningBook(null, 0);
+            }
+            return new OpeningBook(map, count);
+        } catch (IOException e) {
+            System.out.println("[SERVER] 정석 책 열기 실패: " + e.getMessage());
+            return new OpeningBook(null, 0);
+        }
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * player 차례인 position의 책 수를 x * 15 + y로 반환한다. 책에 없으면 -1.
+     * 여러 스레드가 함께 불러도 된다. (매핑된 버퍼를 절대 위치로만 읽는다)
+     */
+    public int lookup(BitBoard position, int player) {
+        if (count == 0) return -1;
+        long[] hashes = symmetricHashes(position, player);
+        int best = canonical(hashes);
+        int index = find(hashes[best]);
+        if (index < 0) return -1;
+        int move = INVERSE[best][entries.getShort(HEADER_SIZE + index * ENTRY_SIZE + 8)];
+        // 해시 충돌로 엉뚱한 항목을 찾았을 수 있으므로 둘 수 있는 자리인지 확인한다.
+        int x = move / SIZE, y = move % SIZE;
+        return position.isEmpty(x, y) && !position.isForbidden(x, y, player) ? move : -1;
+    }
+
+    private int find(long key) {
+        int lo = 0, hi = count - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            long k = entries.getLong(HEADER_SIZE + mid * ENTRY_SIZE);
+            if (k < key) lo = mid + 1;
+            else if (k > key) hi = mid - 1;
+            else return mid;
+        }
+        return -1;
+    }
+
+    /**
+     * 대칭 8가지마다 돌린 보드의 해시를 구한다.
+     */
+    static long[] symmetricHashes(BitBoard position, int player) {
+        long[] hashes = new long[8];
+        if (player == BitBoard.WHITE) Arrays.fill(hashes, SearchEngine.WHITE_TO_MOVE);
+        for (int y = 0; y < SIZE; y++) {
+            for (int c = 0; c < 2; c++) {
+                int row = position.lineBits(c + 1, BitBoard.DIR_X, y);
+                while (row != 0) {
+                    int cell = Integer.numberOfTrailingZeros(row) * SIZE + y;
+                    row &= row - 1;
+                    for (int s = 0; s < 8; s++) {
+                        hashes[s] ^= SearchEngine.ZOBRIST[c][SYMMETRY[s][cell]];
+                    }
+                }
+            }
+        }
+        return hashes;
+    }
+
+    /** 가장 작은 해시를 만든 대칭 번호 */
+    static int canonical(long[] hashes) {
+        int best = 0;
+        for (int s = 1; s < 8; s++) {
+            if (hashes[s] < hashes[best]) best = s;
+        }
+        return best;
+    }
+
+    /**
+     * 기록된 경기로 책을 만든다. 승패가 난 경기의 처음 plies수까지 국면마다 둔 수와 그 수를 둔 쪽의 승패를 모으고,
+     * minGames번 이상 둔 수 가운데 승률(작은 표본 보정)이 가장 높고 지지 않은 쪽이 더 많은 수를 책 수로 정한다.
+     *
+     * @return 책에 넣은 국면 수
+     */
+    public static int build(MatchArchive archive, File output, int plies, int minGames) throws IOException {
+        // 국면 키 -> (대칭을 적용한 수 -> {둔 경기 수, 이긴 경기 수})
+        Map<Long, Map<Integer, int[]>> stats = new HashMap<>();
+        archive.forEach(record -> {
+            if (record.result != MatchArchive.RESULT_BLACK_WIN && record.result != MatchArchive.RESULT_WHITE_WIN) return;
+            int winner = record.result == MatchArchive.RESULT_BLACK_WIN ? BitBoard.BLACK : BitBoard.WHITE;
+            BitBoard board = new BitBoard();
+            for (int i = 0; i < Math.min(plies, record.moves.length); i++) {
+                short move = record.moves[i];
+                int x = MatchArchive.MatchRecord.moveX(move);
+                int y = MatchArchive.MatchRecord.moveY(move);
+                int player = MatchArchive.MatchRecord.movePlayer(move);
+                long[] hashes = symmetricHashes(board, player);
+                int s = canonical(hashes);
+                int[] counts = stats.computeIfAbsent(hashes[s], k -> new HashMap<>())
+                        .computeIfAbsent(SYMMETRY[s][x * SIZE + y], k -> new int[2]);
+                counts[0]++;
+                if (player == winner) counts[1]++;
+                board.set(x, y, player);
+            }
+        });
+
+        long[] keys = new long[stats.size()];
+        int[] moves = new int[stats.size()];
+        int[][] counts = new int[stats.size()][];
+        int n = 0;
+        for (Map.Entry<Long, Map<Integer, int[]>> position : stats.entrySet()) {
+            int bestMove = -1;
+            double bestRate = 0.5; // 이긴 쪽이 더 많은 수만 넣는다.
+            for (Map.Entry<Integer, int[]> candidate : position.getValue().entrySet()) {
+                int[] c = candidate.getValue();
+                double rate = (c[1] + 1.0) / (c[0] + 2.0);
+                if (c[0] >= minGames && rate > bestRate) {
+                    bestRate = rate;
+                    bestMove = candidate.getKey();
+                }
+            }
+            if (bestMove < 0) continue;
+            keys[n] = position.getKey();
+            moves[n] = bestMove;
+            counts[n] = position.getValue().get(bestMove);
+            n++;
+        }
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> Long.compare(keys[a], keys[b]));
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + n * ENTRY_SIZE);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(n).putInt(0);
+        for (int i : order) {
+            buffer.putLong(keys[i]).putShort((short) moves[i])
+                    .putShort((short) Math.min(counts[i][0], 0xFFFF))
+                    .putShort((short) Math.min(counts[i][1], 0xFFFF)).putShort((short) 0);
+        }
+        buffer.flip();
+        // 다 쓴 뒤에 이름을 바꿔, 서버가 반쯤 쓰인 책을 매핑하는 일이 없게 한다.
+        File temp = new File(output.getPath() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) channel.write(buffer);
+            channel.force(true);
+        }
+        java.nio.file.Files.move(temp.toPath(), output.toPath(), java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+        return n;
+    }
+
+    /**
+     * 책 도구
+     * - java -cp out OpeningBook build [matches.dat] [book.dat] [수 개수=12] [최소 경기 수=2] : 경기 기록으로 책을 만든다.
+     * - java -cp out OpeningBook probe [book.dat] [matches.dat] [수 개수=12] : 기록된 경기의 초반 국면을 책에서 찾아
+     *   찾은 비율과 한 번 찾는 데 걸린 시간을 출력한다.
+     */
+    public static void main(String[] args) throws IOException {
+        String command = args.length > 0 ? args[0] : "probe";
+        if (command.equals("build")) {
+            MatchArchive archive = new MatchArchive(new File(args.length > 1 ? args[1] : "matches.dat"));
+            File output = new File(args.length > 2 ? args[2] : "book.dat");
+            int plies = args.length > 3 ? Integer.parseInt(args[3]) : 12;
+            int minGames = args.length > 4 ? Integer.parseInt(args[4]) : 2;
+            long start = System.nanoTime();
+            int entries = build(archive, output, plies, minGames);
+            System.out.printf("정석 %d개 -> %s (%dms)%n", entries, output, (System.nanoTime() - start) / 1_000_000);
+            return;
+        }
+
+        long openStart = System.nanoTime();
+        OpeningBook book = open(new File(args.length > 1 ? args[1] : "book.dat"));
+        long openNanos = System.nanoTime() - openStart;
+        MatchArchive archive = new MatchArchive(new File(args.length > 2 ? args[2] : "matches.dat"));
+        int plies = args.length > 3 ? Integer.parseInt(args[3]) : 12;
+        List<BitBoard> positions = new ArrayList<>();
+        List<Integer> players = new ArrayList<>();
+        archive.forEach(record -> {
+            BitBoard board = new BitBoard();
+            for (int i = 0; i < Math.min(plies, record.moves.length); i++) {
+                short move = record.moves[i];
+                positions.add(board.copy());
+                players.add(MatchArchive.MatchRecord.movePlayer(move));
+                board.set(MatchArchive.MatchRecord.moveX(move), MatchArchive.MatchRecord.moveY(move),
+                        MatchArchive.MatchRecord.movePlayer(move));
+            }
+        });
+        int hits = 0;
+        long nanos = 0;
+        for (int round = 0; round < 5; round++) { // 처음 몇 번은 JIT 예열
+            hits = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < positions.size(); i++) {
+                if (book.lookup(positions.get(i), players.get(i)) >= 0) hits++;
+            }
+            nanos = System.nanoTime() - start;
+        }
+        System.out.printf("정석 %d개 (여는 데 %dµs), 국면 %d개 중 %d개 찾음, 한 번에 %.2fµs%n",
+                book.size(), openNanos / 1000, positions.size(), hits,
+                positions.isEmpty() ? 0.0 : nanos / 1e3 / positions.size());
+    }
+}
@@ -0,0 +1,129 @@
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * OutboundQueue
+ * - 연결 하나의 송신 대기열. 방의 브로드캐스트는 여기에 넣기만 하고 바로 돌아오므로,
+ *   상대 소켓이 느려도 방 락을 잡은 채 기다리지 않는다.
+ * - 크기가 제한되어 있으며, 느린 클라이언트는 다음 규칙으로 처리한다.
+ *   1) TIME 메시지는 맨 뒤에 아직 안 나간 TIME이 있으면 그 자리를 새 값으로 덮어쓴다(합치기).
+ *   2) 큐가 가득 찼을 때 TIME은 버린다. 다음 초에 새 값이 다시 온다.
+ *   3) 그 외 메시지가 넘치면 offer()가 false를 반환하고, 세션은 연결을 끊는다.
+ *   관전자는 SpectatorFeed가 이 큐를 조금만 채우고 멈추므로 여기까지 오지 않고, 밀리면 스냅샷으로 다시 맞춰진다.
+ */
+public class OutboundQueue {
+    static final int CAPACITY = 256;
+
+    private final ArrayDeque<String> messages = new ArrayDeque<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private boolean closed = false;
+
+    /**
+     * 메시지를 넣는다. 어느 스레드에서나 호출할 수 있고 막히지 않는다.
+     *
+     * @return 큐가 넘쳐 연결을 끊어야 하면 false
+     */
+    public boolean offer(String msg) {
+        lock.lock();
+        try {
+            if (closed) return true;
+            boolean isTime = msg.startsWith("TIME ");
+            if (isTime) {
+                String last = messages.peekLast();
+                if (last != null && last.startsWith("TIME ")) {
+                    messages.pollLast();
+                    messages.offerLast(msg);
+                    ServerMetrics.TIME_COALESCED.increment();
+                    return true;
+                }
+            }
+            if (messages.size() >= CAPACITY) {
+                if (isTime) {
+                    ServerMetrics.TIME_DROPPED.increment();
+                    return true;
+                }
+                ServerMetrics.SLOW_DISCONNECTS.increment();
+                return false;
+            }
+            messages.offerLast(msg);
+            ServerMetrics.QUEUED.increment();
+            ServerMetrics.recordDepth(messages.size());
+            notEmpty.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 쌓인 메시지를 최대 max개까지 꺼내 batch에 담는다. 비어 있으면 바로 돌아온다.
+     *
+     * @return 꺼낸 개수
+     */
+    public int drainTo(List<String> batch, int max) {
+        lock.lock();
+        try {
+            int n = 0;
+            while (n < max && !messages.isEmpty()) {
+                batch.add(messages.pollFirst());
+                n++;
+            }
+            return n;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 메시지가 들어오거나 큐가 닫힐 때까지 기다린 뒤 drainTo와 같이 꺼낸다.
+     *
+     * @return 꺼낸 개수, 큐가 닫혔으면 -1
+     */
+    public int awaitAndDrainTo(List<String> batch, int max) throws InterruptedException {
+        lock.lock();
+        try {
+            while (messages.isEmpty() && !closed) {
+                notEmpty.await();
+            }
+            if (closed) return -1;
+            return drainTo(batch, max);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isEmpty() {
+        lock.lock();
+        try {
+            return messages.isEmpty();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return messages.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 큐를 닫고 기다리는 송신 스레드를 깨운다. 남은 메시지는 버린다.
+     */
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            messages.clear();
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
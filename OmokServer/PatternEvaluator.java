@@ -0,0 +1,213 @@
+/**
+ * PatternEvaluator
+ * - 색마다 줄 모양(5목, 열린 4, 4, 열린 3, 3, 열린 2, 2)의 개수를 세어 두고 국면 점수를 내는 평가기
+ * - 돌을 놓으면(place) 그 칸을 지나는 네 줄만 다시 세고, undo()로 놓기 전 개수를 그대로 되돌린다.
+ *   탐색 노드마다 보드 전체를 훑지 않아도 된다.
+ * - 한 줄은 상대 돌과 보드 끝으로 잘린 구간으로 나누어 센다. 구간 안에는 내 돌과 빈칸만 있으므로
+ *   (구간 길이, 내 돌 비트)로 모양 개수를 미리 계산한 표(SEGMENT)에서 바로 찾는다.
+ * - 모양은 만드는 돌의 집합으로 구분해 한 번만 센다. 띈 모양(X_XX, XX_XX 등)도 같은 모양으로 센다.
+ *   열린 모양은 양 끝이 비어 있는 6칸 안에서 만들어지는 것, 아닌 것은 5칸 안에서만 만들어지는 것이다.
+ * - 흑의 금수는 보지 않는 근사 평가다. (금수는 수를 고를 때 따로 거른다)
+ * - 한 인스턴스는 한 스레드만 쓴다.
+ */
+public class PatternEvaluator {
+    public static final int FIVE = 0;
+    public static final int OPEN_FOUR = 1;
+    public static final int FOUR = 2;
+    public static final int OPEN_THREE = 3;
+    public static final int THREE = 4;
+    public static final int OPEN_TWO = 5;
+    public static final int TWO = 6;
+    public static final int PATTERNS = 7;
+
+    /** 다음 차례에 5목을 만들 수 있는 국면의 점수 (확정 승리보다는 낮다) */
+    public static final int FOUR_SCORE = 50_000;
+    private static final int[] WEIGHT = {0, 10_000, 1_000, 1_000, 100, 100, 10};
+
+    private static final int SIZE = BitBoard.SIZE;
+    private static final int MAX_LENGTH = SIZE;
+    // SEGMENT[(1 << 길이) - 1 + 내 돌 비트] = 모양별 개수를 8비트씩 묶은 값
+    private static final long[] SEGMENT = new long[(1 << (MAX_LENGTH + 1)) - 1];
+
+    static {
+        for (int length = 0; length <= MAX_LENGTH; length++) {
+            for (int own = 0; own < (1 << length); own++) {
+                SEGMENT[(1 << length) - 1 + own] = classify(length, own);
+            }
+        }
+    }
+
+    private final BitBoard board;
+    // lineCounts[색 - 1][방향][줄] = 그 줄의 모양 개수(묶은 값), totals[색 - 1][모양] = 보드 전체 합
+    private final long[][][] lineCounts = new long[2][4][BitBoard.LINES];
+    private final int[][] totals = new int[2][PATTERNS];
+    // undo용: 놓은 칸과 그때 바뀐 네 줄의 이전 값(색 2 x 방향 4)
+    private final int[] history = new int[SIZE * SIZE];
+    private final long[][] saved = new long[SIZE * SIZE][8];
+    private int historySize = 0;
+
+    /**
+     * board를 따라가는 평가기를 만든다. 이후 board는 이 평가기의 place()/undo()로만 바꿔야 한다.
+     */
+    public PatternEvaluator(BitBoard board) {
+        this.board = board;
+        rebuild();
+    }
+
+    /**
+     * 보드 전체를 다시 센다. 보드를 place() 밖에서 바꿨을 때(clear 등) 부른다.
+     */
+    public void rebuild() {
+        historySize = 0;
+        for (int c = 0; c < 2; c++) {
+            java.util.Arrays.fill(totals[c], 0);
+            for (int dir = 0; dir < 4; dir++) {
+                for (int line = 0; line < BitBoard.LINES; line++) {
+                    long counts = countLine(c + 1, dir, line);
+                    lineCounts[c][dir][line] = counts;
+                    add(totals[c], counts, 1);
+                }
+            }
+        }
+    }
+
+    /**
+     * (x, y)에 player의 돌을 놓고 그 칸을 지나는 네 줄만 다시 센다.
+     */
+    public void place(int x, int y, int player) {
+        board.set(x, y, player);
+        long[] old = saved[historySize];
+        history[historySize++] = x * SIZE + y;
+        for (int dir = 0; dir < 4; dir++) {
+            int line = BitBoard.lineIndex(dir, x, y);
+            for (int c = 0; c < 2; c++) {
+                long before = lineCounts[c][dir][line];
+                long after = countLine(c + 1, dir, line);
+                old[c * 4 + dir] = before;
+                if (before == after) continue;
+                lineCounts[c][dir][line] = after;
+                add(totals[c], before, -1);
+                add(totals[c], after, 1);
+            }
+        }
+    }
+
+    /**
+     * 마지막으로 place()한 돌을 치우고 네 줄의 개수를 놓기 전 값으로 되돌린다.
+     */
+    public void undo() {
+        int cell = history[--historySize];
+        int x = cell / SIZE, y = cell % SIZE;
+        board.remove(x, y);
+        long[] old = saved[historySize];
+        for (int dir = 0; dir < 4; dir++) {
+            int line = BitBoard.lineIndex(dir, x, y);
+            for (int c = 0; c < 2; c++) {
+                long current = lineCounts[c][dir][line];
+                if (current == old[c * 4 + dir]) continue;
+                lineCounts[c][dir][line] = old[c * 4 + dir];
+                add(totals[c], current, -1);
+                add(totals[c], old[c * 4 + dir], 1);
+            }
+        }
+    }
+
+    /**
+     * player의 pattern 모양 개수
+     */
+    public int count(int player, int pattern) {
+        return totals[player - 1][pattern];
+    }
+
+    /**
+     * player가 둘 차례일 때 player 입장의 점수.
+     * 둘 차례인 쪽에 4가 있으면 다음 수에 이기고, 상대만 열린 4(또는 4 둘)가 있으면 막을 수 없다.
+     * 둘 차례인 쪽의 열린 3은 상대에게 4가 없으면 다음 수에 열린 4가 된다.
+     */
+    public int evaluate(int player) {
+        int[] own = totals[player - 1];
+        int[] opp = totals[2 - player];
+        if (own[FOUR] + own[OPEN_FOUR] > 0) return FOUR_SCORE;
+        if (opp[OPEN_FOUR] > 0 || opp[FOUR] >= 2) return -FOUR_SCORE / 2;
+        int score = 0;
+        for (int p = OPEN_FOUR; p < PATTERNS; p++) {
+            score += WEIGHT[p] * (own[p] - opp[p]);
+        }
+        if (opp[FOUR] == 0 && own[OPEN_THREE] > 0) score += WEIGHT[OPEN_FOUR] / 2;
+        return score;
+    }
+
+    /**
+     * 한 줄을 상대 돌로 잘린 구간으로 나누어 구간마다 표에서 모양 개수를 찾아 더한다.
+     */
+    private long countLine(int player, int dir, int line) {
+        int own = board.lineBits(player, dir, line);
+        if (own == 0) return 0;
+        int free = BitBoard.validBits(dir, line) & ~board.lineBits(3 - player, dir, line);
+        long counts = 0;
+        while (free != 0) {
+            int start = Integer.numberOfTrailingZeros(free);
+            int length = Integer.numberOfTrailingZeros(~(free >>> start));
+            int mask = (1 << length) - 1;
+            int segment = (own >>> start) & mask;
+            if (segment != 0) counts += SEGMENT[mask + segment];
+            free &= ~(mask << start);
+        }
+        return counts;
+    }
+
+    private static void add(int[] totals, long counts, int sign) {
+        for (int p = 0; counts != 0; p++, counts >>>= 8) {
+            totals[p] += sign * (int) (counts & 0xFF);
+        }
+    }
+
+    /**
+     * 길이 length인 구간(내 돌 비트 own, 나머지는 빈칸)의 모양 개수를 센다. 표를 만들 때만 쓴다.
+     * 큰 모양을 먼저 찾고, 이미 센 모양의 돌에 포함되는 작은 모양은 세지 않는다.
+     */
+    private static long classify(int length, int own) {
+        int[] counts = new int[PATTERNS];
+        int[] found = new int[96];
+        int foundCount = 0;
+
+        for (int s = 0; s < length; s++) {
+            int run = Integer.numberOfTrailingZeros(~(own >>> s));
+            if (run >= 5 && (s == 0 || (own & (1 << (s - 1))) == 0)) {
+                found[foundCount++] = ((1 << run) - 1) << s;
+                counts[FIVE]++;
+            }
+        }
+        // 돌 4개 -> 3개 -> 2개 순서로, 같은 돌 수에서는 열린 모양(양 끝이 빈 6칸)을 먼저 센다.
+        for (int stones = 4; stones >= 2; stones--) {
+            int open = stones == 4 ? OPEN_FOUR : stones == 3 ? OPEN_THREE : OPEN_TWO;
+            for (int s = 0; s + 6 <= length; s++) {
+                if ((own & (1 << s)) != 0 || (own & (1 << (s + 5))) != 0) continue;
+                int middle = own & (15 << (s + 1));
+                if (Integer.bitCount(middle) != stones || covered(found, foundCount, middle)) continue;
+                found[foundCount++] = middle;
+                counts[open]++;
+            }
+            for (int s = 0; s + 5 <= length; s++) {
+                int window = own & (31 << s);
+                if (Integer.bitCount(window) != stones || covered(found, foundCount, window)) continue;
+                found[foundCount++] = window;
+                counts[open + 1]++;
+            }
+        }
+
+        long packed = 0;
+        for (int p = 0; p < PATTERNS; p++) {
+            packed |= (long) Math.min(counts[p], 0xFF) << (8 * p);
+        }
+        return packed;
+    }
+
+    /** stones가 이미 센 모양 중 하나의 돌 집합에 모두 들어 있으면 true */
+    private static boolean covered(int[] found, int count, int stones) {
+        for (int i = 0; i < count; i++) {
+            if ((found[i] & stones) == stones) return true;
+        }
+        return false;
+    }
+}
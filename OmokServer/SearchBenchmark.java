@@ -0,0 +1,72 @@
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * SearchBenchmark
+ * - 병렬 탐색(Lazy SMP)의 스레드 수별 속도 측정 도구: java -cp out SearchBenchmark [깊이] [최대 스레드 수]
+ * - 정해 둔 국면들을 같은 깊이까지 탐색하는 데 걸린 시간을 스레드 1, 2, 4, ... 개로 재고 1스레드 대비 속도를 출력한다.
+ * - 국면마다 치환표를 비우고 시작하므로 앞 국면의 결과가 다음 측정에 섞이지 않는다.
+ */
+public class SearchBenchmark {
+    // 흑부터 번갈아 둔 수 목록 (x, y 쌍). 초반, 중반, 공방이 얽힌 국면을 고루 넣었다.
+    private static final int[][] POSITIONS = {
+        {7, 7, 7, 8, 8, 7},
+        {7, 7, 8, 8, 6, 8, 8, 6, 9, 7},
+        {7, 7, 6, 8, 8, 8, 6, 6, 6, 7, 5, 7, 8, 6, 8, 7},
+        {7, 7, 7, 6, 8, 8, 9, 9, 6, 8, 8, 6, 6, 6, 5, 5, 9, 7, 6, 7},
+        {7, 7, 8, 7, 7, 8, 7, 6, 6, 8, 8, 8, 8, 6, 5, 9, 9, 5, 6, 6, 4, 10, 6, 7},
+        {3, 3, 4, 4, 11, 11, 10, 10, 3, 11, 4, 10, 7, 7, 7, 8, 8, 7, 6, 7},
+    };
+
+    public static void main(String[] args) throws Exception {
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) : 7;
+        int maxThreads = args.length > 1 ? Integer.parseInt(args[1])
+                : Runtime.getRuntime().availableProcessors();
+        ExecutorService helpers = Executors.newFixedThreadPool(Math.max(1, maxThreads - 1), r -> {
+            Thread t = new Thread(r, "ai-helper");
+            t.setDaemon(true);
+            return t;
+        });
+        System.out.println("코어 " + Runtime.getRuntime().availableProcessors() + "개, 깊이 " + depth
+                + ", 국면 " + POSITIONS.length + "개");
+
+        // 처음 한 번은 JIT 예열용으로 돌리고 버린다.
+        measure(new SearchEngine(1, helpers), depth);
+        long baseNanos = 0;
+        for (int threads = 1; threads <= maxThreads; threads = next(threads, maxThreads)) {
+            SearchEngine engine = new SearchEngine(threads, helpers);
+            long[] total = measure(engine, depth);
+            if (threads == 1) baseNanos = total[0];
+            System.out.printf("스레드 %2d: %7dms, 노드 %10d개, %9.0f 노드/초, 속도 %.2f배%n",
+                    threads, total[0] / 1_000_000, total[1], total[1] * 1e9 / total[0],
+                    (double) baseNanos / total[0]);
+        }
+        helpers.shutdown();
+    }
+
+    /** 1, 2, 4, ...로 늘리되 마지막에는 maxThreads를 꼭 잰다. */
+    private static int next(int threads, int maxThreads) {
+        return threads < maxThreads && threads * 2 > maxThreads ? maxThreads : threads * 2;
+    }
+
+    /**
+     * 모든 국면을 depth까지 탐색하고 {걸린 시간(ns), 노드 수}를 반환한다.
+     */
+    private static long[] measure(SearchEngine engine, int depth) {
+        long nanos = 0;
+        long nodes = 0;
+        for (int[] moves : POSITIONS) {
+            BitBoard board = new BitBoard();
+            int player = BitBoard.BLACK;
+            for (int i = 0; i < moves.length; i += 2) {
+                board.set(moves[i], moves[i + 1], player);
+                player = 3 - player;
+            }
+            engine.clearTable();
+            SearchEngine.Result result = engine.search(board, player, 600_000, depth);
+            nanos += result.nanos;
+            nodes += result.nodes;
+        }
+        return new long[] {nanos, nodes};
+    }
+}
@@ -0,0 +1,455 @@
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * SearchEngine
+ * - 서버 AI(BotSession)가 쓰는 오목 탐색기. 보드는 서버와 같은 BitBoard를 쓰고, 흑의 금수도 같은 규칙(RenjuRule)으로 거른다.
+ * - 반복 심화(iterative deepening) + 알파-베타(negamax) 탐색. 한 수마다 주어진 시간 안에 끝낸 가장 깊은 결과를 둔다.
+ * - 국면은 Zobrist 해시로 식별하고, 이미 계산한 결과는 TranspositionTable에서 다시 쓴다.
+ * - 후보 수는 기존 돌에서 두 칸 이내의 빈칸으로 줄이고, 5칸 창 모양 점수로 정렬해 앞쪽 몇 개만 본다.
+ * - 말단 평가는 PatternEvaluator가 수를 두고 무를 때마다 네 줄만 고쳐 세어 둔 모양 개수로 한다.
+ * - 여러 코어를 쓰는 Lazy SMP: 스레드마다 Worker(자기 보드 사본과 버퍼)를 두고 모두 같은 루트를 탐색하되,
+ *   치환표 하나를 잠금 없이 함께 쓴다. 보조 스레드가 채운 결과 덕분에 주 스레드가 같은 시간에 더 깊이 내려간다.
+ *   결과는 주 스레드(Worker 0)의 것을 쓰고, 주 스레드가 끝나면 보조 스레드도 멈춘다.
+ * - 한 엔진은 한 번에 한 탐색만 한다. (서버는 AI 스레드마다 엔진을 하나씩 둔다.)
+ */
+public class SearchEngine {
+    public static final int WIN_SCORE = 1_000_000;
+    private static final int WIN_THRESHOLD = WIN_SCORE - 1000;
+    private static final int INFINITY = WIN_SCORE + 1;
+
+    private static final int SIZE = BitBoard.SIZE;
+    private static final int CELLS = SIZE * SIZE;
+    public static final int MAX_DEPTH = 30;
+    private static final int ROOT_WIDTH = 20;
+    private static final int MAX_WIDTH = 12;
+    private static final int TABLE_BITS = 20;
+
+    /** 후보 정렬: 내 돌 k개인 창에 두는 공격 점수, 상대 돌 k개인 창을 막는 수비 점수 */
+    private static final int[] ATTACK = {1, 8, 60, 500, 100_000, 0};
+    private static final int[] DEFEND = {0, 4, 30, 300, 20_000, 0};
+
+    // 칸마다 색별 난수. ThreatSolver의 증명 캐시도 같은 해시를 쓴다.
+    static final long[][] ZOBRIST = new long[2][CELLS];
+    static final long WHITE_TO_MOVE;
+
+    static {
+        Random random = new Random(0x5EED0F0A4L);
+        for (int c = 0; c < 2; c++) {
+            for (int i = 0; i < CELLS; i++) {
+                ZOBRIST[c][i] = random.nextLong();
+            }
+        }
+        WHITE_TO_MOVE = random.nextLong();
+    }
+
+    private final TranspositionTable table = new TranspositionTable(TABLE_BITS);
+    private final Worker[] workers;
+    private final ExecutorService helperPool;
+    // 주 스레드가 탐색을 마치면 켠다. 보조 스레드는 이 값을 보고 멈춘다.
+    private volatile boolean stopped;
+    private volatile long deadline;
+
+    /**
+     * 스레드 하나로 탐색하는 엔진을 만든다.
+     */
+    public SearchEngine() {
+        this(1, null);
+    }
+
+    /**
+     * @param threads 한 탐색에 쓰는 스레드 수(호출한 스레드 포함)
+     * @param helperPool 보조 스레드를 빌릴 스레드 풀. threads가 1이면 null이어도 된다.
+     */
+    public SearchEngine(int threads, ExecutorService helperPool) {
+        this.workers = new Worker[helperPool == null ? 1 : Math.max(1, threads)];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Worker(i);
+        }
+        this.helperPool = helperPool;
+    }
+
+    public int getThreads() {
+        return workers.length;
+    }
+
+    /**
+     * 치환표를 비운다. 벤치마크에서 국면마다 같은 조건으로 재려고 쓴다.
+     */
+    public void clearTable() {
+        table.clear();
+    }
+
+    /**
+     * 탐색 결과. 둘 곳이 없으면 x, y가 -1이다. nodes는 모든 스레드의 노드 수 합이다.
+     */
+    public static class Result {
+        public final int x;
+        public final int y;
+        public final int score;
+        public final int depth;
+        public final long nodes;
+        public final long nanos;
+
+        Result(int move, int score, int depth, long nodes, long nanos) {
+            this.x = move < 0 ? -1 : move / SIZE;
+            this.y = move < 0 ? -1 : move % SIZE;
+            this.score = score;
+            this.depth = depth;
+            this.nodes = nodes;
+            this.nanos = nanos;
+        }
+
+        public double nodesPerSecond() {
+            return nanos > 0 ? nodes * 1e9 / nanos : 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("(%d, %d) 깊이 %d, 점수 %d, 노드 %d개, %.0f 노드/초, %dms",
+                    x, y, depth, score, nodes, nodesPerSecond(), nanos / 1_000_000);
+        }
+    }
+
+    /**
+     * position에서 player가 둘 수를 찾는다. 입력 보드는 바꾸지 않는다.
+     *
+     * @param budgetMillis 이 수에 쓸 시간. 넘기면 마지막으로 끝까지 탐색한 깊이의 결과를 쓴다.
+     */
+    public Result search(BitBoard position, int player, long budgetMillis) {
+        return search(position, player, budgetMillis, MAX_DEPTH);
+    }
+
+    /**
+     * search()와 같지만 maxDepth까지만 내려간다. 깊이를 고정해 스레드 수별 속도를 잴 때 쓴다.
+     */
+    public Result search(BitBoard position, int player, long budgetMillis, int maxDepth) {
+        return search(position, player, budgetMillis, maxDepth, true);
+    }
+
+    /**
+     * parallel이 false이면 보조 스레드를 쓰지 않고 호출한 스레드 하나로만 탐색한다.
+     * 서버가 바쁠 때 BotScheduler가 봇 한 수의 CPU 사용을 줄이려고 쓴다.
+     */
+    public Result search(BitBoard position, int player, long budgetMillis, int maxDepth, boolean parallel) {
+        long start = System.nanoTime();
+        deadline = start + budgetMillis * 1_000_000L;
+        stopped = false;
+        Worker main = workers[0];
+        main.reset(position);
+
+        if (position.getStoneCount() == 0) {
+            return new Result((SIZE / 2) * SIZE + SIZE / 2, 0, 0, 0, System.nanoTime() - start);
+        }
+        int count = main.rootMoves(player);
+        if (count == 0) {
+            return new Result(-1, 0, 0, 0, System.nanoTime() - start);
+        }
+        int[] moves = main.moveBuffer[0];
+        for (int i = 0; i < count; i++) {
+            if (position.checkWin(moves[i] / SIZE, moves[i] % SIZE, player)) {
+                return new Result(moves[i], WIN_SCORE, 1, count, System.nanoTime() - start);
+            }
+        }
+
+        // 보조 스레드는 같은 루트 수 목록으로 따로 탐색하며 치환표를 채운다.
+        // 먼저 claim을 잡은 쪽이 주인이다. 풀이 바빠 주 스레드가 끝날 때까지 시작하지 못한 보조 탐색은
+        // 주 스레드가 claim을 가져가 버리므로, 늦게 시작해도 아무것도 하지 않고 끝난다.
+        int threads = parallel ? workers.length : 1;
+        Future<?>[] helpers = new Future<?>[threads - 1];
+        AtomicBoolean[] claims = new AtomicBoolean[threads - 1];
+        for (int i = 1; i < threads; i++) {
+            Worker helper = workers[i];
+            AtomicBoolean claim = new AtomicBoolean();
+            helper.reset(position);
+            System.arraycopy(moves, 0, helper.moveBuffer[0], 0, count);
+            claims[i - 1] = claim;
+            helpers[i - 1] = helperPool.submit(() -> {
+                if (claim.compareAndSet(false, true)) helper.iterate(player, count, maxDepth, start, budgetMillis);
+            });
+        }
+        main.iterate(player, count, maxDepth, start, budgetMillis);
+        stopped = true;
+
+        long nodes = main.nodes;
+        for (int i = 0; i < helpers.length; i++) {
+            // 아직 시작하지 못한 보조 탐색은 기다리지 않는다. 이미 도는 것은 stopped를 보고 곧 끝난다.
+            if (claims[i].compareAndSet(false, true)) continue;
+            try {
+                helpers[i].get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                System.out.println("[AI] 보조 탐색 실패: " + e.getCause());
+            }
+            nodes += workers[i + 1].nodes;
+        }
+        return new Result(main.bestMove, main.bestScore, main.reached, nodes, System.nanoTime() - start);
+    }
+
+    /**
+     * 진행 중인 탐색을 다른 스레드에서 멈춘다. 탐색은 곧 끝나고 그때까지 끝까지 읽은 깊이의 결과를 반환한다.
+     * 탐색이 시작되기 전에 부르면 효과가 없다.
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * 탐색 스레드 하나의 상태. 보드 사본, 해시, 깊이별 후보 버퍼를 스레드마다 따로 가진다.
+     */
+    private final class Worker {
+        private final int id;
+        private final int[][] moveBuffer = new int[MAX_DEPTH + 2][CELLS];
+        private final long[] sortBuffer = new long[CELLS];
+        private final int[] occupied = new int[SIZE];
+        private BitBoard board;
+        private PatternEvaluator patterns;
+        private long hash;
+        private long nodes;
+        private boolean aborted;
+        private int bestMove;
+        private int bestScore;
+        private int reached;
+
+        Worker(int id) {
+            this.id = id;
+        }
+
+        void reset(BitBoard position) {
+            board = position.copy();
+            patterns = new PatternEvaluator(board);
+            hash = hashOf(board);
+            nodes = 0;
+            aborted = false;
+            reached = 0;
+            bestScore = 0;
+        }
+
+        /** 루트 후보를 moveBuffer[0]에 넣는다. 루트에서는 흑의 금수를 미리 뺀다. */
+        int rootMoves(int player) {
+            int count = candidates(player, TranspositionTable.NO_MOVE, 0, ROOT_WIDTH);
+            if (player != BitBoard.BLACK) return count;
+            int[] moves = moveBuffer[0];
+            int n = 0;
+            for (int i = 0; i < count; i++) {
+                if (!board.isForbidden(moves[i] / SIZE, moves[i] % SIZE, player)) moves[n++] = moves[i];
+            }
+            return n;
+        }
+
+        /**
+         * 루트에서 반복 심화한다. 보조 스레드는 홀수 번째부터 한 깊이 더 깊게 시작해 주 스레드와 다른 곳을 먼저 채운다.
+         */
+        void iterate(int player, int count, int maxDepth, long start, long budgetMillis) {
+            int[] moves = moveBuffer[0];
+            bestMove = moves[0];
+            int opponent = 3 - player;
+            for (int depth = 1 + (id & 1); depth <= maxDepth; depth++) {
+                int alpha = -INFINITY;
+                int depthMove = -1;
+                for (int i = 0; i < count && !stopped; i++) {
+                    int move = moves[i];
+                    place(move, player);
+                    int score = -negamax(opponent, depth - 1, -INFINITY, -alpha, 1);
+                    undo(move, player);
+                    if (aborted) break;
+                    if (score > alpha) {
+                        alpha = score;
+                        depthMove = move;
+                    }
+                }
+                if (aborted || depthMove < 0) break;
+                bestMove = depthMove;
+                bestScore = alpha;
+                reached = depth;
+                moveToFront(moves, count, bestMove);
+                if (Math.abs(bestScore) >= WIN_THRESHOLD) break;
+                // 남은 시간이 이번 깊이에 쓴 시간보다 적으면 다음 깊이는 끝나지 못한다.
+                if (id == 0 && System.nanoTime() - start > budgetMillis * 500_000L) break;
+            }
+        }
+
+        private int negamax(int player, int depth, int alpha, int beta, int ply) {
+            if ((++nodes & 255) == 0 && (stopped || System.nanoTime() > deadline)) aborted = true;
+            if (aborted) return 0;
+            if (depth == 0) return patterns.evaluate(player);
+
+            long key = player == BitBoard.WHITE ? hash ^ WHITE_TO_MOVE : hash;
+            long entry = table.probe(key);
+            int tableMove = TranspositionTable.NO_MOVE;
+            if (entry != 0) {
+                tableMove = TranspositionTable.moveOf(entry);
+                if (TranspositionTable.depthOf(entry) >= depth) {
+                    int score = fromTable(TranspositionTable.scoreOf(entry), ply);
+                    int flag = TranspositionTable.flagOf(entry);
+                    if (flag == TranspositionTable.EXACT) return score;
+                    if (flag == TranspositionTable.LOWER && score >= beta) return score;
+                    if (flag == TranspositionTable.UPPER && score <= alpha) return score;
+                }
+            }
+
+            int count = candidates(player, tableMove, ply, MAX_WIDTH);
+            int[] moves = moveBuffer[ply];
+            for (int i = 0; i < count; i++) {
+                // 흑의 정확한 5목은 금수와 겹쳐도 둘 수 있다.
+                if (board.checkWin(moves[i] / SIZE, moves[i] % SIZE, player)) return WIN_SCORE - ply;
+            }
+
+            int opponent = 3 - player;
+            int alphaBefore = alpha;
+            int best = -INFINITY;
+            int bestMove = TranspositionTable.NO_MOVE;
+            for (int i = 0; i < count; i++) {
+                int move = moves[i];
+                if (player == BitBoard.BLACK && board.isForbidden(move / SIZE, move % SIZE, player)) continue;
+                place(move, player);
+                int score = -negamax(opponent, depth - 1, -beta, -alpha, ply + 1);
+                undo(move, player);
+                if (aborted) return 0;
+                if (score > best) {
+                    best = score;
+                    bestMove = move;
+                }
+                if (score > alpha) alpha = score;
+                if (alpha >= beta) break;
+            }
+            if (best == -INFINITY) return 0; // 둘 곳이 없으면 무승부로 본다.
+
+            int flag = best <= alphaBefore ? TranspositionTable.UPPER
+                    : best >= beta ? TranspositionTable.LOWER : TranspositionTable.EXACT;
+            table.store(key, toTable(best, ply), bestMove, depth, flag);
+            return best;
+        }
+
+        /**
+         * 기존 돌에서 두 칸 이내의 빈칸을 모양 점수 순으로 moveBuffer[ply]에 넣고 앞쪽 width개의 수를 반환한다.
+         * firstMove(치환표의 최선수)가 있으면 맨 앞에 둔다.
+         */
+        private int candidates(int player, int firstMove, int ply, int width) {
+            for (int y = 0; y < SIZE; y++) {
+                occupied[y] = board.lineBits(BitBoard.BLACK, BitBoard.DIR_X, y)
+                        | board.lineBits(BitBoard.WHITE, BitBoard.DIR_X, y);
+            }
+            int count = 0;
+            for (int y = 0; y < SIZE; y++) {
+                int near = 0;
+                for (int yy = Math.max(0, y - 2); yy <= Math.min(SIZE - 1, y + 2); yy++) {
+                    int o = occupied[yy];
+                    near |= o | (o << 1) | (o << 2) | (o >>> 1) | (o >>> 2);
+                }
+                near &= ~occupied[y] & ((1 << SIZE) - 1);
+                while (near != 0) {
+                    int x = Integer.numberOfTrailingZeros(near);
+                    near &= near - 1;
+                    int move = x * SIZE + y;
+                    long score = move == firstMove ? Integer.MAX_VALUE : orderScore(x, y, player);
+                    sortBuffer[count++] = (score << 8) | move;
+                }
+            }
+            Arrays.sort(sortBuffer, 0, count);
+            int[] moves = moveBuffer[ply];
+            int n = Math.min(count, width);
+            for (int i = 0; i < n; i++) {
+                moves[i] = (int) (sortBuffer[count - 1 - i] & 0xFF);
+            }
+            return n;
+        }
+
+        /**
+         * (x, y)를 지나는 5칸 창마다 공격(내 돌만 있는 창)과 수비(상대 돌만 있는 창) 점수를 더한다.
+         */
+        private int orderScore(int x, int y, int player) {
+            int score = 0;
+            for (int dir = 0; dir < 4; dir++) {
+                int pos = BitBoard.bitIndex(dir, x, y);
+                int valid = BitBoard.validBits(dir, BitBoard.lineIndex(dir, x, y));
+                int own = board.lineMask(player, dir, x, y);
+                int opp = board.lineMask(3 - player, dir, x, y);
+                for (int s = Math.max(0, pos - 4); s <= pos; s++) {
+                    if (((valid >>> s) & 31) != 31) continue;
+                    int oc = Integer.bitCount((own >>> s) & 31);
+                    int pc = Integer.bitCount((opp >>> s) & 31);
+                    if (pc == 0) score += ATTACK[oc];
+                    if (oc == 0) score += DEFEND[pc];
+                }
+            }
+            return score;
+        }
+
+        private void place(int move, int player) {
+            patterns.place(move / SIZE, move % SIZE, player);
+            hash ^= ZOBRIST[player - 1][move];
+        }
+
+        private void undo(int move, int player) {
+            patterns.undo();
+            hash ^= ZOBRIST[player - 1][move];
+        }
+    }
+
+    private static void moveToFront(int[] moves, int count, int move) {
+        for (int i = 0; i < count; i++) {
+            if (moves[i] == move) {
+                System.arraycopy(moves, 0, moves, 1, i);
+                moves[0] = move;
+                return;
+            }
+        }
+    }
+
+    private static long hashOf(BitBoard board) {
+        long h = 0;
+        for (int i = 0; i < CELLS; i++) {
+            int stone = board.get(i / SIZE, i % SIZE);
+            if (stone != BitBoard.EMPTY) h ^= ZOBRIST[stone - 1][i];
+        }
+        return h;
+    }
+
+    // 치환표에는 승리 점수를 "현재 국면부터 몇 수 뒤"로 바꿔 저장해, 다른 깊이에서 찾아도 맞게 한다.
+    private static int toTable(int score, int ply) {
+        if (score >= WIN_THRESHOLD) return score + ply;
+        if (score <= -WIN_THRESHOLD) return score - ply;
+        return score;
+    }
+
+    private static int fromTable(int score, int ply) {
+        if (score >= WIN_THRESHOLD) return score - ply;
+        if (score <= -WIN_THRESHOLD) return score + ply;
+        return score;
+    }
+
+    /**
+     * 탐색 속도 측정 도구: java -cp out SearchEngine [수당 ms] [수 개수]
+     * 엔진끼리 두게 하면서 수마다 도달한 깊이와 초당 노드 수를 출력한다.
+     */
+    public static void main(String[] args) {
+        long budget = args.length > 0 ? Long.parseLong(args[0]) : 1000;
+        int plies = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        SearchEngine engine = new SearchEngine();
+        BitBoard board = new BitBoard();
+        int player = BitBoard.BLACK;
+        long totalNodes = 0;
+        long totalNanos = 0;
+        for (int ply = 1; ply <= plies; ply++) {
+            Result result = engine.search(board, player, budget);
+            if (result.x < 0) break;
+            System.out.println("수 " + ply + " " + (player == BitBoard.BLACK ? "흑" : "백") + ": " + result);
+            totalNodes += result.nodes;
+            totalNanos += result.nanos;
+            boolean win = board.checkWin(result.x, result.y, player);
+            board.set(result.x, result.y, player);
+            if (win) {
+                System.out.println((player == BitBoard.BLACK ? "흑" : "백") + " 승리");
+                break;
+            }
+            player = 3 - player;
+        }
+        System.out.printf("평균 %.0f 노드/초%n", totalNanos > 0 ? totalNodes * 1e9 / totalNanos : 0.0);
+    }
+}
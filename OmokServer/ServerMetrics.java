@@ -0,0 +1,85 @@
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ServerMetrics
+ * - 송신 큐 관련 서버 전체 지표 (모든 연결 합계)와 수마다 하는 필승(VCF) 확인 지표, 봇 수 계산(BotScheduler) 지표
+ * - --metrics=초 옵션을 주면 OmokServer가 주기적으로 report()를 출력한다.
+ */
+public final class ServerMetrics {
+    /** 송신 큐에 들어간 메시지 수 */
+    static final LongAdder QUEUED = new LongAdder();
+    /** 실제로 소켓에 쓴 메시지 수 */
+    static final LongAdder SENT = new LongAdder();
+    /** 소켓에 쓴 묶음(flush) 수 */
+    static final LongAdder FLUSHES = new LongAdder();
+    /** 앞의 TIME을 덮어써 합쳐진 TIME 수 */
+    static final LongAdder TIME_COALESCED = new LongAdder();
+    /** 큐가 가득 차 버린 TIME 수 */
+    static final LongAdder TIME_DROPPED = new LongAdder();
+    /** 큐가 넘쳐 끊은 느린 연결 수 */
+    static final LongAdder SLOW_DISCONNECTS = new LongAdder();
+    /** 관전 큐가 넘쳐 스냅샷으로 다시 맞춘 횟수 */
+    static final LongAdder SPECTATOR_RESYNCS = new LongAdder();
+    /** 수마다 한 필승 확인 횟수, 필승을 찾은 횟수, 걸린 시간 합계(ns) */
+    static final LongAdder FORCED_WIN_CHECKS = new LongAdder();
+    static final LongAdder FORCED_WINS = new LongAdder();
+    static final LongAdder FORCED_WIN_NANOS = new LongAdder();
+    /** 봇 수 계산 요청 수, 큐에서 기다린 시간 합계(ns), 탐색한 수의 도달 깊이 합계와 그 수 */
+    static final LongAdder BOT_THINKS = new LongAdder();
+    static final LongAdder BOT_WAIT_NANOS = new LongAdder();
+    static final LongAdder BOT_DEPTH_SUM = new LongAdder();
+    static final LongAdder BOT_SEARCHES = new LongAdder();
+    /** 부하 때문에 시간·깊이를 줄인 요청 수, 턴 마감이나 취소로 일찍 끊은 요청 수 */
+    static final LongAdder BOT_DEGRADED = new LongAdder();
+    static final LongAdder BOT_PREEMPTED = new LongAdder();
+    /** 지난 보고 이후 가장 오래 기다린 봇 요청(ns) */
+    private static final AtomicLong BOT_MAX_WAIT = new AtomicLong();
+    /** 지난 보고 이후 가장 깊었던 큐 길이 */
+    private static final AtomicInteger MAX_DEPTH = new AtomicInteger();
+
+    private ServerMetrics() {}
+
+    static void recordDepth(int depth) {
+        MAX_DEPTH.accumulateAndGet(depth, Math::max);
+    }
+
+    static void recordForcedWinCheck(long nanos, boolean found) {
+        FORCED_WIN_CHECKS.increment();
+        FORCED_WIN_NANOS.add(nanos);
+        if (found) FORCED_WINS.increment();
+    }
+
+    /**
+     * @param depth 탐색한 깊이, 정석처럼 탐색하지 않았으면 -1
+     */
+    static void recordBotThink(long waitNanos, int depth, boolean degraded, boolean preempted) {
+        BOT_THINKS.increment();
+        BOT_WAIT_NANOS.add(waitNanos);
+        BOT_MAX_WAIT.accumulateAndGet(waitNanos, Math::max);
+        if (depth >= 0) {
+            BOT_SEARCHES.increment();
+            BOT_DEPTH_SUM.add(depth);
+        }
+        if (degraded) BOT_DEGRADED.increment();
+        if (preempted) BOT_PREEMPTED.increment();
+    }
+
+    /**
+     * 현재 지표를 한 줄로 만든다. 최대 큐 길이와 봇 최대 대기 시간은 보고할 때마다 0으로 돌아간다.
+     */
+    static String report() {
+        long checks = FORCED_WIN_CHECKS.sum();
+        long thinks = BOT_THINKS.sum();
+        long searches = BOT_SEARCHES.sum();
+        return String.format("[METRICS] 큐 입력 %d, 전송 %d, flush %d, 최대 큐 길이 %d, TIME 합침 %d, TIME 버림 %d, 느린 연결 끊음 %d, 관전 재동기화 %d"
+                        + ", 필승 확인 %d회(평균 %.1fµs, 필승 %d)"
+                        + ", 봇 수 계산 %d회(대기 평균 %.1fms/최대 %.1fms, 평균 깊이 %.1f, 축소 %d, 선점 %d)",
+                QUEUED.sum(), SENT.sum(), FLUSHES.sum(), MAX_DEPTH.getAndSet(0),
+                TIME_COALESCED.sum(), TIME_DROPPED.sum(), SLOW_DISCONNECTS.sum(), SPECTATOR_RESYNCS.sum(),
+                checks, checks > 0 ? FORCED_WIN_NANOS.sum() / 1e3 / checks : 0.0, FORCED_WINS.sum(),
+                thinks, thinks > 0 ? BOT_WAIT_NANOS.sum() / 1e6 / thinks : 0.0, BOT_MAX_WAIT.getAndSet(0) / 1e6,
+                searches > 0 ? BOT_DEPTH_SUM.sum() / (double) searches : 0.0, BOT_DEGRADED.sum(), BOT_PREEMPTED.sum());
+    }
+}
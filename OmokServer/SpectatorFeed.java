@@ -0,0 +1,147 @@
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * SpectatorFeed
+ * - 한 방의 관전자들에게 대국 진행(MOVE/TURN/TIME/WIN 등)을 따로 흘려보내는 전달 경로
+ * - 방은 publish()로 관전자별 큐에 메시지를 넣기만 하고, 관전 전용 스레드 풀이 그 메시지를 관전자 연결의
+ *   송신 큐로 옮긴다. 소켓에 쓰는 일은 연결마다 있는 송신 스레드(또는 이벤트 루프)가 하므로, 풀 스레드는
+ *   소켓을 기다리지 않는다. 관전자 소켓이 느려도 다른 관전자나 플레이어에게 보내는 브로드캐스트는 영향을 받지 않는다.
+ * - 관전자 연결의 송신 큐가 BACKLOG_LIMIT 이상 밀려 있으면 옮기기를 멈추고 RETRY_MILLIS 뒤에 다시 본다.
+ *   BACKLOG_LIMIT는 송신 큐 크기(OutboundQueue.CAPACITY)보다 훨씬 작아서, 밀린 관전자의 메시지는 송신 큐가 아니라
+ *   아래의 관전자 큐에 쌓인다. 그래서 느린 관전자는 느린 플레이어처럼 끊기지 않고 스냅샷으로 다시 맞춰진다.
+ * - 관전자 큐는 크기가 제한되어 있다. 관전자가 밀려 큐가 넘치면 쌓인 메시지를 버리고
+ *   현재 보드 스냅샷 하나로 바꿔서, 밀린 만큼을 따라잡는 대신 최신 상태부터 다시 받게 한다.
+ */
+public class SpectatorFeed {
+    private static final int QUEUE_CAPACITY = 64;
+    // 관전자 연결의 송신 큐가 이만큼 밀려 있으면 더 넣지 않는다. 밀린 만큼은 관전자 큐에 쌓여 넘치면 스냅샷으로 바뀐다.
+    private static final int BACKLOG_LIMIT = 16;
+    private static final long RETRY_MILLIS = 50;
+
+    private final List<Spectator> spectators = new CopyOnWriteArrayList<>();
+    private final Executor executor;
+    private final TurnTimer timer;
+
+    public SpectatorFeed(Executor executor, TurnTimer timer) {
+        this.executor = executor;
+        this.timer = timer;
+    }
+
+    /**
+     * 관전자 한 명의 송신 대기열
+     */
+    private class Spectator {
+        final ClientSession session;
+        final ArrayBlockingQueue<String> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+        Spectator(ClientSession session) {
+            this.session = session;
+        }
+
+        /**
+         * 큐를 비우고 스냅샷 메시지들로 바꾼다. 이후의 변화분은 그 뒤에 이어 붙는다.
+         */
+        void resync(List<String> snapshot) {
+            queue.clear();
+            for (String msg : snapshot) {
+                queue.offer(msg);
+            }
+            schedule();
+        }
+
+        /**
+         * @return 큐가 가득 차 넣지 못했으면 false
+         */
+        boolean offer(String msg) {
+            if (!queue.offer(msg)) return false;
+            schedule();
+            return true;
+        }
+
+        void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                executor.execute(this::drain);
+            }
+        }
+
+        /**
+         * 관전 스레드 풀에서 실행된다. 큐에 쌓인 메시지를 차례로 연결의 송신 큐에 넣는다(막히지 않는다).
+         * 연결이 앞의 메시지를 아직 내보내지 못했으면 스레드를 붙잡지 않고 조금 뒤에 다시 실행된다.
+         * 그동안 scheduled를 내리지 않으므로 publish()가 같은 관전자를 또 예약하지 않는다.
+         */
+        void drain() {
+            while (true) {
+                while (!queue.isEmpty()) {
+                    if (session.pendingMessages() >= BACKLOG_LIMIT) {
+                        timer.schedule(() -> executor.execute(this::drain),
+                                System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(RETRY_MILLIS));
+                        return;
+                    }
+                    String msg = queue.poll();
+                    if (msg != null) session.sendMessage(msg);
+                }
+                scheduled.set(false);
+                // 플래그를 내리는 사이에 들어온 메시지가 있으면 이어서 처리한다.
+                if (queue.isEmpty() || !scheduled.compareAndSet(false, true)) return;
+            }
+        }
+    }
+
+    /**
+     * 관전자를 추가하고 첫 메시지로 스냅샷을 보낸다. 방 락을 잡은 상태에서 호출된다.
+     */
+    public void add(ClientSession session, List<String> snapshot) {
+        Spectator spectator = new Spectator(session);
+        spectators.add(spectator);
+        spectator.resync(snapshot);
+    }
+
+    public void remove(ClientSession session) {
+        spectators.removeIf(s -> s.session == session);
+    }
+
+    public int size() {
+        return spectators.size();
+    }
+
+    public boolean anyMatch(Predicate<ClientSession> condition) {
+        for (Spectator spectator : spectators) {
+            if (condition.test(spectator.session)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * 모든 관전자 큐에 변화분 하나를 넣는다. 방 락을 잡은 상태에서 호출되므로
+     * 스냅샷과 변화분의 순서가 방의 실제 진행 순서와 어긋나지 않는다.
+     * 스냅샷은 넘친 관전자가 있을 때만 한 번 만든다.
+     */
+    public void publish(String msg, Supplier<List<String>> snapshot) {
+        publish(session -> msg, snapshot);
+    }
+
+    /**
+     * 관전자마다 다른 변화분을 넣는다. messageFor가 null을 반환한 관전자는 건너뛴다.
+     */
+    public void publish(Function<ClientSession, String> messageFor, Supplier<List<String>> snapshot) {
+        List<String> current = null;
+        for (Spectator spectator : spectators) {
+            String msg = messageFor.apply(spectator.session);
+            if (msg == null) continue;
+            if (!spectator.offer(msg)) {
+                ServerMetrics.SPECTATOR_RESYNCS.increment();
+                if (current == null) current = snapshot.get();
+                spectator.resync(current);
+            }
+        }
+    }
+}
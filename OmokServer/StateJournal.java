@@ -0,0 +1,749 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * StateJournal
+ * - 진행 중인 대국의 상태 변화(대국 시작, 수, 시간 초과로 넘어간 차례, 다시하기 신청, 채팅, 대국 끝남)와
+ *   발급한 세션 토큰을 덧붙이기 전용 로그(WAL)에 남긴다. 서버가 죽었다 다시 뜨면 이 로그로 대국을 되살린다.
+ * - 방은 방 락을 잡은 채 레코드를 메모리 버퍼에 넣기만 한다. 기록 스레드가 FLUSH_MILLIS마다 모인 레코드를
+ *   한 번에 쓰고 fsync한다(그룹 커밋). 서버가 죽으면 마지막 FLUSH_MILLIS 사이의 변화만 잃는다.
+ * - 로그가 snapshotBytes만큼 쌓이면 새 구간(segment) 파일로 넘어간 뒤 모든 방의 상태를 스냅샷으로 쓰고,
+ *   스냅샷 이전 구간은 지운다. 복구 때 다시 읽는 로그 길이에 상한이 있으므로 복구 시간에도 상한이 있다.
+ * - 방 레코드에는 방마다 늘어나는 일련번호가 붙는다. 구간을 넘긴 뒤 스냅샷을 뜨기 전에 들어온 레코드는
+ *   스냅샷과 새 구간에 모두 들어 있을 수 있으므로, 다시 읽을 때 스냅샷의 번호 이하인 레코드는 건너뛴다.
+ *
+ * 구간 파일 "접두어-번호.wal" (빅엔디언):
+ * - 헤더 16바이트: 매직("OMKW") + 버전(int) + 구간 번호(long)
+ * - 레코드: 길이(int, 이 필드와 CRC 제외) + CRC32(int) + 종류(byte) + 내용
+ *   방 레코드의 내용은 방 번호(int) + 일련번호(long) + 종류별 필드, 토큰 레코드는 토큰 해시 + 이름 + 만료 시각(long)
+ *   문자열은 길이(short) + UTF-8. 쓰는 도중 죽어 잘린 마지막 레코드는 CRC로 알아보고 무시한다.
+ *   길이 필드에 들어가지 않는 문자열은 로그와 스냅샷 모두 MAX_STRING_BYTES에 맞춰 글자 경계에서 자른다(clip).
+ * 스냅샷 파일 "접두어.snap": 매직("OMKS") + 버전 + 이어 읽을 구간 번호(long) + 방 수 + 방 상태들
+ *   + 토큰 수 + 토큰들 + CRC32(int). 임시 파일에 쓰고 fsync한 뒤 이름을 바꿔 원자적으로 바꾼다.
+ */
+public class StateJournal {
+    static final byte START = 1;    // 대국 시작: 흑 이름, 백 이름, 봇 자리(비트)
+    static final byte MOVE = 2;     // 수: x, y, 플레이어, 이긴 수면 1
+    static final byte TURN = 3;     // 시간 초과로 넘어간 차례
+    static final byte REMATCH = 4;  // 다시하기를 신청한 플레이어
+    static final byte CHAT = 5;     // 채팅 한 줄 (방이 보낸 그대로)
+    static final byte CLOSE = 6;    // 대국이 끝나 되살릴 필요가 없는 방
+    static final byte TOKEN = 7;    // 세션 토큰
+
+    private static final int SEGMENT_MAGIC = 0x4F4D4B57;  // "OMKW"
+    private static final int SNAPSHOT_MAGIC = 0x4F4D4B53; // "OMKS"
+    private static final int VERSION = 1;
+    private static final int SEGMENT_HEADER_SIZE = 16;
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final long MAP_WINDOW = 64L * 1024 * 1024;
+    private static final long FLUSH_MILLIS = 10;
+    static final int CHAT_LIMIT = 100;
+    // 문자열 길이 필드(unsigned short)에 들어가는 최대 바이트 수
+    static final int MAX_STRING_BYTES = 0xFFFF;
+
+    private final File dir;
+    private final String prefix;
+    // 방 락을 잡은 세션 스레드(가상 스레드일 수 있음)에서 호출되므로 synchronized 대신 사용한다.
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition wake = lock.newCondition();
+    private final CRC32 crc = new CRC32();
+    // 방이 레코드를 넣는 버퍼와, 기록 스레드가 파일에 쓰는 동안 쓰는 버퍼를 번갈아 쓴다.
+    private ByteBuffer pending = ByteBuffer.allocate(64 * 1024);
+    private ByteBuffer spare = ByteBuffer.allocate(64 * 1024);
+    private int recordStart;
+    private boolean closing = false;
+    // 기록에 실패하면 더 쌓지 않는다. 대국은 계속되지만 그 뒤의 변화는 복구되지 않는다.
+    private volatile boolean failed = false;
+    // 아래는 기록 스레드만 쓴다.
+    private Supplier<State> source;
+    private FileChannel segment;
+    private long segmentNumber = 0;
+    private long bytesSinceSnapshot = 0;
+    private Thread writer;
+    // 로그가 이만큼 쌓이면 스냅샷을 뜬다. 복구 때 다시 읽는 로그 길이의 상한이다. 측정 도구만 바꾼다.
+    long snapshotBytes = 16L * 1024 * 1024;
+
+    /**
+     * 복구한(또는 스냅샷으로 쓸) 서버 상태: 되살릴 방과 아직 쓸 수 있는 세션 토큰
+     */
+    public static class State {
+        public final Map<Integer, RoomState> rooms = new HashMap<>();
+        public final Map<String, TokenState> tokens = new HashMap<>();
+        // 복구할 때 다시 읽은 로그 레코드 수와 바이트 수
+        long records;
+        long bytes;
+
+        /**
+         * 로그 레코드 하나(종류부터)를 상태에 반영한다.
+         */
+        void apply(ByteBuffer buf) {
+            records++;
+            byte type = buf.get();
+            if (type == TOKEN) {
+                TokenState token = new TokenState(readString(buf), readString(buf), buf.getLong());
+                tokens.put(token.key, token);
+                return;
+            }
+            int roomId = buf.getInt();
+            long seq = buf.getLong();
+            RoomState room = rooms.get(roomId);
+            if (room != null && seq <= room.seq) return; // 스냅샷에 이미 들어 있는 레코드
+            if (type == START) {
+                if (room == null) {
+                    room = new RoomState(roomId);
+                    rooms.put(roomId, room);
+                }
+                room.start(readString(buf), readString(buf), buf.get());
+            } else if (room == null) {
+                return; // 시작을 모르는 방: 스냅샷을 뜨기 전에 이미 끝난 대국
+            } else if (type == MOVE) {
+                room.move(buf.get(), buf.get(), buf.get(), buf.get() != 0);
+            } else if (type == TURN) {
+                room.currentTurn = buf.get();
+            } else if (type == REMATCH) {
+                room.rematchRequester = buf.get();
+            } else if (type == CHAT) {
+                room.addChat(readString(buf));
+            } else if (type == CLOSE) {
+                rooms.remove(roomId);
+                return;
+            }
+            room.seq = seq;
+        }
+    }
+
+    /**
+     * 방 하나의 대국 상태. GameRoom.captureState()가 만들고 GameRoom.restore()가 읽는다.
+     */
+    public static class RoomState {
+        public final int roomId;
+        public long seq;
+        // 슬롯(1=흑, 2=백) -> 이름
+        public final String[] names = new String[3];
+        // 봇이 앉은 슬롯 (1 << 슬롯)
+        public int botMask;
+        public final short[] moves = new short[225];
+        public int moveCount;
+        public int currentTurn = 1;
+        public boolean active;
+        public int rematchRequester = -1;
+        // 끝난 대국의 승자, 아직 끝나지 않았으면 0
+        public int winner;
+        public final ArrayDeque<String> chat = new ArrayDeque<>();
+        public long chatCount;
+
+        public RoomState(int roomId) {
+            this.roomId = roomId;
+        }
+
+        void start(String black, String white, int botMask) {
+            names[1] = black;
+            names[2] = white;
+            this.botMask = botMask;
+            moveCount = 0;
+            currentTurn = 1;
+            active = true;
+            rematchRequester = -1;
+            winner = 0;
+        }
+
+        void move(int x, int y, int player, boolean win) {
+            if (moveCount == moves.length) return;
+            moves[moveCount++] = MatchArchive.MatchRecord.encodeMove(x, y, player);
+            if (win) {
+                active = false;
+                winner = player;
+            } else {
+                currentTurn = player == 1 ? 2 : 1;
+            }
+        }
+
+        void addChat(String line) {
+            chat.addLast(line);
+            if (chat.size() > CHAT_LIMIT) chat.removeFirst();
+            chatCount++;
+        }
+
+        boolean isBot(int slot) {
+            return (botMask & (1 << slot)) != 0;
+        }
+    }
+
+    /**
+     * 세션 토큰 하나. 토큰 자체가 아니라 해시(AuthService가 만든 키)만 남긴다.
+     */
+    public static class TokenState {
+        public final String key;
+        public final String username;
+        public final long expiresAt;
+
+        public TokenState(String key, String username, long expiresAt) {
+            this.key = key;
+            this.username = username;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    public StateJournal(File dir, String prefix) {
+        this.dir = dir;
+        this.prefix = prefix;
+    }
+
+    public void logStart(int roomId, long seq, String black, String white, int botMask) {
+        byte[] b = utf8(black);
+        byte[] w = utf8(white);
+        lock.lock();
+        try {
+            if (failed) return;
+            ByteBuffer buf = beginRoomRecord(START, roomId, seq, 2 + b.length + 2 + w.length + 1);
+            putString(buf, b);
+            putString(buf, w);
+            buf.put((byte) botMask);
+            endRecord();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void logMove(int roomId, long seq, int x, int y, int player, boolean win) {
+        lock.lock();
+        try {
+            if (failed) return;
+            ByteBuffer buf = beginRoomRecord(MOVE, roomId, seq, 4);
+            buf.put((byte) x).put((byte) y).put((byte) player).put((byte) (win ? 1 : 0));
+            endRecord();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void logTurn(int roomId, long seq, int turn) {
+        logByte(TURN, roomId, seq, turn);
+    }
+
+    public void logRematch(int roomId, long seq, int requester) {
+        logByte(REMATCH, roomId, seq, requester);
+    }
+
+    public void logChat(int roomId, long seq, String line) {
+        byte[] bytes = utf8(line);
+        lock.lock();
+        try {
+            if (failed) return;
+            putString(beginRoomRecord(CHAT, roomId, seq, 2 + bytes.length), bytes);
+            endRecord();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void logClose(int roomId, long seq) {
+        lock.lock();
+        try {
+            if (failed) return;
+            beginRoomRecord(CLOSE, roomId, seq, 0);
+            endRecord();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void logToken(String key, String username, long expiresAt) {
+        byte[] k = utf8(key);
+        byte[] u = utf8(username);
+        lock.lock();
+        try {
+            if (failed) return;
+            ByteBuffer buf = beginRecord(TOKEN, 2 + k.length + 2 + u.length + 8);
+            putString(buf, k);
+            putString(buf, u);
+            buf.putLong(expiresAt);
+            endRecord();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void logByte(byte type, int roomId, long seq, int value) {
+        lock.lock();
+        try {
+            if (failed) return;
+            beginRoomRecord(type, roomId, seq, 1).put((byte) value);
+            endRecord();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private ByteBuffer beginRoomRecord(byte type, int roomId, long seq, int size) {
+        ByteBuffer buf = beginRecord(type, 4 + 8 + size);
+        buf.putInt(roomId).putLong(seq);
+        return buf;
+    }
+
+    /**
+     * 대기 버퍼에 레코드 머리(길이와 CRC는 endRecord에서 채움)와 종류를 쓴다. lock을 잡은 상태에서 부른다.
+     */
+    private ByteBuffer beginRecord(byte type, int size) {
+        int needed = RECORD_HEADER_SIZE + 1 + size;
+        if (pending.remaining() < needed) {
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + needed));
+            pending.flip();
+            grown.put(pending);
+            pending = grown;
+        }
+        recordStart = pending.position();
+        pending.position(recordStart + RECORD_HEADER_SIZE);
+        return pending.put(type);
+    }
+
+    private void endRecord() {
+        int length = pending.position() - recordStart - RECORD_HEADER_SIZE;
+        crc.reset();
+        crc.update(pending.array(), recordStart + RECORD_HEADER_SIZE, length);
+        pending.putInt(recordStart, length);
+        pending.putInt(recordStart + 4, (int) crc.getValue());
+    }
+
+    private static byte[] utf8(String s) {
+        return clip(s).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 길이 필드에 들어가도록 s를 글자 경계에서 자른다. 스냅샷의 writeUTF(수정된 UTF-8)는 NUL과 보충 문자를
+     * UTF-8보다 길게 쓰므로 그 길이로 잰다. 그 길이가 맞으면 로그의 UTF-8 길이도 맞는다.
+     */
+    static String clip(String s) {
+        if (s.length() <= MAX_STRING_BYTES / 3) return s; // 글자당 3바이트를 넘지 않는다.
+        int bytes = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            bytes += c >= 1 && c < 0x80 ? 1 : c < 0x800 ? 2 : 3;
+            if (bytes > MAX_STRING_BYTES) {
+                if (i > 0 && Character.isHighSurrogate(s.charAt(i - 1))) i--;
+                return s.substring(0, i);
+            }
+        }
+        return s;
+    }
+
+    private static void putString(ByteBuffer buf, byte[] bytes) {
+        buf.putShort((short) bytes.length).put(bytes);
+    }
+
+    private static String readString(ByteBuffer buf) {
+        byte[] bytes = new byte[buf.getShort() & 0xFFFF];
+        buf.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 스냅샷과 그 뒤의 구간들을 읽어 서버 상태를 되살린다. start()보다 먼저 부른다.
+     * 스냅샷이 깨져 있으면 남아 있는 구간만으로 되살린다(스냅샷 이전에 시작한 대국은 잃는다).
+     */
+    public State recover() throws IOException {
+        State state = new State();
+        long base = 0;
+        File snapshotFile = snapshotFile();
+        if (snapshotFile.exists()) {
+            try {
+                base = readSnapshot(snapshotFile, state);
+            } catch (IOException e) {
+                System.out.println("[SERVER] 스냅샷 " + snapshotFile + "을(를) 읽지 못해 로그만으로 복구합니다: " + e.getMessage());
+                state = new State();
+                base = 0;
+            }
+        }
+        for (long number : segmentNumbers()) {
+            if (number >= base) replay(segmentFile(number), state);
+        }
+        return state;
+    }
+
+    /**
+     * 기록을 시작한다. 새 구간을 열고 지금 상태(보통 방금 복구한 상태)로 스냅샷을 뜬 뒤 기록 스레드를 띄운다.
+     * 이후 로그가 snapshotBytes만큼 쌓일 때마다 source에서 받은 상태로 다시 스냅샷을 뜬다.
+     */
+    public void start(Supplier<State> source) throws IOException {
+        this.source = source;
+        List<Long> numbers = segmentNumbers();
+        segmentNumber = numbers.isEmpty() ? 0 : numbers.get(numbers.size() - 1);
+        try {
+            snapshot();
+        } catch (IOException e) {
+            failed = true;
+            throw e;
+        }
+        writer = new Thread(this::run, "state-journal");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * 남은 레코드를 모두 쓰고 기록 스레드를 멈춘다.
+     */
+    public void close() throws InterruptedException, IOException {
+        lock.lock();
+        try {
+            closing = true;
+            wake.signal();
+        } finally {
+            lock.unlock();
+        }
+        if (writer != null) writer.join();
+        if (segment != null) segment.close();
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                boolean last;
+                lock.lock();
+                try {
+                    if (!closing) wake.await(FLUSH_MILLIS, TimeUnit.MILLISECONDS);
+                    last = closing;
+                } finally {
+                    lock.unlock();
+                }
+                flush();
+                if (bytesSinceSnapshot >= snapshotBytes) snapshot();
+                if (last) return;
+            }
+        } catch (IOException | InterruptedException e) {
+            failed = true;
+            System.out.println("[SERVER] 상태 로그 기록 실패, 이후 변화는 복구되지 않습니다: " + e);
+        }
+    }
+
+    /**
+     * 대기 버퍼를 넘겨받아 지금 구간에 쓰고 fsync한다. 기록 스레드에서만 부른다.
+     */
+    private void flush() throws IOException {
+        ByteBuffer batch;
+        lock.lock();
+        try {
+            if (pending.position() == 0) return;
+            batch = pending;
+            pending = spare;
+            spare = batch;
+        } finally {
+            lock.unlock();
+        }
+        batch.flip();
+        bytesSinceSnapshot += batch.remaining();
+        while (batch.hasRemaining()) {
+            segment.write(batch);
+        }
+        segment.force(false);
+        batch.clear();
+    }
+
+    /**
+     * 새 구간으로 넘어간 뒤 상태를 스냅샷으로 쓰고, 새 구간 이전의 구간을 지운다.
+     * 넘어가기 전까지의 레코드는 모두 예전 구간에 쓰여 있고 상태에도 반영되어 있다.
+     */
+    private void snapshot() throws IOException {
+        if (segment != null) flush();
+        long base = segmentNumber + 1;
+        FileChannel next = FileChannel.open(segmentFile(base).toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_SIZE);
+        header.putInt(SEGMENT_MAGIC).putInt(VERSION).putLong(base).flip();
+        while (header.hasRemaining()) {
+            next.write(header);
+        }
+        next.force(true);
+        if (segment != null) segment.close();
+        segment = next;
+        segmentNumber = base;
+        bytesSinceSnapshot = 0;
+
+        writeSnapshot(source.get(), base);
+        for (long number : segmentNumbers()) {
+            if (number < base) Files.deleteIfExists(segmentFile(number).toPath());
+        }
+    }
+
+    private void writeSnapshot(State state, long base) throws IOException {
+        File tmp = new File(dir, prefix + ".snap.tmp");
+        try (FileOutputStream file = new FileOutputStream(tmp)) {
+            CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(file, 1 << 16), new CRC32());
+            DataOutputStream out = new DataOutputStream(checked);
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(base);
+            out.writeInt(state.rooms.size());
+            for (RoomState room : state.rooms.values()) {
+                out.writeInt(room.roomId);
+                out.writeLong(room.seq);
+                out.writeUTF(clip(room.names[1]));
+                out.writeUTF(clip(room.names[2]));
+                out.writeByte(room.botMask);
+                out.writeByte(room.currentTurn);
+                out.writeBoolean(room.active);
+                out.writeByte(room.rematchRequester);
+                out.writeByte(room.winner);
+                out.writeShort(room.moveCount);
+                for (int i = 0; i < room.moveCount; i++) {
+                    out.writeShort(room.moves[i]);
+                }
+                out.writeLong(room.chatCount);
+                out.writeShort(room.chat.size());
+                for (String line : room.chat) {
+                    out.writeUTF(clip(line));
+                }
+            }
+            out.writeInt(state.tokens.size());
+            for (TokenState token : state.tokens.values()) {
+                out.writeUTF(clip(token.key));
+                out.writeUTF(clip(token.username));
+                out.writeLong(token.expiresAt);
+            }
+            out.flush();
+            out.writeInt((int) checked.getChecksum().getValue());
+            out.flush();
+            file.getFD().sync();
+        }
+        Files.move(tmp.toPath(), snapshotFile().toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * 스냅샷을 state에 읽어 들인다.
+     *
+     * @return 스냅샷 뒤에 이어 읽을 첫 구간 번호
+     */
+    private static long readSnapshot(File file, State state) throws IOException {
+        try (InputStream raw = new FileInputStream(file)) {
+            CheckedInputStream checked = new CheckedInputStream(new BufferedInputStream(raw, 1 << 16), new CRC32());
+            DataInputStream in = new DataInputStream(checked);
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                throw new IOException("스냅샷 형식이 아닙니다: " + file);
+            }
+            in.readInt();
+            long base = in.readLong();
+            int roomCount = in.readInt();
+            for (int r = 0; r < roomCount; r++) {
+                RoomState room = new RoomState(in.readInt());
+                room.seq = in.readLong();
+                room.names[1] = in.readUTF();
+                room.names[2] = in.readUTF();
+                room.botMask = in.readByte();
+                room.currentTurn = in.readByte();
+                room.active = in.readBoolean();
+                room.rematchRequester = in.readByte();
+                room.winner = in.readByte();
+                room.moveCount = in.readShort();
+                for (int i = 0; i < room.moveCount; i++) {
+                    room.moves[i] = in.readShort();
+                }
+                room.chatCount = in.readLong();
+                int chatLines = in.readShort();
+                for (int i = 0; i < chatLines; i++) {
+                    room.chat.addLast(in.readUTF());
+                }
+                state.rooms.put(room.roomId, room);
+            }
+            int tokenCount = in.readInt();
+            for (int i = 0; i < tokenCount; i++) {
+                TokenState token = new TokenState(in.readUTF(), in.readUTF(), in.readLong());
+                state.tokens.put(token.key, token);
+            }
+            int expected = (int) checked.getChecksum().getValue();
+            if (in.readInt() != expected) {
+                throw new IOException("스냅샷 CRC가 맞지 않습니다: " + file);
+            }
+            return base;
+        }
+    }
+
+    /**
+     * 구간 하나를 처음부터 읽어 state에 반영한다. MAP_WINDOW 크기씩 메모리 매핑하고,
+     * 레코드가 창 경계에 걸치면 그 위치부터 다시 매핑한다. 잘렸거나 CRC가 맞지 않는 레코드에서 멈춘다.
+     */
+    private static void replay(File file, State state) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < SEGMENT_HEADER_SIZE) return;
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, SEGMENT_HEADER_SIZE);
+            if (header.getInt() != SEGMENT_MAGIC) {
+                throw new IOException("상태 로그 형식이 아닙니다: " + file);
+            }
+
+            CRC32 check = new CRC32();
+            long offset = SEGMENT_HEADER_SIZE;
+            MappedByteBuffer window = null;
+            long windowStart = 0;
+            while (offset + RECORD_HEADER_SIZE <= size) {
+                if (window == null || offset + RECORD_HEADER_SIZE > windowStart + window.capacity()) {
+                    windowStart = offset;
+                    window = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(MAP_WINDOW, size - offset));
+                }
+                int pos = (int) (offset - windowStart);
+                int length = window.getInt(pos);
+                if (length <= 0 || offset + RECORD_HEADER_SIZE + length > size) break; // 잘린 마지막 레코드
+                if (offset + RECORD_HEADER_SIZE + length > windowStart + window.capacity()) {
+                    windowStart = offset;
+                    window = channel.map(FileChannel.MapMode.READ_ONLY, offset,
+                            Math.min(Math.max(MAP_WINDOW, RECORD_HEADER_SIZE + length), size - offset));
+                    pos = 0;
+                }
+                int expected = window.getInt(pos + 4);
+                window.limit(pos + RECORD_HEADER_SIZE + length);
+                window.position(pos + RECORD_HEADER_SIZE);
+                check.reset();
+                check.update(window);
+                if ((int) check.getValue() != expected) break;
+                window.position(pos + RECORD_HEADER_SIZE);
+                state.apply(window);
+                window.limit(window.capacity());
+                offset += RECORD_HEADER_SIZE + length;
+            }
+            state.bytes += offset;
+        }
+    }
+
+    private File snapshotFile() {
+        return new File(dir, prefix + ".snap");
+    }
+
+    private File segmentFile(long number) {
+        return new File(dir, String.format("%s-%08d.wal", prefix, number));
+    }
+
+    /**
+     * 디렉터리에 있는 구간 번호를 오름차순으로 반환한다.
+     */
+    private List<Long> segmentNumbers() {
+        List<Long> numbers = new ArrayList<>();
+        String[] names = dir.list();
+        if (names == null) return numbers;
+        for (String name : names) {
+            if (!name.startsWith(prefix + "-") || !name.endsWith(".wal")) continue;
+            try {
+                numbers.add(Long.parseLong(name.substring(prefix.length() + 1, name.length() - 4)));
+            } catch (NumberFormatException ignored) {}
+        }
+        Collections.sort(numbers);
+        return numbers;
+    }
+
+    /**
+     * 상태 로그 측정 도구: java -cp out StateJournal [방 수=10000] [방마다 수=150] [디렉터리=임시 디렉터리]
+     * 방마다 대국 시작·수·채팅·시간 초과를 서버처럼 섞어 쓴 뒤, 스냅샷 없이 로그 전체를 다시 읽는 속도와
+     * 스냅샷 + 그 뒤 로그로 복구하는 시간(보드 다시 쌓기 포함)을 출력한다.
+     */
+    public static void main(String[] args) throws Exception {
+        int roomCount = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int movesPerRoom = Math.min(200, args.length > 1 ? Integer.parseInt(args[1]) : 150);
+        boolean temporary = args.length <= 2;
+        File dir = temporary ? Files.createTempDirectory("journal-bench").toFile() : new File(args[2]);
+        String prefix = "bench-state";
+        deleteFiles(dir, prefix);
+        long[] seqs = new long[roomCount];
+
+        StateJournal journal = new StateJournal(dir, prefix);
+        journal.snapshotBytes = Long.MAX_VALUE; // 로그 전체를 다시 읽는 속도를 재려고 스냅샷을 뜨지 않는다.
+        journal.start(State::new);
+        long start = System.nanoTime();
+        long written = writeEvents(journal, seqs, 0, movesPerRoom);
+        journal.close();
+        double writeSeconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("레코드 %d개 쓰기: %.2f초 (%.0f 레코드/초, 그룹 커밋 %dms)%n",
+                written, writeSeconds, written / writeSeconds, FLUSH_MILLIS);
+
+        State full = null;
+        double replaySeconds = 0;
+        for (int round = 0; round < 3; round++) { // 처음 몇 번은 JIT 예열
+            start = System.nanoTime();
+            full = new StateJournal(dir, prefix).recover();
+            replaySeconds = (System.nanoTime() - start) / 1e9;
+        }
+        System.out.printf("로그 전체 다시 읽기: 레코드 %d개, %.1fMB, %.3f초 (%.0f 레코드/초, %.0fMB/초), 방 %d개%n",
+                full.records, full.bytes / 1e6, replaySeconds, full.records / replaySeconds,
+                full.bytes / 1e6 / replaySeconds, full.rooms.size());
+
+        // 스냅샷을 뜬 뒤 방마다 몇 수를 더 두어, 복구가 스냅샷 + 짧은 로그를 읽게 한다.
+        StateJournal resumed = new StateJournal(dir, prefix);
+        State snapshotState = full;
+        start = System.nanoTime();
+        resumed.start(() -> snapshotState);
+        double snapshotSeconds = (System.nanoTime() - start) / 1e9;
+        writeEvents(resumed, seqs, movesPerRoom, movesPerRoom + 8);
+        resumed.close();
+        long snapshotSize = new File(dir, prefix + ".snap").length();
+
+        State recovered = null;
+        double recoverSeconds = 0;
+        double rebuildSeconds = 0;
+        for (int round = 0; round < 3; round++) {
+            start = System.nanoTime();
+            recovered = new StateJournal(dir, prefix).recover();
+            recoverSeconds = (System.nanoTime() - start) / 1e9;
+            start = System.nanoTime();
+            for (RoomState room : recovered.rooms.values()) {
+                new GameBoard().loadMoves(room.moves, room.moveCount, room.currentTurn);
+            }
+            rebuildSeconds = (System.nanoTime() - start) / 1e9;
+        }
+        System.out.printf("스냅샷 쓰기 %.3f초 (%.1fMB)%n", snapshotSeconds, snapshotSize / 1e6);
+        System.out.printf("복구: 스냅샷 + 로그 레코드 %d개(%.1fMB) 읽기 %.3f초, 보드 %d개 다시 쌓기 %.3f초, 합계 %.3f초%n",
+                recovered.records, recovered.bytes / 1e6, recoverSeconds, recovered.rooms.size(),
+                rebuildSeconds, recoverSeconds + rebuildSeconds);
+        deleteFiles(dir, prefix);
+        if (temporary) dir.delete();
+    }
+
+    /**
+     * 방마다 from번째부터 to번째 전까지의 수를 방들을 번갈아 가며 쓴다. 첫 수 앞에는 대국 시작을,
+     * 10수마다 채팅을, 25수마다 시간 초과를 함께 쓴다.
+     *
+     * @return 쓴 레코드 수
+     */
+    private static long writeEvents(StateJournal journal, long[] seqs, int from, int to) {
+        long count = 0;
+        for (int i = from; i < to; i++) {
+            for (int room = 0; room < seqs.length; room++) {
+                if (i == 0) {
+                    journal.logStart(room, ++seqs[room], "black" + room, "white" + room, 0);
+                    count++;
+                }
+                int cell = (i * 97 + room) % 225; // 97은 225와 서로소라 같은 방에서 칸이 겹치지 않는다.
+                int player = i % 2 == 0 ? 1 : 2;
+                journal.logMove(room, ++seqs[room], cell / 15, cell % 15, player, false);
+                count++;
+                if (i % 10 == 9) {
+                    journal.logChat(room, ++seqs[room], "CHAT " + player + " user" + room + " : 좋은 수네요");
+                    count++;
+                }
+                if (i % 25 == 24) {
+                    journal.logTurn(room, ++seqs[room], player);
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    private static void deleteFiles(File dir, String prefix) {
+        File[] files = dir.listFiles((d, name) -> name.startsWith(prefix));
+        if (files == null) return;
+        for (File file : files) {
+            file.delete();
+        }
+    }
+}
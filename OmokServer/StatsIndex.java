@@ -0,0 +1,108 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * StatsIndex
+ * - 사용자별 승/패 수를 메모리에 들고 있는 색인
+ * - 서버 시작 시 record.txt를 읽어 만들고, 이후에는 파일 끝에 덧붙은 줄만 이어 읽는다(refresh()).
+ *   클러스터의 여러 노드가 같은 record.txt에 덧붙여도 각 노드의 색인에 모든 노드의 결과가 들어온다.
+ * - refresh()는 서버의 기록 스레드가 부른다. 조회는 파일을 건드리지 않는 해시맵 한 번이므로
+ *   방 락을 잡은 채 불러도 되고, 기록이 늘어나도 비용이 일정하다.
+ *
+ * record.txt 형식:
+ * - "시각 - A 승리 / B 패배" (현재 형식)
+ * - "시각 - A 승리"          (패자가 없는 예전 형식)
+ */
+public class StatsIndex {
+    private final Map<String, int[]> stats = new ConcurrentHashMap<>();
+    private final ReentrantLock readLock = new ReentrantLock();
+    private volatile File recordFile;
+    // 지금까지 색인에 반영한 바이트 수. 항상 줄바꿈 바로 뒤를 가리킨다.
+    private volatile long loaded = 0;
+
+    /**
+     * 기록 파일을 읽어 색인을 만든다. 파일이 없으면 빈 색인이 되고, 나중에 생기면 refresh()가 읽는다.
+     */
+    public void load(File recordFile) {
+        this.recordFile = recordFile;
+        refresh();
+    }
+
+    /**
+     * 지난번에 읽은 곳 이후 덧붙은 줄을 색인에 반영한다. 파일 길이가 그대로면 바로 돌아온다.
+     * 다른 프로세스가 아직 쓰고 있는 마지막 줄(줄바꿈 전)은 다음 호출에서 읽는다.
+     */
+    public void refresh() {
+        File file = recordFile;
+        if (file == null || file.length() == loaded) return;
+        readLock.lock();
+        try (FileInputStream in = new FileInputStream(file)) {
+            long offset = loaded;
+            if (in.getChannel().size() < offset) {
+                // 파일이 새로 만들어졌다. 처음부터 다시 센다.
+                stats.clear();
+                offset = 0;
+            }
+            in.getChannel().position(offset);
+            byte[] chunk = new byte[64 * 1024];
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            int n;
+            while ((n = in.read(chunk)) > 0) {
+                int start = 0;
+                for (int i = 0; i < n; i++) {
+                    if (chunk[i] != '\n') continue;
+                    line.write(chunk, start, i - start);
+                    offset += line.size() + 1;
+                    parseLine(line.toString(StandardCharsets.UTF_8.name()).replace("\r", ""));
+                    line.reset();
+                    start = i + 1;
+                }
+                line.write(chunk, start, n - start);
+            }
+            loaded = offset;
+        } catch (IOException ignored) {
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    private void parseLine(String line) {
+        int sep = line.indexOf(" - ");
+        if (sep == -1) return;
+        String winner = null;
+        String loser = null;
+        for (String part : line.substring(sep + 3).split(" / ")) {
+            if (part.endsWith(" 승리")) {
+                winner = part.substring(0, part.length() - 3).trim();
+            } else if (part.endsWith(" 패배")) {
+                loser = part.substring(0, part.length() - 3).trim();
+            }
+        }
+        recordResult(winner, loser);
+    }
+
+    /**
+     * 경기 결과 하나를 색인에 반영한다. winner/loser 중 없는 쪽은 null로 넘긴다.
+     */
+    public void recordResult(String winner, String loser) {
+        if (winner != null && !winner.isEmpty()) {
+            stats.compute(winner, (k, v) -> v == null ? new int[]{1, 0} : new int[]{v[0] + 1, v[1]});
+        }
+        if (loser != null && !loser.isEmpty()) {
+            stats.compute(loser, (k, v) -> v == null ? new int[]{0, 1} : new int[]{v[0], v[1] + 1});
+        }
+    }
+
+    public int getWins(String username) {
+        int[] v = stats.get(username);
+        return v == null ? 0 : v[0];
+    }
+
+    public int getLosses(String username) {
+        int[] v = stats.get(username);
+        return v == null ? 0 : v[1];
+    }
+}
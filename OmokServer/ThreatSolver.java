@@ -0,0 +1,441 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * ThreatSolver
+ * - 위협만 이어 두어 이기는 수순(필승)을 찾는 위협 공간 탐색기
+ *   - VCF: 4만 계속 두어 이긴다. 상대는 매번 5목 자리를 막는 수밖에 없다.
+ *   - VCT: 4와 열린 3을 섞어 이긴다. 3에는 막는 자리와 상대의 4 반격을 모두 확인한다.
+ * - 알파-베타 엔진(SearchEngine)과 달리 위협이 되는 수만 만든다. 후보는 줄 마스크의 5칸 창에서 바로 뽑는다.
+ *   (돌 3개 + 빈칸 2개인 창의 빈칸이 4 후보, 돌 2개 + 빈칸 3개인 창의 빈칸이 3 후보)
+ * - 풀이 결과는 자체 증명 캐시에 남긴다. 증명된 깊이 이상을 물으면 필승, 실패한 깊이 이하를 물으면 실패로 바로 답한다.
+ * - 흑의 금수는 서버와 같은 규칙으로 거른다. 흑이 막아야 할 자리가 금수이면 백이 이긴 것으로 본다.
+ * - 한 인스턴스는 한 번에 한 스레드만 쓴다.
+ */
+public class ThreatSolver {
+    public static final int VCF = 0;
+    public static final int VCT = 1;
+    /** 공격 측이 둘 수 있는 위협 수의 상한 */
+    public static final int MAX_DEPTH = 20;
+
+    private static final int SIZE = BitBoard.SIZE;
+    private static final int CELLS = SIZE * SIZE;
+    private static final int CACHE_BITS = 16;
+    private static final int MAX_POINTS = 8;
+    private static final int MAX_PLY = 2 * MAX_DEPTH + 4;
+    private static final int PROVED = 1 << 8;
+    // 캐시 키에 섞는 값. 공격 색이나 탐색 종류가 다르면 같은 국면이라도 다른 결과로 본다.
+    private static final long[][] SALT = new long[2][2];
+
+    static {
+        Random random = new Random(0x7A12EA7L);
+        for (int c = 0; c < 2; c++) {
+            for (int mode = 0; mode < 2; mode++) {
+                SALT[c][mode] = random.nextLong();
+            }
+        }
+    }
+
+    // 증명 캐시. data 배치: (깊이 + 1) << 9 | 증명 여부(PROVED) | 첫 수(8비트)
+    private final long[] cacheKeys = new long[1 << CACHE_BITS];
+    private final int[] cacheData = new int[1 << CACHE_BITS];
+    private final int cacheMask = (1 << CACHE_BITS) - 1;
+    // ply마다 쓰는 225비트 후보 집합([0]=4, [1]=3)과 5목 자리 버퍼. 탐색 중에 배열을 새로 만들지 않는다.
+    private final long[][][] sets = new long[MAX_PLY][2][4];
+    private final int[][] points = new int[MAX_PLY][MAX_POINTS];
+    private final long[] scratchSet = new long[4];
+    private final int[] scratchPoints = new int[MAX_POINTS];
+
+    private BitBoard board;
+    private long hash;
+    private long nodes;
+    private long nodeLimit = Long.MAX_VALUE;
+    private boolean aborted;
+
+    /**
+     * 풀이 결과. 필승이 없으면(또는 노드 한도에 걸리면) x, y가 -1이다.
+     * depth는 필승 수순에서 공격 측이 두는 위협 수(마지막 5목 제외)이다.
+     */
+    public static class Result {
+        public final int x;
+        public final int y;
+        public final int depth;
+        public final long nodes;
+        public final long nanos;
+
+        Result(int move, int depth, long nodes, long nanos) {
+            this.x = move < 0 ? -1 : move / SIZE;
+            this.y = move < 0 ? -1 : move % SIZE;
+            this.depth = move < 0 ? 0 : depth;
+            this.nodes = nodes;
+            this.nanos = nanos;
+        }
+
+        public boolean isWin() {
+            return x >= 0;
+        }
+
+        @Override
+        public String toString() {
+            return isWin()
+                    ? String.format("(%d, %d) %d수 필승, 노드 %d개, %dµs", x, y, depth, nodes, nanos / 1000)
+                    : String.format("필승 없음, 노드 %d개, %dµs", nodes, nanos / 1000);
+        }
+    }
+
+    /**
+     * 한 번의 풀이에서 방문할 노드 수의 상한을 정한다. 넘기면 필승이 없는 것으로 답한다.
+     */
+    public void setNodeLimit(long nodeLimit) {
+        this.nodeLimit = nodeLimit;
+    }
+
+    /**
+     * 지금 차례인 플레이어에게 필승이 있는지 찾는다.
+     */
+    public Result solve(GameBoard position, int mode, int maxDepth) {
+        return solve(position.copyBoard(), position.getCurrentTurn(), mode, maxDepth);
+    }
+
+    /**
+     * attacker가 둘 차례인 position에서 mode(VCF/VCT)로 maxDepth 수 안의 필승을 찾는다. 입력 보드는 바꾸지 않는다.
+     * 깊이를 1부터 늘려 가므로 찾은 수순은 가장 짧은 것이다.
+     */
+    public Result solve(BitBoard position, int attacker, int mode, int maxDepth) {
+        long start = System.nanoTime();
+        board = position.copy();
+        hash = 0;
+        for (int i = 0; i < CELLS; i++) {
+            int stone = board.get(i / SIZE, i % SIZE);
+            if (stone != BitBoard.EMPTY) hash ^= SearchEngine.ZOBRIST[stone - 1][i];
+        }
+        nodes = 0;
+        aborted = false;
+
+        int five = fivePoints(attacker, -1, 0, scratchPoints) > 0 ? scratchPoints[0] : -1;
+        if (five >= 0) return new Result(five, 0, 0, System.nanoTime() - start);
+        int move = -1;
+        int depth = 1;
+        for (; depth <= Math.min(maxDepth, MAX_DEPTH) && move < 0 && !aborted; depth++) {
+            move = attack(attacker, depth, 0, -1, 0, mode);
+        }
+        return new Result(move, depth - 1, nodes, System.nanoTime() - start);
+    }
+
+    /**
+     * 공격 측 차례(OR 노드). depth 수 안에 이기는 첫 수를, 없으면 -1을 반환한다.
+     * (lastX, lastY)는 상대가 방금 둔 수로, 상대의 새 5목 자리는 그 수를 지나는 줄에만 생긴다. lastX < 0이면 보드 전체를 본다.
+     */
+    private int attack(int a, int depth, int ply, int lastX, int lastY, int mode) {
+        if (++nodes > nodeLimit) aborted = true;
+        if (aborted) return -1;
+        long key = hash ^ SALT[a - 1][mode];
+        int slot = (int) key & cacheMask;
+        if (cacheKeys[slot] == key) {
+            int data = cacheData[slot];
+            int cached = (data >>> 9) - 1;
+            if ((data & PROVED) != 0 && cached <= depth) return data & 0xFF;
+            if ((data & PROVED) == 0 && cached >= depth) return -1;
+        }
+
+        int d = 3 - a;
+        int[] block = points[ply];
+        int blocks = fivePoints(d, lastX, lastY, block);
+        int result = -1;
+        if (blocks < 2) {
+            long[] fours = sets[ply][0];
+            long[] threes = sets[ply][1];
+            collect(a, 3, -1, 0, fours);
+            if (mode == VCT && depth > 1) {
+                collect(a, 2, -1, 0, threes);
+                for (int k = 0; k < 4; k++) threes[k] &= ~fours[k];
+            } else {
+                clear(threes);
+            }
+            if (blocks == 1) {
+                // 상대의 4를 먼저 막아야 한다. 막는 수가 위협이 아니면 이어 갈 수 없다.
+                keepOnly(fours, block[0]);
+                keepOnly(threes, block[0]);
+            }
+            result = tryMoves(a, fours, true, depth, ply, mode);
+            if (result < 0 && !aborted) result = tryMoves(a, threes, false, depth, ply, mode);
+        }
+        if (aborted) return -1;
+        cacheKeys[slot] = key;
+        cacheData[slot] = (depth + 1) << 9 | (result >= 0 ? PROVED | result : 0);
+        return result;
+    }
+
+    private int tryMoves(int a, long[] set, boolean four, int depth, int ply, int mode) {
+        for (int k = 0; k < 4; k++) {
+            long bits = set[k];
+            while (bits != 0) {
+                int move = k * 64 + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                if (four ? tryFour(a, move, depth, ply, mode) : tryThree(a, move, depth, ply, mode)) return move;
+                if (aborted) return -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * move로 4를 만든다. 5목 자리가 둘이면 이기고, 하나면 상대가 막게 한 뒤 다음 위협을 찾는다.
+     */
+    private boolean tryFour(int a, int move, int depth, int ply, int mode) {
+        int mx = move / SIZE, my = move % SIZE;
+        if (board.isForbidden(mx, my, a)) return false;
+        int d = 3 - a;
+        place(move, a);
+        int[] fives = points[ply + 1];
+        int n = fivePoints(a, mx, my, fives);
+        boolean win = false;
+        if (n >= 2) {
+            win = true;
+        } else if (n == 1) {
+            int f = fives[0];
+            if (board.isForbidden(f / SIZE, f % SIZE, d)) {
+                win = true;
+            } else if (depth > 1) {
+                place(f, d);
+                win = attack(a, depth - 1, ply + 1, f / SIZE, f % SIZE, mode) >= 0;
+                undo(f, d);
+            }
+        }
+        undo(move, a);
+        return win;
+    }
+
+    /**
+     * move로 열린 3을 만든다. 상대의 모든 방어(막는 자리와 4 반격)에 대해 남은 깊이 안에 이겨야 한다.
+     */
+    private boolean tryThree(int a, int move, int depth, int ply, int mode) {
+        int mx = move / SIZE, my = move % SIZE;
+        if (board.isForbidden(mx, my, a)) return false;
+        place(move, a);
+        boolean win = defend(a, mx, my, depth - 1, ply + 1, mode);
+        undo(move, a);
+        return win;
+    }
+
+    /**
+     * 방어 측 차례(AND 노드). (mx, my)의 3이 만든 위협을 막는 모든 수에 대해 공격 측이 이기면 true.
+     */
+    private boolean defend(int a, int mx, int my, int depth, int ply, int mode) {
+        if (++nodes > nodeLimit) aborted = true;
+        if (aborted || depth < 1) return false;
+        int d = 3 - a;
+        long[] replies = sets[ply][0];
+        if (!threatDefences(a, mx, my, replies)) return false; // 열린 3이 아니다.
+        long[] counters = sets[ply][1];
+        collect(d, 3, -1, 0, counters);
+        for (int k = 0; k < 4; k++) replies[k] |= counters[k];
+
+        int[] fives = points[ply];
+        for (int k = 0; k < 4; k++) {
+            long bits = replies[k];
+            while (bits != 0) {
+                int q = k * 64 + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                int qx = q / SIZE, qy = q % SIZE;
+                if (board.isForbidden(qx, qy, d)) continue;
+                place(q, d);
+                int n = fivePoints(d, qx, qy, fives);
+                boolean win;
+                if (n >= 2) {
+                    win = false;
+                } else if (n == 1) {
+                    // 상대가 4로 반격했다. 막은 다음에도 위협이 남아 있어야 한다.
+                    int g = fives[0];
+                    win = !board.isForbidden(g / SIZE, g % SIZE, a);
+                    if (win) {
+                        place(g, a);
+                        win = defend(a, mx, my, depth - 1, ply + 1, mode);
+                        undo(g, a);
+                    }
+                } else {
+                    win = attack(a, depth, ply + 1, qx, qy, mode) >= 0;
+                }
+                undo(q, d);
+                if (!win) return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * (mx, my)를 지나는 줄에서 열린 4(5목 자리가 둘)를 만드는 수와 그 5목 자리를 out에 모은다.
+     * 방어 측은 이 중 하나에 두어야 위협을 막을 수 있다. 그런 수가 없으면 false.
+     */
+    private boolean threatDefences(int a, int mx, int my, long[] out) {
+        clear(out);
+        collect(a, 3, mx, my, scratchSet);
+        boolean any = false;
+        for (int k = 0; k < 4; k++) {
+            long bits = scratchSet[k];
+            while (bits != 0) {
+                int p = k * 64 + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                if (board.isForbidden(p / SIZE, p % SIZE, a)) continue;
+                place(p, a);
+                int n = fivePoints(a, p / SIZE, p % SIZE, scratchPoints);
+                undo(p, a);
+                if (n < 2) continue;
+                any = true;
+                add(out, p);
+                for (int i = 0; i < n; i++) add(out, scratchPoints[i]);
+            }
+        }
+        return any;
+    }
+
+    /**
+     * player가 한 수로 5목을 만들 수 있는 빈칸을 out에 넣고 개수를 반환한다.
+     * x < 0이면 보드 전체를, 아니면 (x, y)를 지나는 네 줄만 본다. 흑은 장목이 되는 자리를 뺀다.
+     */
+    private int fivePoints(int player, int x, int y, int[] out) {
+        int count = 0;
+        for (int dir = 0; dir < 4; dir++) {
+            int from = x < 0 ? 0 : BitBoard.lineIndex(dir, x, y);
+            int to = x < 0 ? BitBoard.LINES - 1 : from;
+            for (int line = from; line <= to; line++) {
+                int own = board.lineBits(player, dir, line);
+                if (Integer.bitCount(own) < 4) continue;
+                int valid = BitBoard.validBits(dir, line);
+                int opp = board.lineBits(3 - player, dir, line);
+                int empty = valid & ~(own | opp);
+                for (int s = Integer.numberOfTrailingZeros(valid); ((valid >>> s) & 31) == 31; s++) {
+                    int window = 31 << s;
+                    if ((opp & window) != 0 || Integer.bitCount(own & window) != 4) continue;
+                    int cell = cellAt(dir, line, Integer.numberOfTrailingZeros(empty & window));
+                    if (!board.checkWin(cell / SIZE, cell % SIZE, player)) continue;
+                    count = addPoint(out, count, cell);
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * player의 돌이 stones개이고 상대 돌이 없는 5칸 창의 빈칸을 out에 모은다.
+     * stones가 3이면 4를 만드는 후보, 2이면 3을 만드는 후보이다. x < 0이면 보드 전체를, 아니면 (x, y)를 지나는 줄만 본다.
+     */
+    private void collect(int player, int stones, int x, int y, long[] out) {
+        clear(out);
+        for (int dir = 0; dir < 4; dir++) {
+            int from = x < 0 ? 0 : BitBoard.lineIndex(dir, x, y);
+            int to = x < 0 ? BitBoard.LINES - 1 : from;
+            for (int line = from; line <= to; line++) {
+                int own = board.lineBits(player, dir, line);
+                if (Integer.bitCount(own) < stones) continue;
+                int valid = BitBoard.validBits(dir, line);
+                int opp = board.lineBits(3 - player, dir, line);
+                int empty = valid & ~(own | opp);
+                int found = 0;
+                for (int s = Integer.numberOfTrailingZeros(valid); ((valid >>> s) & 31) == 31; s++) {
+                    int window = 31 << s;
+                    if ((opp & window) == 0 && Integer.bitCount(own & window) == stones) found |= empty & window;
+                }
+                while (found != 0) {
+                    add(out, cellAt(dir, line, Integer.numberOfTrailingZeros(found)));
+                    found &= found - 1;
+                }
+            }
+        }
+    }
+
+    /** dir 방향 line번째 줄의 bit번째 칸을 x * 15 + y로 바꾼다. (BitBoard의 줄 배치를 거꾸로 따라간다) */
+    private static int cellAt(int dir, int line, int bit) {
+        switch (dir) {
+            case BitBoard.DIR_X: return bit * SIZE + line;
+            case BitBoard.DIR_Y: return line * SIZE + bit;
+            case BitBoard.DIR_XY: return bit * SIZE + bit - line + SIZE - 1;
+            default: return bit * SIZE + line - bit;
+        }
+    }
+
+    private static int addPoint(int[] out, int count, int cell) {
+        for (int i = 0; i < count; i++) {
+            if (out[i] == cell) return count;
+        }
+        if (count < out.length) out[count] = cell;
+        return count + 1;
+    }
+
+    private static void add(long[] set, int cell) {
+        set[cell >>> 6] |= 1L << cell;
+    }
+
+    private static void keepOnly(long[] set, int cell) {
+        boolean has = (set[cell >>> 6] & (1L << cell)) != 0;
+        clear(set);
+        if (has) add(set, cell);
+    }
+
+    private static void clear(long[] set) {
+        set[0] = set[1] = set[2] = set[3] = 0;
+    }
+
+    private void place(int move, int player) {
+        board.set(move / SIZE, move % SIZE, player);
+        hash ^= SearchEngine.ZOBRIST[player - 1][move];
+    }
+
+    private void undo(int move, int player) {
+        board.remove(move / SIZE, move % SIZE);
+        hash ^= SearchEngine.ZOBRIST[player - 1][move];
+    }
+
+    /**
+     * 퍼즐 채굴 도구: java -cp out ThreatSolver [matches.dat] [vcf|vct] [puzzles.txt]
+     * 보관된 경기를 한 수씩 다시 두며 둘 차례인 쪽의 필승을 찾고, 한 경기에서 색마다 처음 나온
+     * 2수 이상의 필승 국면을 퍼즐로 저장한다. 끝에 초당 푼 국면 수를 출력한다.
+     * 퍼즐 한 줄: 종류 깊이 차례 정답(x,y) 수 목록(x,y ...)
+     */
+    public static void main(String[] args) throws IOException {
+        MatchArchive archive = new MatchArchive(new File(args.length > 0 ? args[0] : "matches.dat"));
+        int mode = args.length > 1 && args[1].equalsIgnoreCase("vct") ? VCT : VCF;
+        int maxDepth = mode == VCT ? 6 : MAX_DEPTH;
+        File output = new File(args.length > 2 ? args[2] : "puzzles.txt");
+        ThreatSolver solver = new ThreatSolver();
+        solver.setNodeLimit(200_000);
+
+        long[] totals = new long[4]; // 국면 수, 노드 수, 걸린 시간(ns), 퍼즐 수
+        try (BufferedWriter out = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(output), StandardCharsets.UTF_8))) {
+            long games = archive.forEach(record -> {
+                BitBoard board = new BitBoard();
+                boolean[] found = new boolean[3];
+                StringBuilder line = new StringBuilder();
+                short[] moves = record.moves;
+                for (int i = 0; i < moves.length; i++) {
+                    int x = MatchArchive.MatchRecord.moveX(moves[i]);
+                    int y = MatchArchive.MatchRecord.moveY(moves[i]);
+                    int player = MatchArchive.MatchRecord.movePlayer(moves[i]);
+                    board.set(x, y, player);
+                    line.append(' ').append(x).append(',').append(y);
+                    if (board.checkWin(x, y, player)) break;
+                    int next = i + 1 < moves.length ? MatchArchive.MatchRecord.movePlayer(moves[i + 1]) : 3 - player;
+                    Result result = solver.solve(board, next, mode, maxDepth);
+                    totals[0]++;
+                    totals[1] += result.nodes;
+                    totals[2] += result.nanos;
+                    if (!result.isWin() || result.depth < 2 || found[next]) continue;
+                    found[next] = true;
+                    totals[3]++;
+                    try {
+                        out.write((mode == VCT ? "VCT " : "VCF ") + result.depth + " " + next + " "
+                                + result.x + "," + result.y + line + "\n");
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            });
+            double seconds = totals[2] / 1e9;
+            System.out.printf("경기 %d개, 국면 %d개, 노드 %d개, %.3f초 (%.0f 국면/초, %.0f 노드/초), 퍼즐 %d개 -> %s%n",
+                    games, totals[0], totals[1], seconds, seconds > 0 ? totals[0] / seconds : 0.0,
+                    seconds > 0 ? totals[1] / seconds : 0.0, totals[3], output);
+        }
+    }
+}
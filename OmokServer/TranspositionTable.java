@@ -0,0 +1,68 @@
+/**
+ * TranspositionTable
+ * - 탐색 중에 이미 계산한 국면의 결과를 Zobrist 해시로 찾아 쓰는 고정 크기 표
+ * - 칸마다 해시 전체(key)와 결과 하나(data)를 두고, 같은 칸에 다른 국면이 오면 깊이가 같거나 더 깊은 결과로 바꾼다.
+ * - data 배치: 점수(32비트) | 최선수(8비트, 없으면 255) | 깊이(8비트) | 종류(2비트)
+ *   종류가 0인 칸은 비어 있는 칸이다.
+ * - 여러 탐색 스레드가 잠금 없이 함께 쓴다. key 자리에는 해시 ^ data를 저장해 두고,
+ *   찾을 때 key ^ data가 해시와 같은지 본다. 두 스레드의 쓰기가 섞여 key와 data가 서로 다른 쓰기에서 왔으면
+ *   검사를 통과하지 못해 없는 칸으로 취급된다. (long 배열 원소 하나의 읽기/쓰기는 쪼개지지 않는다고 가정한다.)
+ */
+public class TranspositionTable {
+    public static final int EXACT = 1;
+    public static final int LOWER = 2;   // 점수 이상 (beta 컷)
+    public static final int UPPER = 3;   // 점수 이하 (alpha를 못 넘음)
+    public static final int NO_MOVE = 255;
+
+    private final long[] keys;
+    private final long[] data;
+    private final int mask;
+
+    /**
+     * @param bits 칸 수의 로그 (칸 수 = 2^bits)
+     */
+    public TranspositionTable(int bits) {
+        keys = new long[1 << bits];
+        data = new long[1 << bits];
+        mask = (1 << bits) - 1;
+    }
+
+    /**
+     * 해시에 해당하는 결과를 찾는다. 없으면 0을 반환한다.
+     */
+    public long probe(long hash) {
+        int i = (int) hash & mask;
+        long entry = data[i];
+        return (keys[i] ^ entry) == hash ? entry : 0;
+    }
+
+    public void store(long hash, int score, int move, int depth, int flag) {
+        int i = (int) hash & mask;
+        long old = data[i];
+        if ((keys[i] ^ old) != hash && depthOf(old) > depth) return;
+        long entry = ((long) score << 32) | ((move & 0xFF) << 16) | ((depth & 0xFF) << 8) | flag;
+        data[i] = entry;
+        keys[i] = hash ^ entry;
+    }
+
+    public void clear() {
+        java.util.Arrays.fill(keys, 0);
+        java.util.Arrays.fill(data, 0);
+    }
+
+    public static int scoreOf(long entry) {
+        return (int) (entry >> 32);
+    }
+
+    public static int moveOf(long entry) {
+        return (int) (entry >>> 16) & 0xFF;
+    }
+
+    public static int depthOf(long entry) {
+        return (int) (entry >>> 8) & 0xFF;
+    }
+
+    public static int flagOf(long entry) {
+        return (int) entry & 3;
+    }
+}
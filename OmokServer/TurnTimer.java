@@ -0,0 +1,115 @@
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * TurnTimer
+ * - 모든 방의 턴 시계를 스레드 하나로 구동하는 해시 휠(hashed wheel) 타이머
+ * - 작업은 System.nanoTime() 기준의 절대 마감 시각으로 예약되므로, sleep 오차가 쌓여 시계가 밀리지 않는다.
+ * - 휠은 TICK 간격으로 한 칸씩 돌며 해당 칸의 작업만 확인하므로,
+ *   진행 중인 대국 수가 늘어도 타이머 스레드 수와 CPU 사용량이 일정하게 유지된다.
+ * - 만료된 작업은 타이머 스레드에서 바로 실행되므로 짧게 끝나야 한다.
+ */
+public class TurnTimer {
+    private static final long TICK_NANOS = 10_000_000L; // 10ms
+    private static final int WHEEL_SIZE = 512;          // 한 바퀴 = 5.12초
+    private static final int MASK = WHEEL_SIZE - 1;
+
+    private final List<List<Timeout>> wheel = new ArrayList<>(WHEEL_SIZE);
+    private final Queue<Timeout> pending = new ConcurrentLinkedQueue<>();
+    private final long startTime = System.nanoTime();
+    private long tick = 0;
+
+    public TurnTimer() {
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            wheel.add(new ArrayList<>());
+        }
+        Thread worker = new Thread(this::run, "turn-timer");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * 예약된 작업 하나. cancel()로 취소하면 마감 시각이 되어도 실행되지 않는다.
+     */
+    public static class Timeout {
+        private final Runnable task;
+        private final long deadline;
+        private long remainingRounds;
+        private volatile boolean cancelled;
+
+        private Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+
+    /**
+     * System.nanoTime() 기준 절대 시각 deadlineNanos에 task를 실행하도록 예약한다.
+     * 어느 스레드에서나 호출할 수 있다.
+     */
+    public Timeout schedule(Runnable task, long deadlineNanos) {
+        Timeout timeout = new Timeout(task, deadlineNanos);
+        pending.offer(timeout);
+        return timeout;
+    }
+
+    private void run() {
+        while (true) {
+            long tickDeadline = startTime + (tick + 1) * TICK_NANOS;
+            long sleep;
+            while ((sleep = tickDeadline - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(sleep);
+            }
+            transferPending();
+            expire(wheel.get((int) (tick & MASK)), System.nanoTime());
+            tick++;
+        }
+    }
+
+    /**
+     * 새로 예약된 작업을 마감 시각에 해당하는 휠 칸에 넣는다.
+     */
+    private void transferPending() {
+        Timeout timeout;
+        while ((timeout = pending.poll()) != null) {
+            if (timeout.cancelled) continue;
+            long targetTick = Math.max(tick, (timeout.deadline - startTime + TICK_NANOS - 1) / TICK_NANOS - 1);
+            timeout.remainingRounds = (targetTick - tick) / WHEEL_SIZE;
+            wheel.get((int) (targetTick & MASK)).add(timeout);
+        }
+    }
+
+    private void expire(List<Timeout> bucket, long now) {
+        List<Timeout> due = null;
+        Iterator<Timeout> it = bucket.iterator();
+        while (it.hasNext()) {
+            Timeout timeout = it.next();
+            if (timeout.cancelled) {
+                it.remove();
+            } else if (timeout.remainingRounds > 0) {
+                timeout.remainingRounds--;
+            } else if (timeout.deadline - now <= 0) {
+                it.remove();
+                if (due == null) due = new ArrayList<>();
+                due.add(timeout);
+            }
+        }
+        if (due == null) return;
+        // 실행 중인 작업이 다시 예약하더라도 순회 중인 칸을 건드리지 않도록 순회가 끝난 뒤 실행한다.
+        for (Timeout timeout : due) {
+            try {
+                timeout.task.run();
+            } catch (RuntimeException e) {
+                System.out.println("[TIMER] 작업 실행 중 오류: " + e);
+            }
+        }
+    }
+}
@@ -1,73 +1,169 @@
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.util.HashMap;
-import java.util.Map;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
 
 /**
  * UserManager
  * - 서버 측 계정 정보 로딩, 저장, 인증을 담당한다.
- * - 단순 과제용으로 파일에 username:hashedPassword 형식으로 저장한다.
+ * - 계정(username -> hashedPassword)은 UserStore의 저널과 색인에 저장한다.
+ *   등록할 때 파일 전체를 다시 쓰지 않고, 시작할 때 계정을 전부 읽어 들이지도 않는다.
+ * - 비밀번호는 계정마다 다른 솔트를 붙인 PBKDF2(HMAC-SHA256)로 저장한다: "pbkdf2$반복 횟수$솔트$해시"(Base64).
+ *   예전 계정의 솔트 없는 SHA-256 해시는 로그인에 성공할 때 PBKDF2로 바꿔 저장한다.
+ * - 해시 계산은 잠금 밖에서 하고 저장소 접근만 잠근다. 느린 해시는 AuthService의 인증 스레드에서 불린다.
  */
 public class UserManager {
-    private final Map<String, String> credentials = new HashMap<>();
-    private final File storageFile;
+    static final int PBKDF2_ITERATIONS = 100_000;
+    private static final String PBKDF2_PREFIX = "pbkdf2$";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
 
-    public UserManager(String filePath) {
-        this.storageFile = new File(filePath);
-        load();
+    private final SecureRandom random = new SecureRandom();
+    private final UserStore store;
+    // 파일 쓰기 중에 가상 스레드가 고정되지 않도록 synchronized 대신 사용한다.
+    private final ReentrantLock lock = new ReentrantLock();
+
+    public UserManager(File journalFile, File indexFile) {
+        try {
+            this.store = UserStore.open(journalFile, indexFile);
+        } catch (IOException e) {
+            throw new UncheckedIOException("계정 저장소를 열 수 없습니다: " + journalFile, e);
+        }
     }
 
     /**
-     * 신규 사용자를 등록한다. 이미 존재하면 false를 반환한다.
+     * 신규 사용자를 등록한다. 이미 존재하거나 저장에 실패하면 false를 반환한다.
      */
-    public synchronized boolean register(String username, String password) {
-        if (credentials.containsKey(username)) {
+    public boolean register(String username, String password) {
+        String hashed = pbkdf2(password, newSalt(), PBKDF2_ITERATIONS); // 해시는 잠금 밖에서 계산한다.
+        lock.lock();
+        try {
+            return store.putIfAbsent(username, hashed);
+        } catch (IOException e) {
+            System.out.println("[SERVER] 계정 저장 실패: " + e.getMessage());
             return false;
+        } finally {
+            lock.unlock();
         }
-        credentials.put(username, hash(password));
-        save();
-        return true;
     }
 
     /**
-     * 사용자 인증을 수행한다.
+     * 사용자 인증을 수행한다. 예전 형식(솔트 없는 SHA-256)으로 저장된 계정은 성공하면 PBKDF2로 바꿔 저장한다.
      */
-    public synchronized boolean authenticate(String username, String password) {
-        String stored = credentials.get(username);
-        if (stored == null) return false;
-        return stored.equals(hash(password));
+    public boolean authenticate(String username, String password) {
+        String stored = lookup(username);
+        if (stored == null) {
+            // 없는 아이디도 해시를 한 번 계산해, 응답 시간으로 아이디가 있는지 알 수 없게 한다.
+            pbkdf2(password, new byte[SALT_BYTES], PBKDF2_ITERATIONS);
+            return false;
+        }
+        if (!stored.startsWith(PBKDF2_PREFIX)) {
+            if (!constantTimeEquals(stored, sha256(password))) return false;
+            upgrade(username, stored, pbkdf2(password, newSalt(), PBKDF2_ITERATIONS));
+            return true;
+        }
+        String[] parts = stored.split("\\$");
+        if (parts.length != 4) return false;
+        byte[] salt = Base64.getDecoder().decode(parts[2]);
+        return constantTimeEquals(stored, pbkdf2(password, salt, Integer.parseInt(parts[1])));
+    }
+
+    private String lookup(String username) {
+        lock.lock();
+        try {
+            return store.get(username);
+        } catch (IOException e) {
+            System.out.println("[SERVER] 계정 조회 실패: " + e.getMessage());
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 예전 해시를 새 해시로 바꾼다. 그사이 다른 스레드가 바꿨으면 그대로 둔다.
+     */
+    private void upgrade(String username, String expected, String hashed) {
+        lock.lock();
+        try {
+            if (expected.equals(store.get(username))) {
+                store.put(username, hashed);
+            }
+        } catch (IOException e) {
+            System.out.println("[SERVER] 계정 해시 갱신 실패: " + e.getMessage());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return store.size();
+        } finally {
+            lock.unlock();
+        }
     }
 
-    private void load() {
-        if (!storageFile.exists()) return;
-        try (BufferedReader reader = new BufferedReader(new FileReader(storageFile))) {
+    /**
+     * 예전 users.db(한 줄에 "username:hashedPassword")의 계정을 저장소로 옮긴다.
+     * 이미 있는 이름은 건너뛴다.
+     *
+     * @return 옮긴 계정 수
+     */
+    public int importLegacy(File legacyFile) throws IOException {
+        if (!legacyFile.exists()) return 0;
+        int imported = 0;
+        lock.lock();
+        try (BufferedReader reader = new BufferedReader(new FileReader(legacyFile))) {
             String line;
             while ((line = reader.readLine()) != null) {
                 String[] parts = line.split(":", 2);
-                if (parts.length == 2) {
-                    credentials.put(parts[0], parts[1]);
+                if (parts.length == 2 && store.putIfAbsent(parts[0], parts[1])) {
+                    imported++;
                 }
             }
-        } catch (IOException ignored) {}
+        } finally {
+            lock.unlock();
+        }
+        return imported;
     }
 
-    private void save() {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(storageFile))) {
-            for (Map.Entry<String, String> entry : credentials.entrySet()) {
-                writer.write(entry.getKey() + ":" + entry.getValue());
-                writer.newLine();
-            }
-        } catch (IOException ignored) {}
+    private byte[] newSalt() {
+        byte[] salt = new byte[SALT_BYTES];
+        random.nextBytes(salt);
+        return salt;
     }
 
-    private String hash(String input) {
+    private static String pbkdf2(String password, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_BITS);
+        try {
+            byte[] hashed = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256").generateSecret(spec).getEncoded();
+            Base64.Encoder b64 = Base64.getEncoder();
+            return PBKDF2_PREFIX + iterations + "$" + b64.encodeToString(salt) + "$" + b64.encodeToString(hashed);
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException("해시 알고리즘을 찾을 수 없습니다.", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    private static boolean constantTimeEquals(String a, String b) {
+        return MessageDigest.isEqual(a.getBytes(StandardCharsets.UTF_8), b.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** 예전 계정 형식: 솔트 없는 SHA-256의 16진수 문자열 */
+    private static String sha256(String input) {
         try {
             MessageDigest digest = MessageDigest.getInstance("SHA-256");
             byte[] hashed = digest.digest(input.getBytes(StandardCharsets.UTF_8));
@@ -81,4 +177,3 @@ public class UserManager {
         }
     }
 }
-